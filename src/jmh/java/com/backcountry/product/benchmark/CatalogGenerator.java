@@ -0,0 +1,85 @@
+package com.backcountry.product.benchmark;
+
+import com.backcountry.product.model.Product;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Deterministic synthetic catalog for benchmarks.
+ * Brands and categories follow a skewed distribution so a few values are very common,
+ * the way they are in the real catalog.
+ */
+public final class CatalogGenerator {
+
+	private static final String[] BRANDS = {
+			"Patagonia", "The North Face", "Arc'teryx", "REI", "Salomon", "Black Diamond", "Marmot",
+			"Osprey", "MSR", "Columbia", "Smartwool", "Petzl", "Mammut", "Outdoor Research", "Big Agnes"
+	};
+
+	private static final String[] CATEGORIES = {
+			"jackets", "footwear", "camping", "climbing", "packs", "insulated", "rainwear", "tents",
+			"sleeping-bags", "cooking", "headlamps", "gloves", "base-layers", "socks", "ski", "snowboard"
+	};
+
+	private static final String[] NOUNS = {
+			"Jacket", "Boots", "Tent", "Harness", "Pack", "Hoodie", "Shell", "Stove", "Headlamp", "Gloves"
+	};
+
+	private static final Instant EPOCH = Instant.parse("2020-01-01T00:00:00Z");
+
+	private final Random random;
+
+	public CatalogGenerator(long seed) {
+		this.random = new Random(seed);
+	}
+
+	public List<Product> generate(int count) {
+		List<Product> products = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			products.add(next(i));
+		}
+		return products;
+	}
+
+	public Product next(int sequence) {
+		String brand = BRANDS[skewed(BRANDS.length)];
+		Instant createdAt = EPOCH.plusSeconds(random.nextInt(150_000_000));
+
+		return Product.builder()
+				.id(new UUID(random.nextLong(), random.nextLong()))
+				.name(brand + " " + NOUNS[random.nextInt(NOUNS.length)] + " " + sequence)
+				.description("Synthetic product " + sequence)
+				.brand(brand)
+				.price(BigDecimal.valueOf(500 + random.nextInt(99_500), 2))
+				.inventory(random.nextInt(200))
+				.categories(categories())
+				.createdAt(createdAt)
+				.updatedAt(createdAt)
+				.build();
+	}
+
+	public String brand(int rank) {
+		return BRANDS[rank % BRANDS.length];
+	}
+
+	public String category(int rank) {
+		return CATEGORIES[rank % CATEGORIES.length];
+	}
+
+	private List<String> categories() {
+		String first = CATEGORIES[skewed(CATEGORIES.length)];
+		String second = CATEGORIES[random.nextInt(CATEGORIES.length)];
+		return first.equals(second) ? List.of(first) : List.of(first, second);
+	}
+
+	// Rank r is picked with probability roughly proportional to 1 / (r + 1)
+	private int skewed(int bound) {
+		double u = random.nextDouble();
+		return (int) Math.min(bound - 1, Math.floor(Math.pow(bound + 1, u)) - 1);
+	}
+}
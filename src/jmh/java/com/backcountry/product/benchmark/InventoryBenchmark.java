@@ -0,0 +1,99 @@
+package com.backcountry.product.benchmark;
+
+import com.backcountry.config.ImportProperties;
+import com.backcountry.config.JsonCacheProperties;
+import com.backcountry.config.ListCacheProperties;
+import com.backcountry.product.dto.UpdateProductRequest;
+import com.backcountry.product.model.CatalogDictionary;
+import com.backcountry.product.model.Product;
+import com.backcountry.product.repository.InMemoryProductRepository;
+import com.backcountry.product.repository.ProductRepository;
+import com.backcountry.product.repository.persistence.DurableProductRepository;
+import com.backcountry.product.service.ImportExecutor;
+import com.backcountry.product.service.ProductInventory;
+import com.backcountry.product.service.ProductJsonCache;
+import com.backcountry.product.service.ProductListCache;
+import com.backcountry.product.service.ProductServiceImpl;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.validation.Validation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checkout on one hot product from 8 threads: a reservation admitted on the product's stock counter
+ * and written by group commit, against the read-modify-write a full update of the product does.
+ * With the write-ahead log, each update waits for its own flush while holding the product's lock;
+ * reservations share flushes. Change the thread count with -t.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class InventoryBenchmark {
+
+	@Param({"memory", "wal"})
+	private String store;
+
+	private Path data;
+	private DurableProductRepository durable;
+	private ProductServiceImpl service;
+	private Product product;
+
+	@Setup
+	public void setup() throws IOException {
+		ProductRepository repository = new InMemoryProductRepository();
+		if (store.equals("wal")) {
+			data = Files.createTempDirectory("inventory-benchmark-");
+			durable = new DurableProductRepository(new InMemoryProductRepository(), data, true, Duration.ZERO, 0);
+			repository = durable;
+		}
+		service = new ProductServiceImpl(repository, new CatalogDictionary(), Validation.buildDefaultValidatorFactory().getValidator(),
+				new ProductListCache(new ListCacheProperties(0)),
+				new ProductJsonCache(new ObjectMapper().findAndRegisterModules(), new JsonCacheProperties(DataSize.ofBytes(0))),
+				new ProductInventory(), new ImportExecutor(new ImportProperties(1)));
+		// Stock that the run cannot sell out
+		product = repository.save(new CatalogGenerator(42).generate(1).get(0).toBuilder().inventory(Integer.MAX_VALUE).build());
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		if (durable != null) {
+			durable.close();
+			FileSystemUtils.deleteRecursively(data);
+		}
+	}
+
+	@Benchmark
+	public Object reserve() {
+		return service.reserveInventory(product.getId(), 1);
+	}
+
+	@Benchmark
+	public Object update() {
+		return service.update(product.getId(), new UpdateProductRequest(product.getName(), product.getDescription(),
+				product.getBrand(), product.getPrice(), ThreadLocalRandom.current().nextInt(1_000_000), product.getCategories()), null);
+	}
+}
@@ -0,0 +1,299 @@
+package com.backcountry.product.benchmark;
+
+import com.backcountry.BackcountryApplication;
+import com.backcountry.product.dto.BulkResponse;
+import com.backcountry.product.dto.CreateProductRequest;
+import com.backcountry.product.dto.UpdateProductRequest;
+import com.backcountry.product.model.Product;
+import com.backcountry.product.service.ProductService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Closed-loop HTTP load test comparing Tomcat's platform thread pool, virtual threads and WebFlux on
+ * Reactor Netty.
+ *
+ * Each of {@code --connections} users keeps one request in flight on its own connection: a mix of
+ * product reads, listing reads and, with {@code --writes}, updates. Updates go through the durable
+ * store, so each one blocks its request thread until the write-ahead log's group commit is on disk;
+ * that blocking is what a bounded platform pool queues behind, and what the reactive stack moves off
+ * its event loops.
+ *
+ * By default the service is started in this JVM once per mode, with persistence in a temporary directory,
+ * and seeded with a synthetic catalog through the service. With {@code --url} an already running service
+ * is loaded instead, once, and seeded through its servlet-only bulk endpoint. Virtual threads need
+ * Java 21 and the reactive stack needs the reactive Maven profile, so without them those modes are skipped.
+ *
+ * Run with: mvn -Pbenchmarks,virtual-threads,reactive test-compile exec:exec@load-test -Dload.args="--connections 10000"
+ *
+ * Options (defaults in brackets): --connections [10000], --duration seconds [30], --warmup seconds [10],
+ * --catalog products [10000], --writes fraction [0.1], --fsync [true], --modes [platform,virtual,reactive], --url.
+ * Raise the open file limit first (ulimit -n 65536): client and server hold a socket per connection each.
+ */
+public final class LoadTest {
+
+	private static final ObjectMapper MAPPER = new ObjectMapper().findAndRegisterModules();
+
+	private final Map<String, String> options;
+	private final int connections;
+	private final Duration duration;
+	private final Duration warmup;
+	private final int catalogSize;
+	private final double writes;
+
+	private LoadTest(Map<String, String> options) {
+		this.options = options;
+		this.connections = Integer.parseInt(options.getOrDefault("connections", "10000"));
+		this.duration = Duration.ofSeconds(Long.parseLong(options.getOrDefault("duration", "30")));
+		this.warmup = Duration.ofSeconds(Long.parseLong(options.getOrDefault("warmup", "10")));
+		this.catalogSize = Integer.parseInt(options.getOrDefault("catalog", "10000"));
+		this.writes = Double.parseDouble(options.getOrDefault("writes", "0.1"));
+	}
+
+	public static void main(String[] args) throws Exception {
+		Map<String, String> options = new HashMap<>();
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			options.put(args[i].replaceFirst("^--", ""), args[i + 1]);
+		}
+		new LoadTest(options).run();
+	}
+
+	private void run() throws Exception {
+		List<Result> results = new ArrayList<>();
+		if (options.containsKey("url")) {
+			results.add(load("external", URI.create(options.get("url")), null));
+		} else {
+			for (String mode : options.getOrDefault("modes", "platform,virtual,reactive").split(",")) {
+				if (mode.equals("virtual") && Runtime.version().feature() < 21) {
+					System.out.println("Skipping virtual threads: they need Java 21, this is " + Runtime.version());
+					continue;
+				}
+				if (mode.equals("reactive") && !ClassUtils.isPresent("org.springframework.web.reactive.DispatcherHandler", null)) {
+					System.out.println("Skipping the reactive stack: WebFlux is only on the classpath with -Preactive");
+					continue;
+				}
+				results.add(startAndLoad(mode));
+			}
+		}
+
+		System.out.printf("%n%-10s %12s %10s %12s %10s %10s %10s%n",
+				"mode", "connections", "requests", "requests/s", "p50 ms", "p99 ms", "errors");
+		for (Result result : results) {
+			System.out.printf("%-10s %12d %10d %12.0f %10.1f %10.1f %10d%n",
+					result.mode(), connections, result.requests(), result.throughput(),
+					result.p50Millis(), result.p99Millis(), result.errors());
+		}
+	}
+
+	// The servlet modes get the same connection limits, so only the threads handling requests differ;
+	// Reactor Netty does not limit connections
+	private Result startAndLoad(String mode) throws Exception {
+		Path data = Files.createTempDirectory("load-test-");
+		ConfigurableApplicationContext context = new SpringApplicationBuilder(BackcountryApplication.class)
+				.properties(
+						"server.port=0",
+						"server.tomcat.max-connections=" + (connections * 2),
+						"server.tomcat.accept-count=1000",
+						"spring.threads.virtual.enabled=" + mode.equals("virtual"),
+						"spring.main.web-application-type=" + (mode.equals("reactive") ? "reactive" : "servlet"),
+						"backcountry.persistence.enabled=true",
+						"backcountry.persistence.directory=" + data,
+						"backcountry.persistence.fsync=" + options.getOrDefault("fsync", "true"),
+						"logging.level.root=WARN")
+				.run();
+		try {
+			int port = Integer.parseInt(context.getEnvironment().getRequiredProperty("local.server.port"));
+			return load(mode, URI.create("http://localhost:" + port), context.getBean(ProductService.class));
+		} finally {
+			context.close();
+			FileSystemUtils.deleteRecursively(data);
+		}
+	}
+
+	// Seeded through the service when it runs in this JVM, since the reactive stack has no bulk endpoint
+	private Result load(String mode, URI base, ProductService service) throws Exception {
+		HttpClient client = HttpClient.newBuilder()
+				.version(HttpClient.Version.HTTP_1_1)
+				.connectTimeout(Duration.ofSeconds(30))
+				.build();
+		Workload workload = seed(client, base, service);
+		System.out.printf("%s: %d connections, %ds warm-up, %ds measured%n",
+				mode, connections, warmup.toSeconds(), duration.toSeconds());
+
+		Histogram latencies = new Histogram();
+		AtomicLong errors = new AtomicLong();
+		long start = System.nanoTime();
+		long measureFrom = start + warmup.toNanos();
+		long end = measureFrom + duration.toNanos();
+
+		CountDownLatch done = new CountDownLatch(connections);
+		for (int user = 0; user < connections; user++) {
+			send(client, workload, measureFrom, end, latencies, errors, done);
+		}
+		done.await();
+
+		return new Result(mode, latencies.count(), errors.get(), latencies.count() / (double) duration.toSeconds(),
+				latencies.percentile(0.50) / 1000.0, latencies.percentile(0.99) / 1000.0);
+	}
+
+	// One user's next request; its completion sends the one after, until the run ends
+	private void send(HttpClient client, Workload workload, long measureFrom, long end,
+			Histogram latencies, AtomicLong errors, CountDownLatch done) {
+		long sent = System.nanoTime();
+		if (sent >= end) {
+			done.countDown();
+			return;
+		}
+		client.sendAsync(workload.next(), HttpResponse.BodyHandlers.discarding()).whenComplete((response, failure) -> {
+			if (sent >= measureFrom) {
+				if (failure != null || response.statusCode() >= 400) {
+					errors.incrementAndGet();
+				} else {
+					latencies.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - sent));
+				}
+			}
+			send(client, workload, measureFrom, end, latencies, errors, done);
+		});
+	}
+
+	private Workload seed(HttpClient client, URI base, ProductService service) throws IOException, InterruptedException {
+		CatalogGenerator generator = new CatalogGenerator(42);
+		List<Product> catalog = generator.generate(catalogSize);
+		List<CreateProductRequest> requests = new ArrayList<>(catalog.size());
+		for (Product product : catalog) {
+			requests.add(new CreateProductRequest(product.getName(), product.getDescription(),
+					product.getBrand(), product.getPrice(), product.getInventory(), product.getCategories()));
+		}
+		List<UUID> ids = service != null ? seededIds(service.createAll(requests)) : seedOverHttp(client, base, requests);
+
+		List<Product> seeded = new ArrayList<>(catalog.size());
+		for (int i = 0; i < catalog.size(); i++) {
+			seeded.add(catalog.get(i).toBuilder().id(ids.get(i)).build());
+		}
+		return new Workload(base, seeded, generator, writes);
+	}
+
+	private static List<UUID> seedOverHttp(HttpClient client, URI base, List<CreateProductRequest> requests)
+			throws IOException, InterruptedException {
+		StringBuilder ndjson = new StringBuilder();
+		for (CreateProductRequest request : requests) {
+			ndjson.append(MAPPER.writeValueAsString(request)).append('\n');
+		}
+		HttpResponse<String> created = client.send(HttpRequest.newBuilder(base.resolve("/products/_bulk"))
+				.header("Content-Type", "application/x-ndjson")
+				.POST(HttpRequest.BodyPublishers.ofString(ndjson.toString()))
+				.build(), HttpResponse.BodyHandlers.ofString());
+		if (created.statusCode() != 200) {
+			throw new IllegalStateException("Seeding failed with " + created.statusCode() + ": " + created.body());
+		}
+
+		List<UUID> ids = new ArrayList<>(requests.size());
+		for (JsonNode item : MAPPER.readTree(created.body()).path("items")) {
+			ids.add(UUID.fromString(item.path("id").asText()));
+		}
+		return ids;
+	}
+
+	private static List<UUID> seededIds(BulkResponse created) {
+		if (created.failed() > 0) {
+			throw new IllegalStateException("Seeding rejected " + created.failed() + " products");
+		}
+		return created.items().stream().map(BulkResponse.ItemResult::id).toList();
+	}
+
+	/**
+	 * Requests of the mix: a product by id, a listing page filtered by one of the common brands, or,
+	 * for a {@code writes} fraction of them, an update of a product's inventory.
+	 */
+	private record Workload(URI base, List<Product> products, CatalogGenerator generator, double writes) {
+
+		HttpRequest next() {
+			ThreadLocalRandom random = ThreadLocalRandom.current();
+			Product product = products.get(random.nextInt(products.size()));
+			double draw = random.nextDouble();
+			if (draw < writes) {
+				return HttpRequest.newBuilder(base.resolve("/products/" + product.getId()))
+						.header("Content-Type", "application/json")
+						.PUT(HttpRequest.BodyPublishers.ofString(update(product, random.nextInt(1000))))
+						.build();
+			}
+			if (draw < writes + (1 - writes) / 2) {
+				return HttpRequest.newBuilder(base.resolve("/products/" + product.getId())).GET().build();
+			}
+			String brand = URLEncoder.encode(generator.brand(random.nextInt(5)), StandardCharsets.UTF_8);
+			return HttpRequest.newBuilder(base.resolve("/products?size=20&brand=" + brand)).GET().build();
+		}
+
+		private static String update(Product product, int inventory) {
+			try {
+				return MAPPER.writeValueAsString(new UpdateProductRequest(product.getName(), product.getDescription(),
+						product.getBrand(), product.getPrice(), inventory, product.getCategories()));
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+
+	private record Result(String mode, long requests, long errors, double throughput, double p50Millis, double p99Millis) {}
+
+	/**
+	 * Latencies in microseconds, in buckets 1% apart, so percentiles are within 1% at any scale and
+	 * recording is one atomic increment.
+	 */
+	private static final class Histogram {
+
+		private static final double STEP = Math.log(1.01);
+
+		// Up to about 20 minutes
+		private final AtomicLongArray counts = new AtomicLongArray(2200);
+		private final AtomicLong count = new AtomicLong();
+
+		void record(long micros) {
+			int bucket = micros <= 1 ? 0 : (int) Math.min(Math.log(micros) / STEP, counts.length() - 1);
+			counts.incrementAndGet(bucket);
+			count.incrementAndGet();
+		}
+
+		long count() {
+			return count.get();
+		}
+
+		// Upper bound of the bucket holding the percentile
+		long percentile(double fraction) {
+			long rank = (long) Math.ceil(fraction * count.get());
+			long seen = 0;
+			for (int bucket = 0; bucket < counts.length(); bucket++) {
+				seen += counts.get(bucket);
+				if (seen >= rank && seen > 0) {
+					return (long) Math.exp((bucket + 1) * STEP);
+				}
+			}
+			return 0;
+		}
+	}
+}
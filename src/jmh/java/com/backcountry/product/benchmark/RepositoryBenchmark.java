@@ -0,0 +1,83 @@
+package com.backcountry.product.benchmark;
+
+import com.backcountry.product.model.Product;
+import com.backcountry.product.repository.InMemoryProductRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single-product operations and findAll on InMemoryProductRepository.
+ * save replaces an existing product with a re-priced copy, so it includes index maintenance.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class RepositoryBenchmark {
+
+	@Param({"1000", "10000", "100000", "1000000"})
+	private int catalogSize;
+
+	private InMemoryProductRepository repository;
+
+	private Product[] products;
+
+	private Product[] repriced;
+
+	// Which price each product is stored at; the store keeps re-versioned copies, so it cannot be told by identity
+	private boolean[] repricedNow;
+
+	private int cursor;
+
+	@Setup
+	public void setup() {
+		List<Product> catalog = new CatalogGenerator(42).generate(catalogSize);
+		repository = new InMemoryProductRepository();
+		catalog.forEach(repository::save);
+
+		products = catalog.toArray(Product[]::new);
+		repriced = catalog.stream()
+				.map(p -> p.toBuilder().price(p.getPrice().add(BigDecimal.ONE)).build())
+				.toArray(Product[]::new);
+		repricedNow = new boolean[catalogSize];
+	}
+
+	// Stride through the catalog so consecutive operations touch unrelated products
+	private int next() {
+		cursor = (cursor + 7919) % catalogSize;
+		return cursor;
+	}
+
+	@Benchmark
+	public Product save() {
+		int i = next();
+		repricedNow[i] = !repricedNow[i];
+		return repository.save(repricedNow[i] ? repriced[i] : products[i]);
+	}
+
+	@Benchmark
+	public Optional<Product> findById() {
+		return repository.findById(products[next()].getId());
+	}
+
+	@Benchmark
+	public List<Product> findAll() {
+		return repository.findAll();
+	}
+}
@@ -0,0 +1,108 @@
+package com.backcountry.product.benchmark;
+
+import com.backcountry.config.ImportProperties;
+import com.backcountry.config.JsonCacheProperties;
+import com.backcountry.config.ListCacheProperties;
+import com.backcountry.product.dto.ProductJson;
+import com.backcountry.product.dto.ProductResponse;
+import com.backcountry.product.model.CatalogDictionary;
+import com.backcountry.product.model.Product;
+import com.backcountry.product.repository.InMemoryProductRepository;
+import com.backcountry.product.service.ImportExecutor;
+import com.backcountry.product.service.ProductJsonCache;
+import com.backcountry.product.service.ProductInventory;
+import com.backcountry.product.service.ProductListCache;
+import com.backcountry.product.service.ProductServiceImpl;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.validation.Validation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.util.unit.DataSize;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Entity-to-response mapping and Jackson serialization of ProductResponse, with an
+ * ObjectMapper configured the way Spring Boot configures the one used by the controllers,
+ * against the bytes the product JSON cache serves once each product has been read.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializationBenchmark {
+
+	private ProductServiceImpl service;
+
+	private ObjectMapper mapper;
+
+	private Product product;
+
+	private ProductResponse response;
+
+	private List<ProductResponse> page;
+
+	@Setup
+	public void setup() {
+		List<Product> catalog = new CatalogGenerator(42).generate(1_000);
+		InMemoryProductRepository repository = new InMemoryProductRepository();
+		catalog.forEach(repository::save);
+
+		mapper = Jackson2ObjectMapperBuilder.json().build();
+		service = new ProductServiceImpl(repository, new CatalogDictionary(), Validation.buildDefaultValidatorFactory().getValidator(),
+				new ProductListCache(new ListCacheProperties(0)),
+				new ProductJsonCache(mapper, new JsonCacheProperties(DataSize.ofMegabytes(64))),
+				new ProductInventory(), new ImportExecutor(new ImportProperties(1)));
+		product = catalog.get(0);
+		response = service.getById(product.getId()).orElseThrow();
+		page = service.list(null, null, null, null, null, null, 0, 10, null).items();
+	}
+
+	/**
+	 * findById plus toResponse; compare with RepositoryBenchmark.findById for the mapping cost.
+	 */
+	@Benchmark
+	public Optional<ProductResponse> getById() {
+		return service.getById(product.getId());
+	}
+
+	/**
+	 * findById plus the cached JSON of the product, which is what GET /products/{id} writes.
+	 */
+	@Benchmark
+	public Optional<ProductJson> getJsonById() {
+		return service.getJsonById(product.getId());
+	}
+
+	@Benchmark
+	public byte[] serializeProduct() throws JsonProcessingException {
+		return mapper.writeValueAsBytes(response);
+	}
+
+	@Benchmark
+	public byte[] serializePage() throws JsonProcessingException {
+		return mapper.writeValueAsBytes(page);
+	}
+
+	/**
+	 * The page joined from the cached JSON of its products, which is what GET /products writes.
+	 */
+	@Benchmark
+	public byte[] joinCachedPage() {
+		return service.toJson(page);
+	}
+}
@@ -0,0 +1,92 @@
+package com.backcountry.product.benchmark;
+
+import com.backcountry.config.ImportProperties;
+import com.backcountry.config.JsonCacheProperties;
+import com.backcountry.config.ListCacheProperties;
+import com.backcountry.product.dto.ProductPage;
+import com.backcountry.product.model.CatalogDictionary;
+import com.backcountry.product.repository.InMemoryProductRepository;
+import com.backcountry.product.repository.ProductRepository;
+import com.backcountry.product.repository.columnar.ColumnarProductRepository;
+import com.backcountry.product.service.ImportExecutor;
+import com.backcountry.product.service.ProductJsonCache;
+import com.backcountry.product.service.ProductInventory;
+import com.backcountry.product.service.ProductListCache;
+import com.backcountry.product.service.ProductServiceImpl;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.validation.Validation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.unit.DataSize;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ProductServiceImpl.list across filter and sort combinations, first page of 10.
+ * Filters use the most common brand and category of the synthetic catalog, and a price
+ * range covering roughly 10% of it. Runs against both the indexed heap store and the off-heap
+ * columnar store, with and without the listing page cache; with it every call after the first is a hit.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class ServiceListBenchmark {
+
+	@Param({"1000", "10000", "100000", "1000000"})
+	private int catalogSize;
+
+	@Param({"none", "brand", "category", "price", "brand+category+price"})
+	private String filter;
+
+	@Param({"date", "price", "name", "brand"})
+	private String sort;
+
+	@Param({"heap", "off-heap"})
+	private String backend;
+
+	@Param({"off", "on"})
+	private String listCache;
+
+	private ProductServiceImpl service;
+
+	private String brand;
+	private String category;
+	private Double priceMin;
+	private Double priceMax;
+
+	@Setup
+	public void setup() {
+		CatalogGenerator generator = new CatalogGenerator(42);
+		ProductRepository repository = backend.equals("heap") ? new InMemoryProductRepository() : new ColumnarProductRepository();
+		CatalogDictionary dictionary = new CatalogDictionary();
+		// Products enter through the service in production, so they are interned like create/update do
+		generator.generate(catalogSize).forEach(product -> repository.save(dictionary.intern(product)));
+		ProductListCache cache = new ProductListCache(new ListCacheProperties(listCache.equals("on") ? 100_000 : 0));
+		// list returns responses, so the JSON cache is not exercised
+		ProductJsonCache jsonCache = new ProductJsonCache(new ObjectMapper(), new JsonCacheProperties(DataSize.ofBytes(0)));
+		service = new ProductServiceImpl(repository, dictionary, Validation.buildDefaultValidatorFactory().getValidator(), cache, jsonCache,
+				new ProductInventory(), new ImportExecutor(new ImportProperties(1)));
+
+		brand = filter.contains("brand") ? generator.brand(0) : null;
+		category = filter.contains("category") ? generator.category(0) : null;
+		priceMin = filter.contains("price") ? 100.0 : null;
+		priceMax = filter.contains("price") ? 200.0 : null;
+	}
+
+	@Benchmark
+	public ProductPage list() {
+		return service.list(brand, category, priceMin, priceMax, null, sort, 0, 10, null);
+	}
+}
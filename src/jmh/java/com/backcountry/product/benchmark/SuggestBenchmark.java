@@ -0,0 +1,55 @@
+package com.backcountry.product.benchmark;
+
+import com.backcountry.product.repository.InMemoryProductRepository;
+import com.backcountry.product.repository.Suggestion;
+import com.backcountry.product.repository.SuggestionRank;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * InMemoryProductRepository.suggest, top 10 completions. Sampled rather than averaged so the
+ * report includes p99. Prefixes go from one letter (two brands and a fifth of the names) to one
+ * that matches about a hundred names.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class SuggestBenchmark {
+
+	@Param({"100000", "1000000"})
+	private int catalogSize;
+
+	@Param({"p", "patagonia j", "patagonia jacket 12"})
+	private String prefix;
+
+	@Param({"INVENTORY", "NEWEST"})
+	private SuggestionRank rank;
+
+	private InMemoryProductRepository repository;
+
+	@Setup
+	public void setup() {
+		repository = new InMemoryProductRepository();
+		new CatalogGenerator(42).generate(catalogSize).forEach(repository::save);
+	}
+
+	@Benchmark
+	public List<Suggestion> suggest() {
+		return repository.suggest(prefix, rank, 10);
+	}
+}
@@ -0,0 +1,78 @@
+package com.backcountry.product.repository;
+
+import com.backcountry.product.benchmark.CatalogGenerator;
+import com.backcountry.product.model.Product;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full sort versus bounded top-K selection for a page of a name-ordered listing.
+ * Run with -prof gc to compare allocation per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class TopKBenchmark {
+
+	@Param({"100000", "1000000"})
+	private int catalogSize;
+
+	@Param({"0", "99"})
+	private int page;
+
+	private final int size = 10;
+
+	private List<Product> products;
+
+	private InMemoryProductRepository repository;
+
+	@Setup
+	public void setup() {
+		products = new CatalogGenerator(42).generate(catalogSize);
+		repository = new InMemoryProductRepository();
+		products.forEach(repository::save);
+	}
+
+	@Benchmark
+	public List<Product> fullSort() {
+		return products.stream()
+				.sorted(ProductSort.NAME.comparator())
+				.skip((long) page * size)
+				.limit(size)
+				.toList();
+	}
+
+	@Benchmark
+	public List<Product> topK() {
+		TopK<Product> topK = new TopK<>((page + 1) * size, ProductSort.NAME.comparator());
+		for (Product product : products) {
+			topK.offer(product);
+		}
+		List<Product> sorted = topK.sorted();
+		return sorted.subList(Math.min(sorted.size(), page * size), sorted.size());
+	}
+
+	@Benchmark
+	public List<Product> repositoryFind() {
+		return repository.find(ProductQuery.builder()
+				.sort(ProductSort.NAME)
+				.offset((long) page * size)
+				.limit(size)
+				.build());
+	}
+}
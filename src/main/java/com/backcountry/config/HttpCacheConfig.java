@@ -0,0 +1,12 @@
+package com.backcountry.config;
+
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/***
+ * Binds the HTTP caching settings the product controller sends with its reads.
+ */
+@Configuration
+@EnableConfigurationProperties(HttpCacheProperties.class)
+public class HttpCacheConfig {
+}
@@ -0,0 +1,18 @@
+package com.backcountry.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/***
+ * HTTP caching of product reads (backcountry.http-cache.*). Reads always carry an ETag, so a cache
+ * revalidates a stale copy with If-None-Match and gets an empty 304 while the product or catalog is unchanged.
+ * @param productMaxAge how long a cache may serve a product without revalidating, zero to always revalidate
+ * @param listMaxAge how long a cache may serve a listing page without revalidating, zero to always revalidate
+ */
+@ConfigurationProperties(prefix = "backcountry.http-cache")
+public record HttpCacheProperties(
+		@DefaultValue("0s") Duration productMaxAge,
+		@DefaultValue("0s") Duration listMaxAge
+) {}
@@ -0,0 +1,12 @@
+package com.backcountry.config;
+
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/***
+ * Binds the limit on concurrent imports the product service runs its import stages under.
+ */
+@Configuration
+@EnableConfigurationProperties(ImportProperties.class)
+public class ImportConfig {
+}
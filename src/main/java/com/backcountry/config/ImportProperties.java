@@ -0,0 +1,14 @@
+package com.backcountry.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/***
+ * Catalog imports (backcountry.import.*). Each import runs its validation and writing stages on threads of
+ * a pool sized for this many imports at once; one more is turned away rather than queued.
+ * @param maxConcurrent most imports running at once, at least 1
+ */
+@ConfigurationProperties(prefix = "backcountry.import")
+public record ImportProperties(
+		@DefaultValue("2") int maxConcurrent
+) {}
@@ -0,0 +1,12 @@
+package com.backcountry.config;
+
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/***
+ * Binds the size of the product JSON cache the product service serializes through.
+ */
+@Configuration
+@EnableConfigurationProperties(JsonCacheProperties.class)
+public class JsonCacheConfig {
+}
@@ -0,0 +1,15 @@
+package com.backcountry.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.util.unit.DataSize;
+
+/***
+ * In-memory cache of the JSON of each product (backcountry.json-cache.*). Reads write the cached bytes
+ * instead of serializing the product again; an entry serves only the version it was serialized at.
+ * @param maximumSize most JSON kept, counted in bytes, zero to serialize every read
+ */
+@ConfigurationProperties(prefix = "backcountry.json-cache")
+public record JsonCacheProperties(
+		@DefaultValue("64MB") DataSize maximumSize
+) {}
@@ -0,0 +1,12 @@
+package com.backcountry.config;
+
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/***
+ * Binds the size of the listing page cache the product service reads through.
+ */
+@Configuration
+@EnableConfigurationProperties(ListCacheProperties.class)
+public class ListCacheConfig {
+}
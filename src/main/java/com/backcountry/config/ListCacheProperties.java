@@ -0,0 +1,15 @@
+package com.backcountry.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/***
+ * In-memory cache of listing pages (backcountry.list-cache.*). Pages are keyed on their normalized query,
+ * evicted by W-TinyLFU once the cache is full, and dropped as soon as a write touches a product they match.
+ * @param maximumSize most products kept across the pages, each page counting one more, zero to read every
+ *                    page from the repository
+ */
+@ConfigurationProperties(prefix = "backcountry.list-cache")
+public record ListCacheProperties(
+		@DefaultValue("100000") long maximumSize
+) {}
@@ -0,0 +1,40 @@
+package com.backcountry.config;
+
+import com.backcountry.product.model.CatalogDictionary;
+import com.backcountry.product.repository.InMemoryProductRepository;
+import com.backcountry.product.repository.persistence.DurableProductRepository;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+import java.io.IOException;
+
+/***
+ * Wraps the in-memory repository with write-ahead logging and snapshots when backcountry.persistence.enabled=true.
+ */
+@Configuration
+@EnableConfigurationProperties(PersistenceProperties.class)
+@ConditionalOnProperty(prefix = "backcountry.persistence", name = "enabled", havingValue = "true")
+public class PersistenceConfig {
+
+	@Bean(destroyMethod = "close")
+	@Primary
+	public DurableProductRepository durableProductRepository(
+			ObjectProvider<InMemoryProductRepository> heap,
+			CatalogDictionary dictionary,
+			PersistenceProperties properties) throws IOException {
+		InMemoryProductRepository memory = heap.getIfAvailable();
+		if (memory == null) {
+			throw new IllegalStateException("backcountry.persistence requires backcountry.storage.backend=heap");
+		}
+		return new DurableProductRepository(memory,
+				properties.directory(),
+				properties.fsync(),
+				properties.snapshotInterval(),
+				properties.snapshotMinRecords(),
+				dictionary::intern);
+	}
+}
@@ -0,0 +1,24 @@
+package com.backcountry.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/***
+ * Settings for durable product storage (backcountry.persistence.*).
+ * @param enabled whether writes are persisted to a write-ahead log
+ * @param directory directory holding the persistent files
+ * @param fsync whether each group commit is forced to disk before writes are acknowledged
+ * @param snapshotInterval how often to check whether a snapshot is due, zero to disable snapshots
+ * @param snapshotMinRecords log records written since the last snapshot before a new one is taken
+ */
+@ConfigurationProperties(prefix = "backcountry.persistence")
+public record PersistenceProperties(
+		@DefaultValue("false") boolean enabled,
+		@DefaultValue("data") Path directory,
+		@DefaultValue("true") boolean fsync,
+		@DefaultValue("5m") Duration snapshotInterval,
+		@DefaultValue("50000") long snapshotMinRecords
+) {}
@@ -0,0 +1,24 @@
+package com.backcountry.config;
+
+import com.backcountry.product.repository.columnar.ColumnarProductRepository;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+/***
+ * Provides the off-heap columnar store when backcountry.storage.backend=off-heap, in place of the on-heap
+ * repository, which is then not created.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "backcountry.storage", name = "backend", havingValue = "off-heap")
+public class StorageConfig {
+
+	@Bean
+	public ColumnarProductRepository columnarProductRepository(Environment environment) {
+		if (environment.getProperty("backcountry.persistence.enabled", Boolean.class, false)) {
+			throw new IllegalStateException("backcountry.persistence requires backcountry.storage.backend=heap");
+		}
+		return new ColumnarProductRepository();
+	}
+}
@@ -0,0 +1,78 @@
+package com.backcountry.product.controller;
+
+import com.backcountry.product.exception.ProductNotFoundException;
+import com.backcountry.product.exception.ProductVersionMismatchException;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ETag;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * ETag preconditions and Cache-Control of product reads and writes, shared by the servlet and reactive
+ * controllers so both stacks answer conditional requests the same way.
+ */
+final class HttpCaching {
+
+	private HttpCaching() {
+	}
+
+	/**
+	 * Versions an If-Match header names, each ETag being a product version. Null when the header is
+	 * absent or "*", which any existing product matches. Weak ETags never match, since If-Match compares
+	 * strongly, and neither do ETags this service did not issue.
+	 */
+	static Set<Long> matchedVersions(String ifMatch) {
+		if (ifMatch == null) {
+			return null;
+		}
+		Set<Long> versions = new HashSet<>();
+		for (ETag tag : ETag.parse(ifMatch)) {
+			if (tag.isWildcard()) {
+				return null;
+			}
+			if (!tag.weak()) {
+				try {
+					versions.add(Long.parseLong(tag.tag()));
+				} catch (NumberFormatException e) {
+					// Not one of ours, so no version matches it
+				}
+			}
+		}
+		return versions;
+	}
+
+	/**
+	 * The error of a write to a product that does not exist: 404, unless the write has an If-Match header,
+	 * which no version of a missing product matches, not even "*", so 412 (RFC 7232, section 3.1).
+	 */
+	static RuntimeException notFound(UUID id, String ifMatch) {
+		return ifMatch == null
+				? new ProductNotFoundException(id.toString())
+				: ProductVersionMismatchException.missing(id.toString());
+	}
+
+	/**
+	 * Whether an If-None-Match header names the ETag, or is "*". Compared weakly, as If-None-Match is.
+	 */
+	static boolean isNotModified(String ifNoneMatch, String eTag) {
+		if (ifNoneMatch == null) {
+			return false;
+		}
+		for (ETag tag : ETag.parse(ifNoneMatch)) {
+			if (tag.isWildcard() || tag.tag().equals(eTag)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// Shared caches may keep reads, which hold nothing user-specific; with no max-age they revalidate every time
+	static CacheControl cacheControl(Duration maxAge) {
+		return maxAge.isZero() || maxAge.isNegative()
+				? CacheControl.noCache().cachePublic()
+				: CacheControl.maxAge(maxAge).cachePublic();
+	}
+}
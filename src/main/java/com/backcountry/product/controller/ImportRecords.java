@@ -0,0 +1,192 @@
+package com.backcountry.product.controller;
+
+import com.backcountry.product.dto.CreateProductRequest;
+import com.backcountry.product.service.ImportRecord;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Parsers for import uploads, reading one record at a time as the upload arrives. A record that cannot
+ * be parsed is returned with its error so that the rest of the upload still imports; a failure to read
+ * the upload itself is thrown as UncheckedIOException.
+ */
+final class ImportRecords {
+
+	// Separates the categories within the categories column of a CSV upload
+	static final String CSV_CATEGORY_SEPARATOR = ";";
+
+	// Longest NDJSON line read; a longer one is rejected without holding more of it than this
+	static final int MAX_LINE_CHARS = 1024 * 1024;
+
+	private static final int BUFFER_CHARS = 64 * 1024;
+
+	// CSV columns are named by the header row and bound by name, so their order is free and unknown ones are ignored
+	private static final ObjectReader CSV = new CsvMapper()
+			.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+			.readerFor(CreateProductRequest.class)
+			.with(CsvSchema.emptySchema().withHeader().withArrayElementSeparator(CSV_CATEGORY_SEPARATOR));
+
+	private ImportRecords() {
+	}
+
+	/**
+	 * Each line is parsed on its own, so a malformed line costs only itself: the parser does not have to
+	 * find its way back into the stream. Blank lines are skipped, and lines longer than
+	 * {@link #MAX_LINE_CHARS} are rejected.
+	 * @param reader reader of CreateProductRequest values
+	 * @param body NDJSON upload
+	 * @return records of the upload, in order
+	 */
+	static Iterator<ImportRecord> ndjson(ObjectReader reader, InputStream body) {
+		LineReader lines = new LineReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+		return new RecordIterator() {
+			private long line;
+
+			@Override
+			ImportRecord read() throws IOException {
+				String text;
+				do {
+					text = lines.next();
+					if (text == null) {
+						return null;
+					}
+					line++;
+				} while (text.isBlank());
+
+				if (text == LineReader.TOO_LONG) {
+					return ImportRecord.unparsable(line, "is longer than " + MAX_LINE_CHARS + " characters");
+				}
+				try {
+					return ImportRecord.parsed(line, reader.readValue(text));
+				} catch (JsonProcessingException e) {
+					return ImportRecord.unparsable(line, "is not valid JSON for a product: " + e.getOriginalMessage());
+				}
+			}
+		};
+	}
+
+	/**
+	 * The first row names the columns: name, description, brand, price, inventory and categories, the
+	 * categories separated by semicolons. Quoted values may span lines.
+	 * @param body CSV upload
+	 * @return records of the upload, in order
+	 * @throws IOException if the header row cannot be read
+	 */
+	static Iterator<ImportRecord> csv(InputStream body) throws IOException {
+		MappingIterator<CreateProductRequest> rows = CSV.readValues(body);
+		return new RecordIterator() {
+			@Override
+			ImportRecord read() throws IOException {
+				if (!rows.hasNextValue()) {
+					return null;
+				}
+				// The CSV parser counts lines from zero
+				long line = rows.getParser().currentTokenLocation().getLineNr() + 1;
+				try {
+					return ImportRecord.parsed(line, rows.nextValue());
+				} catch (JsonProcessingException e) {
+					// The next hasNextValue skips what is left of the row
+					return ImportRecord.unparsable(line, "is not a valid CSV row for a product: " + e.getOriginalMessage());
+				}
+			}
+		};
+	}
+
+	/**
+	 * Lines ending in a line feed, without the carriage return before it, read through a buffer of its
+	 * own. A line longer than {@link #MAX_LINE_CHARS} is read to its end but not kept.
+	 */
+	private static final class LineReader {
+
+		// Returned for a line that was too long, compared by identity
+		static final String TOO_LONG = new String("<too long>");
+
+		private final Reader in;
+		private final char[] buffer = new char[BUFFER_CHARS];
+		private final StringBuilder line = new StringBuilder();
+		private int position;
+		private int limit;
+
+		LineReader(Reader in) {
+			this.in = in;
+		}
+
+		// Next line, TOO_LONG, or null at the end of the input
+		String next() throws IOException {
+			line.setLength(0);
+			boolean tooLong = false;
+			while (true) {
+				if (position == limit) {
+					int read = in.read(buffer, 0, buffer.length);
+					position = 0;
+					limit = Math.max(read, 0);
+					if (read < 0) {
+						return tooLong ? TOO_LONG : line.isEmpty() ? null : text();
+					}
+				}
+				int start = position;
+				while (position < limit && buffer[position] != '\n') {
+					position++;
+				}
+				if (!tooLong && line.length() + (position - start) > MAX_LINE_CHARS) {
+					tooLong = true;
+					line.setLength(0);
+				} else if (!tooLong) {
+					line.append(buffer, start, position - start);
+				}
+				if (position < limit) {
+					position++;
+					return tooLong ? TOO_LONG : text();
+				}
+			}
+		}
+
+		private String text() {
+			int end = line.length();
+			return end > 0 && line.charAt(end - 1) == '\r' ? line.substring(0, end - 1) : line.toString();
+		}
+	}
+
+	private abstract static class RecordIterator implements Iterator<ImportRecord> {
+
+		private ImportRecord next;
+
+		// Next record, or null at the end of the upload
+		abstract ImportRecord read() throws IOException;
+
+		@Override
+		public boolean hasNext() {
+			if (next == null) {
+				try {
+					next = read();
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+			return next != null;
+		}
+
+		@Override
+		public ImportRecord next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			ImportRecord record = next;
+			next = null;
+			return record;
+		}
+	}
+}
@@ -0,0 +1,43 @@
+package com.backcountry.product.controller;
+
+import com.backcountry.product.dto.DictionaryMetricsResponse;
+import com.backcountry.product.dto.ListCacheMetricsResponse;
+import com.backcountry.product.service.ProductService;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Operational metrics of the catalog, on the servlet stack. {@code ReactiveMetricsController}, built with
+ * the reactive Maven profile, serves the same routes when the application runs on WebFlux.
+ */
+@RestController
+@RequestMapping("/metrics")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class MetricsController {
+
+	private final ProductService service;
+
+	public MetricsController(ProductService service) {
+		this.service = service;
+	}
+
+	/**
+	 * Report the size of the brand and category dictionary
+	 * @return DictionaryMetricsResponse
+	 */
+	@GetMapping("/dictionary")
+	public DictionaryMetricsResponse dictionary() {
+		return service.dictionaryMetrics();
+	}
+
+	/**
+	 * Report the hits, misses, evictions and invalidations of the listing page cache
+	 * @return ListCacheMetricsResponse
+	 */
+	@GetMapping("/list-cache")
+	public ListCacheMetricsResponse listCache() {
+		return service.listCacheMetrics();
+	}
+}
@@ -1,51 +1,193 @@
 package com.backcountry.product.controller;
 
+import com.backcountry.config.HttpCacheProperties;
+import com.backcountry.product.dto.BulkResponse;
+import com.backcountry.product.dto.BulkUpdateRequest;
 import com.backcountry.product.dto.CreateProductRequest;
+import com.backcountry.product.dto.ImportResponse;
+import com.backcountry.product.dto.InventoryRequest;
+import com.backcountry.product.dto.ProductFacetsResponse;
+import com.backcountry.product.dto.ProductJson;
+import com.backcountry.product.dto.ProductPage;
 import com.backcountry.product.dto.ProductResponse;
+import com.backcountry.product.dto.QueryExplainResponse;
+import com.backcountry.product.dto.SuggestionResponse;
 import com.backcountry.product.dto.UpdateProductRequest;
+import com.backcountry.product.exception.InvalidBulkRequestException;
 import com.backcountry.product.exception.ProductNotFoundException;
+import com.backcountry.product.service.ImportRecord;
 import com.backcountry.product.service.ProductService;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.swagger.v3.oas.annotations.media.ArraySchema;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import jakarta.validation.Valid;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.UUID;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 /**
- * REST controller for managing products.
+ * REST controller for managing products, on the servlet stack. {@code ReactiveProductController}, built
+ * with the reactive Maven profile, serves the same routes when the application runs on WebFlux.
  */
 @RestController
 @RequestMapping("/products")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class ProductController {
 
+	static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+	static final String DEFAULT_PRICE_BUCKETS = "25,50,100,250,500";
+
+	// Most items a bulk request may hold
+	static final int MAX_BULK_ITEMS = 100_000;
+
+	static final String TEXT_CSV_VALUE = "text/csv";
+
+	private static final int GZIP_BUFFER_BYTES = 64 * 1024;
+
+	// Exports stream on an async request, which gets this timeout instead of the default every other one keeps
+	static final Duration EXPORT_TIMEOUT = Duration.ofHours(1);
+
 	private final ProductService service;
+	private final ObjectMapper mapper;
+	private final CacheControl productCacheControl;
+	private final CacheControl listCacheControl;
 
-	public ProductController(ProductService service) {
+	public ProductController(ProductService service, ObjectMapper mapper, HttpCacheProperties cache) {
 		this.service = service;
+		this.mapper = mapper;
+		this.productCacheControl = HttpCaching.cacheControl(cache.productMaxAge());
+		this.listCacheControl = HttpCaching.cacheControl(cache.listMaxAge());
 	}
 
 	/**
 	 * Create a new Product
 	 * @param request CreateProductRequest payload
-	 * @return ResponseEntity with created ProductResponse
+	 * @return ResponseEntity with created ProductResponse and its version as the ETag
 	 */
 	@PostMapping
 	public ResponseEntity<ProductResponse> create(@Valid @RequestBody CreateProductRequest request) {
 		ProductResponse created = service.create(request);
-		return ResponseEntity.status(HttpStatus.CREATED).body(created);
+		return ResponseEntity.status(HttpStatus.CREATED).eTag(Long.toString(created.version())).body(created);
+	}
+
+	/**
+	 * Create Products in bulk
+	 * @param body JSON array or NDJSON stream of CreateProductRequest payloads
+	 * @return BulkResponse with the id of each created product or the errors of each rejected item
+	 * @throws IOException if the body cannot be read
+	 */
+	@PostMapping(value = "/_bulk", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+	public BulkResponse createAll(InputStream body) throws IOException {
+		return service.createAll(readItems(body, CreateProductRequest.class));
+	}
+
+	/**
+	 * Import new Products from an NDJSON upload of any size, parsed as it arrives
+	 * @param body NDJSON stream of CreateProductRequest payloads
+	 * @param contentEncoding gzip if the upload is compressed
+	 * @return ImportResponse with the counts, throughput and rejected lines
+	 * @throws IOException if the upload cannot be read
+	 */
+	@PostMapping(value = "/_import", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+	public ImportResponse importNdjson(
+			InputStream body,
+			@RequestHeader(value = HttpHeaders.CONTENT_ENCODING, required = false) String contentEncoding
+	) throws IOException {
+		return importRecords(ImportRecords.ndjson(mapper.readerFor(CreateProductRequest.class), decoded(body, contentEncoding)));
+	}
+
+	/**
+	 * Import new Products from a CSV upload of any size, parsed as it arrives
+	 * @param body CSV with a header row naming the CreateProductRequest fields, categories separated by semicolons
+	 * @param contentEncoding gzip if the upload is compressed
+	 * @return ImportResponse with the counts, throughput and rejected lines
+	 * @throws IOException if the upload cannot be read
+	 */
+	@PostMapping(value = "/_import", consumes = TEXT_CSV_VALUE)
+	public ImportResponse importCsv(
+			InputStream body,
+			@RequestHeader(value = HttpHeaders.CONTENT_ENCODING, required = false) String contentEncoding
+	) throws IOException {
+		return importRecords(ImportRecords.csv(decoded(body, contentEncoding)));
+	}
+
+	/**
+	 * Export every Product as NDJSON, one ProductResponse per line, as of the moment the request starts
+	 * @param acceptEncoding the body is gzip-compressed when it accepts gzip with a non-zero weight
+	 * @param request the request, whose async timeout is raised to {@link #EXPORT_TIMEOUT}
+	 * @return streaming NDJSON body
+	 */
+	@GetMapping(value = "/_export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+	public ResponseEntity<StreamingResponseBody> export(
+			@RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+			WebRequest request
+	) {
+		WebAsyncUtils.getAsyncManager(request).getAsyncWebRequest().setTimeout(EXPORT_TIMEOUT.toMillis());
+		boolean gzip = acceptsGzip(acceptEncoding);
+
+		ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+				.contentType(MediaType.APPLICATION_NDJSON)
+				.header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+		if (gzip) {
+			response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+		}
+		return response.body(out -> writeExport(gzip ? fastGzip(out) : out));
 	}
 
 	/**
 	 * Get Product by ID
 	 * @param id UUID of the product
-	 * @return ProductResponse
+	 * @param ifNoneMatch ETags of versions the client holds; 304 without a body if the product is still at one
+	 * @return ProductResponse JSON, written from the bytes cached for its version, with the version as the ETag
 	 */
 	@GetMapping("/{id}")
-	public ProductResponse getById(@PathVariable UUID id) {
-		return service.getById(id)
+	@ApiResponse(responseCode = "200", description = "The product",
+			content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE, schema = @Schema(implementation = ProductResponse.class)))
+	@ApiResponse(responseCode = "304", description = "The product is still at a version the client holds")
+	public ResponseEntity<byte[]> getById(
+			@PathVariable UUID id,
+			@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch
+	) {
+		ProductJson product = service.getJsonById(id)
 				.orElseThrow(() -> new ProductNotFoundException(id.toString()));
+
+		String eTag = Long.toString(product.version());
+		if (HttpCaching.isNotModified(ifNoneMatch, eTag)) {
+			return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).cacheControl(productCacheControl).build();
+		}
+		return ResponseEntity.ok()
+				.eTag(eTag)
+				.cacheControl(productCacheControl)
+				.contentType(MediaType.APPLICATION_JSON)
+				.body(product.json());
 	}
 
 	/**
@@ -55,52 +197,306 @@ public class ProductController {
 	 * @param category category filter
 	 * @param priceMin minimum price filter
 	 * @param priceMax maximum price filter
+	 * @param q full-text search over name and description
+	 * @param sort sort order, relevance by default when searching
+	 * @param page page number, ignored when a cursor is given
+	 * @param size page size
+	 * @param cursor cursor from the X-Next-Cursor header of the previous page
+	 * @param ifNoneMatch ETags of catalog versions the client holds the page at; 304 without running the
+	 *                    query if the catalog is still at one
+	 * @return JSON array of ProductResponse, joined from the JSON cached for each product, with the cursor
+	 *         of the next page in the X-Next-Cursor header and the catalog version as the ETag
+	 */
+	@GetMapping
+	@ApiResponse(responseCode = "200", description = "One page of products",
+			content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE, array = @ArraySchema(schema = @Schema(implementation = ProductResponse.class))))
+	@ApiResponse(responseCode = "304", description = "The catalog is still at a version the client holds")
+	public ResponseEntity<byte[]> list(
+			@RequestParam(required = false) String brand,
+			@RequestParam(required = false) String category,
+			@RequestParam(required = false) Double priceMin,
+			@RequestParam(required = false) Double priceMax,
+			@RequestParam(required = false) String q,
+			@RequestParam(required = false) String sort,
+			@RequestParam(defaultValue = "0") int page,
+			@RequestParam(defaultValue = "10") int size,
+			@RequestParam(required = false) String cursor,
+			@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch
+	) {
+		// A page depends only on its URL and the catalog, so the catalog version tags every page. It is read
+		// before the query: a write in between leaves the page newer than its tag, never older.
+		String eTag = Long.toString(service.catalogVersion());
+		if (HttpCaching.isNotModified(ifNoneMatch, eTag)) {
+			return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).cacheControl(listCacheControl).build();
+		}
+
+		ProductPage result = service.list(brand, category, priceMin, priceMax, q, sort, page, size, cursor);
+
+		ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+				.eTag(eTag)
+				.cacheControl(listCacheControl)
+				.contentType(MediaType.APPLICATION_JSON);
+		if (result.nextCursor() != null) {
+			response.header(NEXT_CURSOR_HEADER, result.nextCursor());
+		}
+		return response.body(service.toJson(result.items()));
+	}
+
+	/**
+	 * Explain how a listing query is planned and executed (debug)
+	 *
+	 * @param brand brand filter
+	 * @param category category filter
+	 * @param priceMin minimum price filter
+	 * @param priceMax maximum price filter
+	 * @param q full-text search over name and description
 	 * @param sort sort order
 	 * @param page page number
 	 * @param size page size
-	 * @return List of ProductResponse
+	 * @param cursor cursor from a previous page
+	 * @return QueryExplainResponse with the chosen plan and candidates scanned
 	 */
-	@GetMapping
-	public List<ProductResponse> list(
+	@GetMapping("/_explain")
+	public QueryExplainResponse explain(
 			@RequestParam(required = false) String brand,
 			@RequestParam(required = false) String category,
 			@RequestParam(required = false) Double priceMin,
 			@RequestParam(required = false) Double priceMax,
+			@RequestParam(required = false) String q,
 			@RequestParam(required = false) String sort,
 			@RequestParam(defaultValue = "0") int page,
+			@RequestParam(defaultValue = "10") int size,
+			@RequestParam(required = false) String cursor
+	) {
+		return service.explain(brand, category, priceMin, priceMax, q, sort, page, size, cursor);
+	}
+
+	/**
+	 * Count the products matching the listing filters per brand, category and price range
+	 *
+	 * @param brand brand filter
+	 * @param category category filter
+	 * @param priceMin minimum price filter
+	 * @param priceMax maximum price filter
+	 * @param priceBuckets strictly ascending prices splitting the price ranges
+	 * @return ProductFacetsResponse with the counts
+	 */
+	@GetMapping("/facets")
+	public ProductFacetsResponse facets(
+			@RequestParam(required = false) String brand,
+			@RequestParam(required = false) String category,
+			@RequestParam(required = false) Double priceMin,
+			@RequestParam(required = false) Double priceMax,
+			@RequestParam(defaultValue = DEFAULT_PRICE_BUCKETS) List<Double> priceBuckets
+	) {
+		return service.facets(brand, category, priceMin, priceMax, priceBuckets);
+	}
+
+	/**
+	 * Complete a typed prefix to product names and brands (type-ahead)
+	 *
+	 * @param prefix text typed so far, matched against the start of names and brands ignoring case
+	 * @param rank signal ranking the completions: inventory (default) or newest
+	 * @param size maximum number of completions, at most 50
+	 * @return List of SuggestionResponse, best first
+	 */
+	@GetMapping("/suggest")
+	public List<SuggestionResponse> suggest(
+			@RequestParam(required = false) String prefix,
+			@RequestParam(required = false) String rank,
 			@RequestParam(defaultValue = "10") int size
 	) {
-		return service.list(brand, category, priceMin, priceMax, sort, page, size);
+		return service.suggest(prefix, rank, size);
 	}
 
 	/**
 	 * Update Product by ID
 	 * @param id UUID of the product
 	 * @param request UpdateProductRequest payload
-	 * @return Updated ProductResponse
+	 * @param ifMatch ETags of the versions the update applies to; 412 if the product is at none of them
+	 * @return Updated ProductResponse, with its new version as the ETag
 	 */
 	@PutMapping("/{id}")
-	public ProductResponse update(
+	public ResponseEntity<ProductResponse> update(
 			@PathVariable UUID id,
-			@Valid @RequestBody UpdateProductRequest request
+			@Valid @RequestBody UpdateProductRequest request,
+			@RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch
 	) {
-		return service.update(id, request)
+		ProductResponse updated = service.update(id, request, HttpCaching.matchedVersions(ifMatch))
+				.orElseThrow(() -> HttpCaching.notFound(id, ifMatch));
+		return ResponseEntity.ok().eTag(Long.toString(updated.version())).body(updated);
+	}
+
+	/**
+	 * Reserve units of a Product's inventory, as checkout does: taken out atomically and never below zero
+	 * @param id UUID of the product
+	 * @param request InventoryRequest with the units to reserve
+	 * @return ProductResponse with the remaining inventory, with its new version as the ETag; 409 if
+	 *         fewer units are in stock
+	 */
+	@PostMapping("/{id}/inventory:reserve")
+	public ResponseEntity<ProductResponse> reserveInventory(@PathVariable UUID id, @Valid @RequestBody InventoryRequest request) {
+		ProductResponse reserved = service.reserveInventory(id, request.quantity())
+				.orElseThrow(() -> new ProductNotFoundException(id.toString()));
+		return ResponseEntity.ok().eTag(Long.toString(reserved.version())).body(reserved);
+	}
+
+	/**
+	 * Release reserved units back into a Product's inventory
+	 * @param id UUID of the product
+	 * @param request InventoryRequest with the units to release
+	 * @return ProductResponse with the inventory after the release, with its new version as the ETag
+	 */
+	@PostMapping("/{id}/inventory:release")
+	public ResponseEntity<ProductResponse> releaseInventory(@PathVariable UUID id, @Valid @RequestBody InventoryRequest request) {
+		ProductResponse released = service.releaseInventory(id, request.quantity())
 				.orElseThrow(() -> new ProductNotFoundException(id.toString()));
+		return ResponseEntity.ok().eTag(Long.toString(released.version())).body(released);
+	}
+
+	/**
+	 * Update Products in bulk
+	 * @param body JSON array or NDJSON stream of BulkUpdateRequest items
+	 * @return BulkResponse with the outcome of each item
+	 * @throws IOException if the body cannot be read
+	 */
+	@PutMapping(value = "/_bulk", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+	public BulkResponse updateAll(InputStream body) throws IOException {
+		return service.updateAll(readItems(body, BulkUpdateRequest.class));
 	}
 
 	/**
 	 * Delete Product by ID
 	 * @param id UUID of the product
+	 * @param ifMatch ETags of the versions the delete applies to; 412 if the product is at none of them
 	 * @return ResponseEntity with no content
 	 */
 	@DeleteMapping("/{id}")
-	public ResponseEntity<Void> delete(@PathVariable UUID id) {
-		boolean removed = service.delete(id);
+	public ResponseEntity<Void> delete(
+			@PathVariable UUID id,
+			@RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch
+	) {
+		boolean removed = service.delete(id, HttpCaching.matchedVersions(ifMatch));
 
 		if (!removed) {
-			throw new ProductNotFoundException(id.toString());
+			throw HttpCaching.notFound(id, ifMatch);
 		}
 
 		return ResponseEntity.noContent().build();
 	}
+
+	/**
+	 * Delete Products in bulk
+	 * @param body JSON array or NDJSON stream of product UUIDs
+	 * @return BulkResponse with the outcome of each id
+	 * @throws IOException if the body cannot be read
+	 */
+	@DeleteMapping(value = "/_bulk", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+	public BulkResponse deleteAll(InputStream body) throws IOException {
+		return service.deleteAll(readItems(body, UUID.class));
+	}
+
+	/**
+	 * Write products as they arrive with a streaming generator, which buffers one chunk of output;
+	 * a slow client blocks the write and with it the export. A failed write ends the export.
+	 */
+	private void writeExport(OutputStream out) throws IOException {
+		ObjectWriter writer = mapper.writerFor(ProductResponse.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+		try (JsonGenerator generator = mapper.getFactory().createGenerator(out)) {
+			// Values are separated by the newline written after each, not the default space
+			generator.setRootValueSeparator(null);
+			service.export(product -> {
+				try {
+					writer.writeValue(generator, product);
+					generator.writeRaw('\n');
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	// The service parses records through the iterator, which reports a failed read unchecked
+	private ImportResponse importRecords(Iterator<ImportRecord> records) throws IOException {
+		try {
+			return service.importProducts(records);
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	private static InputStream decoded(InputStream body, String contentEncoding) throws IOException {
+		return contentEncoding != null && contentEncoding.trim().equalsIgnoreCase("gzip")
+				? new GZIPInputStream(body, GZIP_BUFFER_BYTES)
+				: body;
+	}
+
+	/**
+	 * Whether an Accept-Encoding header admits gzip: a gzip (or x-gzip) coding decides it, otherwise a
+	 * "*" coding does, and either refuses it with a weight of zero or one that cannot be parsed
+	 */
+	static boolean acceptsGzip(String acceptEncoding) {
+		if (acceptEncoding == null) {
+			return false;
+		}
+		Boolean wildcard = null;
+		for (String coding : acceptEncoding.split(",")) {
+			String[] parts = coding.split(";");
+			String name = parts[0].trim();
+			if (name.equalsIgnoreCase("gzip") || name.equalsIgnoreCase("x-gzip")) {
+				return positiveWeight(parts);
+			}
+			if (name.equals("*")) {
+				wildcard = positiveWeight(parts);
+			}
+		}
+		return Boolean.TRUE.equals(wildcard);
+	}
+
+	private static boolean positiveWeight(String[] codingParts) {
+		for (int i = 1; i < codingParts.length; i++) {
+			String param = codingParts[i].trim();
+			if (param.length() > 1 && Character.toLowerCase(param.charAt(0)) == 'q' && param.charAt(1) == '=') {
+				try {
+					return Double.parseDouble(param.substring(2).trim()) > 0;
+				} catch (NumberFormatException e) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	// Deflate at its fastest level: several times the throughput of the default level for a slightly
+	// larger body, which keeps compression from becoming the export's bottleneck
+	private static OutputStream fastGzip(OutputStream out) throws IOException {
+		return new GZIPOutputStream(out, GZIP_BUFFER_BYTES) {
+			{
+				def.setLevel(Deflater.BEST_SPEED);
+			}
+		};
+	}
+
+	/**
+	 * Read the items of a bulk request body. Jackson reads a root-level array element by element,
+	 * and a sequence of root-level values (NDJSON) the same way, so both formats share one path.
+	 * Items are only bound here; each is validated by the service so that one invalid item does not
+	 * reject the others.
+	 */
+	private <T> List<T> readItems(InputStream body, Class<T> type) throws IOException {
+		List<T> items = new ArrayList<>();
+		try (MappingIterator<T> values = mapper.readerFor(type).readValues(body)) {
+			while (values.hasNextValue()) {
+				if (items.size() == MAX_BULK_ITEMS) {
+					throw new InvalidBulkRequestException("A bulk request holds at most " + MAX_BULK_ITEMS + " items");
+				}
+				items.add(values.nextValue());
+			}
+		} catch (JsonProcessingException e) {
+			throw new InvalidBulkRequestException("Item " + items.size() + " is not valid JSON for its type: " + e.getOriginalMessage());
+		}
+		return items;
+	}
 }
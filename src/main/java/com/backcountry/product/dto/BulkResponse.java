@@ -0,0 +1,26 @@
+package com.backcountry.product.dto;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Response DTO reporting the outcome of every item of a bulk request.
+ * @param succeeded items applied
+ * @param failed items rejected
+ * @param items one result per item, in request order
+ */
+public record BulkResponse(
+		int succeeded,
+		int failed,
+		List<ItemResult> items
+) {
+
+	/**
+	 * @param index position of the item in the request
+	 * @param id product the item applied to, null if it was rejected before one was known
+	 * @param status HTTP status the item would have had as a single request
+	 * @param errors invalid fields and their messages, null if the item was valid
+	 */
+	public record ItemResult(int index, UUID id, int status, Map<String, String> errors) {}
+}
@@ -0,0 +1,21 @@
+package com.backcountry.product.dto;
+
+import java.util.UUID;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotNull;
+
+/**
+ * One item of a bulk update: the product to replace and its new values.
+ * @param id
+ * @param product same payload as a single update
+ */
+public record BulkUpdateRequest(
+
+		@NotNull
+		UUID id,
+
+		@NotNull
+		@Valid
+		UpdateProductRequest product
+) {}
@@ -0,0 +1,15 @@
+package com.backcountry.product.dto;
+
+/**
+ * Response DTO reporting the size of the brand and category dictionary, read from the dictionary alone.
+ * @param brands distinct brands, ignoring case
+ * @param categories distinct categories
+ * @param categorySets distinct category lists some product still holds
+ * @param dictionaryBytes estimated heap held by the dictionary
+ */
+public record DictionaryMetricsResponse(
+		int brands,
+		int categories,
+		int categorySets,
+		long dictionaryBytes
+) {}
@@ -0,0 +1,29 @@
+package com.backcountry.product.dto;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Response DTO reporting the outcome of a catalog import.
+ * @param records records read from the upload
+ * @param imported products created
+ * @param rejected records that could not be parsed or were invalid
+ * @param elapsedMillis time taken by the import
+ * @param recordsPerSecond records read per second
+ * @param rejections the first rejected records, in upload order; the rest are only counted
+ */
+public record ImportResponse(
+		long records,
+		long imported,
+		long rejected,
+		long elapsedMillis,
+		long recordsPerSecond,
+		List<Rejection> rejections
+) {
+
+	/**
+	 * @param line line of the upload the record starts on
+	 * @param errors why the record could not be parsed, or its invalid fields and their messages
+	 */
+	public record Rejection(long line, Map<String, String> errors) {}
+}
@@ -0,0 +1,15 @@
+package com.backcountry.product.dto;
+
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+
+/**
+ * Request DTO for reserving or releasing inventory of a Product.
+ * @param quantity units to take out of or put back into stock
+ */
+public record InventoryRequest(
+
+		@NotNull
+		@Positive
+		Integer quantity
+) {}
@@ -0,0 +1,23 @@
+package com.backcountry.product.dto;
+
+/**
+ * Response DTO reporting the listing page cache.
+ * @param maximumSize most products kept across the pages, each page counting one more, zero if the cache is disabled
+ * @param size pages cached now
+ * @param weight products held by the pages cached now, plus one per page
+ * @param hits listings served from the cache
+ * @param misses listings read from the repository
+ * @param hitRate hits over all listings, 1 before the first listing
+ * @param evictions pages evicted to stay within the maximum size
+ * @param invalidations pages dropped because a write touched them
+ */
+public record ListCacheMetricsResponse(
+		long maximumSize,
+		long size,
+		long weight,
+		long hits,
+		long misses,
+		double hitRate,
+		long evictions,
+		long invalidations
+) {}
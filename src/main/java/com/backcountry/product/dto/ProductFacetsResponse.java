@@ -0,0 +1,32 @@
+package com.backcountry.product.dto;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * Response DTO with the number of products matching a listing's filters per facet value.
+ * @param total products matching every filter
+ * @param brands products per brand, most frequent first
+ * @param categories products per category, most frequent first
+ * @param prices products per price range, in price order
+ */
+public record ProductFacetsResponse(
+		long total,
+		List<FacetCount> brands,
+		List<FacetCount> categories,
+		List<PriceRangeCount> prices
+) {
+
+	/**
+	 * @param value brand or category
+	 * @param count matching products with that value
+	 */
+	public record FacetCount(String value, long count) {}
+
+	/**
+	 * @param min inclusive lower bound, null for the lowest range
+	 * @param max exclusive upper bound, null for the highest range
+	 * @param count matching products priced in the range
+	 */
+	public record PriceRangeCount(BigDecimal min, BigDecimal max, long count) {}
+}
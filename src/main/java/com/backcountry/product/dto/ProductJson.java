@@ -0,0 +1,11 @@
+package com.backcountry.product.dto;
+
+/**
+ * A product serialized as the UTF-8 JSON of its ProductResponse, ready to be written as a response body.
+ * @param version version of the product the JSON was written from, which its ETag carries
+ * @param json the JSON bytes; shared with later reads, so never modified
+ */
+public record ProductJson(
+		long version,
+		byte[] json
+) {}
@@ -0,0 +1,13 @@
+package com.backcountry.product.dto;
+
+import java.util.List;
+
+/**
+ * A page of products plus the cursor to resume after it.
+ * @param items products in the page
+ * @param nextCursor opaque cursor for the next page, null when the page was not full
+ */
+public record ProductPage(
+		List<ProductResponse> items,
+		String nextCursor
+) {}
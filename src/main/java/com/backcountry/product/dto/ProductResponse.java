@@ -16,6 +16,7 @@ import java.util.UUID;
  * @param categories
  * @param createdAt
  * @param updatedAt
+ * @param version version of this state of the product, which its ETag carries
  */
 public record ProductResponse(
 		UUID id,
@@ -26,5 +27,6 @@ public record ProductResponse(
 		int inventory,
 		List<String> categories,
 		Instant createdAt,
-		Instant updatedAt
+		Instant updatedAt,
+		long version
 ) {}
@@ -0,0 +1,23 @@
+package com.backcountry.product.dto;
+
+import java.util.List;
+
+/**
+ * Response DTO describing how a product listing query was executed.
+ * @param driver access path that produced the candidates
+ * @param intersected indexes intersected with the driver's candidates
+ * @param order how the ordering was produced (INDEX_ORDER or SORT)
+ * @param estimatedCandidates planner estimate of the candidates to read
+ * @param candidatesScanned candidates actually read
+ * @param matched candidates that satisfied every filter before the scan stopped
+ * @param returned products in the requested page
+ */
+public record QueryExplainResponse(
+		String driver,
+		List<String> intersected,
+		String order,
+		long estimatedCandidates,
+		long candidatesScanned,
+		long matched,
+		int returned
+) {}
@@ -0,0 +1,11 @@
+package com.backcountry.product.dto;
+
+/**
+ * Response DTO for one type-ahead completion.
+ * @param text the completed product name or brand
+ * @param field which product field it completes: name or brand
+ */
+public record SuggestionResponse(
+		String text,
+		String field
+) {}
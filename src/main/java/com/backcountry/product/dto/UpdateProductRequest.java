@@ -3,6 +3,7 @@ package com.backcountry.product.dto;
 import java.math.BigDecimal;
 import java.util.List;
 
+import jakarta.validation.constraints.Digits;
 import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
@@ -14,7 +15,7 @@ import jakarta.validation.constraints.Size;
  * @param name
  * @param description
  * @param brand
- * @param price
+ * @param price at most 4 decimal places, which every storage backend holds exactly
  * @param inventory
  * @param categories
  */
@@ -31,6 +32,7 @@ public record UpdateProductRequest(
 
 		@NotNull
 		@Positive
+		@Digits(integer = 14, fraction = 4)
 		BigDecimal price,
 
 		@Min(0)
@@ -5,6 +5,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.support.WebExchangeBindException;
 
 import java.time.Instant;
 import java.util.Map;
@@ -42,6 +43,32 @@ public class GlobalExceptionHandler {
 		return ResponseEntity.badRequest().body(error);
 	}
 
+	/**
+	 * Handle validation errors of the reactive controller, reported as the servlet ones are
+	 * @param ex WebExchangeBindException
+	 * @return ResponseEntity with ApiError
+	 */
+	@ExceptionHandler(WebExchangeBindException.class)
+	public ResponseEntity<ApiError> handleReactiveValidationErrors(WebExchangeBindException ex) {
+
+		Map<String, String> details = ex.getFieldErrors()
+				.stream()
+				.collect(Collectors.toMap(
+						err -> err.getField(),
+						err -> err.getDefaultMessage(),
+						(a, b) -> a
+				));
+
+		ApiError error = new ApiError(
+				Instant.now(),
+				HttpStatus.BAD_REQUEST.value(),
+				"Validation Error",
+				details
+		);
+
+		return ResponseEntity.badRequest().body(error);
+	}
+
 	/**
 	 * Handle ProductNotFoundException
 	 * @param ex ProductNotFoundException
@@ -60,6 +87,118 @@ public class GlobalExceptionHandler {
 		return ResponseEntity.status(HttpStatus.NOT_FOUND).body(error);
 	}
 
+	/**
+	 * Handle InvalidCursorException
+	 * @param ex InvalidCursorException
+	 * @return ResponseEntity with ApiError
+	 */
+	@ExceptionHandler(InvalidCursorException.class)
+	public ResponseEntity<ApiError> handleInvalidCursor(InvalidCursorException ex) {
+
+		ApiError error = new ApiError(
+				Instant.now(),
+				HttpStatus.BAD_REQUEST.value(),
+				"Invalid Cursor",
+				Map.of("message", ex.getMessage())
+		);
+
+		return ResponseEntity.badRequest().body(error);
+	}
+
+	/**
+	 * Handle InvalidPriceBucketsException
+	 * @param ex InvalidPriceBucketsException
+	 * @return ResponseEntity with ApiError
+	 */
+	@ExceptionHandler(InvalidPriceBucketsException.class)
+	public ResponseEntity<ApiError> handleInvalidPriceBuckets(InvalidPriceBucketsException ex) {
+
+		ApiError error = new ApiError(
+				Instant.now(),
+				HttpStatus.BAD_REQUEST.value(),
+				"Invalid Price Buckets",
+				Map.of("message", ex.getMessage())
+		);
+
+		return ResponseEntity.badRequest().body(error);
+	}
+
+	/**
+	 * Handle InvalidBulkRequestException
+	 * @param ex InvalidBulkRequestException
+	 * @return ResponseEntity with ApiError
+	 */
+	@ExceptionHandler(InvalidBulkRequestException.class)
+	public ResponseEntity<ApiError> handleInvalidBulkRequest(InvalidBulkRequestException ex) {
+
+		ApiError error = new ApiError(
+				Instant.now(),
+				HttpStatus.BAD_REQUEST.value(),
+				"Invalid Bulk Request",
+				Map.of("message", ex.getMessage())
+		);
+
+		return ResponseEntity.badRequest().body(error);
+	}
+
+	/**
+	 * Handle ProductVersionMismatchException, with the current version as the ETag if the product exists
+	 * @param ex ProductVersionMismatchException
+	 * @return ResponseEntity with ApiError
+	 */
+	@ExceptionHandler(ProductVersionMismatchException.class)
+	public ResponseEntity<ApiError> handleVersionMismatch(ProductVersionMismatchException ex) {
+
+		ApiError error = new ApiError(
+				Instant.now(),
+				HttpStatus.PRECONDITION_FAILED.value(),
+				"Precondition Failed",
+				Map.of("message", ex.getMessage())
+		);
+
+		ResponseEntity.BodyBuilder response = ResponseEntity.status(HttpStatus.PRECONDITION_FAILED);
+		if (!ex.isMissing()) {
+			response.eTag(Long.toString(ex.getCurrentVersion()));
+		}
+		return response.body(error);
+	}
+
+	/**
+	 * Handle InventoryConflictException
+	 * @param ex InventoryConflictException
+	 * @return ResponseEntity with ApiError
+	 */
+	@ExceptionHandler(InventoryConflictException.class)
+	public ResponseEntity<ApiError> handleInventoryConflict(InventoryConflictException ex) {
+
+		ApiError error = new ApiError(
+				Instant.now(),
+				HttpStatus.CONFLICT.value(),
+				"Inventory Conflict",
+				Map.of("message", ex.getMessage())
+		);
+
+		return ResponseEntity.status(HttpStatus.CONFLICT).body(error);
+	}
+
+	/**
+	 * Handle ImportCapacityException
+	 * @param ex ImportCapacityException
+	 * @return ResponseEntity with ApiError
+	 */
+	@ExceptionHandler(ImportCapacityException.class)
+	public ResponseEntity<ApiError> handleImportCapacity(ImportCapacityException ex) {
+
+		ApiError error = new ApiError(
+				Instant.now(),
+				HttpStatus.SERVICE_UNAVAILABLE.value(),
+				"Service Unavailable",
+				Map.of("message", ex.getMessage())
+		);
+
+		return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(error);
+	}
+
 	/**
 	 * Handle generic exceptions
 	 * @param ex Exception
@@ -0,0 +1,11 @@
+package com.backcountry.product.exception;
+
+/**
+ * Exception thrown when an import arrives while the most imports allowed at once are already running.
+ */
+
+public class ImportCapacityException extends RuntimeException {
+	public ImportCapacityException(String message) {
+		super(message);
+	}
+}
@@ -0,0 +1,11 @@
+package com.backcountry.product.exception;
+
+/**
+ * Exception thrown when a bulk request body is not a JSON array or NDJSON stream of items, or has too many items.
+ */
+
+public class InvalidBulkRequestException extends RuntimeException {
+	public InvalidBulkRequestException(String message) {
+		super(message);
+	}
+}
@@ -0,0 +1,11 @@
+package com.backcountry.product.exception;
+
+/**
+ * Exception thrown when a pagination cursor cannot be decoded or does not match the requested sort.
+ */
+
+public class InvalidCursorException extends RuntimeException {
+	public InvalidCursorException(String cursor) {
+		super("Invalid cursor " + cursor);
+	}
+}
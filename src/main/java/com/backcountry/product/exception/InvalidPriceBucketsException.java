@@ -0,0 +1,11 @@
+package com.backcountry.product.exception;
+
+/**
+ * Exception thrown when facet price bucket boundaries are not strictly ascending.
+ */
+
+public class InvalidPriceBucketsException extends RuntimeException {
+	public InvalidPriceBucketsException(String boundaries) {
+		super("Price bucket boundaries must be strictly ascending: " + boundaries);
+	}
+}
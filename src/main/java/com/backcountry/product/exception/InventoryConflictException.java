@@ -0,0 +1,12 @@
+package com.backcountry.product.exception;
+
+/**
+ * Exception thrown when an inventory reservation asks for more than is in stock, or a release would
+ * take the inventory past the largest count it can hold.
+ */
+
+public class InventoryConflictException extends RuntimeException {
+	public InventoryConflictException(String message) {
+		super(message);
+	}
+}
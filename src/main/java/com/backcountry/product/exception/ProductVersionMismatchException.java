@@ -0,0 +1,43 @@
+package com.backcountry.product.exception;
+
+/**
+ * Exception thrown when a conditional write finds the Product at another version than the one it expects,
+ * or finds no Product at all, which is at none of them.
+ */
+
+public class ProductVersionMismatchException extends RuntimeException {
+
+	private final long currentVersion;
+	private final boolean missing;
+
+	public ProductVersionMismatchException(String id, long currentVersion) {
+		super("Product with id " + id + " has changed and is now at version " + currentVersion);
+		this.currentVersion = currentVersion;
+		this.missing = false;
+	}
+
+	private ProductVersionMismatchException(String id) {
+		super("Product with id " + id + " does not exist");
+		this.currentVersion = 0;
+		this.missing = true;
+	}
+
+	/**
+	 * @param id id of the product the write expected
+	 * @return the exception of a conditional write to a product that does not exist
+	 */
+	public static ProductVersionMismatchException missing(String id) {
+		return new ProductVersionMismatchException(id);
+	}
+
+	public long getCurrentVersion() {
+		return currentVersion;
+	}
+
+	/**
+	 * @return whether the product does not exist, and so has no current version
+	 */
+	public boolean isMissing() {
+		return missing;
+	}
+}
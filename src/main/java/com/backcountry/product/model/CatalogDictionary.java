@@ -0,0 +1,176 @@
+package com.backcountry.product.model;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shared, thread-safe dictionary of the brands and categories in the catalog.
+ *
+ * Interning a product replaces its brand and categories with canonical instances, so the few hundred
+ * distinct values are stored once instead of once per product, and gives the product compact int
+ * codes: a brand code shared by every spelling of the brand ignoring case, and a {@link CategorySet}
+ * holding a bitset of category codes. Filters resolved to codes then match with an int comparison or
+ * a bit test. Codes are dense and never reassigned, so brands and categories stay once seen; a
+ * category set is dropped once no product holds it.
+ */
+@Component
+public class CatalogDictionary {
+
+	// Rough HotSpot sizes with compressed oops, for the footprint estimate
+	private static final int OBJECT_HEADER = 12;
+	private static final int ARRAY_HEADER = 16;
+	private static final int REFERENCE = 4;
+	private static final int STRING = 24;
+	private static final int MAP_ENTRY = 32 + REFERENCE;
+	private static final int TERM = 24;
+	private static final int BOXED_INT = 16;
+	private static final int WEAK_REFERENCE = 32;
+
+	// Exact spelling -> canonical spelling and the code of its case-folded form
+	private final Map<String, Term> brands = new ConcurrentHashMap<>();
+	private final Map<String, Integer> brandCodes = new ConcurrentHashMap<>();
+	private final AtomicInteger nextBrandCode = new AtomicInteger();
+
+	private final Map<String, Term> categories = new ConcurrentHashMap<>();
+	private final AtomicInteger nextCategoryCode = new AtomicInteger();
+
+	// Held weakly, so the set of a category list no product uses any more is collected. Keys share the
+	// canonical values of their set without referencing it, and equal any list with the same categories.
+	private final Cache<List<String>, CategorySet> categorySets = Caffeine.newBuilder().weakValues().build();
+
+	/**
+	 * Intern the brand and categories of a product.
+	 * @param product the product to intern
+	 * @return a copy of the product holding canonical values and codes, or the product itself if it
+	 *         is already interned
+	 */
+	public Product intern(Product product) {
+		if (product.getBrand() == null || product.getCategories() == null) {
+			return product;
+		}
+		Term brand = brand(product.getBrand());
+		CategorySet categorySet = categories(product.getCategories());
+		if (product.getBrand() == brand.value() && product.getCategories() == categorySet
+				&& product.getBrandCode() == brand.code()) {
+			return product;
+		}
+		return product.toBuilder()
+				.brand(brand.value())
+				.brandCode(brand.code())
+				.categories(categorySet)
+				.build();
+	}
+
+	/**
+	 * @param brand a brand, matched ignoring case
+	 * @return the code of the brand, or -1 if no interned product has ever used it
+	 */
+	public int brandCode(String brand) {
+		return brandCodes.getOrDefault(fold(brand), -1);
+	}
+
+	/**
+	 * @param category a category, matched exactly
+	 * @return the code of the category, or -1 if no interned product has ever used it
+	 */
+	public int categoryCode(String category) {
+		Term term = categories.get(category);
+		return term == null ? -1 : term.code();
+	}
+
+	/**
+	 * Size of the dictionary, read from the dictionary alone without walking the catalog, so it costs
+	 * the same whatever the number of products. Sizes are HotSpot estimates assuming compressed references.
+	 * @return dictionary sizes and the heap they hold
+	 */
+	public Footprint footprint() {
+		categorySets.cleanUp();
+		long dictionary = 0;
+		for (Term brand : brands.values()) {
+			dictionary += MAP_ENTRY + TERM + stringBytes(brand.value());
+		}
+		for (String folded : brandCodes.keySet()) {
+			dictionary += MAP_ENTRY + BOXED_INT + stringBytes(folded);
+		}
+		for (Term category : categories.values()) {
+			dictionary += MAP_ENTRY + TERM + stringBytes(category.value());
+		}
+		for (CategorySet set : categorySets.asMap().values()) {
+			// Entry with its weak reference and key list, then the set
+			dictionary += MAP_ENTRY + WEAK_REFERENCE + align(OBJECT_HEADER + REFERENCE)
+					+ align(OBJECT_HEADER + 2 * REFERENCE + Integer.BYTES)
+					+ align(ARRAY_HEADER + REFERENCE * set.size()) + align(ARRAY_HEADER + Long.BYTES * set.words());
+		}
+
+		return new Footprint(brandCodes.size(), categories.size(), categorySets.asMap().size(), dictionary);
+	}
+
+	private Term brand(String brand) {
+		Term term = brands.get(brand);
+		if (term != null) {
+			return term;
+		}
+		return brands.computeIfAbsent(brand, value -> new Term(value,
+				brandCodes.computeIfAbsent(fold(value), folded -> nextBrandCode.getAndIncrement())));
+	}
+
+	private CategorySet categories(List<String> values) {
+		CategorySet set = categorySets.getIfPresent(values);
+		if (set != null) {
+			return set;
+		}
+		String[] canonical = new String[values.size()];
+		int[] codes = new int[values.size()];
+		for (int i = 0; i < canonical.length; i++) {
+			Term term = categories.computeIfAbsent(values.get(i), value -> new Term(value, nextCategoryCode.getAndIncrement()));
+			canonical[i] = term.value();
+			codes[i] = term.code();
+		}
+		return categorySets.get(Arrays.asList(canonical), key -> new CategorySet(canonical, codes));
+	}
+
+	/**
+	 * Fold a brand the way {@link String#equalsIgnoreCase} compares it, one code point at a time, so two
+	 * brands fold alike exactly when they are equal ignoring case. Indexes and caches keyed by brand fold
+	 * with this, and agree with filters that match with {@code equalsIgnoreCase}.
+	 * @param brand the brand to fold
+	 * @return the folded brand
+	 */
+	public static String fold(String brand) {
+		StringBuilder folded = new StringBuilder(brand.length());
+		brand.codePoints().forEach(c -> folded.appendCodePoint(Character.toLowerCase(Character.toUpperCase(c))));
+		return folded.toString();
+	}
+
+	private static long stringBytes(String value) {
+		boolean latin1 = value.chars().allMatch(c -> c < 256);
+		return STRING + align(ARRAY_HEADER + (long) value.length() * (latin1 ? 1 : 2));
+	}
+
+	private static long align(long bytes) {
+		return (bytes + 7) & ~7L;
+	}
+
+	private record Term(String value, int code) {}
+
+	/**
+	 * Size of the dictionary.
+	 * @param brands distinct brands ignoring case
+	 * @param categories distinct categories
+	 * @param categorySets distinct category lists some product still holds
+	 * @param dictionaryBytes estimated heap held by the dictionary itself
+	 */
+	public record Footprint(
+			int brands,
+			int categories,
+			int categorySets,
+			long dictionaryBytes
+	) {}
+}
@@ -0,0 +1,58 @@
+package com.backcountry.product.model;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * Immutable category list interned by {@link CatalogDictionary}: products with the same categories
+ * share one instance, and membership can be tested on dictionary codes with a bitset instead of
+ * comparing strings. Equal to any list with the same categories in the same order.
+ */
+public final class CategorySet extends AbstractList<String> implements RandomAccess {
+
+	private final String[] values;
+	private final long[] codes;
+	private final int hash;
+
+	CategorySet(String[] values, int[] codes) {
+		this.values = values;
+		int max = 0;
+		for (int code : codes) {
+			max = Math.max(max, code);
+		}
+		this.codes = new long[(max >> 6) + 1];
+		for (int code : codes) {
+			this.codes[code >> 6] |= 1L << code;
+		}
+		this.hash = super.hashCode();
+	}
+
+	/**
+	 * @param code a category code from the dictionary that interned this set
+	 * @return true if the category with that code is in this set
+	 */
+	public boolean containsCode(int code) {
+		int word = code >> 6;
+		return code >= 0 && word < codes.length && (codes[word] & (1L << code)) != 0;
+	}
+
+	// Length of the bitset, for footprint estimates
+	int words() {
+		return codes.length;
+	}
+
+	@Override
+	public String get(int index) {
+		return values[index];
+	}
+
+	@Override
+	public int size() {
+		return values.length;
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+}
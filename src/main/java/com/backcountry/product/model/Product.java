@@ -1,7 +1,11 @@
 package com.backcountry.product.model;
 
+import lombok.AccessLevel;
 import lombok.Builder;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Setter;
+import lombok.ToString;
 
 import java.math.BigDecimal;
 import java.time.Instant;
@@ -19,10 +23,11 @@ import java.util.UUID;
  * @categories List<String>
  * @createdAt Instant
  * @updatedAt Instant
-
+ * @brandCode int, dictionary code of the brand ignoring case, -1 unless interned by {@link CatalogDictionary}
+ * @version long, catalog version the product was written at, stamped by the repository on every write; 0 until stored
  */
 @Data
-@Builder
+@Builder(toBuilder = true)
 public class Product {
 	private UUID id;
 	private String name;
@@ -33,4 +38,33 @@ public class Product {
 	private List<String> categories;
 	private Instant createdAt;
 	private Instant updatedAt;
+
+	// Derived from brand, so not part of equality
+	@EqualsAndHashCode.Exclude
+	@ToString.Exclude
+	@Setter(AccessLevel.NONE)
+	private int brandCode;
+
+	// Stamped on write, so not part of equality either
+	@EqualsAndHashCode.Exclude
+	private long version;
+
+	public void setBrand(String brand) {
+		this.brand = brand;
+		this.brandCode = -1;
+	}
+
+	/**
+	 * Builder that forgets the brand code whenever the brand is set, so a copy with another brand
+	 * never keeps a stale code.
+	 */
+	public static class ProductBuilder {
+		private int brandCode = -1;
+
+		public ProductBuilder brand(String brand) {
+			this.brand = brand;
+			this.brandCode = -1;
+			return this;
+		}
+	}
 }
@@ -0,0 +1,666 @@
+package com.backcountry.product.repository;
+
+import com.backcountry.product.model.CatalogDictionary;
+import com.backcountry.product.model.Product;
+import org.roaringbitmap.FastAggregation;
+import org.roaringbitmap.IntIterator;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Filter indexes of the in-memory repository as compressed bitmaps over dense product ordinals.
+ *
+ * Every product gets a small int ordinal, reused after deletion, and the index keeps one
+ * {@link RoaringBitmap} per brand (ignoring case), per category and per price bucket. Combining filters
+ * is then a bitmap AND, the size of a brand and category intersection is known before any product
+ * is read, and facet counts are cardinalities of intersections. Price buckets are about 6% wide, so a
+ * price range is the OR of the buckets it touches: a superset of the range that is re-checked
+ * against each product.
+ *
+ * Bitmaps are mutated under a write lock and read under the read lock. A query first reads only
+ * cardinalities for planning; the matching ordinals are intersected into a bitmap of its own only if
+ * the plan drives from them, and products are then resolved lock-free without blocking writers.
+ *
+ * Names and descriptions are indexed over the same ordinals by a {@link TextIndex}, so search terms
+ * and filters combine with the same bitmap intersections. Names and brands are also kept sorted by a
+ * {@link SuggestionIndex} for type-ahead completion.
+ */
+final class BitmapIndex {
+
+	// Buckets per power of two of the price; prices below 2^-MIN_EXPONENT share bucket 0
+	private static final int BUCKETS_PER_OCTAVE = 16;
+	private static final int MIN_EXPONENT = -10;
+
+	// Decimal places of the primitive price copy, and its value for prices it cannot hold exactly
+	private static final int PRICE_SCALE = 4;
+	private static final long INEXACT = Long.MIN_VALUE;
+
+	private static final RoaringBitmap EMPTY = new RoaringBitmap();
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	private final Map<UUID, Integer> ordinals = new HashMap<>();
+	private volatile AtomicReferenceArray<Product> products = new AtomicReferenceArray<>(1024);
+	// Price of each ordinal in 1/10,000 units, so facets check prices in one primitive array
+	private long[] priceUnits = new long[1024];
+	private int nextOrdinal;
+	private int[] freeOrdinals = new int[16];
+	private int freeCount;
+
+	private final Map<String, RoaringBitmap> brands = new HashMap<>();
+	// Case-folded brand -> spelling of the first product indexed under it, for facet labels
+	private final Map<String, String> brandNames = new HashMap<>();
+	private final Map<String, RoaringBitmap> categories = new HashMap<>();
+	private final NavigableMap<Integer, RoaringBitmap> priceBuckets = new TreeMap<>();
+	private final TextIndex text = new TextIndex();
+	private final SuggestionIndex suggestions = new SuggestionIndex(this::product);
+	// Incremented by every write, so a selection can tell whether what it computed is still current
+	private long version;
+
+	/**
+	 * Index a product, replacing the previous version if there is one, in a single step as seen by
+	 * readers.
+	 * @param previous the indexed version of the product, or null if it is new
+	 * @param product the version to index
+	 */
+	void put(Product previous, Product product) {
+		List<String> previousTokens = previous == null ? null : FullText.tokens(previous);
+		List<String> tokens = FullText.tokens(product);
+		lock.writeLock().lock();
+		try {
+			version++;
+			int ordinal = ordinals.computeIfAbsent(product.getId(), id -> allocate());
+			if (previous != null) {
+				unset(previous, previousTokens, ordinal);
+			}
+			products.set(ordinal, product);
+			text.add(ordinal, tokens);
+			suggestions.add(ordinal, product);
+			priceUnits[ordinal] = toUnits(product.getPrice());
+			String brand = brandKey(product.getBrand());
+			bitmap(brands, brand).add(ordinal);
+			brandNames.putIfAbsent(brand, product.getBrand());
+			for (String category : product.getCategories()) {
+				bitmap(categories, category).add(ordinal);
+			}
+			bitmap(priceBuckets, priceBucket(product.getPrice())).add(ordinal);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Unindex a deleted product and free its ordinal for reuse.
+	 */
+	void remove(Product product) {
+		List<String> tokens = FullText.tokens(product);
+		lock.writeLock().lock();
+		try {
+			Integer ordinal = ordinals.remove(product.getId());
+			if (ordinal == null) {
+				return;
+			}
+			version++;
+			unset(product, tokens, ordinal);
+			products.set(ordinal, null);
+			if (freeCount == freeOrdinals.length) {
+				freeOrdinals = Arrays.copyOf(freeOrdinals, freeCount * 2);
+			}
+			freeOrdinals[freeCount++] = ordinal;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	void clear() {
+		lock.writeLock().lock();
+		try {
+			version++;
+			ordinals.clear();
+			products = new AtomicReferenceArray<>(1024);
+			priceUnits = new long[1024];
+			nextOrdinal = 0;
+			freeCount = 0;
+			brands.clear();
+			brandNames.clear();
+			categories.clear();
+			priceBuckets.clear();
+			text.clear();
+			suggestions.clear();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Index a bulk-loaded catalog into an empty index, numbering products in the given order.
+	 */
+	void load(Collection<Product> catalog) {
+		lock.writeLock().lock();
+		try {
+			version++;
+			products = new AtomicReferenceArray<>(Math.max(1024, catalog.size()));
+			priceUnits = new long[products.length()];
+			for (Product product : catalog) {
+				int ordinal = allocate();
+				ordinals.put(product.getId(), ordinal);
+				products.set(ordinal, product);
+				priceUnits[ordinal] = toUnits(product.getPrice());
+				String brand = brandKey(product.getBrand());
+				bitmap(brands, brand).add(ordinal);
+				brandNames.putIfAbsent(brand, product.getBrand());
+				for (String category : product.getCategories()) {
+					bitmap(categories, category).add(ordinal);
+				}
+				bitmap(priceBuckets, priceBucket(product.getPrice())).add(ordinal);
+				text.add(ordinal, FullText.tokens(product));
+			}
+			brands.values().forEach(RoaringBitmap::runOptimize);
+			categories.values().forEach(RoaringBitmap::runOptimize);
+			priceBuckets.values().forEach(RoaringBitmap::runOptimize);
+			text.optimize();
+			suggestions.load(catalog.size());
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * @return the product last indexed under an ordinal, or null; may be stale by the time it is read
+	 */
+	Product product(int ordinal) {
+		AtomicReferenceArray<Product> current = products;
+		return ordinal < current.length() ? current.get(ordinal) : null;
+	}
+
+	/**
+	 * Every indexed product as of one state of the index. Products are immutable once indexed, so
+	 * copying their references is a consistent copy of the catalog; writers wait only for the copy.
+	 * @return the products in ordinal order
+	 */
+	List<Product> snapshot() {
+		lock.readLock().lock();
+		try {
+			Product[] copy = new Product[ordinals.size()];
+			int count = 0;
+			for (int ordinal = 0; ordinal < nextOrdinal; ordinal++) {
+				Product product = products.get(ordinal);
+				if (product != null) {
+					copy[count++] = product;
+				}
+			}
+			return Arrays.asList(copy);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Complete a prefix to product names and brands, from one state of the index.
+	 * @param prefix start of the names and brands to complete, matched ignoring case
+	 * @param rank signal to rank the completions by
+	 * @param limit maximum number of completions
+	 * @return the best completions, ties in alphabetical order
+	 */
+	List<Suggestion> suggest(String prefix, SuggestionRank rank, int limit) {
+		lock.readLock().lock();
+		try {
+			return suggestions.suggest(prefix, rank, limit);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Look up the filters of a query. Only cardinalities are read here; the matching ordinals are
+	 * computed by {@link Selection#matching} if the plan drives from them.
+	 * @param query the query whose brand, category and price range are looked up
+	 * @param size number of products in the repository
+	 * @return the cardinalities the planner chooses from
+	 */
+	Selection select(ProductQuery query, long size) {
+		lock.readLock().lock();
+		try {
+			long brandCount = query.brand() == null ? 0 : cardinality(brands.get(brandKey(query.brand())));
+			long categoryCount = query.category() == null ? 0 : cardinality(categories.get(query.category()));
+			long priceCount = 0;
+			if (query.hasPriceRange()) {
+				for (RoaringBitmap bucket : priceBuckets(query.priceMin(), query.priceMax())) {
+					priceCount += bucket.getLongCardinality();
+				}
+			}
+			return new Selection(query, size, brandCount, categoryCount, priceCount);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Count the products matching the filters of a query per brand, category and price range, all
+	 * from one state of the index. Price buckets that straddle a range boundary or a bound of the
+	 * query are resolved by checking the price of each of their products; every other count is a
+	 * bitmap cardinality.
+	 * @param query the filters to apply
+	 * @param priceBoundaries ascending prices splitting the price ranges
+	 * @return the counts, with brands labelled by the first spelling indexed
+	 */
+	FacetCounts facets(ProductQuery query, List<BigDecimal> priceBoundaries) {
+		lock.readLock().lock();
+		try {
+			RoaringBitmap matching = exactMatching(query);
+			long total = matching == null ? ordinals.size() : matching.getLongCardinality();
+
+			Map<String, Long> brandCounts = new HashMap<>();
+			brands.forEach((brand, members) -> {
+				long count = count(members, matching);
+				if (count > 0) {
+					brandCounts.put(brandNames.get(brand), count);
+				}
+			});
+			Map<String, Long> categoryCounts = new HashMap<>();
+			categories.forEach((category, members) -> {
+				long count = count(members, matching);
+				if (count > 0) {
+					categoryCounts.put(category, count);
+				}
+			});
+
+			long[] priceCounts = new long[priceBoundaries.size() + 1];
+			int[] boundaryBuckets = priceBoundaries.stream().mapToInt(BitmapIndex::priceBucket).toArray();
+			long[] boundaryUnits = priceBoundaries.stream().mapToLong(BitmapIndex::ceilUnits).toArray();
+			for (Map.Entry<Integer, RoaringBitmap> entry : priceBucketsIn(query.priceMin(), query.priceMax()).entrySet()) {
+				int bucket = entry.getKey();
+				int position = Arrays.binarySearch(boundaryBuckets, bucket);
+				if (position < 0) {
+					// Every price in the bucket is on the same side of every boundary
+					priceCounts[-position - 1] += count(entry.getValue(), matching);
+					continue;
+				}
+				while (position > 0 && boundaryBuckets[position - 1] == bucket) {
+					position--;
+				}
+				RoaringBitmap members = matching == null ? entry.getValue() : RoaringBitmap.and(entry.getValue(), matching);
+				IntIterator it = members.getIntIterator();
+				while (it.hasNext()) {
+					int ordinal = it.next();
+					int range = position;
+					while (range < boundaryUnits.length && atLeast(ordinal, priceBoundaries.get(range), boundaryUnits[range])) {
+						range++;
+					}
+					priceCounts[range]++;
+				}
+			}
+
+			return new FacetCounts(total, brandCounts, categoryCounts, Arrays.stream(priceCounts).boxed().toList());
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Filter cardinalities of one query, and the ordinals matching all its filters on demand.
+	 * Counts are read when the query starts; concurrent writes may change the bitmaps afterwards,
+	 * which is harmless since every candidate is re-checked against the stored product.
+	 *
+	 * Search terms are not re-checked that way, since that would mean tokenizing every candidate.
+	 * Their matches are computed together with the filters, exactly, and recomputed if the index
+	 * changed before the products are read.
+	 */
+	final class Selection implements QueryPlanner.Statistics {
+		private final ProductQuery query;
+		private final long size;
+		private final long brandCount;
+		private final long categoryCount;
+		private final long priceRangeCount;
+		private long matchCount = -1;
+		private RoaringBitmap textMatching;
+		private long textVersion;
+
+		private Selection(ProductQuery query, long size, long brandCount, long categoryCount, long priceRangeCount) {
+			this.query = query;
+			this.size = size;
+			this.brandCount = brandCount;
+			this.categoryCount = categoryCount;
+			this.priceRangeCount = priceRangeCount;
+		}
+
+		@Override
+		public long size() {
+			return size;
+		}
+
+		@Override
+		public long brandCount() {
+			return brandCount;
+		}
+
+		@Override
+		public long categoryCount() {
+			return categoryCount;
+		}
+
+		@Override
+		public long priceRangeCount() {
+			return priceRangeCount;
+		}
+
+		/**
+		 * Exact for brand and category, which are intersected without materializing the result. A price
+		 * range is assumed independent of them: its buckets are only intersected by {@link #matching}.
+		 * Exact for search terms, whose matches are needed anyway.
+		 */
+		@Override
+		public long matchCount() {
+			if (matchCount >= 0) {
+				return matchCount;
+			}
+			long count;
+			if (query.terms() != null) {
+				lock.readLock().lock();
+				try {
+					count = textMatching().getLongCardinality();
+				} finally {
+					lock.readLock().unlock();
+				}
+			} else if (query.brand() != null && query.category() != null) {
+				lock.readLock().lock();
+				try {
+					RoaringBitmap brand = brands.get(brandKey(query.brand()));
+					RoaringBitmap category = categories.get(query.category());
+					count = brand == null || category == null ? 0 : RoaringBitmap.andCardinality(brand, category);
+				} finally {
+					lock.readLock().unlock();
+				}
+			} else if (query.brand() != null) {
+				count = brandCount;
+			} else if (query.category() != null) {
+				count = categoryCount;
+			} else {
+				count = query.hasPriceRange() ? priceRangeCount : size;
+			}
+			if (query.terms() == null && query.hasPriceRange() && (query.brand() != null || query.category() != null)) {
+				count = (long) Math.ceil((double) count * priceRangeCount / Math.max(1, size));
+			}
+			matchCount = count;
+			return count;
+		}
+
+		/**
+		 * Ordinals of the products in every filter's bitmap, in a bitmap owned by the caller. Prices
+		 * are matched to the bucket, so products just outside the range may be included.
+		 * @throws IllegalStateException if the query has no filters
+		 */
+		RoaringBitmap matching() {
+			lock.readLock().lock();
+			try {
+				RoaringBitmap matching = BitmapIndex.this.matching(query);
+				if (matching == null) {
+					throw new IllegalStateException("Query has no filters");
+				}
+				return matching;
+			} finally {
+				lock.readLock().unlock();
+			}
+		}
+
+		/**
+		 * Products matching the search terms and every filter, prices checked exactly.
+		 * @return the products in ordinal order
+		 */
+		List<Product> textMatches() {
+			lock.readLock().lock();
+			try {
+				RoaringBitmap matching = textMatching();
+				List<Product> matches = new ArrayList<>(matching.getCardinality());
+				matching.forEach((int ordinal) -> matches.add(products.get(ordinal)));
+				return matches;
+			} finally {
+				lock.readLock().unlock();
+			}
+		}
+
+		/**
+		 * The best products matching the search terms and every filter by BM25 score, with document
+		 * frequencies and lengths taken over the whole catalog.
+		 * @param window number of products wanted
+		 * @return the products, best first; equal scores in ordinal order
+		 */
+		List<Product> ranked(long window) {
+			lock.readLock().lock();
+			try {
+				int[] best = text.rank(query.terms(), textMatching(), (int) Math.min(window, Integer.MAX_VALUE));
+				List<Product> ranked = new ArrayList<>(best.length);
+				for (int ordinal : best) {
+					ranked.add(products.get(ordinal));
+				}
+				return ranked;
+			} finally {
+				lock.readLock().unlock();
+			}
+		}
+
+		// Must hold the read lock
+		private RoaringBitmap textMatching() {
+			if (textMatching == null || textVersion != version) {
+				textMatching = exact(BitmapIndex.this.matching(query, text.matching(query.terms())), query);
+				textVersion = version;
+			}
+			return textMatching;
+		}
+	}
+
+	// Ordinals in every filter's bitmap, with prices matched to the bucket; null if there are no filters
+	private RoaringBitmap matching(ProductQuery query) {
+		return matching(query, null);
+	}
+
+	// As matching(query), also intersected with a bitmap owned by the caller if one is given
+	private RoaringBitmap matching(ProductQuery query, RoaringBitmap owned) {
+		RoaringBitmap brand = query.brand() == null ? null : brands.getOrDefault(brandKey(query.brand()), EMPTY);
+		RoaringBitmap category = query.category() == null ? null : categories.getOrDefault(query.category(), EMPTY);
+
+		List<RoaringBitmap> required = new ArrayList<>(3);
+		for (RoaringBitmap bitmap : Arrays.asList(owned, brand, category)) {
+			if (bitmap != null) {
+				required.add(bitmap);
+			}
+		}
+		RoaringBitmap core;
+		if (required.size() > 1) {
+			core = FastAggregation.and(required.iterator());
+		} else if (required.size() == 1) {
+			core = required.get(0);
+		} else if (query.hasPriceRange()) {
+			return FastAggregation.or(priceBuckets(query.priceMin(), query.priceMax()).iterator());
+		} else {
+			return null;
+		}
+
+		if (!query.hasPriceRange()) {
+			return core == brand || core == category ? core.clone() : core;
+		}
+		// Buckets are disjoint, so intersecting each is cheaper than building the union first
+		List<RoaringBitmap> parts = new ArrayList<>();
+		for (RoaringBitmap bucket : priceBuckets(query.priceMin(), query.priceMax())) {
+			parts.add(RoaringBitmap.and(core, bucket));
+		}
+		return FastAggregation.or(parts.iterator());
+	}
+
+	// As matching(query), without the products of the bound buckets whose price is outside the query's range
+	private RoaringBitmap exactMatching(ProductQuery query) {
+		return exact(matching(query), query);
+	}
+
+	// Remove the products of the bound buckets whose price is outside the query's range
+	private RoaringBitmap exact(RoaringBitmap matching, ProductQuery query) {
+		if (matching == null || !query.hasPriceRange()) {
+			return matching;
+		}
+		BigDecimal min = query.priceMin();
+		BigDecimal max = query.priceMax();
+		long minUnits = min == null ? Long.MIN_VALUE : ceilUnits(min);
+		long maxUnits = max == null ? Long.MAX_VALUE : floorUnits(max);
+		for (BigDecimal bound : Arrays.asList(min, max)) {
+			RoaringBitmap bucket = bound == null ? null : priceBuckets.get(priceBucket(bound));
+			if (bucket == null) {
+				continue;
+			}
+			IntIterator it = RoaringBitmap.and(matching, bucket).getIntIterator();
+			while (it.hasNext()) {
+				int ordinal = it.next();
+				if ((min != null && !atLeast(ordinal, min, minUnits)) || (max != null && !atMost(ordinal, max, maxUnits))) {
+					matching.remove(ordinal);
+				}
+			}
+		}
+		return matching;
+	}
+
+	private Collection<RoaringBitmap> priceBuckets(BigDecimal min, BigDecimal max) {
+		return priceBucketsIn(min, max).values();
+	}
+
+	private NavigableMap<Integer, RoaringBitmap> priceBucketsIn(BigDecimal min, BigDecimal max) {
+		int low = min == null ? Integer.MIN_VALUE : priceBucket(min);
+		int high = max == null ? Integer.MAX_VALUE : priceBucket(max);
+		if (low > high) {
+			return Collections.emptyNavigableMap();
+		}
+		return priceBuckets.subMap(low, true, high, true);
+	}
+
+	// Whether the price of an ordinal is at least a bound whose ceilUnits are given
+	private boolean atLeast(int ordinal, BigDecimal bound, long boundUnits) {
+		long units = priceUnits[ordinal];
+		return units != INEXACT ? units >= boundUnits : products.get(ordinal).getPrice().compareTo(bound) >= 0;
+	}
+
+	// Whether the price of an ordinal is at most a bound whose floorUnits are given
+	private boolean atMost(int ordinal, BigDecimal bound, long boundUnits) {
+		long units = priceUnits[ordinal];
+		return units != INEXACT ? units <= boundUnits : products.get(ordinal).getPrice().compareTo(bound) <= 0;
+	}
+
+	private static long count(RoaringBitmap ordinals, RoaringBitmap matching) {
+		return matching == null ? ordinals.getLongCardinality() : RoaringBitmap.andCardinality(ordinals, matching);
+	}
+
+	/**
+	 * A price in 1/10,000 units, or {@link #INEXACT} if it has more decimals or is out of range.
+	 * Exact unit counts lie strictly between Long.MIN_VALUE and Long.MAX_VALUE, so bounds clamped to
+	 * either end still compare correctly.
+	 */
+	private static long toUnits(BigDecimal price) {
+		BigDecimal units = price.movePointRight(PRICE_SCALE);
+		if (units.signum() != 0 && units.stripTrailingZeros().scale() > 0) {
+			return INEXACT;
+		}
+		long value = clamp(units);
+		return value == Long.MIN_VALUE || value == Long.MAX_VALUE ? INEXACT : value;
+	}
+
+	// Smallest unit count whose price is at least the bound
+	private static long ceilUnits(BigDecimal bound) {
+		return clamp(bound.movePointRight(PRICE_SCALE).setScale(0, RoundingMode.CEILING));
+	}
+
+	// Largest unit count whose price is at most the bound
+	private static long floorUnits(BigDecimal bound) {
+		return clamp(bound.movePointRight(PRICE_SCALE).setScale(0, RoundingMode.FLOOR));
+	}
+
+	private static long clamp(BigDecimal units) {
+		if (units.compareTo(BigDecimal.valueOf(Long.MAX_VALUE)) > 0) {
+			return Long.MAX_VALUE;
+		}
+		if (units.compareTo(BigDecimal.valueOf(Long.MIN_VALUE)) < 0) {
+			return Long.MIN_VALUE;
+		}
+		return units.longValue();
+	}
+
+	private static long cardinality(RoaringBitmap bitmap) {
+		return bitmap == null ? 0 : bitmap.getLongCardinality();
+	}
+
+	private int allocate() {
+		if (freeCount > 0) {
+			return freeOrdinals[--freeCount];
+		}
+		int ordinal = nextOrdinal++;
+		if (ordinal == products.length()) {
+			AtomicReferenceArray<Product> grown = new AtomicReferenceArray<>(ordinal * 2);
+			for (int i = 0; i < ordinal; i++) {
+				grown.set(i, products.get(i));
+			}
+			products = grown;
+			priceUnits = Arrays.copyOf(priceUnits, ordinal * 2);
+		}
+		return ordinal;
+	}
+
+	private static <K> RoaringBitmap bitmap(Map<K, RoaringBitmap> index, K key) {
+		return index.computeIfAbsent(key, k -> new RoaringBitmap());
+	}
+
+	private void unset(Product product, List<String> tokens, int ordinal) {
+		String brand = brandKey(product.getBrand());
+		if (clear(brands, brand, ordinal)) {
+			brandNames.remove(brand);
+		}
+		for (String category : product.getCategories()) {
+			clear(categories, category, ordinal);
+		}
+		clear(priceBuckets, priceBucket(product.getPrice()), ordinal);
+		text.remove(ordinal, tokens);
+		suggestions.remove(ordinal, product);
+	}
+
+	// Returns true if the bitmap became empty and was dropped
+	private static <K> boolean clear(Map<K, RoaringBitmap> index, K key, int ordinal) {
+		RoaringBitmap bitmap = index.get(key);
+		if (bitmap == null) {
+			return false;
+		}
+		bitmap.remove(ordinal);
+		if (bitmap.isEmpty()) {
+			index.remove(key);
+			return true;
+		}
+		return false;
+	}
+
+	private static String brandKey(String brand) {
+		return CatalogDictionary.fold(brand);
+	}
+
+	/**
+	 * Logarithmic price bucket: non-decreasing in the price, so every price within a range falls in a
+	 * bucket between the buckets of its bounds.
+	 */
+	static int priceBucket(BigDecimal price) {
+		double value = price.doubleValue();
+		if (!(value >= Math.scalb(1.0, MIN_EXPONENT))) {
+			return 0;
+		}
+		int exponent = Math.getExponent(value);
+		int fraction = (int) ((value / Math.scalb(1.0, exponent) - 1) * BUCKETS_PER_OCTAVE);
+		return (exponent - MIN_EXPONENT + 1) * BUCKETS_PER_OCTAVE + fraction;
+	}
+}
@@ -0,0 +1,19 @@
+package com.backcountry.product.repository;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Number of products matching a query's filters per facet value.
+ * @param total products matching every filter
+ * @param brands matching products per brand, ignoring case; keyed by one spelling of the brand
+ * @param categories matching products per category
+ * @param priceRanges matching products per price range: below the first boundary, from each boundary
+ *                    (inclusive) to the next, and from the last boundary up
+ */
+public record FacetCounts(
+		long total,
+		Map<String, Long> brands,
+		Map<String, Long> categories,
+		List<Long> priceRanges
+) {}
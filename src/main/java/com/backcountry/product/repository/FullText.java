@@ -0,0 +1,98 @@
+package com.backcountry.product.repository;
+
+import com.backcountry.product.model.Product;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Tokenization and BM25 scoring shared by the repositories' full-text search.
+ *
+ * Product names and descriptions are split on anything that is not a letter or a digit and folded
+ * to lower case. A search term matches every token it is a prefix of, and all the tokens a term
+ * matches in a product count as occurrences of that term: its document frequency is the number of
+ * products holding any of them.
+ */
+public final class FullText {
+
+	// Usual BM25 parameters: term frequency saturation and document length normalization
+	static final double K1 = 1.2;
+	static final double B = 0.75;
+
+	private FullText() {
+	}
+
+	/**
+	 * @param text free text, may be null
+	 * @return the lower-cased tokens of the text, in order and with repetitions
+	 */
+	public static List<String> tokens(String text) {
+		List<String> tokens = new ArrayList<>();
+		if (text == null) {
+			return tokens;
+		}
+		int start = -1;
+		for (int i = 0; i <= text.length(); i++) {
+			boolean inToken = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+			if (inToken && start < 0) {
+				start = i;
+			} else if (!inToken && start >= 0) {
+				tokens.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+				start = -1;
+			}
+		}
+		return tokens;
+	}
+
+	/**
+	 * @param product the product to index
+	 * @return the tokens of its name followed by those of its description
+	 */
+	public static List<String> tokens(Product product) {
+		List<String> tokens = tokens(product.getName());
+		tokens.addAll(tokens(product.getDescription()));
+		return tokens;
+	}
+
+	/**
+	 * @param query a search query, may be null
+	 * @return its distinct tokens in order, or null if it has none
+	 */
+	public static List<String> terms(String query) {
+		Set<String> terms = new LinkedHashSet<>(tokens(query));
+		return terms.isEmpty() ? null : List.copyOf(terms);
+	}
+
+	/**
+	 * @param term a search term
+	 * @param token a token of a product
+	 * @return true if the term matches the token
+	 */
+	public static boolean matches(String term, String token) {
+		return token.startsWith(term);
+	}
+
+	/**
+	 * @param documents number of products in the catalog
+	 * @param frequency number of products matching the term
+	 * @return the BM25 inverse document frequency, always positive
+	 */
+	public static double idf(long documents, long frequency) {
+		return Math.log(1 + (documents - frequency + 0.5) / (frequency + 0.5));
+	}
+
+	/**
+	 * @param idf inverse document frequency of the term
+	 * @param frequency occurrences of the term in the product
+	 * @param length number of tokens of the product
+	 * @param averageLength average number of tokens per product
+	 * @return the BM25 contribution of the term to the product's score
+	 */
+	public static double score(double idf, int frequency, int length, double averageLength) {
+		double norm = K1 * (1 - B + B * length / averageLength);
+		return idf * frequency * (K1 + 1) / (frequency + norm);
+	}
+}
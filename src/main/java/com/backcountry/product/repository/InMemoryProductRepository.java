@@ -1,24 +1,160 @@
 package com.backcountry.product.repository;
 
 import com.backcountry.product.model.Product;
+import org.roaringbitmap.IntIterator;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Repository;
 
+import java.math.BigDecimal;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableSet;
 import java.util.Optional;
+import java.util.Set;
+import java.util.SortedMap;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 @Repository
+@ConditionalOnProperty(prefix = "backcountry.storage", name = "backend", havingValue = "heap", matchIfMissing = true)
 public class InMemoryProductRepository implements ProductRepository {
 
+	private static final UUID MIN_ID = new UUID(Long.MIN_VALUE, Long.MIN_VALUE);
+	private static final UUID MAX_ID = new UUID(Long.MAX_VALUE, Long.MAX_VALUE);
+
+	// How long, and how many, before-images of replaced products are kept for reads of older versions
+	static final long HISTORY_RETENTION_NANOS = TimeUnit.MINUTES.toNanos(10);
+	static final int MAX_HISTORY = 1_000_000;
+
 	// Thread-safe storage
 	private final Map<UUID, Product> store = new ConcurrentHashMap<>();
 
+	// Filter indexes, updated while holding the store entry for the product
+	private final BitmapIndex bitmaps = new BitmapIndex();
+
+	// One ordered view per sort, so a sorted listing is a range walk; the price view doubles as the price index.
+	// Entries are the stored instances, which are never mutated once saved. Maps rather than sets so that
+	// restore() can build them from sorted input in linear time.
+	private final Map<ProductSort, ConcurrentSkipListMap<Product, Boolean>> orderedViews = new EnumMap<>(ProductSort.class);
+
+	private final QueryPlanner planner = new QueryPlanner();
+
+	// Writes are serialized: each stamps the product it stores with the next version, which is published
+	// once every index holds it, so a reader pinning the current version never sees half of a write up to it.
+	// Versions start at the wall clock in microseconds, so those issued before a restart are older than any after.
+	private final Lock writes = new ReentrantLock();
+	private volatile long version = TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis());
+
+	// Before-images of updated and deleted products by the version that replaced them, which pinned reads
+	// merge back in. Versions older than the horizon have lost some of theirs and read the current catalog.
+	private final ConcurrentSkipListMap<Long, Change> history = new ConcurrentSkipListMap<>();
+	private int historySize;
+	private volatile long horizon = version;
+
+	// The same before-images by product, and each changed product by its latest change, so a pinned read
+	// visits every product changed since its version once, however often it changed
+	private final Map<UUID, ConcurrentSkipListMap<Long, Product>> historyById = new ConcurrentHashMap<>();
+	private final ConcurrentSkipListMap<Long, UUID> lastChanges = new ConcurrentSkipListMap<>();
+
+	public InMemoryProductRepository() {
+		for (ProductSort sort : ProductSort.values()) {
+			orderedViews.put(sort, new ConcurrentSkipListMap<>(sort.comparator()));
+		}
+	}
+
+	/**
+	 * Stores a copy of the product stamped with the next catalog version, which is returned.
+	 */
 	@Override
 	public Product save(Product product) {
-		store.put(product.getId(), product);
-		return product;
+		writes.lock();
+		try {
+			return write(product);
+		} finally {
+			writes.unlock();
+		}
+	}
+
+	/**
+	 * Saved one product, and one version, at a time under a single hold of the write lock: the per-product
+	 * index work dominates any per-call overhead a batch could share.
+	 */
+	@Override
+	public List<Product> saveAll(List<Product> products) {
+		List<Product> saved = new ArrayList<>(products.size());
+		writes.lock();
+		try {
+			for (Product product : products) {
+				saved.add(write(product));
+			}
+		} finally {
+			writes.unlock();
+		}
+		return saved;
+	}
+
+	@Override
+	public Optional<Product> compareAndSave(Product product, long expectedVersion) {
+		writes.lock();
+		try {
+			Product current = store.get(product.getId());
+			if (current == null || current.getVersion() != expectedVersion) {
+				return Optional.empty();
+			}
+			return Optional.of(write(product));
+		} finally {
+			writes.unlock();
+		}
+	}
+
+	@Override
+	public List<Optional<Product>> compareAndSaveAll(List<Product> products, List<Long> expectedVersions) {
+		List<Optional<Product>> saved = new ArrayList<>(products.size());
+		writes.lock();
+		try {
+			for (int i = 0; i < products.size(); i++) {
+				Product current = store.get(products.get(i).getId());
+				saved.add(current == null || current.getVersion() != expectedVersions.get(i)
+						? Optional.empty()
+						: Optional.of(write(products.get(i))));
+			}
+		} finally {
+			writes.unlock();
+		}
+		return saved;
+	}
+
+	@Override
+	public boolean compareAndDelete(UUID id, long expectedVersion) {
+		writes.lock();
+		try {
+			Product current = store.get(id);
+			return current != null && current.getVersion() == expectedVersion && delete(id);
+		} finally {
+			writes.unlock();
+		}
+	}
+
+	@Override
+	public long version() {
+		return version;
 	}
 
 	@Override
@@ -26,18 +162,602 @@ public class InMemoryProductRepository implements ProductRepository {
 		return Optional.ofNullable(store.get(id));
 	}
 
+	/**
+	 * The product references of one state of the catalog, copied from the filter index in one step
+	 * rather than from the live store, which would mix states while writes continue.
+	 */
 	@Override
 	public List<Product> findAll() {
-		return List.copyOf(store.values());
+		return bitmaps.snapshot();
+	}
+
+	/**
+	 * Reads a copy of the product references taken from the filter index in one step, about 4 bytes
+	 * per product, so the export is of one state of the catalog.
+	 */
+	@Override
+	public void export(Consumer<Product> sink) {
+		bitmaps.snapshot().forEach(sink);
+	}
+
+	@Override
+	public List<Product> find(ProductQuery query) {
+		return execute(query).products();
+	}
+
+	@Override
+	public QueryExplanation explain(ProductQuery query) {
+		return execute(query).explanation();
+	}
+
+	/**
+	 * Counted on the filter bitmaps, which change in a single step per write, so the counts are
+	 * those of one state of the catalog even while writes continue.
+	 */
+	@Override
+	public FacetCounts facets(ProductQuery query, List<BigDecimal> priceBoundaries) {
+		return bitmaps.facets(query, priceBoundaries);
+	}
+
+	@Override
+	public List<Suggestion> suggest(String prefix, SuggestionRank rank, int limit) {
+		return bitmaps.suggest(prefix, rank, limit);
 	}
 
 	@Override
 	public void deleteById(UUID id) {
-		store.remove(id);
+		writes.lock();
+		try {
+			delete(id);
+		} finally {
+			writes.unlock();
+		}
+	}
+
+	@Override
+	public List<UUID> deleteAllById(Collection<UUID> ids) {
+		List<UUID> deleted = new ArrayList<>();
+		writes.lock();
+		try {
+			for (UUID id : ids) {
+				if (delete(id)) {
+					deleted.add(id);
+				}
+			}
+		} finally {
+			writes.unlock();
+		}
+		return deleted;
 	}
 
+	/**
+	 * Also forgets the history, so reads pinned to an earlier version read the current, empty catalog.
+	 */
 	@Override
 	public void clear() {
-		store.clear();
+		writes.lock();
+		try {
+			store.clear();
+			bitmaps.clear();
+			orderedViews.values().forEach(Map::clear);
+			forgetHistory(version + 1);
+		} finally {
+			writes.unlock();
+		}
+	}
+
+	/**
+	 * Products in the order of a sort, read from its ordered view without sorting.
+	 * The view is read while writes continue, so the result is sorted but may mix states from before
+	 * and after concurrent writes.
+	 * @param sort the ordering to read
+	 * @return the stored products in {@code sort} order
+	 */
+	public List<Product> ordered(ProductSort sort) {
+		return List.copyOf(orderedViews.get(sort).keySet());
+	}
+
+	/**
+	 * Replace the contents with a bulk-loaded catalog, for startup recovery.
+	 * Ordered views are built in linear time from the given orderings instead of one insert per product.
+	 * An ordering that is missing or not strictly in its sort's order (for example written before a
+	 * comparator changed) is sorted instead. Must not run concurrently with any other operation.
+	 * Loaded products are stamped with new versions, so a version issued before a restart, which
+	 * conditional writes may still expect, never names another state of a product after it.
+	 * @param products the products to load, with unique ids
+	 * @param orderings for some sorts, the same products already in that order
+	 */
+	public void restore(List<Product> products, Map<ProductSort, List<Product>> orderings) {
+		clear();
+
+		long loaded = version;
+		List<Product> stamped = new ArrayList<>(products.size());
+		for (Product product : products) {
+			Product stored = product.toBuilder().version(++loaded).build();
+			store.put(stored.getId(), stored);
+			stamped.add(stored);
+		}
+		forgetHistory(loaded);
+		bitmaps.load(stamped);
+
+		for (ProductSort sort : ProductSort.values()) {
+			List<Product> ordering = orderings.get(sort);
+			if (ordering == null || ordering.size() != products.size() || !isStrictlyOrdered(ordering, sort.comparator())) {
+				Product[] sorted = stamped.toArray(new Product[0]);
+				Arrays.sort(sorted, sort.comparator());
+				ordering = Arrays.asList(sorted);
+			} else {
+				ordering = ordering.stream().map(product -> store.get(product.getId())).toList();
+			}
+			orderedViews.put(sort, new ConcurrentSkipListMap<>(new Presorted(ordering, sort.comparator())));
+		}
+	}
+
+	// -------------------------
+	// Indexes
+	// -------------------------
+
+	// Store a product as the next version; the caller holds the write lock
+	private Product write(Product product) {
+		long next = version + 1;
+		Product stored = product.toBuilder().version(next).build();
+		store.compute(stored.getId(), (id, previous) -> {
+			if (previous != null) {
+				remember(next, previous);
+			}
+			bitmaps.put(previous, stored);
+			for (ConcurrentSkipListMap<Product, Boolean> view : orderedViews.values()) {
+				if (previous != null) {
+					view.remove(previous);
+				}
+				view.put(stored, Boolean.TRUE);
+			}
+			return stored;
+		});
+		version = next;
+		return stored;
+	}
+
+	// True if this call removed the product; the caller holds the write lock
+	private boolean delete(UUID id) {
+		long next = version + 1;
+		boolean[] removed = new boolean[1];
+		store.computeIfPresent(id, (key, previous) -> {
+			remember(next, previous);
+			bitmaps.remove(previous);
+			for (ConcurrentSkipListMap<Product, Boolean> view : orderedViews.values()) {
+				view.remove(previous);
+			}
+			removed[0] = true;
+			return null;
+		});
+		if (removed[0]) {
+			version = next;
+		}
+		return removed[0];
+	}
+
+	// Keep the state a write replaces, before any index drops it, and let go of the expired ones
+	private void remember(long replacedAt, Product before) {
+		long now = System.nanoTime();
+		history.put(replacedAt, new Change(before, now));
+		historySize++;
+
+		// The product's newer change is listed before its older one is dropped, so a reader never misses it
+		ConcurrentSkipListMap<Long, Product> changes = historyById.computeIfAbsent(before.getId(), id -> new ConcurrentSkipListMap<>());
+		Long previous = changes.isEmpty() ? null : changes.lastKey();
+		changes.put(replacedAt, before);
+		lastChanges.put(replacedAt, before.getId());
+		if (previous != null) {
+			lastChanges.remove(previous);
+		}
+
+		Map.Entry<Long, Change> oldest;
+		while ((oldest = history.firstEntry()) != null
+				&& (historySize > MAX_HISTORY || now - oldest.getValue().nanos() > HISTORY_RETENTION_NANOS)) {
+			// Raised first, so a reader that collected the history meanwhile sees it is incomplete
+			horizon = oldest.getKey();
+			history.remove(oldest.getKey());
+			historySize--;
+			expire(oldest.getKey(), oldest.getValue().before().getId());
+		}
+	}
+
+	// Drop an expired change from the product's history, and the product once it has none left
+	private void expire(long replacedAt, UUID id) {
+		ConcurrentSkipListMap<Long, Product> changes = historyById.get(id);
+		changes.remove(replacedAt);
+		if (changes.isEmpty()) {
+			historyById.remove(id);
+			lastChanges.remove(replacedAt);
+		}
+	}
+
+	private void forgetHistory(long newVersion) {
+		history.clear();
+		historyById.clear();
+		lastChanges.clear();
+		historySize = 0;
+		version = newVersion;
+		horizon = newVersion;
+	}
+
+	private Execution execute(ProductQuery query) {
+		long asOf = pinned(query);
+		BitmapIndex.Selection selection = bitmaps.select(query, store.size());
+		QueryPlan plan = planner.plan(query, selection);
+
+		Scan scan = switch (plan.driver()) {
+			case BRAND_INDEX, CATEGORY_INDEX, BITMAP_INDEX -> scan(indexed(selection.matching()), Function.identity(), query, plan, asOf);
+			case TEXT_INDEX -> query.relevance()
+					? rank(selection, query)
+					: scan(selection.textMatches(), Function.identity(), query, plan, asOf);
+			case PRICE_INDEX -> scan(range(ProductSort.PRICE, query), this::current, query, plan, asOf);
+			case ORDERED_INDEX -> scan(range(query.sort(), query), this::current, query, plan, asOf);
+			case FULL_SCAN -> scan(store.values(), Function.identity(), query, plan, asOf);
+			case COLUMN_SCAN -> throw new IllegalStateException("Not an in-memory access path: " + plan.driver());
+		};
+
+		if (asOf != Long.MAX_VALUE) {
+			scan = withHistory(scan, query, asOf);
+			if (scan == null) {
+				// The history expired past the version during the read
+				return execute(query.toBuilder().asOf(null).build());
+			}
+		}
+
+		List<Product> page = scan.ordered().stream()
+				.skip(query.offset())
+				.limit(query.limit() == null ? Long.MAX_VALUE : query.limit())
+				.toList();
+
+		QueryExplanation explanation = new QueryExplanation(plan, scan.scanned(), scan.matched(), page.size());
+		return new Execution(page, explanation);
+	}
+
+	/**
+	 * Read candidates from the driving access path and check every filter on the stored product,
+	 * which is the source of truth while indexes are being updated. Filters on interned values compare
+	 * dictionary codes, which is cheaper per candidate than a bitmap lookup by product id. Search terms
+	 * are only checked here when the plan walks an ordered view instead of the text index.
+	 */
+	private <T> Scan scan(Iterable<T> candidates,
+			Function<T, Product> resolve,
+			ProductQuery query,
+			QueryPlan plan,
+			long asOf) {
+
+		Collector collector = switch (plan.order()) {
+			case INDEX_ORDER -> new InOrder(query.window());
+			case TOP_K -> new Bounded(new TopK<>((int) query.window(), query.sort().comparator()));
+			case SORT -> new Sorting(query.sort().comparator());
+		};
+		long scanned = 0;
+		boolean checkText = plan.intersected().contains(QueryPlan.AccessPath.TEXT_INDEX);
+
+		for (T candidate : candidates) {
+			scanned++;
+			Product product = resolve.apply(candidate);
+			if (product == null || product.getVersion() > asOf || !query.matches(product) || !query.isAfter(product)) {
+				continue;
+			}
+			if (checkText && !query.matchesText(product)) {
+				continue;
+			}
+			if (!collector.add(product)) {
+				break;
+			}
+		}
+		return new Scan(collector.ordered(), collector.matched(), scanned);
+	}
+
+	/**
+	 * The version a query reads: the one it pins if the history still reaches back to it, otherwise
+	 * Long.MAX_VALUE for the current catalog. Relevance ranks are scored on the current text index.
+	 */
+	private long pinned(ProductQuery query) {
+		Long asOf = query.asOf();
+		if (asOf == null || query.relevance() || asOf < horizon || asOf > version) {
+			return Long.MAX_VALUE;
+		}
+		return asOf;
+	}
+
+	/**
+	 * Complete a pinned scan, which skipped products written after the version, with the state at that
+	 * version of every product changed since, which the indexes no longer hold: the before-image of its
+	 * first change after the version, unless it was created after it too. The history is read after the
+	 * scan, so a product the scan missed because a write moved it had its before-image recorded by then.
+	 * Costs one lookup per product changed since the version, however often it changed.
+	 * @return the completed scan, or null if the history no longer reaches back to the version
+	 */
+	private Scan withHistory(Scan scan, ProductQuery query, long asOf) {
+		List<Product> then = new ArrayList<>();
+		for (UUID id : lastChanges.tailMap(asOf, false).values()) {
+			ConcurrentSkipListMap<Long, Product> changes = historyById.get(id);
+			Map.Entry<Long, Product> first = changes == null ? null : changes.higherEntry(asOf);
+			if (first != null) {
+				then.add(first.getValue());
+			}
+		}
+		if (horizon > asOf) {
+			return null;
+		}
+
+		List<Product> ordered = new ArrayList<>(scan.ordered());
+		Set<UUID> seen = new HashSet<>();
+		for (Product product : ordered) {
+			seen.add(product.getId());
+		}
+		long matched = scan.matched();
+		for (Product product : then) {
+			// A write in flight during the scan, or during the walk of the changes, leaves the same state twice
+			if (product.getVersion() > asOf || !query.matches(product) || !query.isAfter(product)
+					|| !query.matchesText(product) || !seen.add(product.getId())) {
+				continue;
+			}
+			ordered.add(product);
+			matched++;
+		}
+		if (matched > scan.matched()) {
+			ordered.sort(query.sort().comparator());
+		}
+		return new Scan(ordered, matched, scan.scanned() + then.size());
+	}
+
+	// Search matches are exact and scored on the index, so only the window is read back
+	private static Scan rank(BitmapIndex.Selection selection, ProductQuery query) {
+		List<Product> ranked = selection.ranked(query.window());
+		return new Scan(ranked, selection.matchCount(), selection.matchCount());
+	}
+
+	// A view or ordinal entry is stale if the product was replaced or removed since the entry was read
+	private Product current(Product entry) {
+		return entry != null && store.get(entry.getId()) == entry ? entry : null;
+	}
+
+	// The current products of a set of ordinals, in ordinal order; stale entries come out as null
+	private Iterable<Product> indexed(RoaringBitmap ordinals) {
+		return () -> new Iterator<>() {
+			private final IntIterator it = ordinals.getIntIterator();
+
+			@Override
+			public boolean hasNext() {
+				return it.hasNext();
+			}
+
+			@Override
+			public Product next() {
+				return current(bitmaps.product(it.next()));
+			}
+		};
+	}
+
+	/**
+	 * Entries of an ordered view the query can match: bounded by the price range on the price view,
+	 * and starting after the query's keyset position when the view is in the query's order.
+	 */
+	private NavigableSet<Product> range(ProductSort sort, ProductQuery query) {
+		NavigableSet<Product> view = view(sort);
+		Product low = null;
+		Product high = null;
+		boolean lowInclusive = true;
+
+		if (sort == ProductSort.PRICE) {
+			low = priceBound(query.priceMin(), MIN_ID);
+			high = priceBound(query.priceMax(), MAX_ID);
+		}
+
+		if (query.after() != null && query.sort() == sort) {
+			if (low == null || view.comparator().compare(query.after(), low) >= 0) {
+				low = query.after();
+				lowInclusive = false;
+			}
+		}
+
+		return slice(view, low, lowInclusive, high);
+	}
+
+	private NavigableSet<Product> view(ProductSort sort) {
+		return orderedViews.get(sort).keySet();
+	}
+
+	private static NavigableSet<Product> slice(NavigableSet<Product> view, Product low, boolean lowInclusive, Product high) {
+		if (low == null && high == null) {
+			return view;
+		}
+		if (low != null && high != null) {
+			if (view.comparator().compare(low, high) > 0) {
+				return Collections.emptyNavigableSet();
+			}
+			return view.subSet(low, lowInclusive, high, true);
+		}
+		if (low != null) {
+			return view.tailSet(low, lowInclusive);
+		}
+		return view.headSet(high, true);
+	}
+
+	private static boolean isStrictlyOrdered(List<Product> products, Comparator<Product> order) {
+		for (int i = 1; i < products.size(); i++) {
+			if (order.compare(products.get(i - 1), products.get(i)) >= 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// A partial product positioned at a price, for bounding ranges of the price view
+	private static Product priceBound(BigDecimal price, UUID id) {
+		return price == null ? null : Product.builder().price(price).id(id).build();
+	}
+
+	private record Scan(List<Product> ordered, long matched, long scanned) {}
+
+	private record Change(Product before, long nanos) {}
+
+	/**
+	 * Accumulates matches and produces them in query order.
+	 */
+	private interface Collector {
+
+		/**
+		 * @return false once no further matches are needed
+		 */
+		boolean add(Product product);
+
+		long matched();
+
+		List<Product> ordered();
+	}
+
+	// Candidates arrive in query order; stop once the window is filled
+	private static final class InOrder implements Collector {
+		private final long window;
+		private final List<Product> matches = new ArrayList<>();
+
+		InOrder(long window) {
+			this.window = window;
+		}
+
+		@Override
+		public boolean add(Product product) {
+			matches.add(product);
+			return matches.size() < window;
+		}
+
+		@Override
+		public long matched() {
+			return matches.size();
+		}
+
+		@Override
+		public List<Product> ordered() {
+			return matches;
+		}
+	}
+
+	private static final class Bounded implements Collector {
+		private final TopK<Product> topK;
+		private long matched;
+
+		Bounded(TopK<Product> topK) {
+			this.topK = topK;
+		}
+
+		@Override
+		public boolean add(Product product) {
+			matched++;
+			topK.offer(product);
+			return true;
+		}
+
+		@Override
+		public long matched() {
+			return matched;
+		}
+
+		@Override
+		public List<Product> ordered() {
+			return topK.sorted();
+		}
+	}
+
+	private static final class Sorting implements Collector {
+		private final Comparator<Product> order;
+		private final List<Product> matches = new ArrayList<>();
+
+		Sorting(Comparator<Product> order) {
+			this.order = order;
+		}
+
+		@Override
+		public boolean add(Product product) {
+			matches.add(product);
+			return true;
+		}
+
+		@Override
+		public long matched() {
+			return matches.size();
+		}
+
+		@Override
+		public List<Product> ordered() {
+			matches.sort(order);
+			return matches;
+		}
+	}
+
+	private record Execution(List<Product> products, QueryExplanation explanation) {}
+
+	/**
+	 * Read-only sorted map over a list already in comparator order. ConcurrentSkipListMap builds
+	 * itself from a SortedMap in one linear pass, which is all this is used for.
+	 */
+	private static final class Presorted extends AbstractMap<Product, Boolean> implements SortedMap<Product, Boolean> {
+		private final List<Product> products;
+		private final Comparator<Product> order;
+
+		Presorted(List<Product> products, Comparator<Product> order) {
+			this.products = products;
+			this.order = order;
+		}
+
+		@Override
+		public Comparator<Product> comparator() {
+			return order;
+		}
+
+		@Override
+		public Set<Entry<Product, Boolean>> entrySet() {
+			return new AbstractSet<>() {
+				@Override
+				public Iterator<Entry<Product, Boolean>> iterator() {
+					Iterator<Product> it = products.iterator();
+					return new Iterator<>() {
+						@Override
+						public boolean hasNext() {
+							return it.hasNext();
+						}
+
+						@Override
+						public Entry<Product, Boolean> next() {
+							return Map.entry(it.next(), Boolean.TRUE);
+						}
+					};
+				}
+
+				@Override
+				public int size() {
+					return products.size();
+				}
+			};
+		}
+
+		@Override
+		public Product firstKey() {
+			return products.get(0);
+		}
+
+		@Override
+		public Product lastKey() {
+			return products.get(products.size() - 1);
+		}
+
+		@Override
+		public SortedMap<Product, Boolean> subMap(Product fromKey, Product toKey) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public SortedMap<Product, Boolean> headMap(Product toKey) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public SortedMap<Product, Boolean> tailMap(Product fromKey) {
+			throw new UnsupportedOperationException();
+		}
 	}
 }
@@ -0,0 +1,149 @@
+package com.backcountry.product.repository;
+
+import com.backcountry.product.model.CatalogDictionary;
+import com.backcountry.product.model.CategorySet;
+import com.backcountry.product.model.Product;
+import lombok.Builder;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * Query pushed down to the {@link ProductRepository}: filters, ordering and the requested window.
+ * Null filters are not applied.
+ * @param brand brand to match, case-insensitive
+ * @param category category the product must contain
+ * @param brandCode {@link CatalogDictionary} code of {@code brand}, if known; interned products are
+ *                  then matched on the code
+ * @param categoryCode {@link CatalogDictionary} code of {@code category}, if known; interned products
+ *                     are then matched with a bit test
+ * @param priceMin inclusive lower price bound
+ * @param priceMax inclusive upper price bound
+ * @param terms full-text search terms, each matching the name and description tokens it is a prefix
+ *              of (see {@link FullText}); every term must match
+ * @param relevance rank matches of {@code terms} by BM25 score, best first, instead of by
+ *                  {@code sort}; requires terms and cannot be combined with {@code after}
+ * @param sort result ordering, newest first when null
+ * @param after keyset position: only products strictly after this one in {@code sort} order are
+ *              returned. Only the sort key and id need to be set (see {@link ProductSort#anchor})
+ * @param offset number of matching products to skip
+ * @param limit maximum number of products to return, unbounded when null
+ * @param asOf catalog version to read, as returned by {@link ProductRepository#version()}; the current
+ *             catalog when null, or when the repository no longer keeps that version. Ignored by
+ *             relevance ranking
+ */
+@Builder(toBuilder = true)
+public record ProductQuery(
+		String brand,
+		String category,
+		Integer brandCode,
+		Integer categoryCode,
+		BigDecimal priceMin,
+		BigDecimal priceMax,
+		List<String> terms,
+		boolean relevance,
+		ProductSort sort,
+		Product after,
+		long offset,
+		Integer limit,
+		Long asOf
+) {
+
+	public ProductQuery {
+		if (sort == null) {
+			sort = ProductSort.NEWEST;
+		}
+		if (offset < 0) {
+			throw new IllegalArgumentException("offset must not be negative: " + offset);
+		}
+		if (limit != null && limit < 0) {
+			throw new IllegalArgumentException("limit must not be negative: " + limit);
+		}
+		if (terms != null) {
+			if (terms.isEmpty()) {
+				throw new IllegalArgumentException("terms must not be empty");
+			}
+			terms = List.copyOf(terms);
+		}
+		if (relevance && terms == null) {
+			throw new IllegalArgumentException("relevance ranking needs search terms");
+		}
+		if (relevance && after != null) {
+			throw new IllegalArgumentException("relevance ranking has no keyset position");
+		}
+	}
+
+	/**
+	 * Check whether a product satisfies every filter of this query.
+	 * @param product the product to test
+	 * @return true if the product matches
+	 */
+	public boolean matches(Product product) {
+		return matchesBrand(product)
+				&& matchesCategory(product)
+				&& (priceMin == null || product.getPrice().compareTo(priceMin) >= 0)
+				&& (priceMax == null || product.getPrice().compareTo(priceMax) <= 0);
+	}
+
+	private boolean matchesBrand(Product product) {
+		if (brand == null) {
+			return true;
+		}
+		if (brandCode != null && product.getBrandCode() >= 0) {
+			return product.getBrandCode() == brandCode;
+		}
+		return product.getBrand().equalsIgnoreCase(brand);
+	}
+
+	private boolean matchesCategory(Product product) {
+		if (category == null) {
+			return true;
+		}
+		if (categoryCode != null && product.getCategories() instanceof CategorySet interned) {
+			return interned.containsCode(categoryCode);
+		}
+		return product.getCategories().contains(category);
+	}
+
+	/**
+	 * Check whether every search term of this query prefixes a token of the product's name or
+	 * description. Filters are checked separately by {@link #matches}.
+	 * @param product the product to test
+	 * @return true if the product matches, or there are no terms
+	 */
+	public boolean matchesText(Product product) {
+		if (terms == null) {
+			return true;
+		}
+		List<String> tokens = FullText.tokens(product);
+		for (String term : terms) {
+			if (tokens.stream().noneMatch(token -> FullText.matches(term, token))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Check whether a product comes after the keyset position of this query.
+	 * @param product the product to test
+	 * @return true if there is no position or the product sorts after it
+	 */
+	public boolean isAfter(Product product) {
+		return after == null || sort.comparator().compare(product, after) > 0;
+	}
+
+	/**
+	 * @return true if a price bound is set
+	 */
+	public boolean hasPriceRange() {
+		return priceMin != null || priceMax != null;
+	}
+
+	/**
+	 * @return offset + limit, i.e. how many ordered matches are needed to fill the window
+	 */
+	public long window() {
+		return limit == null ? Long.MAX_VALUE : offset + limit;
+	}
+}
@@ -2,9 +2,12 @@ package com.backcountry.product.repository;
 
 import com.backcountry.product.model.Product;
 
+import java.math.BigDecimal;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.function.Consumer;
 
 /**
  * Repository interface for Product entity.
@@ -18,6 +21,52 @@ public interface ProductRepository {
 	 */
 	Product save(Product product);
 
+	/**
+	 * Save a batch of products in one write, in list order: a product saved twice ends up as its
+	 * last occurrence.
+	 * @param products the products to save
+	 * @return the saved products
+	 */
+	List<Product> saveAll(List<Product> products);
+
+	/**
+	 * Save a product only if the stored product with its id is at the expected version. The check and
+	 * the write are one atomic step, so of several writers that read the same version exactly one
+	 * succeeds, and a product deleted meanwhile is not brought back.
+	 * @param product the product to save
+	 * @param expectedVersion the version the stored product must be at
+	 * @return the saved product, or empty if no product with its id is stored at that version
+	 */
+	Optional<Product> compareAndSave(Product product, long expectedVersion);
+
+	/**
+	 * Save a batch of products in one write, each only if the stored product with its id is at the version
+	 * expected for it, as {@link #compareAndSave} does. The checks and the write are one atomic step. A
+	 * product listed twice is saved at most once, since its first save moves it off the expected version.
+	 * @param products the products to save
+	 * @param expectedVersions the version each stored product must be at, in the order of the products
+	 * @return for each product in order, the saved product, or empty if it was not stored at its version
+	 */
+	List<Optional<Product>> compareAndSaveAll(List<Product> products, List<Long> expectedVersions);
+
+	/**
+	 * Delete a product only if it is stored at the expected version, checked and deleted in one atomic step.
+	 * @param id the UUID of the product to delete
+	 * @param expectedVersion the version the stored product must be at
+	 * @return true if the product was at that version and is now deleted
+	 */
+	boolean compareAndDelete(UUID id, long expectedVersion);
+
+	/**
+	 * Current version of the catalog, which a query can pin with {@link ProductQuery#asOf} to read the
+	 * catalog as it was then, for as long as the repository keeps its history, regardless of later
+	 * writes. Versions only increase, and every write that changes the catalog moves it.
+	 * @return the version of the last write, or 0 if this repository does not keep versions
+	 */
+	default long version() {
+		return 0;
+	}
+
 	/**
 	 * Find a product by its ID.
 	 * @param id the UUID of the product
@@ -31,12 +80,59 @@ public interface ProductRepository {
 	 */
 	List<Product> findAll();
 
+	/**
+	 * Pass every product, as of the moment the call starts, to a consumer. Writes continue meanwhile
+	 * and a slow consumer does not hold them up; those made after the start are not seen.
+	 * @param sink receives each product once, in no particular order; an exception it throws ends the export
+	 */
+	void export(Consumer<Product> sink);
+
+	/**
+	 * Find the products matching a query, using secondary indexes where possible.
+	 * @param query the filters, ordering and window to return
+	 * @return the requested page of matching products, in query order
+	 */
+	List<Product> find(ProductQuery query);
+
+	/**
+	 * Execute a query and report how it was planned instead of returning its products.
+	 * @param query the query to explain
+	 * @return the chosen plan and execution counters
+	 */
+	QueryExplanation explain(ProductQuery query);
+
+	/**
+	 * Count the products matching the filters of a query per brand, category and price range.
+	 * The ordering, keyset position and window of the query are ignored.
+	 * @param query the filters to apply
+	 * @param priceBoundaries ascending prices splitting the price ranges
+	 * @return the counts
+	 */
+	FacetCounts facets(ProductQuery query, List<BigDecimal> priceBoundaries);
+
+	/**
+	 * Complete a prefix to the product names and brands starting with it, ignoring case.
+	 * @param prefix the text typed so far
+	 * @param rank the signal ranking completions; a name or brand shared by several products ranks by
+	 *             the best of them
+	 * @param limit maximum number of completions
+	 * @return the best completions first, ties in alphabetical order
+	 */
+	List<Suggestion> suggest(String prefix, SuggestionRank rank, int limit);
+
 	/**
 	 * Delete a product by its ID.
 	 * @param id the UUID of the product to delete
 	 */
 	void deleteById(UUID id);
 
+	/**
+	 * Delete a batch of products by their IDs in one write. IDs that are not stored are skipped.
+	 * @param ids the UUIDs of the products to delete
+	 * @return the IDs that were stored and are now deleted, in the order given, each once
+	 */
+	List<UUID> deleteAllById(Collection<UUID> ids);
+
 	/**
 	 * Clear all products from the repository.
 	 */
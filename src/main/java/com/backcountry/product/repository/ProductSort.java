@@ -0,0 +1,84 @@
+package com.backcountry.product.repository;
+
+import com.backcountry.product.model.Product;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Comparator;
+import java.util.UUID;
+
+/**
+ * Supported orderings for product listings.
+ * Every ordering breaks ties on the product id so results are deterministic.
+ */
+public enum ProductSort {
+
+	NEWEST(Comparator.comparing(Product::getCreatedAt).reversed()),
+	PRICE(Comparator.comparing(Product::getPrice)),
+	NAME(Comparator.comparing(Product::getName, String.CASE_INSENSITIVE_ORDER)),
+	BRAND(Comparator.comparing(Product::getBrand, String.CASE_INSENSITIVE_ORDER));
+
+	private final Comparator<Product> comparator;
+
+	ProductSort(Comparator<Product> order) {
+		this.comparator = order.thenComparing(Product::getId);
+	}
+
+	public Comparator<Product> comparator() {
+		return comparator;
+	}
+
+	/**
+	 * Extract the value this ordering sorts on, as a string that {@link #anchor} can parse back.
+	 * @param product the product to read
+	 * @return the sort key of the product
+	 */
+	public String key(Product product) {
+		return switch (this) {
+			case NEWEST -> product.getCreatedAt().toString();
+			case PRICE -> product.getPrice().toPlainString();
+			case NAME -> product.getName();
+			case BRAND -> product.getBrand();
+		};
+	}
+
+	/**
+	 * Build a product holding only a sort key and an id, positioned exactly where the product
+	 * that produced the key sits in this ordering. Used to seek past it.
+	 * @param key a value produced by {@link #key}
+	 * @param id the id of the product that produced the key
+	 * @return a partial product usable with {@link #comparator()}
+	 * @throws IllegalArgumentException if the key cannot be parsed
+	 */
+	public Product anchor(String key, UUID id) {
+		Product.ProductBuilder anchor = Product.builder().id(id);
+		try {
+			return switch (this) {
+				case NEWEST -> anchor.createdAt(Instant.parse(key)).build();
+				case PRICE -> anchor.price(new BigDecimal(key)).build();
+				case NAME -> anchor.name(key).build();
+				case BRAND -> anchor.brand(key).build();
+			};
+		} catch (DateTimeParseException | NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid " + name() + " sort key: " + key, e);
+		}
+	}
+
+	/**
+	 * Resolve the sort request parameter, defaulting to newest first.
+	 * @param sort price, name, brand or date (case-insensitive), may be null
+	 * @return the matching ProductSort
+	 */
+	public static ProductSort from(String sort) {
+		if (sort == null) return NEWEST;
+
+		return switch (sort.toLowerCase()) {
+			case "price"      -> PRICE;
+			case "name"       -> NAME;
+			case "brand"      -> BRAND;
+			case "date"       -> NEWEST;
+			default           -> NEWEST;
+		};
+	}
+}
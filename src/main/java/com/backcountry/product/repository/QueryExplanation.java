@@ -0,0 +1,15 @@
+package com.backcountry.product.repository;
+
+/**
+ * Outcome of executing a {@link ProductQuery}, for diagnostics.
+ * @param plan the plan that was executed
+ * @param candidatesScanned number of candidates read from the driving access path
+ * @param matched number of candidates that satisfied every filter before the scan stopped
+ * @param returned number of products in the requested page
+ */
+public record QueryExplanation(
+		QueryPlan plan,
+		long candidatesScanned,
+		long matched,
+		int returned
+) {}
@@ -0,0 +1,48 @@
+package com.backcountry.product.repository;
+
+import java.util.List;
+
+/**
+ * Execution plan chosen by the {@link QueryPlanner} for a {@link ProductQuery}.
+ * @param driver access path that produces the candidate products
+ * @param intersected other filters checked on each of the driver's candidates
+ * @param order how the requested ordering is produced
+ * @param estimatedCandidates estimated number of candidates produced by the driver
+ */
+public record QueryPlan(
+		AccessPath driver,
+		List<AccessPath> intersected,
+		OrderStrategy order,
+		long estimatedCandidates
+) {
+
+	/**
+	 * Where candidate products come from.
+	 */
+	public enum AccessPath {
+		FULL_SCAN,
+		BRAND_INDEX,
+		CATEGORY_INDEX,
+		PRICE_INDEX,
+		/** The intersection of the brand, category and price bitmaps, read in ordinal order. */
+		BITMAP_INDEX,
+		/** The products matching the search terms and every filter, computed on the inverted index. */
+		TEXT_INDEX,
+		/** The ordered view of the requested sort, walked from the start or the keyset position. */
+		ORDERED_INDEX,
+		/** Every row of a columnar store, filtered on its primitive columns. */
+		COLUMN_SCAN
+	}
+
+	/**
+	 * How results are put in the requested order.
+	 */
+	public enum OrderStrategy {
+		/** Candidates already arrive in the requested order; scanning stops once the page is filled. */
+		INDEX_ORDER,
+		/** Only the first offset + limit matches are kept in a bounded heap and sorted at the end. */
+		TOP_K,
+		/** All matches are collected and then sorted. */
+		SORT
+	}
+}
@@ -0,0 +1,167 @@
+package com.backcountry.product.repository;
+
+import com.backcountry.product.repository.QueryPlan.AccessPath;
+import com.backcountry.product.repository.QueryPlan.OrderStrategy;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Chooses how a {@link ProductQuery} is executed against the in-memory indexes.
+ * A single filter drives the scan from its index. Several filters drive it from the intersection of
+ * their bitmaps, whose exact size is known up front. Every supported ordering has an ordered view.
+ * Without filters the view is walked directly, so a page costs O(offset + limit). With filters the view
+ * is walked only when filling the page is expected to read fewer candidates than the filters match;
+ * otherwise shallow pages keep the first offset + limit matches in a bounded heap and deep pages fall
+ * back to the ordered view.
+ *
+ * Search terms drive from the inverted index, intersected with the filters, and the matches are
+ * ranked or sorted in a bounded heap if the page is shallow, or all of them otherwise. Under another
+ * sort than relevance, a common term is cheaper to check on the products of the ordered view, like
+ * any other filter, until the page is full.
+ */
+class QueryPlanner {
+
+	// Largest offset + limit served from a bounded heap; deeper pages walk the ordered view
+	static final long TOP_K_MAX_WINDOW = 10_000;
+
+	/**
+	 * Cardinalities of one query's filters, as seen by the indexes when the query started.
+	 */
+	interface Statistics {
+
+		long size();
+
+		long brandCount();
+
+		long categoryCount();
+
+		/**
+		 * Products in the price buckets the range touches: an upper bound of the products in range.
+		 */
+		long priceRangeCount();
+
+		/**
+		 * Products matching every filter, or {@link #size} without filters.
+		 */
+		long matchCount();
+	}
+
+	QueryPlan plan(ProductQuery query, Statistics statistics) {
+		if (query.terms() != null) {
+			return textPlan(query, statistics);
+		}
+		List<AccessPath> filters = new ArrayList<>();
+		AccessPath driver = AccessPath.FULL_SCAN;
+		long estimate = statistics.size();
+
+		if (query.brand() != null) {
+			filters.add(AccessPath.BRAND_INDEX);
+			driver = AccessPath.BRAND_INDEX;
+			estimate = statistics.brandCount();
+		}
+
+		if (query.category() != null) {
+			filters.add(AccessPath.CATEGORY_INDEX);
+			driver = AccessPath.CATEGORY_INDEX;
+			estimate = statistics.categoryCount();
+		}
+
+		if (query.hasPriceRange()) {
+			filters.add(AccessPath.PRICE_INDEX);
+			driver = AccessPath.PRICE_INDEX;
+			estimate = statistics.priceRangeCount();
+		}
+
+		if (filters.size() > 1) {
+			// The intersection is exact, however correlated the filters are
+			driver = AccessPath.BITMAP_INDEX;
+			estimate = statistics.matchCount();
+		}
+
+		// Every sort has an ordered view; the price view also applies the price range
+		AccessPath ordered = query.sort() == ProductSort.PRICE ? AccessPath.PRICE_INDEX : AccessPath.ORDERED_INDEX;
+		OrderStrategy order = OrderStrategy.SORT;
+
+		if (driver == AccessPath.FULL_SCAN) {
+			driver = ordered;
+			estimate = Math.min(estimate, query.window());
+			order = OrderStrategy.INDEX_ORDER;
+		} else if (driver == ordered) {
+			order = OrderStrategy.INDEX_ORDER;
+		} else {
+			// Walk the ordered view and use the selective index as a filter
+			long walk = orderedWalkEstimate(query, estimate, statistics);
+			if (walk < estimate) {
+				driver = ordered;
+				estimate = walk;
+				order = OrderStrategy.INDEX_ORDER;
+			}
+		}
+
+		if (order == OrderStrategy.SORT && query.limit() != null && query.window() < estimate) {
+			if (query.window() <= TOP_K_MAX_WINDOW) {
+				order = OrderStrategy.TOP_K;
+			} else {
+				// Deep page: walk the ordered view rather than holding a huge heap
+				estimate = Math.min(statistics.size(), orderedWalkEstimate(query, estimate, statistics));
+				driver = ordered;
+				order = OrderStrategy.INDEX_ORDER;
+			}
+		}
+
+		// A bitmap driver already applies every filter; an ordered walk checks membership in the intersection
+		AccessPath chosen = driver;
+		List<AccessPath> intersected = chosen == AccessPath.BITMAP_INDEX ? filters : filters.stream()
+				.filter(path -> path != chosen)
+				.toList();
+
+		return new QueryPlan(chosen, intersected, order, estimate);
+	}
+
+	private static QueryPlan textPlan(ProductQuery query, Statistics statistics) {
+		List<AccessPath> filters = new ArrayList<>();
+		if (query.brand() != null) {
+			filters.add(AccessPath.BRAND_INDEX);
+		}
+		if (query.category() != null) {
+			filters.add(AccessPath.CATEGORY_INDEX);
+		}
+		if (query.hasPriceRange()) {
+			filters.add(AccessPath.PRICE_INDEX);
+		}
+		long matches = statistics.matchCount();
+
+		if (!query.relevance()) {
+			long walk = orderedWalkEstimate(query, matches, statistics);
+			if (walk < matches) {
+				AccessPath ordered = query.sort() == ProductSort.PRICE ? AccessPath.PRICE_INDEX : AccessPath.ORDERED_INDEX;
+				filters.remove(ordered);
+				filters.add(AccessPath.TEXT_INDEX);
+				return new QueryPlan(ordered, filters, OrderStrategy.INDEX_ORDER, walk);
+			}
+		}
+
+		OrderStrategy order = query.limit() != null && query.window() < matches && query.window() <= TOP_K_MAX_WINDOW
+				? OrderStrategy.TOP_K
+				: OrderStrategy.SORT;
+		return new QueryPlan(AccessPath.TEXT_INDEX, filters, order, matches);
+	}
+
+	/**
+	 * Walking the ordered index reads about window / selectivity candidates before the page is
+	 * full, while driving by the selective index reads all of its matches and then sorts them.
+	 * The price view is only walked within the price range, so that is the population matches are
+	 * drawn from when sorting by price.
+	 */
+	private static long orderedWalkEstimate(ProductQuery query, long matches, Statistics statistics) {
+		if (matches == 0 || query.limit() == null) {
+			return Long.MAX_VALUE;
+		}
+		long walked = query.sort() == ProductSort.PRICE && query.hasPriceRange()
+				? statistics.priceRangeCount()
+				: statistics.size();
+		double selectivity = (double) matches / Math.max(1, walked);
+		return (long) Math.ceil(query.window() / selectivity);
+	}
+}
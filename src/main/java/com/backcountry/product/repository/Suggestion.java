@@ -0,0 +1,14 @@
+package com.backcountry.product.repository;
+
+/**
+ * A type-ahead completion.
+ * @param text the completed name or brand, spelled as one of the products holding it
+ * @param field the product field it completes
+ */
+public record Suggestion(String text, Field field) {
+
+	public enum Field {
+		NAME,
+		BRAND
+	}
+}
@@ -0,0 +1,564 @@
+package com.backcountry.product.repository;
+
+import com.backcountry.product.model.Product;
+import org.roaringbitmap.IntIterator;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+/**
+ * Type-ahead completions of product names and brands over the ordinals of a {@link BitmapIndex}.
+ *
+ * Each field keeps its distinct values in an array sorted ignoring case, so the values starting with
+ * a prefix are one contiguous range of it: the subtree a trie would hold under that prefix, without a
+ * node per character. Over the array sits one max tree per {@link SuggestionRank}, holding the best
+ * signal of every aligned range of values, and the best completions of a prefix are read from it best
+ * first: about limit * log(values) tree nodes, however many values the prefix covers. A value held by
+ * several products ranks by the best of them.
+ *
+ * The arrays reference the products' own strings and a value's signals live in the tree leaves, so a
+ * distinct name costs 40 to 72 bytes depending on how full the trees are. Values not in the arrays yet
+ * wait in a small sorted map that is merged into them once it holds {@value #PENDING_MAX} values;
+ * values no product holds any more are dropped by the same merge.
+ *
+ * Not thread-safe: the owning {@link BitmapIndex} guards it with its lock.
+ */
+final class SuggestionIndex {
+
+	// Values waiting outside the arrays, and minimum unused slots, before the arrays are rebuilt
+	private static final int PENDING_MAX = 4096;
+	// Tree value of a range no product holds
+	private static final long NONE = Long.MIN_VALUE;
+	// Owner of a slot held by several products, tracked by a Shared, or by none
+	private static final int SHARED = -1;
+	private static final int UNUSED = -2;
+
+	private static final SuggestionRank[] RANKS = SuggestionRank.values();
+
+	// Best signal first, then alphabetical, names before brands
+	private static final Comparator<Completion> ORDER = Comparator.comparingLong(Completion::signal).reversed()
+			.thenComparing(Completion::text, String.CASE_INSENSITIVE_ORDER)
+			.thenComparing(Completion::field);
+
+	private final IntFunction<Product> products;
+	private final Completions names = new Completions(Suggestion.Field.NAME, Product::getName);
+	private final Completions brands = new Completions(Suggestion.Field.BRAND, Product::getBrand);
+
+	/**
+	 * @param products the product indexed under an ordinal, current whenever this index is updated
+	 */
+	SuggestionIndex(IntFunction<Product> products) {
+		this.products = products;
+	}
+
+	/**
+	 * Index a product, which must already be readable at its ordinal.
+	 */
+	void add(int ordinal, Product product) {
+		names.add(product.getName(), ordinal);
+		brands.add(product.getBrand(), ordinal);
+	}
+
+	/**
+	 * Unindex a product, which must still be readable at its ordinal.
+	 */
+	void remove(int ordinal, Product product) {
+		names.remove(product.getName(), ordinal);
+		brands.remove(product.getBrand(), ordinal);
+	}
+
+	void clear() {
+		names.clear();
+		brands.clear();
+	}
+
+	/**
+	 * Index a bulk-loaded catalog at once, into sorted arrays with nothing pending.
+	 * @param count number of products, at ordinals 0 to count - 1
+	 */
+	void load(int count) {
+		names.load(count);
+		brands.load(count);
+	}
+
+	/**
+	 * @param prefix start of the names and brands to complete, matched ignoring case
+	 * @param rank signal to rank the completions by
+	 * @param limit maximum number of completions
+	 * @return the best completions, ties in alphabetical order
+	 */
+	List<Suggestion> suggest(String prefix, SuggestionRank rank, int limit) {
+		TopK<Completion> best = new TopK<>(limit, ORDER);
+		names.collect(prefix, rank, limit, best);
+		brands.collect(prefix, rank, limit, best);
+		return best.sorted().stream().map(completion -> new Suggestion(completion.text(), completion.field())).toList();
+	}
+
+	private static boolean startsWith(String value, String prefix) {
+		return value.regionMatches(true, 0, prefix, 0, prefix.length());
+	}
+
+	private record Completion(String text, Suggestion.Field field, long signal) {}
+
+	private record Folded(String folded, String value, int ordinal) {}
+
+	// Each character folded the way String.CASE_INSENSITIVE_ORDER compares it
+	private static String fold(String value) {
+		StringBuilder folded = new StringBuilder(value.length());
+		for (int i = 0; i < value.length(); i++) {
+			folded.append(Character.toLowerCase(Character.toUpperCase(value.charAt(i))));
+		}
+		return folded.toString();
+	}
+
+	/**
+	 * The distinct values of one field: sorted slots, each owned by the ordinal of the one product
+	 * holding the value, by several products tracked in a {@link Shared}, or unused since its last
+	 * product went away. Leaf i of each tree is the signal of slot i.
+	 */
+	private final class Completions {
+		private final Suggestion.Field field;
+		private final Function<Product, String> value;
+
+		private String[] keys = new String[0];
+		private int[] owners = new int[0];
+		private long[][] trees = trees(1);
+		private int leaves = 1;
+		private int size;
+		private int unused;
+
+		// Values held by several products, by their slot's key; values not in the arrays yet
+		private final NavigableMap<String, Shared> shared = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+		private final NavigableMap<String, Shared> pending = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+
+		Completions(Suggestion.Field field, Function<Product, String> value) {
+			this.field = field;
+			this.value = value;
+		}
+
+		void add(String key, int ordinal) {
+			if (key == null) {
+				return;
+			}
+			Shared waiting = pending.get(key);
+			if (waiting != null) {
+				waiting.add(ordinal);
+				return;
+			}
+			int slot = Arrays.binarySearch(keys, 0, size, key, String.CASE_INSENSITIVE_ORDER);
+			if (slot < 0) {
+				pending.put(key, new Shared(key, ordinal));
+				if (pending.size() >= PENDING_MAX) {
+					rebuild();
+				}
+				return;
+			}
+			int owner = owners[slot];
+			if (owner == UNUSED) {
+				// Reused with the new spelling, which also releases the old string
+				keys[slot] = key;
+				owners[slot] = ordinal;
+				unused--;
+			} else if (owner == SHARED) {
+				shared.get(key).add(ordinal);
+			} else {
+				Shared both = new Shared(keys[slot], owner);
+				both.add(ordinal);
+				shared.put(keys[slot], both);
+				owners[slot] = SHARED;
+			}
+			update(slot);
+		}
+
+		void remove(String key, int ordinal) {
+			if (key == null) {
+				return;
+			}
+			Shared waiting = pending.get(key);
+			if (waiting != null) {
+				if (waiting.remove(ordinal)) {
+					pending.remove(key);
+				}
+				return;
+			}
+			int slot = Arrays.binarySearch(keys, 0, size, key, String.CASE_INSENSITIVE_ORDER);
+			if (slot < 0) {
+				return;
+			}
+			int owner = owners[slot];
+			if (owner == SHARED) {
+				Shared held = shared.get(key);
+				held.remove(ordinal);
+				if (held.ordinals.getCardinality() == 1) {
+					owners[slot] = held.ordinals.first();
+					shared.remove(key);
+				}
+			} else if (owner == ordinal) {
+				owners[slot] = UNUSED;
+				unused++;
+			} else {
+				return;
+			}
+			update(slot);
+			if (unused >= Math.max(PENDING_MAX, size / 4)) {
+				rebuild();
+			}
+		}
+
+		void clear() {
+			keys = new String[0];
+			owners = new int[0];
+			trees = trees(1);
+			leaves = 1;
+			size = 0;
+			unused = 0;
+			shared.clear();
+			pending.clear();
+		}
+
+		/**
+		 * Sorted on case-folded copies of the values, whose natural order is the case-insensitive order
+		 * and compares several times faster. The sort is stable, so a value is spelled as its first product.
+		 */
+		void load(int count) {
+			clear();
+			Folded[] sorted = new Folded[count];
+			int held = 0;
+			for (int ordinal = 0; ordinal < count; ordinal++) {
+				Product product = products.apply(ordinal);
+				String key = product == null ? null : value.apply(product);
+				if (key != null) {
+					sorted[held++] = new Folded(fold(key), key, ordinal);
+				}
+			}
+			Arrays.sort(sorted, 0, held, Comparator.comparing(Folded::folded));
+
+			String[] loaded = new String[held];
+			int[] loadedOwners = new int[held];
+			int slots = 0;
+			for (int i = 0; i < held; i++) {
+				Folded entry = sorted[i];
+				if (i > 0 && sorted[i - 1].folded().equals(entry.folded())) {
+					int owner = loadedOwners[slots - 1];
+					if (owner != SHARED) {
+						shared.put(loaded[slots - 1], new Shared(loaded[slots - 1], owner));
+						loadedOwners[slots - 1] = SHARED;
+					}
+					shared.get(loaded[slots - 1]).add(entry.ordinal());
+					continue;
+				}
+				loaded[slots] = entry.value();
+				loadedOwners[slots++] = entry.ordinal();
+			}
+
+			keys = loaded;
+			owners = loadedOwners;
+			size = slots;
+			leaves = leavesFor(slots);
+			trees = trees(leaves);
+			for (int slot = 0; slot < slots; slot++) {
+				for (int r = 0; r < RANKS.length; r++) {
+					trees[r][leaves + slot] = signal(slot, r);
+				}
+			}
+			summarize(trees, leaves);
+		}
+
+		/**
+		 * Offer the best completions of a prefix: at most limit from the arrays, read best first from
+		 * the tree, and every pending one.
+		 */
+		void collect(String prefix, SuggestionRank rank, int limit, TopK<Completion> best) {
+			long[] tree = trees[rank.ordinal()];
+			int from = lowerBound(prefix);
+			int to = from;
+			for (int high = size; to < high; ) {
+				int middle = (to + high) >>> 1;
+				if (startsWith(keys[middle], prefix)) {
+					to = middle + 1;
+				} else {
+					high = middle;
+				}
+			}
+
+			Frontier frontier = new Frontier(tree, leaves);
+			for (int low = from + leaves, high = to + leaves; low < high; low >>>= 1, high >>>= 1) {
+				if ((low & 1) == 1) {
+					frontier.push(low++);
+				}
+				if ((high & 1) == 1) {
+					frontier.push(--high);
+				}
+			}
+			for (int found = 0; found < limit && !frontier.isEmpty(); ) {
+				int node = frontier.poll();
+				if (node >= leaves) {
+					best.offer(new Completion(keys[node - leaves], field, tree[node]));
+					found++;
+				} else {
+					frontier.push(2 * node);
+					frontier.push(2 * node + 1);
+				}
+			}
+
+			for (Shared waiting : pending.tailMap(prefix, true).values()) {
+				if (!startsWith(waiting.text, prefix)) {
+					break;
+				}
+				best.offer(new Completion(waiting.text, field, waiting.best[rank.ordinal()]));
+			}
+		}
+
+		// First slot whose key is not below the prefix
+		private int lowerBound(String prefix) {
+			int low = 0;
+			int high = size;
+			while (low < high) {
+				int middle = (low + high) >>> 1;
+				if (String.CASE_INSENSITIVE_ORDER.compare(keys[middle], prefix) < 0) {
+					low = middle + 1;
+				} else {
+					high = middle;
+				}
+			}
+			return low;
+		}
+
+		private long signal(int slot, int rank) {
+			int owner = owners[slot];
+			if (owner == UNUSED) {
+				return NONE;
+			}
+			if (owner == SHARED) {
+				return shared.get(keys[slot]).best[rank];
+			}
+			return RANKS[rank].signal(products.apply(owner));
+		}
+
+		private void update(int slot) {
+			for (int r = 0; r < RANKS.length; r++) {
+				long[] tree = trees[r];
+				int node = leaves + slot;
+				tree[node] = signal(slot, r);
+				// Ancestors keep their value once one of them is unchanged
+				for (node >>>= 1; node > 0; node >>>= 1) {
+					long max = Math.max(tree[2 * node], tree[2 * node + 1]);
+					if (tree[node] == max) {
+						break;
+					}
+					tree[node] = max;
+				}
+			}
+		}
+
+		/**
+		 * Merge the pending values into the arrays and drop unused slots. Each pending value finds its
+		 * place by binary search, and the slots in between are copied without comparing keys. Signals
+		 * of slots already in the arrays are carried over from the tree leaves.
+		 */
+		private void rebuild() {
+			int count = size - unused + pending.size();
+			String[] merged = new String[count];
+			int[] mergedOwners = new int[count];
+			int mergedLeaves = leavesFor(count);
+			long[][] mergedTrees = trees(mergedLeaves);
+
+			int slot = 0;
+			int target = 0;
+			for (Shared next : pending.values()) {
+				int end = -Arrays.binarySearch(keys, slot, size, next.text, String.CASE_INSENSITIVE_ORDER) - 1;
+				for (; slot < end; slot++) {
+					if (owners[slot] != UNUSED) {
+						merged[target] = keys[slot];
+						mergedOwners[target] = owners[slot];
+						for (int r = 0; r < RANKS.length; r++) {
+							mergedTrees[r][mergedLeaves + target] = trees[r][leaves + slot];
+						}
+						target++;
+					}
+				}
+				merged[target] = next.text;
+				if (next.ordinals.getCardinality() == 1) {
+					mergedOwners[target] = next.ordinals.first();
+				} else {
+					mergedOwners[target] = SHARED;
+					shared.put(next.text, next);
+				}
+				for (int r = 0; r < RANKS.length; r++) {
+					mergedTrees[r][mergedLeaves + target] = next.best[r];
+				}
+				target++;
+			}
+			for (; slot < size; slot++) {
+				if (owners[slot] != UNUSED) {
+					merged[target] = keys[slot];
+					mergedOwners[target] = owners[slot];
+					for (int r = 0; r < RANKS.length; r++) {
+						mergedTrees[r][mergedLeaves + target] = trees[r][leaves + slot];
+					}
+					target++;
+				}
+			}
+			summarize(mergedTrees, mergedLeaves);
+
+			pending.clear();
+			keys = merged;
+			owners = mergedOwners;
+			trees = mergedTrees;
+			leaves = mergedLeaves;
+			size = count;
+			unused = 0;
+		}
+	}
+
+	/**
+	 * The products holding one value, with the best signal per rank and how many of them have it, so
+	 * that the best is only recomputed when the last product having it goes away.
+	 */
+	private final class Shared {
+		private final String text;
+		private final RoaringBitmap ordinals = new RoaringBitmap();
+		private final long[] best = new long[RANKS.length];
+		private final int[] holders = new int[RANKS.length];
+
+		Shared(String text, int ordinal) {
+			this.text = text;
+			Arrays.fill(best, NONE);
+			add(ordinal);
+		}
+
+		void add(int ordinal) {
+			ordinals.add(ordinal);
+			Product product = products.apply(ordinal);
+			for (int r = 0; r < RANKS.length; r++) {
+				offer(r, RANKS[r].signal(product));
+			}
+		}
+
+		// Returns true if no product holds the value any more
+		boolean remove(int ordinal) {
+			Product product = products.apply(ordinal);
+			ordinals.remove(ordinal);
+			for (int r = 0; r < RANKS.length; r++) {
+				if (RANKS[r].signal(product) == best[r] && --holders[r] == 0) {
+					best[r] = NONE;
+					IntIterator it = ordinals.getIntIterator();
+					while (it.hasNext()) {
+						offer(r, RANKS[r].signal(products.apply(it.next())));
+					}
+				}
+			}
+			return ordinals.isEmpty();
+		}
+
+		private void offer(int rank, long signal) {
+			if (signal > best[rank]) {
+				best[rank] = signal;
+				holders[rank] = 1;
+			} else if (signal == best[rank]) {
+				holders[rank]++;
+			}
+		}
+	}
+
+	/**
+	 * Tree nodes still to expand, best first: highest value, then leftmost range, so leaves come out
+	 * in completion order.
+	 */
+	private static final class Frontier {
+		private final long[] tree;
+		private final int depth;
+		private int[] nodes = new int[32];
+		private int size;
+
+		Frontier(long[] tree, int leaves) {
+			this.tree = tree;
+			this.depth = Integer.numberOfLeadingZeros(leaves);
+		}
+
+		boolean isEmpty() {
+			return size == 0;
+		}
+
+		// Ranges no product holds are never expanded
+		void push(int node) {
+			if (tree[node] == NONE) {
+				return;
+			}
+			if (size == nodes.length) {
+				nodes = Arrays.copyOf(nodes, size * 2);
+			}
+			nodes[size] = node;
+			int index = size++;
+			while (index > 0) {
+				int parent = (index - 1) >>> 1;
+				if (!before(nodes[index], nodes[parent])) {
+					return;
+				}
+				swap(index, parent);
+				index = parent;
+			}
+		}
+
+		int poll() {
+			int top = nodes[0];
+			nodes[0] = nodes[--size];
+			int index = 0;
+			while (true) {
+				int left = 2 * index + 1;
+				if (left >= size) {
+					return top;
+				}
+				int right = left + 1;
+				int first = right < size && before(nodes[right], nodes[left]) ? right : left;
+				if (!before(nodes[first], nodes[index])) {
+					return top;
+				}
+				swap(index, first);
+				index = first;
+			}
+		}
+
+		private boolean before(int a, int b) {
+			return tree[a] > tree[b] || (tree[a] == tree[b] && leftmost(a) < leftmost(b));
+		}
+
+		// Leaf position of the first value under a node
+		private int leftmost(int node) {
+			return node << (Integer.numberOfLeadingZeros(node) - depth);
+		}
+
+		private void swap(int a, int b) {
+			int node = nodes[a];
+			nodes[a] = nodes[b];
+			nodes[b] = node;
+		}
+	}
+
+	private static int leavesFor(int count) {
+		return Math.max(1, Integer.highestOneBit(Math.max(1, count - 1)) << 1);
+	}
+
+	private static long[][] trees(int leaves) {
+		long[][] trees = new long[RANKS.length][2 * leaves];
+		for (long[] tree : trees) {
+			Arrays.fill(tree, NONE);
+		}
+		return trees;
+	}
+
+	// Fill the inner nodes from the leaves
+	private static void summarize(long[][] trees, int leaves) {
+		for (long[] tree : trees) {
+			for (int node = leaves - 1; node > 0; node--) {
+				tree[node] = Math.max(tree[2 * node], tree[2 * node + 1]);
+			}
+		}
+	}
+}
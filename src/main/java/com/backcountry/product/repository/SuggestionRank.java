@@ -0,0 +1,54 @@
+package com.backcountry.product.repository;
+
+import com.backcountry.product.model.Product;
+
+import java.util.Locale;
+
+/**
+ * Signals type-ahead completions can be ranked by, higher first.
+ * A completion shared by several products ranks by the best of them.
+ */
+public enum SuggestionRank {
+
+	/** Units in stock. */
+	INVENTORY,
+	/** Creation time, newest first. */
+	NEWEST;
+
+	/**
+	 * @param product a product the completion stands for
+	 * @return the signal of the product, never {@link Long#MIN_VALUE}
+	 */
+	public long signal(Product product) {
+		return switch (this) {
+			case INVENTORY -> product.getInventory();
+			case NEWEST -> nanos(product);
+		};
+	}
+
+	/**
+	 * Resolve the rank request parameter, defaulting to inventory.
+	 * @param rank inventory, newest or recency (case-insensitive), may be null
+	 * @return the matching SuggestionRank
+	 */
+	public static SuggestionRank from(String rank) {
+		if (rank == null) return INVENTORY;
+
+		return switch (rank.toLowerCase(Locale.ROOT)) {
+			case "newest", "recency", "date" -> NEWEST;
+			default -> INVENTORY;
+		};
+	}
+
+	// Epoch nanoseconds, saturated for instants centuries away
+	private static long nanos(Product product) {
+		long seconds = product.getCreatedAt().getEpochSecond();
+		if (seconds >= Long.MAX_VALUE / 1_000_000_000L) {
+			return Long.MAX_VALUE;
+		}
+		if (seconds <= Long.MIN_VALUE / 1_000_000_000L) {
+			return Long.MIN_VALUE + 1;
+		}
+		return seconds * 1_000_000_000L + product.getCreatedAt().getNano();
+	}
+}
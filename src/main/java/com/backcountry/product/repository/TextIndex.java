@@ -0,0 +1,412 @@
+package com.backcountry.product.repository;
+
+import org.roaringbitmap.FastAggregation;
+import org.roaringbitmap.IntIterator;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Inverted index of product names and descriptions over the ordinals of a {@link BitmapIndex}.
+ *
+ * Tokens are kept sorted so a search term is looked up as the range of tokens it prefixes. Most
+ * tokens of a catalog (model numbers, rare words) occur in a single product, so a token's postings
+ * start as that one ordinal and its count, and only become bitmaps once a second product holds the
+ * token: one {@link RoaringBitmap} per occurrence count, the i-th holding the products that contain
+ * the token more than i times. Matching is then a union per term and an intersection across terms.
+ *
+ * Ranking avoids scoring every match. A product holding each term exactly once scores by its length
+ * alone, shorter first, so those products are read from per-length bitmaps in increasing length
+ * until the page is full. Only the products holding a term more than once, usually few, are scored
+ * one by one.
+ *
+ * Not thread-safe: the owning {@link BitmapIndex} guards it with its lock.
+ */
+final class TextIndex {
+
+	private final NavigableMap<String, Postings> tokens = new TreeMap<>();
+	// Number of tokens of each indexed ordinal, and the ordinals of each number of tokens
+	private int[] lengths = new int[1024];
+	private final NavigableMap<Integer, RoaringBitmap> byLength = new TreeMap<>();
+	private long documents;
+	private long totalLength;
+
+	void add(int ordinal, List<String> productTokens) {
+		for (Map.Entry<String, Integer> entry : counts(productTokens).entrySet()) {
+			tokens.computeIfAbsent(entry.getKey(), token -> new Postings()).add(ordinal, entry.getValue());
+		}
+		if (ordinal >= lengths.length) {
+			lengths = Arrays.copyOf(lengths, Math.max(ordinal + 1, lengths.length * 2));
+		}
+		lengths[ordinal] = productTokens.size();
+		byLength.computeIfAbsent(productTokens.size(), length -> new RoaringBitmap()).add(ordinal);
+		documents++;
+		totalLength += productTokens.size();
+	}
+
+	/**
+	 * Unindex the tokens a product was indexed with.
+	 */
+	void remove(int ordinal, List<String> productTokens) {
+		for (Map.Entry<String, Integer> entry : counts(productTokens).entrySet()) {
+			Postings postings = tokens.get(entry.getKey());
+			if (postings != null && postings.remove(ordinal, entry.getValue())) {
+				tokens.remove(entry.getKey());
+			}
+		}
+		RoaringBitmap sameLength = byLength.get(productTokens.size());
+		if (sameLength != null) {
+			sameLength.remove(ordinal);
+			if (sameLength.isEmpty()) {
+				byLength.remove(productTokens.size());
+			}
+		}
+		lengths[ordinal] = 0;
+		documents--;
+		totalLength -= productTokens.size();
+	}
+
+	void clear() {
+		tokens.clear();
+		lengths = new int[1024];
+		byLength.clear();
+		documents = 0;
+		totalLength = 0;
+	}
+
+	void optimize() {
+		tokens.values().forEach(Postings::optimize);
+		byLength.values().forEach(RoaringBitmap::runOptimize);
+	}
+
+	/**
+	 * @param terms search terms, each matching the tokens it prefixes
+	 * @return ordinals of the products matching every term, in a bitmap owned by the caller
+	 */
+	RoaringBitmap matching(List<String> terms) {
+		List<RoaringBitmap> parts = new ArrayList<>(terms.size());
+		for (String term : terms) {
+			parts.add(expansions(term).union());
+		}
+		parts.sort(Comparator.comparingLong(RoaringBitmap::getLongCardinality));
+		return parts.size() == 1 ? parts.get(0).clone() : FastAggregation.and(parts.iterator());
+	}
+
+	/**
+	 * Rank products by BM25, with document frequencies and lengths taken over the whole index.
+	 * @param terms search terms, each matching the tokens it prefixes
+	 * @param candidates ordinals of products matching every term, as computed by {@link #matching}
+	 *                   on the current state of the index
+	 * @param k number of best ordinals wanted
+	 * @return the k best ordinals, best first; equal scores in ordinal order
+	 */
+	int[] rank(List<String> terms, RoaringBitmap candidates, int k) {
+		double averageLength = (double) totalLength / Math.max(1, documents);
+		List<Expansions> expanded = new ArrayList<>(terms.size());
+		double[] idfs = new double[terms.size()];
+		RoaringBitmap repeated = new RoaringBitmap();
+		for (int t = 0; t < idfs.length; t++) {
+			Expansions expansions = expansions(terms.get(t));
+			expanded.add(expansions);
+			idfs[t] = FullText.idf(documents, expansions.union().getLongCardinality());
+			repeated.or(expansions.repeated());
+		}
+		repeated.and(candidates);
+
+		Ranking best = new Ranking((int) Math.min(k, candidates.getLongCardinality()));
+
+		// Products holding a term more than once are scored one by one
+		int[] docs = repeated.toArray();
+		double[] scores = new double[docs.length];
+		int[] frequencies = new int[docs.length];
+		for (int t = 0; t < idfs.length; t++) {
+			Arrays.fill(frequencies, 0);
+			expanded.get(t).countOccurrences(docs, repeated, frequencies);
+			for (int i = 0; i < docs.length; i++) {
+				scores[i] += FullText.score(idfs[t], frequencies[i], lengths[docs[i]], averageLength);
+			}
+		}
+		for (int i = 0; i < docs.length; i++) {
+			best.offer(scores[i], docs[i]);
+		}
+
+		// Every other product scores lower the longer it is, so the shortest k are the only ones needed
+		RoaringBitmap single = repeated.isEmpty() ? candidates : RoaringBitmap.andNot(candidates, repeated);
+		int taken = 0;
+		for (Map.Entry<Integer, RoaringBitmap> entry : byLength.entrySet()) {
+			if (taken >= k || single.isEmpty()) {
+				break;
+			}
+			RoaringBitmap members = RoaringBitmap.and(entry.getValue(), single);
+			if (members.isEmpty()) {
+				continue;
+			}
+			double score = 0;
+			for (double idf : idfs) {
+				score += FullText.score(idf, 1, entry.getKey(), averageLength);
+			}
+			IntIterator it = members.getIntIterator();
+			while (it.hasNext() && taken < k) {
+				best.offer(score, it.next());
+				taken++;
+			}
+		}
+		return best.sorted();
+	}
+
+	private Expansions expansions(String term) {
+		List<Postings> shared = new ArrayList<>();
+		Map<Integer, Integer> singleCounts = new HashMap<>();
+		for (Map.Entry<String, Postings> entry : tokens.tailMap(term, true).entrySet()) {
+			if (!FullText.matches(term, entry.getKey())) {
+				break;
+			}
+			Postings postings = entry.getValue();
+			if (postings.levels == null) {
+				singleCounts.merge(postings.ordinal, postings.count, Integer::sum);
+			} else {
+				shared.add(postings);
+			}
+		}
+		int[] singles = singleCounts.keySet().stream().mapToInt(Integer::intValue).sorted().toArray();
+		return new Expansions(shared, singles, singleCounts);
+	}
+
+	private static Map<String, Integer> counts(List<String> productTokens) {
+		Map<String, Integer> counts = new HashMap<>();
+		for (String token : productTokens) {
+			counts.merge(token, 1, Integer::sum);
+		}
+		return counts;
+	}
+
+	/**
+	 * Postings of the tokens a term prefixes: tokens held by several products, and the products of
+	 * the tokens held by one with their occurrence counts summed.
+	 */
+	private record Expansions(List<Postings> shared, int[] singles, Map<Integer, Integer> singleCounts) {
+
+		// Products holding any of the tokens
+		RoaringBitmap union() {
+			List<RoaringBitmap> parts = new ArrayList<>(shared.size() + 1);
+			for (Postings postings : shared) {
+				parts.add(postings.levels[0]);
+			}
+			if (singles.length > 0) {
+				parts.add(RoaringBitmap.bitmapOf(singles));
+			}
+			if (parts.isEmpty()) {
+				return new RoaringBitmap();
+			}
+			return parts.size() == 1 ? parts.get(0) : FastAggregation.or(parts.iterator());
+		}
+
+		// Products holding the tokens more than once in total
+		RoaringBitmap repeated() {
+			RoaringBitmap repeated = new RoaringBitmap();
+			RoaringBitmap seen = new RoaringBitmap();
+			List<RoaringBitmap> parts = new ArrayList<>(shared.size() + 1);
+			for (Postings postings : shared) {
+				parts.add(postings.levels[0]);
+				if (postings.levels.length > 1) {
+					repeated.or(postings.levels[1]);
+				}
+			}
+			if (singles.length > 0) {
+				parts.add(RoaringBitmap.bitmapOf(singles));
+				singleCounts.forEach((ordinal, count) -> {
+					if (count > 1) {
+						repeated.add(ordinal.intValue());
+					}
+				});
+			}
+			// A product in two of the parts holds two different tokens
+			for (int i = 0; i < parts.size(); i++) {
+				if (i > 0) {
+					repeated.or(RoaringBitmap.and(seen, parts.get(i)));
+				}
+				if (i < parts.size() - 1) {
+					seen.or(parts.get(i));
+				}
+			}
+			return repeated;
+		}
+
+		// Add each candidate's occurrences of the tokens to its frequency, docs being the candidates in order
+		void countOccurrences(int[] docs, RoaringBitmap candidates, int[] frequencies) {
+			for (int ordinal : singles) {
+				int position = Arrays.binarySearch(docs, ordinal);
+				if (position >= 0) {
+					frequencies[position] += singleCounts.get(ordinal);
+				}
+			}
+			for (Postings postings : shared) {
+				for (RoaringBitmap level : postings.levels) {
+					IntIterator it = RoaringBitmap.and(level, candidates).getIntIterator();
+					int from = 0;
+					while (it.hasNext()) {
+						int position = Arrays.binarySearch(docs, from, docs.length, it.next());
+						frequencies[position]++;
+						from = position + 1;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Products holding one token, and how many times each holds it.
+	 */
+	private static final class Postings {
+		// The only product holding the token while levels is null
+		private int ordinal;
+		private int count;
+		// levels[i] holds the products containing the token more than i times
+		private RoaringBitmap[] levels;
+
+		void add(int product, int occurrences) {
+			if (levels == null && count == 0) {
+				ordinal = product;
+				count = occurrences;
+				return;
+			}
+			if (levels == null) {
+				levels = new RoaringBitmap[0];
+				set(ordinal, count);
+				count = 0;
+			}
+			set(product, occurrences);
+		}
+
+		// Returns true once no product holds the token
+		boolean remove(int product, int occurrences) {
+			if (levels == null) {
+				if (ordinal == product) {
+					count = 0;
+				}
+				return count == 0;
+			}
+			for (int level = 0; level < Math.min(occurrences, levels.length); level++) {
+				levels[level].remove(product);
+			}
+			int used = levels.length;
+			while (used > 0 && levels[used - 1].isEmpty()) {
+				used--;
+			}
+			if (used < levels.length) {
+				levels = Arrays.copyOf(levels, used);
+			}
+			return used == 0;
+		}
+
+		void optimize() {
+			if (levels != null) {
+				for (RoaringBitmap level : levels) {
+					level.runOptimize();
+				}
+			}
+		}
+
+		private void set(int product, int occurrences) {
+			if (levels.length < occurrences) {
+				int used = levels.length;
+				levels = Arrays.copyOf(levels, occurrences);
+				for (int level = used; level < occurrences; level++) {
+					levels[level] = new RoaringBitmap();
+				}
+			}
+			for (int level = 0; level < occurrences; level++) {
+				levels[level].add(product);
+			}
+		}
+	}
+
+	/**
+	 * The k best (score, ordinal) pairs offered: higher scores first, then lower ordinals. Keeps the
+	 * worst retained pair at the top of a min-heap.
+	 */
+	private static final class Ranking {
+		private final double[] scores;
+		private final int[] ordinals;
+		private int size;
+
+		Ranking(int k) {
+			this.scores = new double[k];
+			this.ordinals = new int[k];
+		}
+
+		void offer(double score, int ordinal) {
+			if (size < scores.length) {
+				scores[size] = score;
+				ordinals[size] = ordinal;
+				siftUp(size++);
+			} else if (size > 0 && worse(scores[0], ordinals[0], score, ordinal)) {
+				scores[0] = score;
+				ordinals[0] = ordinal;
+				siftDown(0, size);
+			}
+		}
+
+		// Empty the heap, best first
+		int[] sorted() {
+			for (int end = size - 1; end > 0; end--) {
+				swap(0, end);
+				siftDown(0, end);
+			}
+			int[] sorted = Arrays.copyOf(ordinals, size);
+			size = 0;
+			return sorted;
+		}
+
+		private static boolean worse(double score, int ordinal, double otherScore, int otherOrdinal) {
+			return score < otherScore || (score == otherScore && ordinal > otherOrdinal);
+		}
+
+		private boolean worse(int a, int b) {
+			return worse(scores[a], ordinals[a], scores[b], ordinals[b]);
+		}
+
+		private void siftUp(int index) {
+			while (index > 0) {
+				int parent = (index - 1) >>> 1;
+				if (!worse(index, parent)) {
+					return;
+				}
+				swap(index, parent);
+				index = parent;
+			}
+		}
+
+		private void siftDown(int index, int limit) {
+			while (true) {
+				int left = 2 * index + 1;
+				if (left >= limit) {
+					return;
+				}
+				int right = left + 1;
+				int worst = right < limit && worse(right, left) ? right : left;
+				if (!worse(worst, index)) {
+					return;
+				}
+				swap(index, worst);
+				index = worst;
+			}
+		}
+
+		private void swap(int a, int b) {
+			double score = scores[a];
+			scores[a] = scores[b];
+			scores[b] = score;
+			int ordinal = ordinals[a];
+			ordinals[a] = ordinals[b];
+			ordinals[b] = ordinal;
+		}
+	}
+}
@@ -0,0 +1,102 @@
+package com.backcountry.product.repository;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Bounded selection of the k first elements of an ordering.
+ * Keeps a max-heap of at most k elements, so offering n elements costs O(n log k) time and
+ * O(k) space instead of the O(n log n) time and O(n) space of a full sort.
+ * Not thread-safe.
+ * @param <T> element type
+ */
+final class TopK<T> {
+
+	private final int k;
+	private final Comparator<? super T> order;
+	private final Object[] heap;
+	private int size;
+
+	TopK(int k, Comparator<? super T> order) {
+		if (k < 0) {
+			throw new IllegalArgumentException("k must not be negative: " + k);
+		}
+		this.k = k;
+		this.order = order;
+		this.heap = new Object[k];
+	}
+
+	/**
+	 * Offer an element, keeping it only if it is among the k first seen so far.
+	 * @param element the element to offer
+	 */
+	void offer(T element) {
+		if (size < k) {
+			heap[size] = element;
+			siftUp(size++);
+		} else if (k > 0 && order.compare(element, top()) < 0) {
+			// Replace the current last element in place, no allocation
+			heap[0] = element;
+			siftDown(0);
+		}
+	}
+
+	int size() {
+		return size;
+	}
+
+	/**
+	 * @return the retained elements in order
+	 */
+	@SuppressWarnings("unchecked")
+	List<T> sorted() {
+		T[] elements = (T[]) Arrays.copyOf(heap, size);
+		Arrays.sort(elements, order);
+		return Arrays.asList(elements);
+	}
+
+	@SuppressWarnings("unchecked")
+	private T top() {
+		return (T) heap[0];
+	}
+
+	@SuppressWarnings("unchecked")
+	private int compare(int a, int b) {
+		return order.compare((T) heap[a], (T) heap[b]);
+	}
+
+	// The heap root is the greatest retained element
+	private void siftUp(int index) {
+		while (index > 0) {
+			int parent = (index - 1) >>> 1;
+			if (compare(index, parent) <= 0) {
+				return;
+			}
+			swap(index, parent);
+			index = parent;
+		}
+	}
+
+	private void siftDown(int index) {
+		while (true) {
+			int left = 2 * index + 1;
+			if (left >= size) {
+				return;
+			}
+			int right = left + 1;
+			int largest = right < size && compare(right, left) > 0 ? right : left;
+			if (compare(index, largest) >= 0) {
+				return;
+			}
+			swap(index, largest);
+			index = largest;
+		}
+	}
+
+	private void swap(int a, int b) {
+		Object tmp = heap[a];
+		heap[a] = heap[b];
+		heap[b] = tmp;
+	}
+}
@@ -0,0 +1,100 @@
+package com.backcountry.product.repository.columnar;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Append-only storage for variable-length values outside the Java heap.
+ * A value is addressed by its chunk index (high 32 bits) and offset within the chunk (low 32 bits)
+ * and never spans two chunks. Space released by {@link #free} is only counted; the owner compacts
+ * by copying live values into a new arena. Not thread-safe.
+ */
+final class ByteArena {
+
+	private static final int CHUNK_BYTES = 1 << 20;
+
+	private final List<ByteBuffer> chunks = new ArrayList<>();
+	private ByteBuffer current;
+	private long allocated;
+	private long live;
+
+	/**
+	 * Store bytes and return their address.
+	 */
+	long write(byte[] bytes) {
+		ByteBuffer chunk = reserve(bytes.length);
+		int offset = chunk.position();
+		chunk.put(bytes);
+		return address(offset);
+	}
+
+	/**
+	 * Store ints and return their address.
+	 */
+	long writeInts(int[] values) {
+		ByteBuffer chunk = reserve(values.length * Integer.BYTES);
+		int offset = chunk.position();
+		for (int value : values) {
+			chunk.putInt(value);
+		}
+		return address(offset);
+	}
+
+	byte[] read(long address, int length) {
+		byte[] bytes = new byte[length];
+		chunk(address).get(offset(address), bytes);
+		return bytes;
+	}
+
+	int readInt(long address, int index) {
+		return chunk(address).getInt(offset(address) + index * Integer.BYTES);
+	}
+
+	/**
+	 * Record that a value of the given length is no longer referenced.
+	 */
+	void free(int length) {
+		live -= length;
+	}
+
+	long liveBytes() {
+		return live;
+	}
+
+	long allocatedBytes() {
+		return allocated;
+	}
+
+	void clear() {
+		chunks.clear();
+		current = null;
+		allocated = 0;
+		live = 0;
+	}
+
+	private ByteBuffer reserve(int length) {
+		if (current == null || current.remaining() < length) {
+			// Oversized values get a chunk of their own
+			int capacity = Math.max(CHUNK_BYTES, length);
+			current = ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder());
+			chunks.add(current);
+			allocated += capacity;
+		}
+		live += length;
+		return current;
+	}
+
+	private long address(int offset) {
+		return ((long) (chunks.size() - 1) << 32) | offset;
+	}
+
+	private ByteBuffer chunk(long address) {
+		return chunks.get((int) (address >>> 32));
+	}
+
+	private static int offset(long address) {
+		return (int) address;
+	}
+}
@@ -0,0 +1,1046 @@
+package com.backcountry.product.repository.columnar;
+
+import com.backcountry.product.model.CatalogDictionary;
+import com.backcountry.product.model.Product;
+import com.backcountry.product.repository.FacetCounts;
+import com.backcountry.product.repository.FullText;
+import com.backcountry.product.repository.ProductQuery;
+import com.backcountry.product.repository.ProductRepository;
+import com.backcountry.product.repository.ProductSort;
+import com.backcountry.product.repository.QueryExplanation;
+import com.backcountry.product.repository.QueryPlan;
+import com.backcountry.product.repository.Suggestion;
+import com.backcountry.product.repository.SuggestionRank;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * ProductRepository that keeps products off the Java heap in columnar form.
+ *
+ * Each attribute is a primitive {@link OffHeapColumn}: ids as two longs, price as a long count of
+ * 1/10,000 units plus its original scale, timestamps as epoch nanoseconds, brand as a dictionary
+ * code. Names, descriptions and category codes live in a {@link ByteArena}. The heap only holds the
+ * dictionaries and a primitive {@link IdIndex}, so the garbage collector has almost nothing to trace
+ * per product. Queries scan the primitive columns and only the returned page is materialized into
+ * {@link Product} instances.
+ *
+ * There are no secondary indexes or ordered views: every query is a column scan followed by a
+ * bounded top-k selection, trading query latency on large catalogs for a much smaller heap. Search
+ * terms are matched by decoding and tokenizing the names and descriptions of the scanned rows.
+ * An export reads the rows live when it started a chunk at a time; a writer about to change one of
+ * those rows first hands the export its current version.
+ * Suggestions compare the packed first characters of each name before decoding it.
+ * Every write stamps the rows it changes with the next catalog version, but no history is kept: a
+ * query pinned to an earlier version reads the current catalog.
+ * Reads share a read lock; writes take the write lock.
+ */
+public class ColumnarProductRepository implements ProductRepository {
+
+	/** Decimal places of the stored price units. */
+	static final int PRICE_SCALE = 4;
+
+	// Name prefix of a name whose first characters do not fit in 8 bits once case-folded
+	private static final long NO_PREFIX = -1L;
+
+	// Compact the arena once it holds more dead than live bytes beyond this size
+	private static final long COMPACTION_MIN_BYTES = 64L << 20;
+
+	// Rows an export materializes per read lock
+	private static final int EXPORT_CHUNK_ROWS = 1024;
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	private final OffHeapColumn live = new OffHeapColumn(Byte.BYTES);
+	private final OffHeapColumn idHigh = new OffHeapColumn(Long.BYTES);
+	private final OffHeapColumn idLow = new OffHeapColumn(Long.BYTES);
+	private final OffHeapColumn price = new OffHeapColumn(Long.BYTES);
+	private final OffHeapColumn priceScale = new OffHeapColumn(Byte.BYTES);
+	private final OffHeapColumn inventory = new OffHeapColumn(Integer.BYTES);
+	private final OffHeapColumn brand = new OffHeapColumn(Integer.BYTES);
+	private final OffHeapColumn createdAt = new OffHeapColumn(Long.BYTES);
+	private final OffHeapColumn updatedAt = new OffHeapColumn(Long.BYTES);
+	private final OffHeapColumn name = new OffHeapColumn(Long.BYTES);
+	private final OffHeapColumn nameLength = new OffHeapColumn(Integer.BYTES);
+	private final OffHeapColumn namePrefix = new OffHeapColumn(Long.BYTES);
+	private final OffHeapColumn description = new OffHeapColumn(Long.BYTES);
+	private final OffHeapColumn descriptionLength = new OffHeapColumn(Integer.BYTES);
+	private final OffHeapColumn categories = new OffHeapColumn(Long.BYTES);
+	private final OffHeapColumn categoryCount = new OffHeapColumn(Integer.BYTES);
+	private final OffHeapColumn version = new OffHeapColumn(Long.BYTES);
+
+	private final List<OffHeapColumn> columns = List.of(live, idHigh, idLow, price, priceScale, inventory, brand,
+			createdAt, updatedAt, name, nameLength, namePrefix, description, descriptionLength, categories, categoryCount,
+			version);
+
+	private final Dictionary brands = new Dictionary();
+	private final Dictionary categoryCodes = new Dictionary();
+	private final IdIndex ids = new IdIndex();
+
+	private ByteArena arena = new ByteArena();
+
+	// Rows below rowCount are either live or on the free list
+	private int rowCount;
+	private int[] freeRows = new int[16];
+	private int freeCount;
+
+	// Version of the last write, moved under the write lock. Starts at the wall clock in microseconds
+	// like the heap store's, so versions issued before a restart are older than any after.
+	private volatile long catalogVersion = TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis());
+
+	// Exports in progress, registered and notified of changes under the write lock
+	private final List<RowExport> exports = new ArrayList<>();
+
+	@Override
+	public Product save(Product product) {
+		return saveAll(List.of(product)).get(0);
+	}
+
+	/**
+	 * Every product is validated and encoded before the write lock is taken, once for the whole
+	 * batch, so a product that cannot be stored (for example a price with too many decimal places)
+	 * rejects the batch before any column changes.
+	 */
+	@Override
+	public List<Product> saveAll(List<Product> products) {
+		List<Encoded> encoded = products.stream().map(Encoded::of).toList();
+		List<Product> saved = new ArrayList<>(encoded.size());
+
+		lock.writeLock().lock();
+		try {
+			for (Encoded row : encoded) {
+				saved.add(write(row));
+			}
+			compactIfWasteful();
+		} finally {
+			lock.writeLock().unlock();
+		}
+		return saved;
+	}
+
+	@Override
+	public Optional<Product> compareAndSave(Product product, long expectedVersion) {
+		Encoded encoded = Encoded.of(product);
+
+		lock.writeLock().lock();
+		try {
+			if (!isAt(product.getId(), expectedVersion)) {
+				return Optional.empty();
+			}
+			Product saved = write(encoded);
+			compactIfWasteful();
+			return Optional.of(saved);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public List<Optional<Product>> compareAndSaveAll(List<Product> products, List<Long> expectedVersions) {
+		List<Encoded> encoded = products.stream().map(Encoded::of).toList();
+		List<Optional<Product>> saved = new ArrayList<>(encoded.size());
+
+		lock.writeLock().lock();
+		try {
+			for (int i = 0; i < encoded.size(); i++) {
+				saved.add(isAt(products.get(i).getId(), expectedVersions.get(i))
+						? Optional.of(write(encoded.get(i)))
+						: Optional.empty());
+			}
+			compactIfWasteful();
+		} finally {
+			lock.writeLock().unlock();
+		}
+		return saved;
+	}
+
+	@Override
+	public boolean compareAndDelete(UUID id, long expectedVersion) {
+		lock.writeLock().lock();
+		try {
+			return isAt(id, expectedVersion) && delete(id);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public long version() {
+		return catalogVersion;
+	}
+
+	@Override
+	public Optional<Product> findById(UUID id) {
+		lock.readLock().lock();
+		try {
+			int row = ids.get(id);
+			return row < 0 ? Optional.empty() : Optional.of(materialize(row));
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Rows are materialized a chunk at a time under the read lock and passed on outside it, so
+	 * neither the heap nor writers depend on the catalog size or the consumer's speed. The export only
+	 * holds a bitset of the rows still to read, plus the versions writers hand it of rows they change
+	 * before it gets to them.
+	 */
+	@Override
+	public void export(Consumer<Product> sink) {
+		RowExport export;
+		lock.writeLock().lock();
+		try {
+			BitSet pending = new BitSet(rowCount);
+			for (int row = 0; row < rowCount; row++) {
+				if (live.getByte(row) != 0) {
+					pending.set(row);
+				}
+			}
+			export = new RowExport(pending);
+			exports.add(export);
+		} finally {
+			lock.writeLock().unlock();
+		}
+
+		try {
+			List<Product> chunk = new ArrayList<>(EXPORT_CHUNK_ROWS);
+			int next = 0;
+			while (true) {
+				lock.readLock().lock();
+				try {
+					// Versions handed over by writers only come from pending rows, so both run out together
+					while (!export.preserved.isEmpty() && chunk.size() < EXPORT_CHUNK_ROWS) {
+						chunk.add(export.preserved.poll());
+					}
+					for (int row = export.pending.nextSetBit(next); row >= 0 && chunk.size() < EXPORT_CHUNK_ROWS;
+							row = export.pending.nextSetBit(row + 1)) {
+						chunk.add(materialize(row));
+						export.pending.clear(row);
+						next = row + 1;
+					}
+				} finally {
+					lock.readLock().unlock();
+				}
+				if (chunk.isEmpty()) {
+					return;
+				}
+				chunk.forEach(sink);
+				chunk.clear();
+			}
+		} finally {
+			lock.writeLock().lock();
+			try {
+				exports.remove(export);
+			} finally {
+				lock.writeLock().unlock();
+			}
+		}
+	}
+
+	@Override
+	public List<Product> findAll() {
+		lock.readLock().lock();
+		try {
+			List<Product> products = new ArrayList<>(ids.size());
+			for (int row = 0; row < rowCount; row++) {
+				if (live.getByte(row) != 0) {
+					products.add(materialize(row));
+				}
+			}
+			return products;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public List<Product> find(ProductQuery query) {
+		return execute(query).products();
+	}
+
+	@Override
+	public QueryExplanation explain(ProductQuery query) {
+		return execute(query).explanation();
+	}
+
+	/**
+	 * A column scan like {@link #find}, counting the brand codes, category codes and price ranges of
+	 * the matching rows. Brand codes differing only in case are merged afterwards.
+	 */
+	@Override
+	public FacetCounts facets(ProductQuery query, List<BigDecimal> priceBoundaries) {
+		lock.readLock().lock();
+		try {
+			boolean[] brandMatches = query.brand() == null ? null : brandsMatching(query.brand());
+			int category = query.category() == null ? -1 : categoryCodes.code(query.category());
+			long minUnits = query.priceMin() == null ? Long.MIN_VALUE : ceilUnits(query.priceMin());
+			long maxUnits = query.priceMax() == null ? Long.MAX_VALUE : floorUnits(query.priceMax());
+			boolean unknownCategory = query.category() != null && category < 0;
+			long[] boundaryUnits = priceBoundaries.stream().mapToLong(ColumnarProductRepository::ceilUnits).toArray();
+
+			long total = 0;
+			long[] brandCounts = new long[brands.size()];
+			long[] categoryCounts = new long[categoryCodes.size()];
+			long[] priceCounts = new long[boundaryUnits.length + 1];
+			for (int first = 0; first < rowCount && !unknownCategory; first += OffHeapColumn.SEGMENT_ROWS) {
+				int segment = first >>> OffHeapColumn.SEGMENT_SHIFT;
+				ByteBuffer lives = live.segment(segment);
+				ByteBuffer brandCodes = brand.segment(segment);
+				ByteBuffer prices = price.segment(segment);
+				int rows = Math.min(OffHeapColumn.SEGMENT_ROWS, rowCount - first);
+
+				for (int i = 0; i < rows; i++) {
+					if (lives.get(i) == 0) {
+						continue;
+					}
+					int brandCode = brandCodes.getInt(i * Integer.BYTES);
+					if (brandMatches != null && !brandMatches[brandCode]) {
+						continue;
+					}
+					long units = prices.getLong(i * Long.BYTES);
+					if (units < minUnits || units > maxUnits) {
+						continue;
+					}
+					int row = first + i;
+					if (category >= 0 && !hasCategory(row, category)) {
+						continue;
+					}
+					total++;
+					brandCounts[brandCode]++;
+					long address = categories.getLong(row);
+					for (int c = 0, count = categoryCount.getInt(row); c < count; c++) {
+						// A product listing a category twice counts once
+						int code = arena.readInt(address, c);
+						if (!hasCategory(address, c, code)) {
+							categoryCounts[code]++;
+						}
+					}
+					int range = 0;
+					while (range < boundaryUnits.length && units >= boundaryUnits[range]) {
+						range++;
+					}
+					priceCounts[range]++;
+				}
+			}
+
+			Map<String, String> brandLabels = new HashMap<>();
+			Map<String, Long> brandTotals = new HashMap<>();
+			for (int code = 0; code < brandCounts.length; code++) {
+				if (brandCounts[code] > 0) {
+					String value = brands.decode(code);
+					String label = brandLabels.computeIfAbsent(CatalogDictionary.fold(value), folded -> value);
+					brandTotals.merge(label, brandCounts[code], Long::sum);
+				}
+			}
+			Map<String, Long> categoryTotals = new HashMap<>();
+			for (int code = 0; code < categoryCounts.length; code++) {
+				if (categoryCounts[code] > 0) {
+					categoryTotals.put(categoryCodes.decode(code), categoryCounts[code]);
+				}
+			}
+			return new FacetCounts(total, brandTotals, categoryTotals, Arrays.stream(priceCounts).boxed().toList());
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * A scan of the name, brand and signal columns. Names are only decoded when their packed prefix
+	 * agrees with the typed one, and brands are matched once per dictionary code.
+	 */
+	@Override
+	public List<Suggestion> suggest(String prefix, SuggestionRank rank, int limit) {
+		lock.readLock().lock();
+		try {
+			boolean[] brandMatches = new boolean[brands.size()];
+			for (int code = 0; code < brandMatches.length; code++) {
+				brandMatches[code] = startsWithIgnoringCase(brands.decode(code), prefix);
+			}
+			long[] brandBest = new long[brands.size()];
+			Arrays.fill(brandBest, Long.MIN_VALUE);
+			long packed = namePrefix(prefix);
+			int packedChars = Math.min(prefix.length(), Long.BYTES);
+			long mask = packedChars == 0 ? 0 : -1L << (Byte.SIZE * (Long.BYTES - packedChars));
+
+			// Names differing only in case are one completion, keyed the way CASE_INSENSITIVE_ORDER folds them
+			Map<String, Candidate> names = new HashMap<>();
+			for (int row = 0; row < rowCount; row++) {
+				if (live.getByte(row) == 0) {
+					continue;
+				}
+				long signal = rank == SuggestionRank.INVENTORY ? inventory.getInt(row) : createdAt.getLong(row);
+				int brandCode = brand.getInt(row);
+				if (brandMatches[brandCode]) {
+					brandBest[brandCode] = Math.max(brandBest[brandCode], signal);
+				}
+				long rowPrefix = namePrefix.getLong(row);
+				if (packed != NO_PREFIX && rowPrefix != NO_PREFIX && ((rowPrefix ^ packed) & mask) != 0) {
+					continue;
+				}
+				String value = nameOf(row);
+				if (startsWithIgnoringCase(value, prefix)) {
+					names.merge(fold(value), new Candidate(value, Suggestion.Field.NAME, signal),
+							(first, other) -> other.signal() > first.signal() ? new Candidate(first.text(), first.field(), other.signal()) : first);
+				}
+			}
+
+			Map<String, Candidate> brandCandidates = new HashMap<>();
+			for (int code = 0; code < brandBest.length; code++) {
+				if (brandBest[code] != Long.MIN_VALUE) {
+					String value = brands.decode(code);
+					long signal = brandBest[code];
+					brandCandidates.merge(fold(value), new Candidate(value, Suggestion.Field.BRAND, signal),
+							(first, other) -> other.signal() > first.signal() ? new Candidate(first.text(), first.field(), other.signal()) : first);
+				}
+			}
+
+			return Stream.concat(names.values().stream(), brandCandidates.values().stream())
+					.sorted(Candidate.ORDER)
+					.limit(limit)
+					.map(candidate -> new Suggestion(candidate.text(), candidate.field()))
+					.toList();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public void deleteById(UUID id) {
+		deleteAllById(List.of(id));
+	}
+
+	@Override
+	public List<UUID> deleteAllById(Collection<UUID> ids) {
+		List<UUID> deleted = new ArrayList<>();
+		lock.writeLock().lock();
+		try {
+			for (UUID id : ids) {
+				if (delete(id)) {
+					deleted.add(id);
+				}
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+		return deleted;
+	}
+
+	@Override
+	public void clear() {
+		lock.writeLock().lock();
+		try {
+			for (RowExport export : exports) {
+				for (int row = export.pending.nextSetBit(0); row >= 0; row = export.pending.nextSetBit(row + 1)) {
+					export.preserved.add(materialize(row));
+				}
+				export.pending.clear();
+			}
+			columns.forEach(OffHeapColumn::clear);
+			arena = new ByteArena();
+			brands.clear();
+			categoryCodes.clear();
+			ids.clear();
+			rowCount = 0;
+			freeCount = 0;
+			catalogVersion++;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * @return bytes held outside the Java heap by columns and the arena
+	 */
+	public long offHeapBytes() {
+		lock.readLock().lock();
+		try {
+			return columns.stream().mapToLong(OffHeapColumn::allocatedBytes).sum() + arena.allocatedBytes();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	// -------------------------
+	// Query execution
+	// -------------------------
+
+	private Execution execute(ProductQuery query) {
+		lock.readLock().lock();
+		try {
+			RowOrder order = new RowOrder(query);
+			RowTopK topK = new RowTopK((int) Math.min(query.window(), ids.size()), order);
+			TextScan search = query.terms() == null ? null : new TextScan(query.terms());
+
+			boolean[] brandMatches = query.brand() == null ? null : brandsMatching(query.brand());
+			int category = query.category() == null ? -1 : categoryCodes.code(query.category());
+			long minUnits = query.priceMin() == null ? Long.MIN_VALUE : ceilUnits(query.priceMin());
+			long maxUnits = query.priceMax() == null ? Long.MAX_VALUE : floorUnits(query.priceMax());
+			boolean unknownCategory = query.category() != null && category < 0;
+
+			// Evaluate the filters on the primitive columns a segment at a time, then offer the row to the page heap
+			long scanned = 0;
+			long matched = 0;
+			for (int first = 0; first < rowCount && !unknownCategory; first += OffHeapColumn.SEGMENT_ROWS) {
+				int segment = first >>> OffHeapColumn.SEGMENT_SHIFT;
+				ByteBuffer lives = live.segment(segment);
+				ByteBuffer brandCodes = brand.segment(segment);
+				ByteBuffer prices = price.segment(segment);
+				int rows = Math.min(OffHeapColumn.SEGMENT_ROWS, rowCount - first);
+
+				for (int i = 0; i < rows; i++) {
+					if (lives.get(i) == 0) {
+						continue;
+					}
+					scanned++;
+					int row = first + i;
+					// Relevance needs term statistics over every product, so those rows are tokenized first
+					int[] frequencies = query.relevance() ? search.count(row) : null;
+					if (brandMatches != null && !brandMatches[brandCodes.getInt(i * Integer.BYTES)]) {
+						continue;
+					}
+					long units = prices.getLong(i * Long.BYTES);
+					if (units < minUnits || units > maxUnits) {
+						continue;
+					}
+					if (category >= 0 && !hasCategory(row, category)) {
+						continue;
+					}
+					if (search != null && !TextScan.matches(frequencies != null ? frequencies : search.frequencies(row))) {
+						continue;
+					}
+					if (!order.isAfterAnchor(row)) {
+						continue;
+					}
+					matched++;
+					if (query.relevance()) {
+						search.keep(row, frequencies);
+					} else {
+						topK.offer(row);
+					}
+				}
+			}
+
+			int[] selected = query.relevance() ? search.ranked(query.window()) : topK.sorted();
+			int from = (int) Math.min(query.offset(), selected.length);
+			List<Product> page = new ArrayList<>(selected.length - from);
+			for (int i = from; i < selected.length; i++) {
+				page.add(materialize(selected[i]));
+			}
+
+			// Relevance ranking holds every match; sorted pages keep at most the window
+			QueryPlan plan = new QueryPlan(QueryPlan.AccessPath.COLUMN_SCAN,
+					List.of(),
+					query.limit() == null || query.relevance() ? QueryPlan.OrderStrategy.SORT : QueryPlan.OrderStrategy.TOP_K,
+					ids.size());
+			return new Execution(page, new QueryExplanation(plan, scanned, matched, page.size()));
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	private boolean[] brandsMatching(String requested) {
+		boolean[] matches = new boolean[brands.size()];
+		for (int code = 0; code < matches.length; code++) {
+			matches[code] = brands.decode(code).equalsIgnoreCase(requested);
+		}
+		return matches;
+	}
+
+	private static boolean startsWithIgnoringCase(String value, String prefix) {
+		return value.regionMatches(true, 0, prefix, 0, prefix.length());
+	}
+
+	private static String fold(String value) {
+		StringBuilder folded = new StringBuilder(value.length());
+		for (int i = 0; i < value.length(); i++) {
+			folded.append(Character.toLowerCase(Character.toUpperCase(value.charAt(i))));
+		}
+		return folded.toString();
+	}
+
+	private boolean hasCategory(int row, int category) {
+		return hasCategory(categories.getLong(row), categoryCount.getInt(row), category);
+	}
+
+	// Whether one of the first count category codes at address is the given one
+	private boolean hasCategory(long address, int count, int category) {
+		for (int i = 0; i < count; i++) {
+			if (arena.readInt(address, i) == category) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * {@link ProductSort} over rows, read straight from the columns. Names are compared on their
+	 * packed prefix and only decoded when prefixes tie. Must agree exactly with
+	 * {@link ProductSort#comparator()}.
+	 */
+	private final class RowOrder implements RowTopK.IntOrder {
+		private final ProductSort sort;
+		private final int[] brandRanks;
+		private final Product anchor;
+		private final long anchorKey;
+
+		// The heap offers every candidate against its current top, so remember the last decoded name
+		private int cachedRow = -1;
+		private String cachedName;
+
+		RowOrder(ProductQuery query) {
+			this.sort = query.sort();
+			this.brandRanks = sort == ProductSort.BRAND ? brandRanks() : null;
+			this.anchor = query.after();
+			this.anchorKey = anchor == null ? 0 : switch (sort) {
+				case NEWEST -> toNanos(anchor.getCreatedAt());
+				case NAME -> namePrefix(anchor.getName());
+				case PRICE, BRAND -> 0;
+			};
+		}
+
+		@Override
+		public int compare(int a, int b) {
+			int result = switch (sort) {
+				case NEWEST -> Long.compare(createdAt.getLong(b), createdAt.getLong(a));
+				case PRICE -> Long.compare(price.getLong(a), price.getLong(b));
+				case BRAND -> Integer.compare(brandRanks[brand.getInt(a)], brandRanks[brand.getInt(b)]);
+				case NAME -> compareNames(a, b);
+			};
+			return result != 0 ? result : compareIds(idHigh.getLong(a), idLow.getLong(a), idHigh.getLong(b), idLow.getLong(b));
+		}
+
+		boolean isAfterAnchor(int row) {
+			if (anchor == null) {
+				return true;
+			}
+			int result = switch (sort) {
+				case NEWEST -> Long.compare(anchorKey, createdAt.getLong(row));
+				case PRICE -> comparePrice(price.getLong(row), anchor.getPrice());
+				case NAME -> compareToAnchorName(row);
+				case BRAND -> String.CASE_INSENSITIVE_ORDER.compare(brands.decode(brand.getInt(row)), anchor.getBrand());
+			};
+			if (result == 0) {
+				UUID id = anchor.getId();
+				result = compareIds(idHigh.getLong(row), idLow.getLong(row), id.getMostSignificantBits(), id.getLeastSignificantBits());
+			}
+			return result > 0;
+		}
+
+		// Names are only decoded when the prefixes cannot decide
+		private int compareNames(int a, int b) {
+			long prefixA = namePrefix.getLong(a);
+			long prefixB = namePrefix.getLong(b);
+			if (prefixA != NO_PREFIX && prefixB != NO_PREFIX && prefixA != prefixB) {
+				return Long.compareUnsigned(prefixA, prefixB);
+			}
+			if (b != cachedRow) {
+				cachedRow = b;
+				cachedName = nameOf(b);
+			}
+			return String.CASE_INSENSITIVE_ORDER.compare(nameOf(a), cachedName);
+		}
+
+		private int compareToAnchorName(int row) {
+			long prefix = namePrefix.getLong(row);
+			if (prefix != NO_PREFIX && anchorKey != NO_PREFIX && prefix != anchorKey) {
+				return Long.compareUnsigned(prefix, anchorKey);
+			}
+			return String.CASE_INSENSITIVE_ORDER.compare(nameOf(row), anchor.getName());
+		}
+	}
+
+	/**
+	 * Search terms of one query, matched against the tokens of each row's name and description.
+	 * When ranking, every live row is counted towards the BM25 statistics and the occurrences of each
+	 * term in the matching rows are kept, so scores can only be computed once the scan is complete.
+	 * Scores add up the terms in the same order as the heap repository, so both score equally.
+	 */
+	private final class TextScan {
+		private final List<String> terms;
+		private final long[] documentFrequencies;
+		private long documents;
+		private long totalLength;
+		// Kept rows, their token counts and their occurrences of each term
+		private int[] rows = new int[16];
+		private int[] lengths = new int[16];
+		private int[][] occurrences = new int[16][];
+		private int kept;
+		// Token count of the row last passed to frequencies
+		private int length;
+
+		TextScan(List<String> terms) {
+			this.terms = terms;
+			this.documentFrequencies = new long[terms.size()];
+		}
+
+		// Occurrences of each term in a row, also counted towards the statistics of the catalog
+		int[] count(int row) {
+			int[] frequencies = frequencies(row);
+			documents++;
+			totalLength += length;
+			for (int t = 0; t < frequencies.length; t++) {
+				if (frequencies[t] > 0) {
+					documentFrequencies[t]++;
+				}
+			}
+			return frequencies;
+		}
+
+		// Occurrences of each term in a row
+		int[] frequencies(int row) {
+			String text = nameOf(row) + " " + new String(arena.read(description.getLong(row), descriptionLength.getInt(row)), StandardCharsets.UTF_8);
+			List<String> tokens = FullText.tokens(text);
+			int[] frequencies = new int[terms.size()];
+			for (String token : tokens) {
+				for (int t = 0; t < frequencies.length; t++) {
+					if (FullText.matches(terms.get(t), token)) {
+						frequencies[t]++;
+					}
+				}
+			}
+			length = tokens.size();
+			return frequencies;
+		}
+
+		static boolean matches(int[] frequencies) {
+			for (int frequency : frequencies) {
+				if (frequency == 0) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		// Keep a matching row, whose frequencies were just counted
+		void keep(int row, int[] frequencies) {
+			if (kept == rows.length) {
+				rows = Arrays.copyOf(rows, kept * 2);
+				lengths = Arrays.copyOf(lengths, kept * 2);
+				occurrences = Arrays.copyOf(occurrences, kept * 2);
+			}
+			rows[kept] = row;
+			lengths[kept] = length;
+			occurrences[kept] = frequencies;
+			kept++;
+		}
+
+		/**
+		 * @return the best kept rows by score, best first; equal scores in row order
+		 */
+		int[] ranked(long window) {
+			double averageLength = (double) totalLength / Math.max(1, documents);
+			double[] scores = new double[kept];
+			for (int t = 0; t < terms.size(); t++) {
+				double idf = FullText.idf(documents, documentFrequencies[t]);
+				for (int i = 0; i < kept; i++) {
+					scores[i] += FullText.score(idf, occurrences[i][t], lengths[i], averageLength);
+				}
+			}
+			// Kept positions are in row order
+			RowTopK best = new RowTopK((int) Math.min(window, kept), (a, b) -> {
+				int result = Double.compare(scores[b], scores[a]);
+				return result != 0 ? result : Integer.compare(a, b);
+			});
+			for (int i = 0; i < kept; i++) {
+				best.offer(i);
+			}
+			return Arrays.stream(best.sorted()).map(i -> rows[i]).toArray();
+		}
+	}
+
+	// Rank of every brand code in case-insensitive order; brands equal ignoring case share a rank
+	private int[] brandRanks() {
+		Integer[] codes = new Integer[brands.size()];
+		for (int code = 0; code < codes.length; code++) {
+			codes[code] = code;
+		}
+		Comparator<Integer> byName = Comparator.comparing(brands::decode, String.CASE_INSENSITIVE_ORDER);
+		Arrays.sort(codes, byName);
+
+		int[] ranks = new int[codes.length];
+		int rank = 0;
+		for (int i = 0; i < codes.length; i++) {
+			if (i > 0 && byName.compare(codes[i - 1], codes[i]) != 0) {
+				rank++;
+			}
+			ranks[codes[i]] = rank;
+		}
+		return ranks;
+	}
+
+	// Same order as UUID.compareTo
+	private static int compareIds(long highA, long lowA, long highB, long lowB) {
+		int result = Long.compare(highA, highB);
+		return result != 0 ? result : Long.compare(lowA, lowB);
+	}
+
+	// Exact comparison of stored units with a price that may have more decimals than the columns keep
+	private static int comparePrice(long units, BigDecimal anchor) {
+		BigDecimal scaled = anchor.movePointRight(PRICE_SCALE);
+		long floor = scaled.setScale(0, RoundingMode.FLOOR).longValue();
+		if (units != floor) {
+			return Long.compare(units, floor);
+		}
+		return scaled.signum() == 0 || scaled.stripTrailingZeros().scale() <= 0 ? 0 : -1;
+	}
+
+	// -------------------------
+	// Rows
+	// -------------------------
+
+	private int allocateRow() {
+		if (freeCount > 0) {
+			return freeRows[--freeCount];
+		}
+		int row = rowCount++;
+		for (OffHeapColumn column : columns) {
+			column.ensureCapacity(rowCount);
+		}
+		return row;
+	}
+
+	// Store a product as the next version, which is returned stamped on it
+	private Product write(Encoded encoded) {
+		Product product = encoded.product();
+		int row = ids.get(product.getId());
+		if (row >= 0) {
+			preserve(row);
+			release(row);
+		} else {
+			row = allocateRow();
+			ids.put(product.getId(), row);
+		}
+
+		int[] codes = product.getCategories().stream().mapToInt(categoryCodes::encode).toArray();
+
+		idHigh.putLong(row, product.getId().getMostSignificantBits());
+		idLow.putLong(row, product.getId().getLeastSignificantBits());
+		price.putLong(row, encoded.units());
+		priceScale.putByte(row, encoded.scale());
+		inventory.putInt(row, product.getInventory());
+		brand.putInt(row, brands.encode(product.getBrand()));
+		createdAt.putLong(row, encoded.created());
+		updatedAt.putLong(row, encoded.updated());
+		name.putLong(row, arena.write(encoded.name()));
+		nameLength.putInt(row, encoded.name().length);
+		namePrefix.putLong(row, namePrefix(product.getName()));
+		description.putLong(row, arena.write(encoded.description()));
+		descriptionLength.putInt(row, encoded.description().length);
+		categories.putLong(row, arena.writeInts(codes));
+		categoryCount.putInt(row, codes.length);
+		version.putLong(row, ++catalogVersion);
+		live.putByte(row, (byte) 1);
+		return product.toBuilder().version(catalogVersion).build();
+	}
+
+	private boolean delete(UUID id) {
+		int row = ids.get(id);
+		if (row < 0) {
+			return false;
+		}
+		preserve(row);
+		release(row);
+		live.putByte(row, (byte) 0);
+		ids.remove(id);
+		if (freeCount == freeRows.length) {
+			freeRows = Arrays.copyOf(freeRows, freeCount * 2);
+		}
+		freeRows[freeCount++] = row;
+		catalogVersion++;
+		return true;
+	}
+
+	private boolean isAt(UUID id, long expectedVersion) {
+		int row = ids.get(id);
+		return row >= 0 && version.getLong(row) == expectedVersion;
+	}
+
+	// Hand the current version of a row about to change to the exports that have yet to read it
+	private void preserve(int row) {
+		for (RowExport export : exports) {
+			if (export.pending.get(row)) {
+				export.preserved.add(materialize(row));
+				export.pending.clear(row);
+			}
+		}
+	}
+
+	// Account for the variable-length values of a row that is being overwritten or deleted
+	private void release(int row) {
+		arena.free(nameLength.getInt(row));
+		arena.free(descriptionLength.getInt(row));
+		arena.free(categoryCount.getInt(row) * Integer.BYTES);
+	}
+
+	private void compactIfWasteful() {
+		if (arena.allocatedBytes() < COMPACTION_MIN_BYTES || arena.liveBytes() * 2 > arena.allocatedBytes()) {
+			return;
+		}
+		ByteArena compacted = new ByteArena();
+		for (int row = 0; row < rowCount; row++) {
+			if (live.getByte(row) == 0) {
+				continue;
+			}
+			name.putLong(row, compacted.write(arena.read(name.getLong(row), nameLength.getInt(row))));
+			description.putLong(row, compacted.write(arena.read(description.getLong(row), descriptionLength.getInt(row))));
+			categories.putLong(row, compacted.write(arena.read(categories.getLong(row), categoryCount.getInt(row) * Integer.BYTES)));
+		}
+		arena = compacted;
+	}
+
+	private Product materialize(int row) {
+		int count = categoryCount.getInt(row);
+		String[] categoryNames = new String[count];
+		long address = categories.getLong(row);
+		for (int i = 0; i < count; i++) {
+			categoryNames[i] = categoryCodes.decode(arena.readInt(address, i));
+		}
+
+		return Product.builder()
+				.id(new UUID(idHigh.getLong(row), idLow.getLong(row)))
+				.name(nameOf(row))
+				.description(new String(arena.read(description.getLong(row), descriptionLength.getInt(row)), StandardCharsets.UTF_8))
+				.brand(brands.decode(brand.getInt(row)))
+				.price(BigDecimal.valueOf(price.getLong(row), PRICE_SCALE).setScale(priceScale.getByte(row), RoundingMode.UNNECESSARY))
+				.inventory(inventory.getInt(row))
+				.categories(List.of(categoryNames))
+				.createdAt(fromNanos(createdAt.getLong(row)))
+				.updatedAt(fromNanos(updatedAt.getLong(row)))
+				.version(version.getLong(row))
+				.build();
+	}
+
+	private String nameOf(int row) {
+		return new String(arena.read(name.getLong(row), nameLength.getInt(row)), StandardCharsets.UTF_8);
+	}
+
+	// -------------------------
+	// Encodings
+	// -------------------------
+
+	static long toUnits(BigDecimal value) {
+		try {
+			return value.movePointRight(PRICE_SCALE).longValueExact();
+		} catch (ArithmeticException e) {
+			throw new IllegalArgumentException(String.format(Locale.ROOT,
+					"Price %s needs more than %d decimal places or is out of range", value, PRICE_SCALE), e);
+		}
+	}
+
+	private static byte toScale(BigDecimal value) {
+		if (value.scale() < Byte.MIN_VALUE || value.scale() > Byte.MAX_VALUE) {
+			throw new IllegalArgumentException("Price scale out of range: " + value);
+		}
+		return (byte) value.scale();
+	}
+
+	/**
+	 * Pack the first 8 characters of a name, case-folded as {@link String#CASE_INSENSITIVE_ORDER}
+	 * folds them, into a long whose unsigned order is consistent with that comparator: names with
+	 * different prefixes compare like their prefixes. Shorter names are padded with zeros.
+	 */
+	static long namePrefix(String name) {
+		long prefix = 0;
+		for (int i = 0; i < Long.BYTES; i++) {
+			int folded = 0;
+			if (i < name.length()) {
+				folded = Character.toLowerCase(Character.toUpperCase(name.charAt(i)));
+				if (folded > 0xFF) {
+					return NO_PREFIX;
+				}
+			}
+			prefix = (prefix << 8) | folded;
+		}
+		// A prefix of all ones reads as NO_PREFIX, which only means it is compared by decoding
+		return prefix;
+	}
+
+	// Smallest unit count whose price is at least the bound
+	private static long ceilUnits(BigDecimal bound) {
+		return clamp(bound.movePointRight(PRICE_SCALE).setScale(0, RoundingMode.CEILING));
+	}
+
+	// Largest unit count whose price is at most the bound
+	private static long floorUnits(BigDecimal bound) {
+		return clamp(bound.movePointRight(PRICE_SCALE).setScale(0, RoundingMode.FLOOR));
+	}
+
+	private static long clamp(BigDecimal units) {
+		if (units.compareTo(BigDecimal.valueOf(Long.MAX_VALUE)) > 0) {
+			return Long.MAX_VALUE;
+		}
+		if (units.compareTo(BigDecimal.valueOf(Long.MIN_VALUE)) < 0) {
+			return Long.MIN_VALUE;
+		}
+		return units.longValueExact();
+	}
+
+	private static long toNanos(Instant instant) {
+		try {
+			return Math.addExact(Math.multiplyExact(instant.getEpochSecond(), 1_000_000_000L), instant.getNano());
+		} catch (ArithmeticException e) {
+			throw new IllegalArgumentException("Timestamp out of range: " + instant, e);
+		}
+	}
+
+	private static Instant fromNanos(long nanos) {
+		return Instant.ofEpochSecond(Math.floorDiv(nanos, 1_000_000_000L), Math.floorMod(nanos, 1_000_000_000L));
+	}
+
+	private record Execution(List<Product> products, QueryExplanation explanation) {}
+
+	/**
+	 * Progress of one export: the rows live when it started that it has not read yet, and the
+	 * versions of such rows that writers changed before it read them.
+	 */
+	private static final class RowExport {
+		private final BitSet pending;
+		private final ArrayDeque<Product> preserved = new ArrayDeque<>();
+
+		RowExport(BitSet pending) {
+			this.pending = pending;
+		}
+	}
+
+	// A product with its column values validated and encoded, ready to be written under the lock
+	private record Encoded(Product product, long units, byte scale, long created, long updated, byte[] name, byte[] description) {
+		static Encoded of(Product product) {
+			return new Encoded(
+					product,
+					toUnits(product.getPrice()),
+					toScale(product.getPrice()),
+					toNanos(product.getCreatedAt()),
+					toNanos(product.getUpdatedAt()),
+					product.getName().getBytes(StandardCharsets.UTF_8),
+					product.getDescription().getBytes(StandardCharsets.UTF_8));
+		}
+	}
+
+	// A completion and its best signal; best first, then alphabetical, names before brands
+	private record Candidate(String text, Suggestion.Field field, long signal) {
+		static final Comparator<Candidate> ORDER = Comparator.comparingLong(Candidate::signal).reversed()
+				.thenComparing(Candidate::text, String.CASE_INSENSITIVE_ORDER)
+				.thenComparing(Candidate::field);
+	}
+}
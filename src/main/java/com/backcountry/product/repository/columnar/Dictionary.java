@@ -0,0 +1,49 @@
+package com.backcountry.product.repository.columnar;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dictionary encoding of a low-cardinality string column: each distinct value is stored once and
+ * rows hold its int code. Codes are dense and stable until {@link #clear}. Not thread-safe.
+ */
+final class Dictionary {
+
+	private final Map<String, Integer> codes = new HashMap<>();
+	private final List<String> values = new ArrayList<>();
+
+	/**
+	 * @return the code of the value, assigning a new one if it is not in the dictionary yet
+	 */
+	int encode(String value) {
+		Integer code = codes.get(value);
+		if (code != null) {
+			return code;
+		}
+		codes.put(value, values.size());
+		values.add(value);
+		return values.size() - 1;
+	}
+
+	/**
+	 * @return the code of the value, or -1 if it is not in the dictionary
+	 */
+	int code(String value) {
+		return codes.getOrDefault(value, -1);
+	}
+
+	String decode(int code) {
+		return values.get(code);
+	}
+
+	int size() {
+		return values.size();
+	}
+
+	void clear() {
+		codes.clear();
+		values.clear();
+	}
+}
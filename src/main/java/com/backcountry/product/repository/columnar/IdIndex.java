@@ -0,0 +1,134 @@
+package com.backcountry.product.repository.columnar;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Open-addressing hash table from product id to row, held in three primitive arrays so that it
+ * allocates no object per product. Linear probing with backward-shift deletion, kept at most
+ * half full. Not thread-safe.
+ */
+final class IdIndex {
+
+	private static final int EMPTY = -1;
+
+	private long[] high;
+	private long[] low;
+	private int[] rows;
+	private int size;
+
+	IdIndex() {
+		allocate(1 << 10);
+	}
+
+	/**
+	 * @return the row of the id, or -1 if it is not indexed
+	 */
+	int get(UUID id) {
+		int mask = rows.length - 1;
+		for (int slot = slot(id); rows[slot] != EMPTY; slot = (slot + 1) & mask) {
+			if (high[slot] == id.getMostSignificantBits() && low[slot] == id.getLeastSignificantBits()) {
+				return rows[slot];
+			}
+		}
+		return EMPTY;
+	}
+
+	void put(UUID id, int row) {
+		if ((size + 1) * 2 > rows.length) {
+			resize(rows.length * 2);
+		}
+		insert(id.getMostSignificantBits(), id.getLeastSignificantBits(), row);
+	}
+
+	void remove(UUID id) {
+		int mask = rows.length - 1;
+		int slot = slot(id);
+		while (rows[slot] != EMPTY) {
+			if (high[slot] == id.getMostSignificantBits() && low[slot] == id.getLeastSignificantBits()) {
+				break;
+			}
+			slot = (slot + 1) & mask;
+		}
+		if (rows[slot] == EMPTY) {
+			return;
+		}
+		size--;
+
+		// Shift later entries of the probe run back so lookups never stop at the hole
+		int hole = slot;
+		for (int next = (hole + 1) & mask; rows[next] != EMPTY; next = (next + 1) & mask) {
+			int home = slot(high[next], low[next], mask);
+			if (((next - home) & mask) >= ((next - hole) & mask)) {
+				high[hole] = high[next];
+				low[hole] = low[next];
+				rows[hole] = rows[next];
+				hole = next;
+			}
+		}
+		rows[hole] = EMPTY;
+	}
+
+	int size() {
+		return size;
+	}
+
+	/**
+	 * @return bytes held by the table
+	 */
+	long allocatedBytes() {
+		return (long) rows.length * (Long.BYTES + Long.BYTES + Integer.BYTES);
+	}
+
+	void clear() {
+		allocate(1 << 10);
+	}
+
+	private void allocate(int capacity) {
+		high = new long[capacity];
+		low = new long[capacity];
+		rows = new int[capacity];
+		Arrays.fill(rows, EMPTY);
+		size = 0;
+	}
+
+	private void resize(int capacity) {
+		long[] oldHigh = high;
+		long[] oldLow = low;
+		int[] oldRows = rows;
+		allocate(capacity);
+		for (int i = 0; i < oldRows.length; i++) {
+			if (oldRows[i] != EMPTY) {
+				insert(oldHigh[i], oldLow[i], oldRows[i]);
+			}
+		}
+	}
+
+	private void insert(long idHigh, long idLow, int row) {
+		int mask = rows.length - 1;
+		int slot = slot(idHigh, idLow, mask);
+		while (rows[slot] != EMPTY) {
+			if (high[slot] == idHigh && low[slot] == idLow) {
+				rows[slot] = row;
+				return;
+			}
+			slot = (slot + 1) & mask;
+		}
+		high[slot] = idHigh;
+		low[slot] = idLow;
+		rows[slot] = row;
+		size++;
+	}
+
+	private int slot(UUID id) {
+		return slot(id.getMostSignificantBits(), id.getLeastSignificantBits(), rows.length - 1);
+	}
+
+	private static int slot(long high, long low, int mask) {
+		long h = high ^ Long.rotateLeft(low, 32);
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		return (int) h & mask;
+	}
+}
@@ -0,0 +1,88 @@
+package com.backcountry.product.repository.columnar;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fixed-width column of primitive values stored outside the Java heap.
+ * Values live in direct buffers of {@link #SEGMENT_ROWS} rows each, allocated as rows are added,
+ * so growing the column never copies it. Not thread-safe.
+ */
+final class OffHeapColumn {
+
+	static final int SEGMENT_SHIFT = 14;
+	static final int SEGMENT_ROWS = 1 << SEGMENT_SHIFT;
+	private static final int ROW_MASK = SEGMENT_ROWS - 1;
+
+	private final int width;
+	private final List<ByteBuffer> segments = new ArrayList<>();
+
+	/**
+	 * @param width bytes per value: 1, 4 or 8
+	 */
+	OffHeapColumn(int width) {
+		this.width = width;
+	}
+
+	/**
+	 * Allocate segments until the column can hold the given number of rows.
+	 */
+	void ensureCapacity(int rows) {
+		while ((long) segments.size() * SEGMENT_ROWS < rows) {
+			segments.add(ByteBuffer.allocateDirect(SEGMENT_ROWS * width).order(ByteOrder.nativeOrder()));
+		}
+	}
+
+	long getLong(int row) {
+		return segmentOf(row).getLong(offset(row));
+	}
+
+	void putLong(int row, long value) {
+		segmentOf(row).putLong(offset(row), value);
+	}
+
+	int getInt(int row) {
+		return segmentOf(row).getInt(offset(row));
+	}
+
+	void putInt(int row, int value) {
+		segmentOf(row).putInt(offset(row), value);
+	}
+
+	byte getByte(int row) {
+		return segmentOf(row).get(offset(row));
+	}
+
+	void putByte(int row, byte value) {
+		segmentOf(row).put(offset(row), value);
+	}
+
+	/**
+	 * Direct access to one segment, for scans that walk a segment at a time. Value i of the
+	 * segment is at byte offset i * width.
+	 */
+	ByteBuffer segment(int index) {
+		return segments.get(index);
+	}
+
+	/**
+	 * @return bytes allocated outside the heap
+	 */
+	long allocatedBytes() {
+		return (long) segments.size() * SEGMENT_ROWS * width;
+	}
+
+	void clear() {
+		segments.clear();
+	}
+
+	private ByteBuffer segmentOf(int row) {
+		return segments.get(row >>> SEGMENT_SHIFT);
+	}
+
+	private int offset(int row) {
+		return (row & ROW_MASK) * width;
+	}
+}
@@ -0,0 +1,93 @@
+package com.backcountry.product.repository.columnar;
+
+import java.util.Arrays;
+
+/**
+ * Bounded selection of the k first ints of an ordering, without boxing.
+ * Keeps a max-heap of at most k values, so offering n values costs O(n log k). Not thread-safe.
+ */
+final class RowTopK {
+
+	/**
+	 * Ordering of int values, typically positions into per-query key arrays.
+	 */
+	@FunctionalInterface
+	interface IntOrder {
+		int compare(int a, int b);
+	}
+
+	private final int k;
+	private final IntOrder order;
+	private final int[] heap;
+	private int size;
+
+	RowTopK(int k, IntOrder order) {
+		if (k < 0) {
+			throw new IllegalArgumentException("k must not be negative: " + k);
+		}
+		this.k = k;
+		this.order = order;
+		this.heap = new int[k];
+	}
+
+	/**
+	 * Offer a value, keeping it only if it is among the k first seen so far.
+	 */
+	void offer(int value) {
+		if (size < k) {
+			heap[size] = value;
+			siftUp(size++);
+		} else if (k > 0 && order.compare(value, heap[0]) < 0) {
+			heap[0] = value;
+			siftDown(0, size);
+		}
+	}
+
+	/**
+	 * Empty the heap into an array in order.
+	 * @return the retained values, first in the ordering first
+	 */
+	int[] sorted() {
+		// Heap sort in place: repeatedly move the greatest retained value to the end
+		for (int end = size - 1; end > 0; end--) {
+			swap(0, end);
+			siftDown(0, end);
+		}
+		int[] sorted = Arrays.copyOf(heap, size);
+		size = 0;
+		return sorted;
+	}
+
+	private void siftUp(int index) {
+		while (index > 0) {
+			int parent = (index - 1) >>> 1;
+			if (order.compare(heap[index], heap[parent]) <= 0) {
+				return;
+			}
+			swap(index, parent);
+			index = parent;
+		}
+	}
+
+	private void siftDown(int index, int limit) {
+		while (true) {
+			int left = 2 * index + 1;
+			if (left >= limit) {
+				return;
+			}
+			int right = left + 1;
+			int largest = right < limit && order.compare(heap[right], heap[left]) > 0 ? right : left;
+			if (order.compare(heap[index], heap[largest]) >= 0) {
+				return;
+			}
+			swap(index, largest);
+			index = largest;
+		}
+	}
+
+	private void swap(int a, int b) {
+		int tmp = heap[a];
+		heap[a] = heap[b];
+		heap[b] = tmp;
+	}
+}
@@ -0,0 +1,465 @@
+package com.backcountry.product.repository.persistence;
+
+import com.backcountry.product.model.Product;
+import com.backcountry.product.repository.FacetCounts;
+import com.backcountry.product.repository.InMemoryProductRepository;
+import com.backcountry.product.repository.ProductQuery;
+import com.backcountry.product.repository.ProductRepository;
+import com.backcountry.product.repository.QueryExplanation;
+import com.backcountry.product.repository.Suggestion;
+import com.backcountry.product.repository.SuggestionRank;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * ProductRepository that makes the in-memory repository durable.
+ * Reads go straight to memory. Every write is appended to a {@link WriteAheadLog} and applied to
+ * memory only once it is on disk, so an acknowledged write always survives a restart.
+ *
+ * A background thread periodically writes a {@link ProductSnapshot} without blocking writers and then
+ * deletes the log segments it covers. At startup the newest snapshot is loaded and only the log
+ * written after it is replayed, so recovery time follows the catalog size rather than its history.
+ *
+ * A conditional write is checked against memory before it is logged, and must still hold when the log
+ * writer applies it. Writes to the same product therefore take one of a fixed set of locks, picked by
+ * its id, from before the check until memory holds the write; writes to other products carry on and
+ * still share log flushes.
+ */
+public class DurableProductRepository implements ProductRepository, Closeable {
+
+	private static final Logger log = LoggerFactory.getLogger(DurableProductRepository.class);
+
+	// Locks serializing the writes to the products whose ids hash to each of them
+	private static final int WRITE_STRIPES = 64;
+
+	private final InMemoryProductRepository memory;
+	private final UnaryOperator<Product> prepare;
+	private final Path directory;
+	private final WriteAheadLog wal;
+	private final long snapshotMinRecords;
+	private final ScheduledExecutorService snapshots;
+	private final ReentrantLock[] stripes = new ReentrantLock[WRITE_STRIPES];
+
+	private volatile long snapshotSequence;
+
+	/**
+	 * Load the latest snapshot and the log written after it into memory.
+	 * @param memory the in-memory repository serving reads, expected to be empty
+	 * @param directory directory holding the log and snapshots, created if missing
+	 * @param fsync whether writes are forced to disk before being acknowledged
+	 * @param snapshotInterval how often to check whether a snapshot is due; zero or negative disables
+	 *                         background snapshots
+	 * @param snapshotMinRecords log records needed since the last snapshot before a new one is written
+	 * @throws IOException if the snapshot or log cannot be opened or read
+	 */
+	public DurableProductRepository(InMemoryProductRepository memory,
+			Path directory,
+			boolean fsync,
+			Duration snapshotInterval,
+			long snapshotMinRecords) throws IOException {
+		this(memory, directory, fsync, snapshotInterval, snapshotMinRecords, UnaryOperator.identity());
+	}
+
+	/**
+	 * Load the latest snapshot and the log written after it into memory, passing every recovered
+	 * product through {@code prepare} first (for example to intern its values).
+	 * @param memory the in-memory repository serving reads, expected to be empty
+	 * @param directory directory holding the log and snapshots, created if missing
+	 * @param fsync whether writes are forced to disk before being acknowledged
+	 * @param snapshotInterval how often to check whether a snapshot is due; zero or negative disables
+	 *                         background snapshots
+	 * @param snapshotMinRecords log records needed since the last snapshot before a new one is written
+	 * @param prepare applied to each product read from a snapshot or the log
+	 * @throws IOException if the snapshot or log cannot be opened or read
+	 */
+	public DurableProductRepository(InMemoryProductRepository memory,
+			Path directory,
+			boolean fsync,
+			Duration snapshotInterval,
+			long snapshotMinRecords,
+			UnaryOperator<Product> prepare) throws IOException {
+		this.memory = memory;
+		this.prepare = prepare;
+		this.directory = directory;
+		this.snapshotMinRecords = snapshotMinRecords;
+		for (int i = 0; i < stripes.length; i++) {
+			stripes[i] = new ReentrantLock();
+		}
+
+		Files.createDirectories(directory);
+		long start = System.nanoTime();
+		this.snapshotSequence = ProductSnapshot.load(directory, memory, prepare).orElse(-1L);
+		long loaded = memory.findAll().size();
+		this.wal = WriteAheadLog.open(directory, fsync, snapshotSequence, this::replay);
+		long millis = (System.nanoTime() - start) / 1_000_000;
+
+		log.info("Recovered {} products from a snapshot of {} products and {} write-ahead log records in {} ms",
+				memory.findAll().size(), loaded, wal.recovered(), millis);
+
+		if (!snapshotInterval.isZero() && !snapshotInterval.isNegative()) {
+			this.snapshots = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "snapshot-writer");
+				thread.setDaemon(true);
+				return thread;
+			});
+			long period = snapshotInterval.toMillis();
+			snapshots.scheduleWithFixedDelay(this::snapshotIfDue, period, period, TimeUnit.MILLISECONDS);
+		} else {
+			this.snapshots = null;
+		}
+	}
+
+	/**
+	 * Write a snapshot of the current catalog and delete the log segments and snapshots it supersedes.
+	 * Writers are not blocked: the log is rolled to a new segment, then the store is copied while it
+	 * keeps changing. Any change the copy misses or catches half-way is in the new segment and is
+	 * replayed over the snapshot on recovery; replaying a save, delete or clear is idempotent.
+	 * @return the log sequence the snapshot covers
+	 * @throws IOException if the snapshot cannot be written
+	 */
+	public synchronized long snapshot() throws IOException {
+		if (wal.lastSequence() == snapshotSequence) {
+			return snapshotSequence;
+		}
+		long start = System.nanoTime();
+		long sequence = await(wal.roll());
+
+		int products = ProductSnapshot.write(directory, sequence, memory);
+		snapshotSequence = sequence;
+
+		wal.truncate(sequence);
+		ProductSnapshot.deleteOlderThan(directory, sequence);
+
+		log.info("Wrote snapshot of {} products at log sequence {} in {} ms",
+				products, sequence, (System.nanoTime() - start) / 1_000_000);
+		return sequence;
+	}
+
+	@Override
+	public Product save(Product product) {
+		return locked(List.of(product.getId()), () -> write(product));
+	}
+
+	/**
+	 * The whole batch is one log record, written with a single append and applied to memory in one
+	 * step by the log writer, so it costs one flush and survives a crash entirely or not at all.
+	 */
+	@Override
+	public List<Product> saveAll(List<Product> products) {
+		if (products.isEmpty()) {
+			return products;
+		}
+		return locked(products.stream().map(Product::getId).toList(), () -> {
+			List<Product> saved = new ArrayList<>(products.size());
+			await(wal.append(WriteAheadLog.SAVE_ALL, encode(products), () -> saved.addAll(memory.saveAll(products))));
+			return saved;
+		});
+	}
+
+	@Override
+	public Optional<Product> compareAndSave(Product product, long expectedVersion) {
+		return locked(List.of(product.getId()), () -> isAt(product.getId(), expectedVersion)
+				? Optional.of(write(product))
+				: Optional.empty());
+	}
+
+	/**
+	 * The products at their expected versions are checked under their stripes and written as one batch
+	 * record, which replays unconditionally since the checks already passed.
+	 */
+	@Override
+	public List<Optional<Product>> compareAndSaveAll(List<Product> products, List<Long> expectedVersions) {
+		if (products.isEmpty()) {
+			return List.of();
+		}
+		return locked(products.stream().map(Product::getId).toList(), () -> {
+			// Only the first occurrence of a product can be at its version, as if saved one by one
+			Set<UUID> seen = new HashSet<>();
+			boolean[] at = new boolean[products.size()];
+			List<Product> matched = new ArrayList<>(products.size());
+			for (int i = 0; i < products.size(); i++) {
+				Product product = products.get(i);
+				at[i] = seen.add(product.getId()) && isAt(product.getId(), expectedVersions.get(i));
+				if (at[i]) {
+					matched.add(product);
+				}
+			}
+			List<Optional<Product>> saved = new ArrayList<>(products.size());
+			if (matched.isEmpty()) {
+				products.forEach(product -> saved.add(Optional.empty()));
+				return saved;
+			}
+			// Filled by the log writer; completing the future publishes it to this thread
+			List<Product> written = new ArrayList<>(matched.size());
+			await(wal.append(WriteAheadLog.SAVE_ALL, encode(matched), () -> written.addAll(memory.saveAll(matched))));
+			Iterator<Product> next = written.iterator();
+			for (boolean matches : at) {
+				saved.add(matches ? Optional.of(next.next()) : Optional.empty());
+			}
+			return saved;
+		});
+	}
+
+	@Override
+	public boolean compareAndDelete(UUID id, long expectedVersion) {
+		return locked(List.of(id), () -> {
+			if (!isAt(id, expectedVersion)) {
+				return false;
+			}
+			await(wal.append(WriteAheadLog.DELETE, encode(id), () -> memory.deleteById(id)));
+			return true;
+		});
+	}
+
+	@Override
+	public long version() {
+		return memory.version();
+	}
+
+	@Override
+	public Optional<Product> findById(UUID id) {
+		return memory.findById(id);
+	}
+
+	@Override
+	public List<Product> findAll() {
+		return memory.findAll();
+	}
+
+	@Override
+	public void export(Consumer<Product> sink) {
+		memory.export(sink);
+	}
+
+	@Override
+	public List<Product> find(ProductQuery query) {
+		return memory.find(query);
+	}
+
+	@Override
+	public QueryExplanation explain(ProductQuery query) {
+		return memory.explain(query);
+	}
+
+	@Override
+	public FacetCounts facets(ProductQuery query, List<BigDecimal> priceBoundaries) {
+		return memory.facets(query, priceBoundaries);
+	}
+
+	@Override
+	public List<Suggestion> suggest(String prefix, SuggestionRank rank, int limit) {
+		return memory.suggest(prefix, rank, limit);
+	}
+
+	@Override
+	public void deleteById(UUID id) {
+		locked(List.of(id), () -> {
+			if (memory.findById(id).isPresent()) {
+				await(wal.append(WriteAheadLog.DELETE, encode(id), () -> memory.deleteById(id)));
+			}
+			return null;
+		});
+	}
+
+	@Override
+	public List<UUID> deleteAllById(Collection<UUID> ids) {
+		return locked(ids, () -> {
+			List<UUID> stored = ids.stream().filter(id -> memory.findById(id).isPresent()).toList();
+			if (stored.isEmpty()) {
+				return List.of();
+			}
+			// Filled by the log writer; completing the future publishes it to this thread
+			List<UUID> deleted = new ArrayList<>(stored.size());
+			await(wal.append(WriteAheadLog.DELETE_ALL, encode(stored), () -> deleted.addAll(memory.deleteAllById(stored))));
+			return deleted;
+		});
+	}
+
+	@Override
+	public void clear() {
+		locked(null, () -> await(wal.append(WriteAheadLog.CLEAR, new byte[0], memory::clear)));
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (snapshots != null) {
+			snapshots.shutdownNow();
+		}
+		// Waits for a snapshot in progress, so the log is not closed under it
+		synchronized (this) {
+			wal.close();
+		}
+	}
+
+	// -------------------------
+	// Helpers
+	// -------------------------
+
+	private Product write(Product product) {
+		Product[] saved = new Product[1];
+		await(wal.append(WriteAheadLog.SAVE, encode(product), () -> saved[0] = memory.save(product)));
+		return saved[0];
+	}
+
+	private boolean isAt(UUID id, long version) {
+		return memory.findById(id).map(product -> product.getVersion() == version).orElse(false);
+	}
+
+	/**
+	 * Run a write holding the stripes of the products it changes, taken in index order so that writers
+	 * of overlapping batches cannot deadlock.
+	 * @param ids the products written, or null for all of them
+	 */
+	private <T> T locked(Collection<UUID> ids, Supplier<T> write) {
+		boolean[] taken = new boolean[stripes.length];
+		if (ids == null) {
+			Arrays.fill(taken, true);
+		} else {
+			for (UUID id : ids) {
+				taken[Math.floorMod(id.hashCode(), stripes.length)] = true;
+			}
+		}
+		int locked = 0;
+		try {
+			for (; locked < stripes.length; locked++) {
+				if (taken[locked]) {
+					stripes[locked].lock();
+				}
+			}
+			return write.get();
+		} finally {
+			for (int i = 0; i < locked; i++) {
+				if (taken[i]) {
+					stripes[i].unlock();
+				}
+			}
+		}
+	}
+
+	private void snapshotIfDue() {
+		if (wal.lastSequence() - snapshotSequence < snapshotMinRecords) {
+			return;
+		}
+		try {
+			snapshot();
+		} catch (IOException | RuntimeException e) {
+			// Keep the schedule alive; the log still holds every change
+			log.error("Snapshot failed", e);
+		}
+	}
+
+	private void replay(WriteAheadLog.Entry entry) {
+		ByteBuffer in = ByteBuffer.wrap(entry.payload());
+		switch (entry.type()) {
+			case WriteAheadLog.SAVE -> memory.save(prepare.apply(ProductCodec.read(in)));
+			case WriteAheadLog.DELETE -> memory.deleteById(ProductCodec.readId(in));
+			case WriteAheadLog.CLEAR -> memory.clear();
+			case WriteAheadLog.SAVE_ALL -> {
+				List<Product> products = new ArrayList<>(in.getInt());
+				while (in.hasRemaining()) {
+					products.add(prepare.apply(ProductCodec.read(in)));
+				}
+				memory.saveAll(products);
+			}
+			case WriteAheadLog.DELETE_ALL -> {
+				List<UUID> ids = new ArrayList<>(in.getInt());
+				while (in.hasRemaining()) {
+					ids.add(ProductCodec.readId(in));
+				}
+				memory.deleteAllById(ids);
+			}
+			default -> throw new UncheckedIOException(new IOException(
+					"Unknown write-ahead log record type " + entry.type() + " at sequence " + entry.sequence()));
+		}
+	}
+
+	private static byte[] encode(Product product) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+		try {
+			ProductCodec.write(new DataOutputStream(bytes), product);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	// Count, then the products
+	private static byte[] encode(List<Product> products) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(256 * products.size());
+		try {
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeInt(products.size());
+			for (Product product : products) {
+				ProductCodec.write(out, product);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	// Count, then the ids
+	private static byte[] encode(Collection<UUID> ids) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(Integer.BYTES + 16 * ids.size());
+		try {
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeInt(ids.size());
+			for (UUID id : ids) {
+				ProductCodec.writeId(out, id);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	private static byte[] encode(UUID id) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(16);
+		try {
+			ProductCodec.writeId(new DataOutputStream(bytes), id);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	private static long await(CompletableFuture<Long> write) {
+		try {
+			return write.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException cause) {
+				throw cause;
+			}
+			throw e;
+		}
+	}
+}
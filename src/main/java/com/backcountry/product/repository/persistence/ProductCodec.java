@@ -0,0 +1,108 @@
+package com.backcountry.product.repository.persistence;
+
+import com.backcountry.product.model.Product;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Compact binary encoding of {@link Product} shared by the write-ahead log and snapshots.
+ * Strings are length-prefixed UTF-8, prices are stored as unscaled value plus scale and
+ * instants as epoch seconds plus nanos. Records are written through a DataOutput and read back
+ * from a ByteBuffer, which lets snapshots be decoded straight out of a memory-mapped file.
+ */
+final class ProductCodec {
+
+	private ProductCodec() {
+	}
+
+	static void write(DataOutput out, Product product) throws IOException {
+		writeId(out, product.getId());
+		writeString(out, product.getName());
+		writeString(out, product.getDescription());
+		writeString(out, product.getBrand());
+
+		byte[] unscaled = product.getPrice().unscaledValue().toByteArray();
+		out.writeShort(unscaled.length);
+		out.write(unscaled);
+		out.writeInt(product.getPrice().scale());
+
+		out.writeInt(product.getInventory());
+
+		out.writeInt(product.getCategories().size());
+		for (String category : product.getCategories()) {
+			writeString(out, category);
+		}
+
+		writeInstant(out, product.getCreatedAt());
+		writeInstant(out, product.getUpdatedAt());
+	}
+
+	static Product read(ByteBuffer in) {
+		UUID id = readId(in);
+		String name = readString(in);
+		String description = readString(in);
+		String brand = readString(in);
+
+		byte[] unscaled = new byte[Short.toUnsignedInt(in.getShort())];
+		in.get(unscaled);
+		BigDecimal price = new BigDecimal(new BigInteger(unscaled), in.getInt());
+
+		int inventory = in.getInt();
+
+		int count = in.getInt();
+		String[] categories = new String[count];
+		for (int i = 0; i < count; i++) {
+			categories[i] = readString(in);
+		}
+
+		return Product.builder()
+				.id(id)
+				.name(name)
+				.description(description)
+				.brand(brand)
+				.price(price)
+				.inventory(inventory)
+				.categories(List.of(categories))
+				.createdAt(readInstant(in))
+				.updatedAt(readInstant(in))
+				.build();
+	}
+
+	static void writeId(DataOutput out, UUID id) throws IOException {
+		out.writeLong(id.getMostSignificantBits());
+		out.writeLong(id.getLeastSignificantBits());
+	}
+
+	static UUID readId(ByteBuffer in) {
+		return new UUID(in.getLong(), in.getLong());
+	}
+
+	private static void writeString(DataOutput out, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(ByteBuffer in) {
+		byte[] bytes = new byte[in.getInt()];
+		in.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static void writeInstant(DataOutput out, Instant instant) throws IOException {
+		out.writeLong(instant.getEpochSecond());
+		out.writeInt(instant.getNano());
+	}
+
+	private static Instant readInstant(ByteBuffer in) {
+		return Instant.ofEpochSecond(in.getLong(), in.getInt());
+	}
+}
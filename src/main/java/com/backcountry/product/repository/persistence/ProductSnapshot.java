@@ -0,0 +1,307 @@
+package com.backcountry.product.repository.persistence;
+
+import com.backcountry.product.model.Product;
+import com.backcountry.product.repository.InMemoryProductRepository;
+import com.backcountry.product.repository.ProductSort;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.UnaryOperator;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Point-in-time image of the product store, named after the last log sequence it covers.
+ *
+ * Layout: magic (int), format version (int), sequence (long), product count (int), one
+ * length-prefixed {@link ProductCodec} record per product, the number of orderings (int) and for
+ * each ordering its sort name (length-prefixed UTF-8) and the record index of every product in that
+ * order (int each), then a CRC32C (int) of everything before it.
+ *
+ * The orderings let recovery rebuild every ordered view in linear time instead of inserting millions
+ * of products one by one. A snapshot is written to a temporary file, forced to disk and atomically
+ * renamed, so a crash leaves either the previous snapshot or the new one. Snapshots are read through
+ * a memory mapping to avoid copying the file through the heap.
+ */
+final class ProductSnapshot {
+
+	private static final int MAGIC = 0x42435350; // "BCSP"
+	private static final int VERSION = 1;
+	private static final int HEADER_BYTES = Integer.BYTES + Integer.BYTES + Long.BYTES + Integer.BYTES;
+
+	// Largest region mapped at once; a record never spans two regions
+	private static final long MAX_REGION = 1L << 30;
+
+	private static final Pattern SNAPSHOT = Pattern.compile("snapshot-(\\d{19})\\.bin");
+
+	private ProductSnapshot() {
+	}
+
+	/**
+	 * Write a snapshot of the repository while it keeps accepting writes.
+	 * @param directory directory holding snapshots
+	 * @param sequence last log sequence applied to the repository before the snapshot started;
+	 *                 every later change must still be in the log
+	 * @param memory the repository to copy
+	 * @return number of products written
+	 * @throws IOException if the snapshot cannot be written
+	 */
+	static int write(Path directory, long sequence, InMemoryProductRepository memory) throws IOException {
+		List<Product> products = memory.findAll();
+		Map<ProductSort, int[]> orderings = orderings(products, memory);
+
+		Path target = file(directory, sequence);
+		Path temporary = directory.resolve(target.getFileName() + ".tmp");
+
+		try (FileChannel channel = FileChannel.open(temporary,
+				StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(sequence);
+			out.writeInt(products.size());
+
+			ByteArrayOutputStream record = new ByteArrayOutputStream(512);
+			DataOutputStream recordOut = new DataOutputStream(record);
+			for (Product product : products) {
+				record.reset();
+				ProductCodec.write(recordOut, product);
+				out.writeInt(record.size());
+				record.writeTo(out);
+			}
+
+			out.writeInt(orderings.size());
+			for (Map.Entry<ProductSort, int[]> ordering : orderings.entrySet()) {
+				byte[] name = ordering.getKey().name().getBytes(StandardCharsets.UTF_8);
+				out.writeInt(name.length);
+				out.write(name);
+				for (int index : ordering.getValue()) {
+					out.writeInt(index);
+				}
+			}
+			out.flush();
+
+			ByteBuffer checksum = ByteBuffer.allocate(Integer.BYTES).putInt(checksum(channel, channel.size())).flip();
+			channel.write(checksum, channel.size());
+			channel.force(true);
+		}
+
+		Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE);
+		syncDirectory(directory);
+		return products.size();
+	}
+
+	/**
+	 * Load the newest snapshot in a directory into an empty repository.
+	 * @param directory directory holding snapshots
+	 * @param memory the repository to restore into
+	 * @param prepare applied to each product read, before it is restored
+	 * @return the log sequence the snapshot covers, empty if there is no snapshot
+	 * @throws IOException if the snapshot cannot be read or is corrupt
+	 */
+	static Optional<Long> load(Path directory, InMemoryProductRepository memory, UnaryOperator<Product> prepare) throws IOException {
+		Optional<Long> latest = latest(directory);
+		if (latest.isEmpty()) {
+			return latest;
+		}
+
+		Path file = file(directory, latest.get());
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long end = channel.size() - Integer.BYTES;
+			if (end < HEADER_BYTES) {
+				throw new IOException("Truncated snapshot " + file);
+			}
+
+			ByteBuffer trailer = ByteBuffer.allocate(Integer.BYTES);
+			channel.read(trailer, end);
+			if (trailer.flip().getInt() != checksum(channel, end)) {
+				throw new IOException("Corrupt snapshot " + file);
+			}
+
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+			if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+				throw new IOException("Unsupported snapshot format " + file);
+			}
+			long sequence = header.getLong();
+			int count = header.getInt();
+
+			Product[] products = new Product[count];
+			long position = readProducts(channel, HEADER_BYTES, end, products, prepare, file);
+
+			Map<ProductSort, List<Product>> orderings = new EnumMap<>(ProductSort.class);
+			ByteBuffer sections = channel.map(FileChannel.MapMode.READ_ONLY, position, end - position);
+			int orderingCount = sections.getInt();
+			for (int i = 0; i < orderingCount; i++) {
+				byte[] name = new byte[sections.getInt()];
+				sections.get(name);
+				IntBuffer indexes = sections.slice(sections.position(), count * Integer.BYTES).asIntBuffer();
+				sections.position(sections.position() + count * Integer.BYTES);
+
+				Optional<ProductSort> sort = sortNamed(new String(name, StandardCharsets.UTF_8));
+				if (sort.isPresent()) {
+					Product[] ordered = new Product[count];
+					for (int j = 0; j < count; j++) {
+						ordered[j] = products[indexes.get(j)];
+					}
+					orderings.put(sort.get(), Arrays.asList(ordered));
+				}
+			}
+
+			memory.restore(Arrays.asList(products), orderings);
+			return Optional.of(sequence);
+		} catch (RuntimeException e) {
+			// Out-of-range lengths or indexes in a file that passed its checksum
+			throw new IOException("Corrupt snapshot " + file, e);
+		}
+	}
+
+	/**
+	 * Delete every snapshot older than the given one, and any abandoned temporary file.
+	 * @param directory directory holding snapshots
+	 * @param keep sequence of the snapshot to keep
+	 * @throws IOException if a file cannot be deleted
+	 */
+	static void deleteOlderThan(Path directory, long keep) throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			for (Path file : files.toList()) {
+				String name = file.getFileName().toString();
+				Matcher match = SNAPSHOT.matcher(name);
+				if ((match.matches() && Long.parseLong(match.group(1)) < keep)
+						|| (name.startsWith("snapshot-") && name.endsWith(".tmp"))) {
+					Files.deleteIfExists(file);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Index of every product in the order of each sort, taken from the repository's ordered views.
+	 * A view read during concurrent writes is sorted but may hold products missing from the copied
+	 * list, which are skipped, and miss some that are in it, which are sorted and merged back in.
+	 * Either way the result is exactly the copied list in sort order, without sorting all of it.
+	 */
+	private static Map<ProductSort, int[]> orderings(List<Product> products, InMemoryProductRepository memory) {
+		Map<Product, Integer> positions = new IdentityHashMap<>(products.size());
+		for (int i = 0; i < products.size(); i++) {
+			positions.put(products.get(i), i);
+		}
+
+		Map<ProductSort, int[]> orderings = new EnumMap<>(ProductSort.class);
+		for (ProductSort sort : ProductSort.values()) {
+			boolean[] seen = new boolean[products.size()];
+			List<Product> ordered = new ArrayList<>(products.size());
+			for (Product product : memory.ordered(sort)) {
+				Integer position = positions.get(product);
+				if (position != null && !seen[position]) {
+					seen[position] = true;
+					ordered.add(product);
+				}
+			}
+
+			List<Product> missed = new ArrayList<>();
+			for (int i = 0; i < seen.length; i++) {
+				if (!seen[i]) {
+					missed.add(products.get(i));
+				}
+			}
+			missed.sort(sort.comparator());
+
+			int[] indexes = new int[products.size()];
+			Comparator<Product> order = sort.comparator();
+			int a = 0, b = 0, k = 0;
+			while (a < ordered.size() || b < missed.size()) {
+				boolean takeOrdered = b == missed.size()
+						|| (a < ordered.size() && order.compare(ordered.get(a), missed.get(b)) < 0);
+				Product next = takeOrdered ? ordered.get(a++) : missed.get(b++);
+				indexes[k++] = positions.get(next);
+			}
+			orderings.put(sort, indexes);
+		}
+		return orderings;
+	}
+
+	private static long readProducts(FileChannel channel, long start, long end, Product[] products,
+			UnaryOperator<Product> prepare, Path file) throws IOException {
+		long position = start;
+		int loaded = 0;
+		while (loaded < products.length) {
+			MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAX_REGION, end - position));
+			int consumed = 0;
+			while (loaded < products.length && region.remaining() >= Integer.BYTES) {
+				int length = region.getInt(region.position());
+				if (region.remaining() < Integer.BYTES + length) {
+					break;
+				}
+				ByteBuffer record = region.slice(region.position() + Integer.BYTES, length);
+				products[loaded++] = prepare.apply(ProductCodec.read(record));
+				region.position(region.position() + Integer.BYTES + length);
+				consumed = region.position();
+			}
+			if (consumed == 0) {
+				throw new IOException("Corrupt snapshot record at byte " + position + " of " + file);
+			}
+			position += consumed;
+		}
+		return position;
+	}
+
+	private static Optional<ProductSort> sortNamed(String name) {
+		return Arrays.stream(ProductSort.values())
+				.filter(sort -> sort.name().equals(name))
+				.findFirst();
+	}
+
+	private static Optional<Long> latest(Path directory) throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.map(file -> SNAPSHOT.matcher(file.getFileName().toString()))
+					.filter(Matcher::matches)
+					.map(match -> Long.parseLong(match.group(1)))
+					.max(Long::compare);
+		}
+	}
+
+	private static Path file(Path directory, long sequence) {
+		return directory.resolve(String.format("snapshot-%019d.bin", sequence));
+	}
+
+	// Make the rename durable; not every platform can open a directory, which is then best effort
+	private static void syncDirectory(Path directory) {
+		try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+			channel.force(true);
+		} catch (IOException e) {
+			// ignored
+		}
+	}
+
+	private static int checksum(FileChannel channel, long length) throws IOException {
+		CRC32C crc = new CRC32C();
+		for (long position = 0; position < length; position += MAX_REGION) {
+			crc.update(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAX_REGION, length - position)));
+		}
+		return (int) crc.getValue();
+	}
+}
@@ -0,0 +1,416 @@
+package com.backcountry.product.repository.persistence;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only binary log with group commit.
+ *
+ * Writers hand an encoded payload to {@link #append} and wait on the returned future. A single
+ * writer thread drains everything queued since its last flush, writes it with one call, forces
+ * it to disk once, then applies each entry in log order and completes the futures. Concurrent
+ * writers therefore share one fsync, and the order in which changes become visible always
+ * matches the order in which they are replayed.
+ *
+ * The log is split into segment files named after the sequence of their first record. {@link #roll}
+ * starts a new segment so that older ones can be deleted once a snapshot covers them.
+ *
+ * Record layout: payload length (int), CRC32C (int), sequence (long), type (byte), payload.
+ * The CRC covers sequence, type and payload. Replay stops at the first torn or corrupt record
+ * of the last segment and truncates the file there.
+ */
+final class WriteAheadLog implements Closeable {
+
+	static final byte SAVE = 1;
+	static final byte DELETE = 2;
+	static final byte CLEAR = 3;
+	// A batch of saves or deletes in one record, so it is replayed entirely or not at all
+	static final byte SAVE_ALL = 4;
+	static final byte DELETE_ALL = 5;
+
+	// Queue marker for a segment roll; never written
+	private static final byte ROLL = 0;
+
+	private static final Logger log = LoggerFactory.getLogger(WriteAheadLog.class);
+
+	private static final String LEGACY_FILE = "products.wal";
+	private static final Pattern SEGMENT = Pattern.compile("products-(\\d{19})\\.wal");
+
+	private static final int HEADER_BYTES = Integer.BYTES + Integer.BYTES + Long.BYTES + Byte.BYTES;
+	private static final int MAX_BATCH = 4096;
+
+	/**
+	 * A replayed log record.
+	 * @param sequence position of the record in the log
+	 * @param type SAVE, DELETE, CLEAR, SAVE_ALL or DELETE_ALL
+	 * @param payload encoded record body
+	 */
+	record Entry(long sequence, byte type, byte[] payload) {}
+
+	private record Pending(byte type, byte[] payload, Runnable apply, CompletableFuture<Long> done) {}
+
+	private final Path directory;
+	private final boolean fsync;
+	private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+	private final Thread writer;
+	private final long recovered;
+
+	private FileChannel channel;
+	private ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+	private long nextSequence;
+	private volatile long lastSequence;
+	private volatile boolean running = true;
+	private volatile IOException failure;
+
+	private WriteAheadLog(Path directory, boolean fsync, long after, Consumer<Entry> replay) throws IOException {
+		this.directory = directory;
+		this.fsync = fsync;
+		this.nextSequence = after + 1;
+
+		adoptLegacyFile();
+		this.recovered = replay(after, replay);
+		this.lastSequence = nextSequence - 1;
+
+		this.writer = new Thread(this::run, "wal-writer");
+		this.writer.setDaemon(true);
+		this.writer.start();
+	}
+
+	/**
+	 * Open the log in a directory, replay its records through the consumer, and start accepting appends.
+	 * @param directory directory holding the segment files
+	 * @param fsync whether to force each batch to disk before acknowledging it
+	 * @param after records up to this sequence are already reflected elsewhere (a snapshot) and are skipped
+	 * @param replay receives every valid record after {@code after}, in order
+	 * @return the open log
+	 * @throws IOException if the segments cannot be read or opened
+	 */
+	static WriteAheadLog open(Path directory, boolean fsync, long after, Consumer<Entry> replay) throws IOException {
+		return new WriteAheadLog(directory, fsync, after, replay);
+	}
+
+	/**
+	 * @return number of records replayed when the log was opened
+	 */
+	long recovered() {
+		return recovered;
+	}
+
+	/**
+	 * @return sequence of the last record written and applied
+	 */
+	long lastSequence() {
+		return lastSequence;
+	}
+
+	/**
+	 * Queue a record for the next group commit.
+	 * @param type SAVE, DELETE, CLEAR, SAVE_ALL or DELETE_ALL
+	 * @param payload encoded record body
+	 * @param apply run by the writer thread once the record is durable, in log order
+	 * @return future completed with the record's sequence once it is durable and applied
+	 */
+	CompletableFuture<Long> append(byte type, byte[] payload, Runnable apply) {
+		CompletableFuture<Long> done = new CompletableFuture<>();
+		if (failure != null || !running) {
+			done.completeExceptionally(unavailable());
+			return done;
+		}
+		queue.add(new Pending(type, payload, apply, done));
+		return done;
+	}
+
+	/**
+	 * Start a new segment once every record queued before this call is written and applied.
+	 * @return future completed with the sequence of the last record in the closed segments
+	 */
+	CompletableFuture<Long> roll() {
+		return append(ROLL, null, () -> {});
+	}
+
+	/**
+	 * Delete the segments whose records all have a sequence up to the given one.
+	 * The segment being written is never deleted.
+	 * @param upTo sequence covered by a durable snapshot
+	 * @throws IOException if a segment cannot be deleted
+	 */
+	void truncate(long upTo) throws IOException {
+		List<Long> starts = segments();
+		// A segment ends where the next one starts
+		for (int i = 0; i + 1 < starts.size(); i++) {
+			if (starts.get(i + 1) - 1 <= upTo) {
+				Files.deleteIfExists(segment(starts.get(i)));
+			}
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		running = false;
+		try {
+			writer.join(TimeUnit.SECONDS.toMillis(10));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		// Anything that raced with shutdown is rejected rather than left waiting
+		Pending pending;
+		while ((pending = queue.poll()) != null) {
+			pending.done().completeExceptionally(unavailable());
+		}
+		channel.close();
+	}
+
+	// -------------------------
+	// Writer thread
+	// -------------------------
+
+	private void run() {
+		List<Pending> batch = new ArrayList<>();
+		List<Pending> records = new ArrayList<>();
+		while (running || !queue.isEmpty()) {
+			try {
+				Pending first = queue.poll(100, TimeUnit.MILLISECONDS);
+				if (first == null) {
+					continue;
+				}
+				batch.add(first);
+				queue.drainTo(batch, MAX_BATCH - 1);
+
+				for (Pending pending : batch) {
+					if (pending.type() == ROLL) {
+						commit(records);
+						records.clear();
+						rollSegment(pending);
+					} else {
+						records.add(pending);
+					}
+				}
+				commit(records);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			} finally {
+				batch.clear();
+				records.clear();
+			}
+		}
+	}
+
+	private void commit(List<Pending> batch) {
+		if (batch.isEmpty()) {
+			return;
+		}
+		if (failure != null) {
+			batch.forEach(pending -> pending.done().completeExceptionally(unavailable()));
+			return;
+		}
+
+		long first = nextSequence;
+		try {
+			buffer.clear();
+			for (Pending pending : batch) {
+				encode(nextSequence++, pending.type(), pending.payload());
+			}
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			if (fsync) {
+				channel.force(false);
+			}
+		} catch (IOException e) {
+			fail(e);
+			batch.forEach(pending -> pending.done().completeExceptionally(unavailable()));
+			return;
+		}
+
+		long sequence = first;
+		for (Pending pending : batch) {
+			try {
+				pending.apply().run();
+				pending.done().complete(sequence++);
+			} catch (RuntimeException e) {
+				pending.done().completeExceptionally(e);
+			}
+		}
+		lastSequence = nextSequence - 1;
+	}
+
+	private void rollSegment(Pending marker) {
+		if (failure != null) {
+			marker.done().completeExceptionally(unavailable());
+			return;
+		}
+		try {
+			FileChannel next = openSegment(nextSequence);
+			channel.close();
+			channel = next;
+			marker.done().complete(nextSequence - 1);
+		} catch (IOException e) {
+			fail(e);
+			marker.done().completeExceptionally(unavailable());
+		}
+	}
+
+	// The tail of the log is now unknown; refuse further writes rather than risk a gap
+	private void fail(IOException e) {
+		log.error("Write-ahead log write failed, rejecting further writes", e);
+		failure = e;
+	}
+
+	private void encode(long sequence, byte type, byte[] payload) {
+		int size = HEADER_BYTES + payload.length;
+		if (buffer.remaining() < size) {
+			ByteBuffer larger = ByteBuffer.allocateDirect(Math.max(buffer.capacity() * 2, buffer.position() + size));
+			buffer.flip();
+			larger.put(buffer);
+			buffer = larger;
+		}
+
+		CRC32C crc = new CRC32C();
+		ByteBuffer meta = ByteBuffer.allocate(Long.BYTES + Byte.BYTES).putLong(sequence).put(type).flip();
+		crc.update(meta);
+		crc.update(payload);
+
+		buffer.putInt(payload.length)
+				.putInt((int) crc.getValue())
+				.putLong(sequence)
+				.put(type)
+				.put(payload);
+	}
+
+	private UncheckedIOException unavailable() {
+		return new UncheckedIOException("Write-ahead log is not accepting writes",
+				failure != null ? failure : new IOException("closed"));
+	}
+
+	// -------------------------
+	// Segments and replay
+	// -------------------------
+
+	private Path segment(long firstSequence) {
+		return directory.resolve(String.format("products-%019d.wal", firstSequence));
+	}
+
+	private FileChannel openSegment(long firstSequence) throws IOException {
+		FileChannel segment = FileChannel.open(segment(firstSequence),
+				StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		segment.position(segment.size());
+		return segment;
+	}
+
+	// First sequence of every segment, in order
+	private List<Long> segments() throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.map(file -> SEGMENT.matcher(file.getFileName().toString()))
+					.filter(Matcher::matches)
+					.map(match -> Long.parseLong(match.group(1)))
+					.sorted()
+					.toList();
+		}
+	}
+
+	// Logs written before segmentation hold every record from the start
+	private void adoptLegacyFile() throws IOException {
+		Path legacy = directory.resolve(LEGACY_FILE);
+		if (Files.exists(legacy) && segments().isEmpty()) {
+			Files.move(legacy, segment(0));
+		}
+	}
+
+	private long replay(long after, Consumer<Entry> apply) throws IOException {
+		List<Long> starts = segments();
+		long count = 0;
+
+		for (int i = 0; i < starts.size(); i++) {
+			boolean last = i == starts.size() - 1;
+			if (!last && starts.get(i + 1) - 1 <= after) {
+				continue;
+			}
+			try (FileChannel segment = FileChannel.open(segment(starts.get(i)),
+					StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+				count += replay(segment, after, last, apply);
+			}
+		}
+
+		channel = openSegment(starts.isEmpty() ? nextSequence : starts.get(starts.size() - 1));
+		return count;
+	}
+
+	private long replay(FileChannel segment, long after, boolean last, Consumer<Entry> apply) throws IOException {
+		long size = segment.size();
+		long position = 0;
+		long count = 0;
+		ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+
+		while (position + HEADER_BYTES <= size) {
+			header.clear();
+			readFully(segment, header, position);
+			header.flip();
+
+			int length = header.getInt();
+			int checksum = header.getInt();
+			long sequence = header.getLong();
+			byte type = header.get();
+
+			if (length < 0 || position + HEADER_BYTES + length > size) {
+				break;
+			}
+
+			ByteBuffer payload = ByteBuffer.allocate(length);
+			readFully(segment, payload, position + HEADER_BYTES);
+
+			CRC32C crc = new CRC32C();
+			crc.update(header.array(), Integer.BYTES * 2, Long.BYTES + Byte.BYTES);
+			crc.update(payload.array());
+			if ((int) crc.getValue() != checksum) {
+				break;
+			}
+
+			if (sequence > after) {
+				apply.accept(new Entry(sequence, type, payload.array()));
+				count++;
+			}
+			nextSequence = Math.max(nextSequence, sequence + 1);
+			position += HEADER_BYTES + length;
+		}
+
+		if (position < size) {
+			if (!last) {
+				// Only the segment being written at the time of a crash can be torn
+				throw new IOException("Corrupt write-ahead log segment at byte " + position);
+			}
+			log.warn("Truncating {} bytes of torn or corrupt write-ahead log tail", size - position);
+			segment.truncate(position);
+		}
+		return count;
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer target, long position) throws IOException {
+		while (target.hasRemaining()) {
+			if (channel.read(target, position + target.position()) < 0) {
+				throw new IOException("Unexpected end of write-ahead log");
+			}
+		}
+	}
+}
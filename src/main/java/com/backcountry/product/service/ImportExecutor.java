@@ -0,0 +1,73 @@
+package com.backcountry.product.service;
+
+import com.backcountry.config.ImportProperties;
+import com.backcountry.product.exception.ImportCapacityException;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Threads for the stages of catalog imports: a pool with {@link ProductImport#STAGE_THREADS} threads for
+ * each of the imports allowed at once. An import beyond that is turned away instead of queued, since its
+ * stages hand batches to each other and one started without the others would hold its thread waiting.
+ *
+ * Not itself an Executor bean, so Spring Boot still configures the application task executor that MVC
+ * async requests run on. The pool is shut down with the application context, interrupting running stages.
+ */
+@Component
+public class ImportExecutor implements DisposableBean {
+
+	private final int maxConcurrent;
+	private final Semaphore imports;
+	private final ThreadPoolTaskExecutor threads = new ThreadPoolTaskExecutor();
+
+	public ImportExecutor(ImportProperties properties) {
+		maxConcurrent = properties.maxConcurrent();
+		imports = new Semaphore(maxConcurrent);
+		threads.setCorePoolSize(ProductImport.STAGE_THREADS * maxConcurrent);
+		threads.setMaxPoolSize(ProductImport.STAGE_THREADS * maxConcurrent);
+		threads.setAllowCoreThreadTimeOut(true);
+		threads.setThreadNamePrefix("import-");
+		threads.setDaemon(true);
+		threads.initialize();
+	}
+
+	/**
+	 * Start the stages of one import, each on a thread of its own. The import holds its place until the
+	 * last of them ends; a stage submitted as another import's last one ends waits at most for that
+	 * thread to come back to the pool.
+	 * @param stages the stages, at most {@link ProductImport#STAGE_THREADS}
+	 * @return the running stages
+	 * @throws ImportCapacityException if the most imports allowed at once are running
+	 */
+	List<Future<?>> start(List<Runnable> stages) {
+		if (!imports.tryAcquire()) {
+			throw new ImportCapacityException("Already running " + maxConcurrent + " imports, retry once one has finished");
+		}
+		AtomicInteger running = new AtomicInteger(stages.size());
+		List<Future<?>> started = new ArrayList<>(stages.size());
+		for (Runnable stage : stages) {
+			started.add(threads.submit(() -> {
+				try {
+					stage.run();
+				} finally {
+					if (running.decrementAndGet() == 0) {
+						imports.release();
+					}
+				}
+			}));
+		}
+		return started;
+	}
+
+	@Override
+	public void destroy() {
+		threads.shutdown();
+	}
+}
@@ -0,0 +1,20 @@
+package com.backcountry.product.service;
+
+import com.backcountry.product.dto.CreateProductRequest;
+
+/**
+ * One record of an import upload, as parsed: the request it holds, or why it could not be parsed.
+ * @param line line of the upload the record starts on
+ * @param request the parsed request, null if the record could not be parsed (or is a JSON null)
+ * @param error why the record could not be parsed, null if it was
+ */
+public record ImportRecord(long line, CreateProductRequest request, String error) {
+
+	public static ImportRecord parsed(long line, CreateProductRequest request) {
+		return new ImportRecord(line, request, null);
+	}
+
+	public static ImportRecord unparsable(long line, String error) {
+		return new ImportRecord(line, null, error);
+	}
+}
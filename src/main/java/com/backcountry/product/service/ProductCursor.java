@@ -0,0 +1,60 @@
+package com.backcountry.product.service;
+
+import com.backcountry.product.exception.InvalidCursorException;
+import com.backcountry.product.model.Product;
+import com.backcountry.product.repository.ProductSort;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * Opaque keyset cursor: the sort order, the catalog version the listing reads, and the sort key and
+ * id of the last product returned, base64url encoded. Decoding yields the anchor the repository seeks
+ * past and the version to read it at, so every page of a listing comes from the same catalog.
+ * @param anchor a partial product holding the sort key and id
+ * @param version catalog version of the listing, 0 if the repository does not keep versions
+ */
+record ProductCursor(Product anchor, long version) {
+
+	private static final char SEPARATOR = '\n';
+
+	/**
+	 * Encode the position right after a product.
+	 * @param sort the ordering of the listing
+	 * @param last the last product of the page
+	 * @param version the catalog version the page was read at
+	 * @return the opaque cursor
+	 */
+	static String encode(ProductSort sort, Product last, long version) {
+		String raw = sort.name() + SEPARATOR + version + SEPARATOR + last.getId() + SEPARATOR + sort.key(last);
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Decode a cursor into the anchor to seek past and the version to read.
+	 * @param cursor the opaque cursor
+	 * @param sort the ordering requested alongside the cursor
+	 * @return the decoded cursor
+	 * @throws InvalidCursorException if the cursor is malformed or was issued for another ordering
+	 */
+	static ProductCursor decode(String cursor, ProductSort sort) {
+		try {
+			String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+
+			// The sort key goes last since names and brands may contain anything
+			int first = raw.indexOf(SEPARATOR);
+			int second = raw.indexOf(SEPARATOR, first + 1);
+			int third = raw.indexOf(SEPARATOR, second + 1);
+			if (first < 0 || second < 0 || third < 0 || !raw.substring(0, first).equals(sort.name())) {
+				throw new InvalidCursorException(cursor);
+			}
+
+			long version = Long.parseLong(raw.substring(first + 1, second));
+			UUID id = UUID.fromString(raw.substring(second + 1, third));
+			return new ProductCursor(sort.anchor(raw.substring(third + 1), id), version);
+		} catch (IllegalArgumentException e) {
+			throw new InvalidCursorException(cursor);
+		}
+	}
+}
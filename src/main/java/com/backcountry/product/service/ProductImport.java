@@ -0,0 +1,253 @@
+package com.backcountry.product.service;
+
+import com.backcountry.product.dto.CreateProductRequest;
+import com.backcountry.product.dto.ImportResponse;
+import com.backcountry.product.exception.ImportCapacityException;
+import com.backcountry.product.model.Product;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * One catalog import, run as a pipeline of three stages on their own threads: parsing on the calling
+ * thread, then validation and writing on threads of the {@link ImportExecutor}. Stages hand batches to the next through small bounded queues,
+ * so a fast stage waits for a slow one rather than buffering the upload, and memory stays flat however
+ * large it is.
+ *
+ * An import is not atomic: when a stage fails the others stop, but batches already written stay written.
+ */
+final class ProductImport {
+
+	// Stages run on threads of the executor, parsing running on the caller's
+	static final int STAGE_THREADS = 2;
+
+	// Records per batch, which is validated in one pass and written with one repository call
+	static final int BATCH_RECORDS = 1000;
+
+	// Batches each queue holds between two stages
+	static final int QUEUE_BATCHES = 4;
+
+	// Rejections listed in the report; later ones are only counted
+	static final int MAX_REPORTED_REJECTIONS = 1000;
+
+	// How often a stage blocked on a queue checks whether another stage failed
+	private static final long POLL_MILLIS = 100;
+
+	// Ends the output of a stage, compared by identity
+	private static final List<ImportRecord> NO_MORE_RECORDS = Collections.unmodifiableList(new ArrayList<>());
+	private static final List<Product> NO_MORE_PRODUCTS = Collections.unmodifiableList(new ArrayList<>());
+
+	private final Function<List<CreateProductRequest>, List<Map<String, String>>> validator;
+	private final Function<CreateProductRequest, Product> builder;
+	private final Consumer<List<Product>> writer;
+	private final ImportExecutor executor;
+
+	private final BlockingQueue<List<ImportRecord>> parsed = new ArrayBlockingQueue<>(QUEUE_BATCHES);
+	private final BlockingQueue<List<Product>> validated = new ArrayBlockingQueue<>(QUEUE_BATCHES);
+	private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+	// Each written by one stage only and read once all have finished
+	private long records;
+	private long rejected;
+	private long imported;
+	private final List<ImportResponse.Rejection> rejections = new ArrayList<>();
+
+	/**
+	 * @param validator errors of each request of a batch by property path, null for a valid request
+	 * @param builder builds the product created by a valid request
+	 * @param writer saves a batch of products
+	 * @param executor runs the validation and writing stages
+	 */
+	ProductImport(Function<List<CreateProductRequest>, List<Map<String, String>>> validator,
+			Function<CreateProductRequest, Product> builder,
+			Consumer<List<Product>> writer,
+			ImportExecutor executor) {
+		this.validator = validator;
+		this.builder = builder;
+		this.writer = writer;
+		this.executor = executor;
+	}
+
+	/**
+	 * Import every record, parsing them on the calling thread.
+	 * @param source records of the upload, read as it arrives
+	 * @return ImportResponse with the counts, throughput and first rejections
+	 * @throws ImportCapacityException if the executor is running as many imports as it allows, before
+	 *         any record is read
+	 * @throws RuntimeException whatever a stage failed with, including the source's UncheckedIOException
+	 */
+	ImportResponse run(Iterator<ImportRecord> source) {
+		long start = System.nanoTime();
+
+		List<Future<?>> stages = executor.start(List.of(stage(this::validate), stage(this::write)));
+		try {
+			parse(source);
+		} catch (Throwable e) {
+			failure.compareAndSet(null, e);
+		}
+		for (Future<?> stage : stages) {
+			join(stage);
+		}
+
+		Throwable failed = failure.get();
+		if (failed instanceof RuntimeException e) {
+			throw e;
+		}
+		if (failed instanceof Error e) {
+			throw e;
+		}
+		if (failed != null) {
+			throw new IllegalStateException("Import interrupted", failed);
+		}
+
+		long elapsed = Math.max(System.nanoTime() - start, 1);
+		return new ImportResponse(
+				records,
+				imported,
+				rejected,
+				TimeUnit.NANOSECONDS.toMillis(elapsed),
+				records * TimeUnit.SECONDS.toNanos(1) / elapsed,
+				rejections
+		);
+	}
+
+	private void parse(Iterator<ImportRecord> source) throws InterruptedException {
+		List<ImportRecord> batch = new ArrayList<>(BATCH_RECORDS);
+		while (source.hasNext()) {
+			batch.add(source.next());
+			records++;
+			if (batch.size() == BATCH_RECORDS) {
+				if (!put(parsed, batch)) {
+					return;
+				}
+				batch = new ArrayList<>(BATCH_RECORDS);
+			}
+		}
+		if (!batch.isEmpty() && !put(parsed, batch)) {
+			return;
+		}
+		put(parsed, NO_MORE_RECORDS);
+	}
+
+	private void validate() throws InterruptedException {
+		List<ImportRecord> batch;
+		while ((batch = take(parsed)) != NO_MORE_RECORDS) {
+			if (batch == null) {
+				return;
+			}
+
+			List<CreateProductRequest> requests = new ArrayList<>(batch.size());
+			for (ImportRecord record : batch) {
+				if (record.error() == null) {
+					requests.add(record.request());
+				}
+			}
+			List<Map<String, String>> errors = validator.apply(requests);
+
+			List<Product> products = new ArrayList<>(requests.size());
+			int next = 0;
+			for (ImportRecord record : batch) {
+				Map<String, String> recordErrors = record.error() != null
+						? Map.of("line", record.error())
+						: errors.get(next++);
+				if (recordErrors == null) {
+					products.add(builder.apply(record.request()));
+				} else {
+					reject(record.line(), recordErrors);
+				}
+			}
+			if (!products.isEmpty() && !put(validated, products)) {
+				return;
+			}
+		}
+		put(validated, NO_MORE_PRODUCTS);
+	}
+
+	private void write() throws InterruptedException {
+		List<Product> batch;
+		while ((batch = take(validated)) != NO_MORE_PRODUCTS) {
+			if (batch == null) {
+				return;
+			}
+			writer.accept(batch);
+			imported += batch.size();
+		}
+	}
+
+	private void reject(long line, Map<String, String> errors) {
+		rejected++;
+		if (rejections.size() < MAX_REPORTED_REJECTIONS) {
+			rejections.add(new ImportResponse.Rejection(line, errors));
+		}
+	}
+
+	// A stage whose failure stops the others
+	private Runnable stage(Stage body) {
+		return () -> {
+			try {
+				body.run();
+			} catch (Throwable e) {
+				failure.compareAndSet(null, e);
+			}
+		};
+	}
+
+	// False if another stage failed while waiting for room
+	private <T> boolean put(BlockingQueue<T> queue, T batch) throws InterruptedException {
+		while (!queue.offer(batch, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+			if (failure.get() != null) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// Null if another stage failed while waiting for a batch
+	private <T> T take(BlockingQueue<T> queue) throws InterruptedException {
+		T batch;
+		while ((batch = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS)) == null) {
+			if (failure.get() != null) {
+				return null;
+			}
+		}
+		return batch;
+	}
+
+	// Stages notice an interrupted caller through the failure, so the join itself carries on
+	private void join(Future<?> stage) {
+		boolean interrupted = false;
+		while (true) {
+			try {
+				stage.get();
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+				failure.compareAndSet(null, e);
+			} catch (ExecutionException | CancellationException e) {
+				// Stages catch their own failures; only a pool shutting down gets here
+				failure.compareAndSet(null, e);
+				break;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@FunctionalInterface
+	private interface Stage {
+		void run() throws InterruptedException;
+	}
+}
@@ -0,0 +1,218 @@
+package com.backcountry.product.service;
+
+import com.backcountry.product.exception.InventoryConflictException;
+import com.backcountry.product.model.Product;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Stock counters of the products being reserved and released, so checkout takes the store's write path a
+ * few times per burst of a product rather than once per reservation.
+ *
+ * Each product reserved has a counter holding its available units and the number of changes made to
+ * them, packed into one long. A reservation is admitted, or refused, by a compare-and-set of that long,
+ * which never takes the units below zero, so deciding whether a reservation fits takes no lock.
+ *
+ * Making it durable and visible does. Changes reach the store by group commit: the first change to arrive
+ * writes the counter, with every change admitted until then, as one conditional save, while later ones
+ * wait on the counter's publishing lock behind it. Once that save returns, each waiting change finds it
+ * already written and returns without a write of its own, so a product sold by thousands of requests at
+ * once is written a few times rather than thousands. The saves of different products still meet in the
+ * store, whose every write takes one lock: the heap store's write lock, which the durable store takes
+ * too under its own, or the off-heap store's. Checkouts of different products queue there for one
+ * write each.
+ *
+ * A counter is seeded from the product at one version and only writes over that version. When another
+ * write moved the product meanwhile, the counter is retired and the changes it had not written are
+ * retried on a counter seeded from the product as it is now.
+ *
+ * A counter is also retired once it holds no change that is not written, after a write or a refused
+ * change, so only products with changes in flight keep one and the map does not grow with every product
+ * ever reserved. A change that lands on a counter just retired is retried like one written around.
+ */
+@Component
+public class ProductInventory {
+
+	// Counters by product id, retired when the product is written around them or nothing is left to write
+	private final Map<UUID, Stock> stocks = new ConcurrentHashMap<>();
+
+	/**
+	 * Writes a product with new inventory over the version it was read at.
+	 */
+	@FunctionalInterface
+	interface Writer {
+
+		/**
+		 * @param current the product as stored, at the version the write is conditional on
+		 * @param inventory the units to store
+		 * @return the saved product, or empty if the product is no longer at that version
+		 */
+		Optional<Product> write(Product current, int inventory);
+	}
+
+	/**
+	 * Add units to the stock of a product or take them out, and wait until the store holds the change.
+	 * @param id id of the product
+	 * @param delta units to add, negative to take out
+	 * @param reader reads the product as stored
+	 * @param writer writes the product with the new inventory
+	 * @return the product as written with the change, possibly along with others; empty if not found
+	 * @throws InventoryConflictException if the stock cannot take the change
+	 */
+	Optional<Product> adjust(UUID id, int delta, Function<UUID, Optional<Product>> reader, Writer writer) {
+		while (true) {
+			Stock stock = stocks.get(id);
+			if (stock == null) {
+				Optional<Product> product = reader.apply(id);
+				if (product.isEmpty()) {
+					return Optional.empty();
+				}
+				Stock seeded = new Stock(product.get());
+				stock = stocks.putIfAbsent(id, seeded);
+				if (stock == null) {
+					stock = seeded;
+				}
+			}
+
+			long ticket = stock.apply(delta);
+			if (ticket == Stock.REFUSED) {
+				// A counter a write went around may refuse what the stored product allows
+				Optional<Product> current = reader.apply(id);
+				if (current.isEmpty() || current.get().getVersion() != stock.latest.getVersion()) {
+					retire(id, stock);
+					if (current.isEmpty()) {
+						return Optional.empty();
+					}
+					continue;
+				}
+				if (stock.idle()) {
+					retire(id, stock);
+				}
+				throw new InventoryConflictException(delta < 0
+						? "Product with id " + id + " has " + stock.available() + " in stock, fewer than " + -delta
+						: "Product with id " + id + " cannot hold " + delta + " more than its " + stock.available() + " in stock");
+			}
+
+			Product written = stock.publish((int) ticket, writer);
+			if (written != null) {
+				if (stock.retired) {
+					stocks.remove(id, stock);
+				}
+				return Optional.of(written);
+			}
+			retire(id, stock);
+		}
+	}
+
+	/**
+	 * Retire the counter of a product that was updated or deleted, so its next change starts from the
+	 * product as stored.
+	 * @param id id of the product
+	 */
+	void evict(UUID id) {
+		Stock stock = stocks.remove(id);
+		if (stock != null) {
+			stock.retired = true;
+		}
+	}
+
+	/**
+	 * @return products with a counter now
+	 */
+	int size() {
+		return stocks.size();
+	}
+
+	private void retire(UUID id, Stock stock) {
+		stock.retired = true;
+		stocks.remove(id, stock);
+	}
+
+	private static final class Stock {
+
+		static final long REFUSED = -1;
+
+		// Changes made in the high 32 bits, wrapping, and units available in the low 32 bits
+		private final AtomicLong state;
+
+		// Held while the counter is written, and by each change until it is written
+		private final ReentrantLock publishing = new ReentrantLock();
+
+		// The product as last written, and the changes it holds
+		private volatile Product latest;
+		private volatile int published;
+		private volatile boolean retired;
+
+		private Stock(Product product) {
+			this.latest = product;
+			this.state = new AtomicLong(Integer.toUnsignedLong(product.getInventory()));
+		}
+
+		int available() {
+			return (int) state.get();
+		}
+
+		// True if every change made has been written
+		boolean idle() {
+			return (int) (state.get() >>> 32) == published;
+		}
+
+		/**
+		 * Apply a change to the units if it leaves them between zero and the largest int.
+		 * @return the number of the change, or REFUSED
+		 */
+		long apply(int delta) {
+			while (true) {
+				long current = state.get();
+				long units = (long) (int) current + delta;
+				if (units < 0 || units > Integer.MAX_VALUE) {
+					return REFUSED;
+				}
+				int change = (int) (current >>> 32) + 1;
+				if (state.compareAndSet(current, (long) change << 32 | units)) {
+					return Integer.toUnsignedLong(change);
+				}
+			}
+		}
+
+		/**
+		 * Wait until a change is written, writing it along with every change made since the last
+		 * write unless a write already holds it. Retires the counter if no change is left to write.
+		 * @return the product as written with the change, or null if the counter is retired without it
+		 */
+		Product publish(int change, Writer writer) {
+			publishing.lock();
+			try {
+				if (published - change >= 0) {
+					return latest;
+				}
+				if (retired) {
+					return null;
+				}
+				// One read, so the units written are exactly those of the changes counted
+				long current = state.get();
+				Optional<Product> written = writer.write(latest, (int) current);
+				if (written.isEmpty()) {
+					retired = true;
+					return null;
+				}
+				latest = written.get();
+				published = (int) (current >>> 32);
+				if (state.get() == current) {
+					// Nothing left to write, so the next change starts from the stored product
+					retired = true;
+				}
+				return latest;
+			} finally {
+				publishing.unlock();
+			}
+		}
+	}
+}
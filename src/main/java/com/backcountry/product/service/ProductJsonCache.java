@@ -0,0 +1,123 @@
+package com.backcountry.product.service;
+
+import com.backcountry.config.JsonCacheProperties;
+import com.backcountry.product.dto.ProductResponse;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.stereotype.Component;
+
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * Cache of the UTF-8 JSON of each product, so reads write bytes instead of building a ProductResponse and
+ * serializing it again. Bounded by the bytes it holds and evicted by W-TinyLFU, so the products read
+ * most keep their JSON.
+ *
+ * Each entry is tagged with the version it was serialized at and serves only that version, so a write
+ * the cache does not hear of still never serves stale JSON. Writes evict the entries they replace so
+ * the old JSON does not wait for eviction.
+ */
+@Component
+public class ProductJsonCache {
+
+	private static final byte[] EMPTY_ARRAY = {'[', ']'};
+
+	private final ObjectWriter writer;
+
+	// Null when disabled
+	private final Cache<UUID, Fragment> fragments;
+
+	public ProductJsonCache(ObjectMapper mapper, JsonCacheProperties properties) {
+		this.writer = mapper.writerFor(ProductResponse.class);
+		long maximumBytes = properties.maximumSize().toBytes();
+		this.fragments = maximumBytes <= 0 ? null : Caffeine.newBuilder()
+				.maximumWeight(maximumBytes)
+				.weigher((UUID id, Fragment fragment) -> fragment.json.length)
+				.build();
+	}
+
+	/**
+	 * Return the cached JSON of a product at a version, or serialize and cache it.
+	 * @param id id of the product
+	 * @param version version of the product
+	 * @param response builds the response of the product, only when its JSON is not cached
+	 * @return the JSON bytes, not to be modified
+	 */
+	byte[] json(UUID id, long version, Supplier<ProductResponse> response) {
+		if (fragments == null) {
+			return serialize(response.get());
+		}
+		Fragment cached = fragments.getIfPresent(id);
+		if (cached != null && cached.version == version) {
+			return cached.json;
+		}
+
+		Fragment fragment = new Fragment(version, serialize(response.get()));
+		// A slower read of an older version must not replace a newer one
+		fragments.asMap().merge(id, fragment, (current, read) -> read.version > current.version ? read : current);
+		return fragment.json;
+	}
+
+	/**
+	 * Write products as a JSON array of their cached JSON.
+	 * @param products the products, in order
+	 * @return the JSON array bytes
+	 */
+	byte[] array(List<ProductResponse> products) {
+		if (products.isEmpty()) {
+			return EMPTY_ARRAY;
+		}
+		byte[][] parts = new byte[products.size()][];
+		// Brackets and the commas between the products
+		int length = products.size() + 1;
+		for (int i = 0; i < parts.length; i++) {
+			ProductResponse product = products.get(i);
+			parts[i] = json(product.id(), product.version(), () -> product);
+			length += parts[i].length;
+		}
+
+		byte[] array = new byte[length];
+		array[0] = '[';
+		int position = 1;
+		for (byte[] part : parts) {
+			System.arraycopy(part, 0, array, position, part.length);
+			position += part.length;
+			array[position++] = ',';
+		}
+		array[length - 1] = ']';
+		return array;
+	}
+
+	/**
+	 * Drop the JSON of a product that was updated or deleted.
+	 * @param id id of the product
+	 */
+	void evict(UUID id) {
+		if (fragments != null) {
+			fragments.invalidate(id);
+		}
+	}
+
+	/**
+	 * @return products whose JSON is cached now
+	 */
+	long size() {
+		return fragments == null ? 0 : fragments.estimatedSize();
+	}
+
+	private byte[] serialize(ProductResponse response) {
+		try {
+			return writer.writeValueAsBytes(response);
+		} catch (JsonProcessingException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private record Fragment(long version, byte[] json) {}
+}
@@ -0,0 +1,302 @@
+package com.backcountry.product.service;
+
+import com.backcountry.config.ListCacheProperties;
+import com.backcountry.product.dto.ProductPage;
+import com.backcountry.product.model.CatalogDictionary;
+import com.backcountry.product.model.Product;
+import com.backcountry.product.repository.ProductQuery;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Read-through cache of listing pages, keyed on their normalized query. Caffeine bounds it by the
+ * products the pages hold, whatever size clients ask for, and evicts by W-TinyLFU, so pages requested
+ * often stay while one-off queries pass through. Only pages read without a cursor are kept: a cursor
+ * pins its page to a catalog version, so nearly every cursor page is read once.
+ *
+ * A write drops exactly the pages it could change: those whose query matches the product before or
+ * after the write. Pages are indexed by the brand or category they filter on, so a write only tests
+ * the pages of its own brand and categories plus the unfiltered ones. Relevance pages depend on
+ * statistics of the whole catalog and are dropped by every write, and batches too large to test page
+ * by page drop the whole cache.
+ *
+ * Every write must be reported after the repository has it. A page read while a write was reported
+ * is not kept, since it may or may not include that write.
+ */
+@Component
+public class ProductListCache {
+
+	// Largest batch of written products tested page by page; larger ones drop every page
+	static final int MAX_PRECISE_BATCH = 256;
+
+	// Null when disabled
+	private final Cache<ProductQuery, Entry> pages;
+	private final long maximumSize;
+
+	// Pages by the filter they are indexed on; each page is in exactly one set, and a filter's set is
+	// removed with its last page, so filters sent once are not kept
+	private final Map<String, Set<Entry>> byBrand = new ConcurrentHashMap<>();
+	private final Map<String, Set<Entry>> byCategory = new ConcurrentHashMap<>();
+	private final Set<Entry> unfiltered = ConcurrentHashMap.newKeySet();
+	private final Set<Entry> ranked = ConcurrentHashMap.newKeySet();
+
+	// Reported writes, so a read can tell whether one overlapped it
+	private final AtomicLong writes = new AtomicLong();
+	private final AtomicLong invalidations = new AtomicLong();
+
+	public ProductListCache(ListCacheProperties properties) {
+		this.maximumSize = properties.maximumSize();
+		this.pages = maximumSize <= 0 ? null : Caffeine.newBuilder()
+				.maximumWeight(maximumSize)
+				// A page weighs the products it holds, and one more so empty pages count too
+				.weigher((ProductQuery key, Entry entry) -> entry.page.items().size() + 1)
+				.recordStats()
+				// Eviction unindexes pages, which is brief, so it runs on the thread that caused it
+				.executor(Runnable::run)
+				.evictionListener((ProductQuery key, Entry entry, RemovalCause cause) -> unindex(entry))
+				.build();
+	}
+
+	/**
+	 * Return the cached page of a query, or load and cache it. Pages of a cursor are loaded every time.
+	 * @param query the query, with the catalog version of a cursor but not of a first page
+	 * @param loader reads the page of the query from the repository
+	 * @return ProductPage
+	 */
+	ProductPage get(ProductQuery query, Function<ProductQuery, ProductPage> loader) {
+		if (pages == null || query.after() != null || query.asOf() != null) {
+			return loader.apply(query);
+		}
+		ProductQuery key = normalize(query);
+		Entry cached = pages.getIfPresent(key);
+		if (cached != null) {
+			return cached.page;
+		}
+
+		long seen = writes.get();
+		Entry entry = new Entry(key, loader.apply(query));
+		// Indexed before it is visible, so a write reported from here on finds it
+		index(entry);
+		Entry replaced = pages.asMap().put(key, entry);
+		if (replaced != null) {
+			unindex(replaced);
+		}
+		if (writes.get() != seen) {
+			drop(entry);
+		}
+		return entry.page;
+	}
+
+	/**
+	 * Drop the pages a write of one product could change.
+	 * @param before the product as it was, null if it was created
+	 * @param after the product as written, null if it was deleted
+	 */
+	void written(Product before, Product after) {
+		if (pages == null) {
+			return;
+		}
+		writes.incrementAndGet();
+		dropRanked();
+		dropTouched(before);
+		dropTouched(after);
+	}
+
+	/**
+	 * Drop the pages a batch of created products could change.
+	 * @param created the products as written
+	 */
+	void written(Collection<Product> created) {
+		if (pages == null || created.isEmpty()) {
+			return;
+		}
+		if (created.size() > MAX_PRECISE_BATCH) {
+			invalidateAll();
+			return;
+		}
+		writes.incrementAndGet();
+		dropRanked();
+		for (Product product : created) {
+			dropTouched(product);
+		}
+	}
+
+	/**
+	 * Drop every page, as after a write whose products are not known.
+	 */
+	public void invalidateAll() {
+		if (pages == null) {
+			return;
+		}
+		writes.incrementAndGet();
+		for (Entry entry : List.copyOf(pages.asMap().values())) {
+			drop(entry);
+		}
+	}
+
+	/**
+	 * @return most products kept across the pages, zero if the cache is disabled
+	 */
+	long maximumSize() {
+		return Math.max(maximumSize, 0);
+	}
+
+	/**
+	 * @return pages cached now
+	 */
+	long size() {
+		return pages == null ? 0 : pages.estimatedSize();
+	}
+
+	/**
+	 * @return weight of the pages cached now, their products plus one per page
+	 */
+	long weight() {
+		return pages == null ? 0 : pages.policy().eviction().orElseThrow().weightedSize().orElse(0);
+	}
+
+	/**
+	 * @return brands and categories with pages indexed on them
+	 */
+	int filters() {
+		return byBrand.size() + byCategory.size();
+	}
+
+	/**
+	 * @return hits, misses and evictions since startup
+	 */
+	CacheStats stats() {
+		return pages == null ? CacheStats.empty() : pages.stats();
+	}
+
+	/**
+	 * @return pages dropped by writes since startup
+	 */
+	long invalidations() {
+		return invalidations.get();
+	}
+
+	// Brands match ignoring case, so one key serves every spelling; the catalog version is pinned when
+	// the page is read, not part of the key
+	private static ProductQuery normalize(ProductQuery query) {
+		return query.brand() == null ? query : query.toBuilder().brand(fold(query.brand())).build();
+	}
+
+	private void dropRanked() {
+		for (Entry entry : List.copyOf(ranked)) {
+			drop(entry);
+		}
+	}
+
+	private void dropTouched(Product product) {
+		if (product == null) {
+			return;
+		}
+		dropTouched(byBrand.get(fold(product.getBrand())), product);
+		for (String category : product.getCategories()) {
+			dropTouched(byCategory.get(category), product);
+		}
+		dropTouched(unfiltered, product);
+	}
+
+	private void dropTouched(Set<Entry> entries, Product product) {
+		if (entries == null) {
+			return;
+		}
+		for (Entry entry : entries) {
+			if (pages.asMap().get(entry.key) != entry) {
+				// Replaced or evicted before it was indexed
+				unindex(entry);
+			} else if (touches(entry.key, product)) {
+				drop(entry);
+			}
+		}
+	}
+
+	// A product that is not a match past the keyset position, before and after the write, is on none of
+	// the pages of the query
+	private static boolean touches(ProductQuery query, Product product) {
+		return query.matches(product) && query.matchesText(product) && query.isAfter(product);
+	}
+
+	private void drop(Entry entry) {
+		unindex(entry);
+		if (pages.asMap().remove(entry.key, entry)) {
+			invalidations.incrementAndGet();
+		}
+	}
+
+	// Sets of a filter are created and removed atomically with the page added or removed, so a page is
+	// never added to a set that was just removed
+	private void index(Entry entry) {
+		Map<String, Set<Entry>> filtered = filteredIndex(entry.key);
+		if (filtered == null) {
+			sharedIndex(entry.key).add(entry);
+			return;
+		}
+		filtered.compute(filterOf(entry.key), (filter, entries) -> {
+			Set<Entry> indexed = entries == null ? ConcurrentHashMap.newKeySet() : entries;
+			indexed.add(entry);
+			return indexed;
+		});
+	}
+
+	private void unindex(Entry entry) {
+		Map<String, Set<Entry>> filtered = filteredIndex(entry.key);
+		if (filtered == null) {
+			sharedIndex(entry.key).remove(entry);
+			return;
+		}
+		filtered.computeIfPresent(filterOf(entry.key), (filter, entries) -> {
+			entries.remove(entry);
+			return entries.isEmpty() ? null : entries;
+		});
+	}
+
+	// Filtered pages go by their brand when it is a known one, matched on its code, otherwise by their
+	// category, which always matches exactly; null for pages in a shared set
+	private Map<String, Set<Entry>> filteredIndex(ProductQuery query) {
+		if (query.relevance()) {
+			return null;
+		}
+		if (query.brand() != null && query.brandCode() != null) {
+			return byBrand;
+		}
+		return query.category() != null ? byCategory : null;
+	}
+
+	private static String filterOf(ProductQuery query) {
+		return query.brand() != null && query.brandCode() != null ? query.brand() : query.category();
+	}
+
+	private Set<Entry> sharedIndex(ProductQuery query) {
+		return query.relevance() ? ranked : unfiltered;
+	}
+
+	// Same folding as the dictionary's brand codes
+	private static String fold(String brand) {
+		return CatalogDictionary.fold(brand);
+	}
+
+	// Compared by identity, so a page read again under the same key is indexed apart from the one it replaces
+	private static final class Entry {
+		private final ProductQuery key;
+		private final ProductPage page;
+
+		private Entry(ProductQuery key, ProductPage page) {
+			this.key = key;
+			this.page = page;
+		}
+	}
+}
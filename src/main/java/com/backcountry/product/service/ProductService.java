@@ -1,12 +1,28 @@
 package com.backcountry.product.service;
 
+import com.backcountry.product.dto.BulkResponse;
+import com.backcountry.product.dto.BulkUpdateRequest;
 import com.backcountry.product.dto.CreateProductRequest;
+import com.backcountry.product.dto.DictionaryMetricsResponse;
+import com.backcountry.product.dto.ImportResponse;
+import com.backcountry.product.dto.ListCacheMetricsResponse;
+import com.backcountry.product.dto.ProductJson;
+import com.backcountry.product.dto.ProductFacetsResponse;
+import com.backcountry.product.dto.ProductPage;
 import com.backcountry.product.dto.ProductResponse;
+import com.backcountry.product.dto.QueryExplainResponse;
+import com.backcountry.product.dto.SuggestionResponse;
 import com.backcountry.product.dto.UpdateProductRequest;
+import com.backcountry.product.exception.ImportCapacityException;
+import com.backcountry.product.exception.InventoryConflictException;
+import com.backcountry.product.exception.ProductVersionMismatchException;
 
+import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.function.Consumer;
 
 /**
  * Service interface for managing Products.
@@ -20,6 +36,21 @@ public interface ProductService {
 	 */
 	ProductResponse create(CreateProductRequest request);
 
+	/**
+	 * Create a batch of Products with one repository write
+	 * @param requests CreateProductRequest payloads, each validated on its own; null items are rejected
+	 * @return BulkResponse with the id of each created product or the errors of each rejected item
+	 */
+	BulkResponse createAll(List<CreateProductRequest> requests);
+
+	/**
+	 * Import an upload of new Products of any size, validating and writing batches while later records are parsed
+	 * @param records records of the upload, parsed as they are read; a failure to read is thrown as UncheckedIOException
+	 * @return ImportResponse with the counts, throughput and rejected records
+	 * @throws ImportCapacityException if the most imports allowed at once are already running
+	 */
+	ImportResponse importProducts(Iterator<ImportRecord> records);
+
 	/**
 	 * Get Product by ID
 	 * @param id UUID of the product
@@ -27,39 +58,172 @@ public interface ProductService {
 	 */
 	Optional<ProductResponse> getById(UUID id);
 
+	/**
+	 * Get Product by ID as the JSON of its ProductResponse, serialized once per version
+	 * @param id UUID of the product
+	 * @return Optional containing the product's JSON and version if found, otherwise empty
+	 */
+	Optional<ProductJson> getJsonById(UUID id);
+
+	/**
+	 * Write Products as a JSON array, joining the JSON each was serialized to once per version
+	 * @param products products, as listed
+	 * @return the UTF-8 JSON array
+	 */
+	byte[] toJson(List<ProductResponse> products);
+
+	/**
+	 * Export every Product as of one point in time
+	 * @param sink receives each product once, in no particular order, while writes continue
+	 */
+	void export(Consumer<ProductResponse> sink);
+
+	/**
+	 * Current version of the catalog, which every write moves, so a listing read at one version reads
+	 * the same products until the next write
+	 * @return the catalog version
+	 */
+	long catalogVersion();
+
 	/**
 	 * List Products with optional filters, sorting, and pagination
 	 * @param brand
 	 * @param category
 	 * @param priceMin
 	 * @param priceMax
+	 * @param q full-text search over name and description, may be null
+	 * @param sort relevance by default when searching, which pages by offset only
+	 * @param page ignored when a cursor is given
+	 * @param size
+	 * @param cursor opaque cursor from a previous page, may be null; not accepted with relevance
+	 * @return ProductPage with the products and the cursor for the next page, if any
+	 */
+	ProductPage list(
+			String brand,
+			String category,
+			Double priceMin,
+			Double priceMax,
+			String q,
+			String sort,
+			int page,
+			int size,
+			String cursor
+	);
+
+	/**
+	 * Explain how a listing with the given filters, sorting, and pagination is executed
+	 * @param brand
+	 * @param category
+	 * @param priceMin
+	 * @param priceMax
+	 * @param q
 	 * @param sort
 	 * @param page
 	 * @param size
-	 * @return
+	 * @param cursor
+	 * @return QueryExplainResponse with the chosen plan and the number of candidates scanned
 	 */
-	List<ProductResponse> list(
+	QueryExplainResponse explain(
 			String brand,
 			String category,
 			Double priceMin,
 			Double priceMax,
+			String q,
 			String sort,
 			int page,
-			int size
+			int size,
+			String cursor
 	);
 
 	/**
-	 * Update an existing Product
+	 * Count the products matching the listing filters per brand, category and price range
+	 * @param brand
+	 * @param category
+	 * @param priceMin
+	 * @param priceMax
+	 * @param priceBuckets strictly ascending prices splitting the price ranges
+	 * @return ProductFacetsResponse with the counts
+	 */
+	ProductFacetsResponse facets(
+			String brand,
+			String category,
+			Double priceMin,
+			Double priceMax,
+			List<Double> priceBuckets
+	);
+
+	/**
+	 * Complete a typed prefix to product names and brands
+	 * @param prefix text typed so far, matched against the start of names and brands ignoring case
+	 * @param rank signal ranking the completions: inventory (default) or newest
+	 * @param size maximum number of completions, at most 50
+	 * @return completions, best first; empty for a blank prefix
+	 */
+	List<SuggestionResponse> suggest(String prefix, String rank, int size);
+
+	/**
+	 * Update an existing Product. The update applies to the version it was checked against or not at
+	 * all, so it never brings back a product deleted meanwhile.
 	 * @param id UUID of the product to update
 	 * @param request UpdateProductRequest payload
+	 * @param expectedVersions versions the product must be at, any of them; null to update it at any version
 	 * @return Optional containing updated ProductResponse if found, otherwise empty
+	 * @throws ProductVersionMismatchException if the product is at none of the expected versions
+	 */
+	Optional<ProductResponse> update(UUID id, UpdateProductRequest request, Set<Long> expectedVersions);
+
+	/**
+	 * Take units out of a Product's inventory, atomically and never below zero, without racing other
+	 * writers of the product
+	 * @param id UUID of the product
+	 * @param quantity units to reserve, positive
+	 * @return Optional containing the ProductResponse as written with the reservation if found, otherwise empty
+	 * @throws InventoryConflictException if fewer units than the quantity are in stock
+	 */
+	Optional<ProductResponse> reserveInventory(UUID id, int quantity);
+
+	/**
+	 * Put units back into a Product's inventory, atomically, without racing other writers of the product
+	 * @param id UUID of the product
+	 * @param quantity units to release, positive
+	 * @return Optional containing the ProductResponse as written with the release if found, otherwise empty
+	 * @throws InventoryConflictException if the inventory cannot hold that many more units
 	 */
-	Optional<ProductResponse> update(UUID id, UpdateProductRequest request);
+	Optional<ProductResponse> releaseInventory(UUID id, int quantity);
+
+	/**
+	 * Update a batch of existing Products, each over the version it is read at, with one conditional
+	 * repository write; those another write moved meanwhile are read and written again
+	 * @param requests ids and UpdateProductRequest payloads, each validated on its own
+	 * @return BulkResponse with the outcome of each item: updated, invalid or not found
+	 */
+	BulkResponse updateAll(List<BulkUpdateRequest> requests);
 
 	/**
 	 * Delete a Product by ID
 	 * @param id UUID of the product to delete
+	 * @param expectedVersions versions the product must be at, any of them; null to delete it at any version
 	 * @return true if the product was deleted, false if not found
+	 * @throws ProductVersionMismatchException if the product is at none of the expected versions
+	 */
+	boolean delete(UUID id, Set<Long> expectedVersions);
+
+	/**
+	 * Delete a batch of Products by ID with one repository write
+	 * @param ids UUIDs of the products to delete
+	 * @return BulkResponse with the outcome of each id: deleted or not found
+	 */
+	BulkResponse deleteAll(List<UUID> ids);
+
+	/**
+	 * Report the size of the brand and category dictionary, without reading the catalog
+	 * @return DictionaryMetricsResponse with dictionary sizes
+	 */
+	DictionaryMetricsResponse dictionaryMetrics();
+
+	/**
+	 * Report the listing page cache: its size, hits, misses, evictions and invalidations
+	 * @return ListCacheMetricsResponse with the cache counters since startup
 	 */
-	boolean delete(UUID id);
+	ListCacheMetricsResponse listCacheMetrics();
 }
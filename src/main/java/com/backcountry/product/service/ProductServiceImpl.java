@@ -1,45 +1,130 @@
 package com.backcountry.product.service;
 
+import com.backcountry.product.dto.BulkResponse;
+import com.backcountry.product.dto.BulkUpdateRequest;
 import com.backcountry.product.dto.CreateProductRequest;
+import com.backcountry.product.dto.DictionaryMetricsResponse;
+import com.backcountry.product.dto.ImportResponse;
+import com.backcountry.product.dto.ListCacheMetricsResponse;
+import com.backcountry.product.dto.ProductFacetsResponse;
+import com.backcountry.product.dto.ProductJson;
+import com.backcountry.product.dto.ProductPage;
 import com.backcountry.product.dto.ProductResponse;
+import com.backcountry.product.dto.QueryExplainResponse;
+import com.backcountry.product.dto.SuggestionResponse;
 import com.backcountry.product.dto.UpdateProductRequest;
+import com.backcountry.product.exception.InvalidCursorException;
+import com.backcountry.product.exception.InvalidPriceBucketsException;
+import com.backcountry.product.exception.ProductVersionMismatchException;
+import com.backcountry.product.model.CatalogDictionary;
 import com.backcountry.product.model.Product;
+import com.backcountry.product.repository.FacetCounts;
+import com.backcountry.product.repository.FullText;
+import com.backcountry.product.repository.ProductQuery;
 import com.backcountry.product.repository.ProductRepository;
+import com.backcountry.product.repository.ProductSort;
+import com.backcountry.product.repository.QueryExplanation;
+import com.backcountry.product.repository.QueryPlan;
+import com.backcountry.product.repository.SuggestionRank;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
 import java.time.Instant;
-import java.util.Comparator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.UUID;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 @Service
 public class ProductServiceImpl implements ProductService {
 
+	// Sort value ranking search results by relevance, which is also the default when searching
+	private static final String RELEVANCE = "relevance";
+
+	// Most completions a type-ahead request returns
+	static final int MAX_SUGGESTIONS = 50;
+
+	// Error reported for a null item of a bulk request
+	private static final Map<String, String> NULL_ITEM = Map.of("item", "must not be null");
+
 	private final ProductRepository repository;
+	private final CatalogDictionary dictionary;
+	private final Validator validator;
+	private final ProductListCache listCache;
+	private final ProductJsonCache jsonCache;
+	private final ProductInventory inventory;
+	private final ImportExecutor importExecutor;
 
-	public ProductServiceImpl(ProductRepository repository) {
+	public ProductServiceImpl(ProductRepository repository,
+			CatalogDictionary dictionary,
+			Validator validator,
+			ProductListCache listCache,
+			ProductJsonCache jsonCache,
+			ProductInventory inventory,
+			ImportExecutor importExecutor) {
 		this.repository = repository;
+		this.dictionary = dictionary;
+		this.validator = validator;
+		this.listCache = listCache;
+		this.jsonCache = jsonCache;
+		this.inventory = inventory;
+		this.importExecutor = importExecutor;
 	}
 
 	@Override
 	public ProductResponse create(CreateProductRequest request) {
-		Product product = Product.builder()
-				.id(UUID.randomUUID())
-				.name(request.name())
-				.description(request.description())
-				.brand(request.brand())
-				.price(request.price())
-				.inventory(request.inventory())
-				.categories(request.categories())
-				.createdAt(Instant.now())
-				.updatedAt(Instant.now())
-				.build();
+		Product product = newProduct(request, Instant.now());
+
+		Product saved = repository.save(product);
+		listCache.written(null, saved);
+		return toResponse(saved);
+	}
 
-		repository.save(product);
-		return toResponse(product);
+	@Override
+	public BulkResponse createAll(List<CreateProductRequest> requests) {
+		List<Map<String, String>> errors = validate(requests);
+
+		// Ids, interning and building are independent per item too
+		Instant now = Instant.now();
+		List<Product> products = IntStream.range(0, requests.size()).parallel()
+				.mapToObj(i -> errors.get(i) == null ? newProduct(requests.get(i), now) : null)
+				.toList();
+		List<Product> created = products.stream().filter(Objects::nonNull).toList();
+		repository.saveAll(created);
+		listCache.written(created);
+
+		List<BulkResponse.ItemResult> results = new ArrayList<>(requests.size());
+		for (int i = 0; i < requests.size(); i++) {
+			results.add(errors.get(i) != null
+					? new BulkResponse.ItemResult(i, null, HttpStatus.BAD_REQUEST.value(), errors.get(i))
+					: new BulkResponse.ItemResult(i, products.get(i).getId(), HttpStatus.CREATED.value(), null));
+		}
+		return bulkResponse(results);
+	}
+
+	@Override
+	public ImportResponse importProducts(Iterator<ImportRecord> records) {
+		// Every product of one import has the same creation time, as in a bulk create
+		Instant now = Instant.now();
+		return new ProductImport(this::validate, request -> newProduct(request, now), batch -> {
+			repository.saveAll(batch);
+			listCache.written(batch);
+		}, importExecutor).run(records);
 	}
 
 	@Override
@@ -48,78 +133,443 @@ public class ProductServiceImpl implements ProductService {
 	}
 
 	@Override
-	public List<ProductResponse> list(String brand,
+	public Optional<ProductJson> getJsonById(UUID id) {
+		// The response is only built when the JSON of this version is not cached
+		return repository.findById(id).map(product -> new ProductJson(
+				product.getVersion(),
+				jsonCache.json(product.getId(), product.getVersion(), () -> toResponse(product))));
+	}
+
+	@Override
+	public byte[] toJson(List<ProductResponse> products) {
+		return jsonCache.array(products);
+	}
+
+	@Override
+	public void export(Consumer<ProductResponse> sink) {
+		repository.export(product -> sink.accept(toResponse(product)));
+	}
+
+	@Override
+	public long catalogVersion() {
+		return repository.version();
+	}
+
+	@Override
+	public ProductPage list(String brand,
+			String category,
+			Double priceMin,
+			Double priceMax,
+			String q,
+			String sort,
+			int page,
+			int size,
+			String cursor) {
+
+		// Hot pages are served from the cache; the rest are read through it
+		return listCache.get(toQuery(brand, category, priceMin, priceMax, q, sort, page, size, cursor), this::page);
+	}
+
+	@Override
+	public QueryExplainResponse explain(String brand,
 			String category,
 			Double priceMin,
 			Double priceMax,
+			String q,
 			String sort,
 			int page,
-			int size) {
+			int size,
+			String cursor) {
 
-		List<Product> products = repository.findAll();
+		QueryExplanation explanation = repository.explain(toQuery(brand, category, priceMin, priceMax, q, sort, page, size, cursor));
+		QueryPlan plan = explanation.plan();
 
-		// Filter
-		return products.stream()
-				.filter(p -> brand == null || p.getBrand().equalsIgnoreCase(brand))
-				.filter(p -> category == null || p.getCategories().contains(category))
-				.filter(p -> priceMin == null || p.getPrice().compareTo(BigDecimal.valueOf(priceMin)) >= 0)
-				.filter(p -> priceMax == null || p.getPrice().compareTo(BigDecimal.valueOf(priceMax)) <= 0)
+		return new QueryExplainResponse(
+				plan.driver().name(),
+				plan.intersected().stream().map(Enum::name).toList(),
+				plan.order().name(),
+				plan.estimatedCandidates(),
+				explanation.candidatesScanned(),
+				explanation.matched(),
+				explanation.returned()
+		);
+	}
 
-				// Sorting
-				.sorted(getComparator(sort))
+	@Override
+	public ProductFacetsResponse facets(String brand,
+			String category,
+			Double priceMin,
+			Double priceMax,
+			List<Double> priceBuckets) {
 
-				// Pagination
-				.skip((long) page * size)
-				.limit(size)
+		List<BigDecimal> boundaries = priceBuckets.stream().map(BigDecimal::valueOf).toList();
+		for (int i = 1; i < boundaries.size(); i++) {
+			if (boundaries.get(i - 1).compareTo(boundaries.get(i)) >= 0) {
+				throw new InvalidPriceBucketsException(priceBuckets.toString());
+			}
+		}
 
-				// Map to response
-				.map(this::toResponse)
-				.collect(Collectors.toList());
+		FacetCounts counts = repository.facets(filters(brand, category, priceMin, priceMax).build(), boundaries);
+
+		List<ProductFacetsResponse.PriceRangeCount> prices = new ArrayList<>();
+		for (int i = 0; i < counts.priceRanges().size(); i++) {
+			prices.add(new ProductFacetsResponse.PriceRangeCount(
+					i == 0 ? null : boundaries.get(i - 1),
+					i == boundaries.size() ? null : boundaries.get(i),
+					counts.priceRanges().get(i)));
+		}
+
+		return new ProductFacetsResponse(
+				counts.total(),
+				byCount(counts.brands()),
+				byCount(counts.categories()),
+				prices
+		);
+	}
+
+	@Override
+	public List<SuggestionResponse> suggest(String prefix, String rank, int size) {
+		String typed = prefix == null ? "" : prefix.stripLeading();
+		if (typed.isEmpty() || size <= 0) {
+			return List.of();
+		}
+		return repository.suggest(typed, SuggestionRank.from(rank), Math.min(size, MAX_SUGGESTIONS)).stream()
+				.map(suggestion -> new SuggestionResponse(suggestion.text(), suggestion.field().name().toLowerCase(Locale.ROOT)))
+				.toList();
+	}
+
+	/**
+	 * Writes with compare-and-set instead of a lock: a write that lost the race to another one reads the
+	 * product again and is checked against the new version.
+	 */
+	@Override
+	public Optional<ProductResponse> update(UUID id, UpdateProductRequest request, Set<Long> expectedVersions) {
+		while (true) {
+			Optional<Product> existing = repository.findById(id);
+			if (existing.isEmpty()) {
+				return Optional.empty();
+			}
+			requireVersion(existing.get(), expectedVersions);
+
+			Product updated = updatedProduct(existing.get(), request, Instant.now());
+			Optional<Product> saved = repository.compareAndSave(updated, existing.get().getVersion());
+			if (saved.isPresent()) {
+				listCache.written(existing.get(), saved.get());
+				jsonCache.evict(id);
+				inventory.evict(id);
+				return saved.map(this::toResponse);
+			}
+		}
+	}
+
+	/**
+	 * Admitted on the product's stock counter, without a lock, and written to the repository along with
+	 * the other reservations and releases of the product made meanwhile.
+	 */
+	@Override
+	public Optional<ProductResponse> reserveInventory(UUID id, int quantity) {
+		return inventory.adjust(id, -quantity, repository::findById, this::writeInventory).map(this::toResponse);
+	}
+
+	@Override
+	public Optional<ProductResponse> releaseInventory(UUID id, int quantity) {
+		return inventory.adjust(id, quantity, repository::findById, this::writeInventory).map(this::toResponse);
+	}
+
+	/**
+	 * Like a single update, every product is saved over the version it was read at, so a write that came
+	 * in between, a PUT or a reservation, is never overwritten unseen: its products are read again and
+	 * retried in another batch.
+	 */
+	@Override
+	public BulkResponse updateAll(List<BulkUpdateRequest> requests) {
+		List<Map<String, String>> errors = validate(requests);
+
+		Instant now = Instant.now();
+		BulkResponse.ItemResult[] results = new BulkResponse.ItemResult[requests.size()];
+		List<Integer> pending = new ArrayList<>(requests.size());
+		for (int i = 0; i < requests.size(); i++) {
+			if (errors.get(i) == null) {
+				pending.add(i);
+			} else {
+				UUID id = requests.get(i) == null ? null : requests.get(i).id();
+				results[i] = new BulkResponse.ItemResult(i, id, HttpStatus.BAD_REQUEST.value(), errors.get(i));
+			}
+		}
+
+		List<Product> before = new ArrayList<>();
+		List<Product> after = new ArrayList<>();
+		while (!pending.isEmpty()) {
+			List<Integer> attempted = new ArrayList<>(pending.size());
+			List<Product> read = new ArrayList<>(pending.size());
+			List<Product> updated = new ArrayList<>(pending.size());
+			for (int i : pending) {
+				BulkUpdateRequest request = requests.get(i);
+				Optional<Product> existing = repository.findById(request.id());
+				if (existing.isEmpty()) {
+					results[i] = new BulkResponse.ItemResult(i, request.id(), HttpStatus.NOT_FOUND.value(), null);
+					continue;
+				}
+				attempted.add(i);
+				read.add(existing.get());
+				updated.add(updatedProduct(existing.get(), request.product(), now));
+			}
+
+			List<Optional<Product>> saved = repository.compareAndSaveAll(updated, read.stream().map(Product::getVersion).toList());
+			pending = new ArrayList<>();
+			for (int k = 0; k < attempted.size(); k++) {
+				int i = attempted.get(k);
+				if (saved.get(k).isEmpty()) {
+					pending.add(i);
+					continue;
+				}
+				before.add(read.get(k));
+				after.add(saved.get(k).get());
+				results[i] = new BulkResponse.ItemResult(i, requests.get(i).id(), HttpStatus.OK.value(), null);
+			}
+		}
+
+		if (before.size() > ProductListCache.MAX_PRECISE_BATCH) {
+			listCache.invalidateAll();
+		} else {
+			for (int k = 0; k < before.size(); k++) {
+				listCache.written(before.get(k), after.get(k));
+			}
+		}
+		after.forEach(product -> {
+			jsonCache.evict(product.getId());
+			inventory.evict(product.getId());
+		});
+		return bulkResponse(Arrays.asList(results));
 	}
 
 	@Override
-	public Optional<ProductResponse> update(UUID id, UpdateProductRequest request) {
-		return repository.findById(id).map(existing -> {
+	public boolean delete(UUID id, Set<Long> expectedVersions) {
+		while (true) {
+			Optional<Product> existing = repository.findById(id);
+			if (existing.isEmpty()) {
+				return false;
+			}
+			requireVersion(existing.get(), expectedVersions);
 
-			Product updated = Product.builder()
-					.id(existing.getId())
-					.name(request.name())
-					.description(request.description())
-					.brand(request.brand())
-					.price(request.price())
-					.inventory(request.inventory())
-					.categories(request.categories())
-					.createdAt(existing.getCreatedAt())
-					.updatedAt(Instant.now())
-					.build();
+			if (repository.compareAndDelete(id, existing.get().getVersion())) {
+				listCache.written(existing.get(), null);
+				jsonCache.evict(id);
+				inventory.evict(id);
+				return true;
+			}
+		}
+	}
 
-			repository.save(updated);
-			return toResponse(updated);
+	@Override
+	public BulkResponse deleteAll(List<UUID> ids) {
+		Set<UUID> deleted = new HashSet<>(repository.deleteAllById(ids.stream().filter(Objects::nonNull).toList()));
+		// Deleting by id does not return the products, so which pages held them is not known
+		if (!deleted.isEmpty()) {
+			listCache.invalidateAll();
+		}
+		deleted.forEach(id -> {
+			jsonCache.evict(id);
+			inventory.evict(id);
 		});
+
+		// An id listed twice is deleted by its first occurrence
+		List<BulkResponse.ItemResult> results = new ArrayList<>(ids.size());
+		for (int i = 0; i < ids.size(); i++) {
+			UUID id = ids.get(i);
+			if (id == null) {
+				results.add(new BulkResponse.ItemResult(i, null, HttpStatus.BAD_REQUEST.value(), NULL_ITEM));
+			} else if (deleted.remove(id)) {
+				results.add(new BulkResponse.ItemResult(i, id, HttpStatus.NO_CONTENT.value(), null));
+			} else {
+				results.add(new BulkResponse.ItemResult(i, id, HttpStatus.NOT_FOUND.value(), null));
+			}
+		}
+		return bulkResponse(results);
 	}
 
 	@Override
-	public boolean delete(UUID id) {
-		return repository.findById(id).map(product -> {
-			repository.deleteById(id);
-			return true;
-		}).orElse(false);
+	public DictionaryMetricsResponse dictionaryMetrics() {
+		CatalogDictionary.Footprint footprint = dictionary.footprint();
+
+		return new DictionaryMetricsResponse(
+				footprint.brands(),
+				footprint.categories(),
+				footprint.categorySets(),
+				footprint.dictionaryBytes()
+		);
+	}
+
+	@Override
+	public ListCacheMetricsResponse listCacheMetrics() {
+		CacheStats stats = listCache.stats();
+
+		return new ListCacheMetricsResponse(
+				listCache.maximumSize(),
+				listCache.size(),
+				listCache.weight(),
+				stats.hitCount(),
+				stats.missCount(),
+				stats.hitRate(),
+				stats.evictionCount(),
+				listCache.invalidations()
+		);
 	}
 
 	// -------------------------
 	// Helpers
 	// -------------------------
 
-	private Comparator<Product> getComparator(String sort) {
-		if (sort == null) return Comparator.comparing(Product::getCreatedAt).reversed();
+	// Filtering, sorting and pagination are pushed down to the repository
+	private ProductPage page(ProductQuery query) {
+		// A page read without a cursor pins the catalog version its cursor carries on
+		if (query.asOf() == null && query.after() == null && !query.relevance()) {
+			long version = repository.version();
+			query = query.toBuilder().asOf(version == 0 ? null : version).build();
+		}
+		List<Product> products = repository.find(query);
+
+		// Relevance ranks have no sort key to seek past, so those pages go by offset
+		String nextCursor = query.limit() > 0 && products.size() == query.limit() && !query.relevance()
+				? ProductCursor.encode(query.sort(), products.get(products.size() - 1), query.asOf() == null ? 0 : query.asOf())
+				: null;
+
+		List<ProductResponse> items = products.stream()
+				.map(this::toResponse)
+				.toList();
+
+		return new ProductPage(items, nextCursor);
+	}
+
+	private ProductQuery toQuery(String brand,
+			String category,
+			Double priceMin,
+			Double priceMax,
+			String q,
+			String sort,
+			int page,
+			int size,
+			String cursor) {
+
+		ProductSort order = ProductSort.from(sort);
+		List<String> terms = FullText.terms(q);
+		boolean relevance = terms != null && (sort == null || sort.equalsIgnoreCase(RELEVANCE));
+		if (relevance && cursor != null) {
+			throw new InvalidCursorException(cursor);
+		}
+
+		// A cursor replaces the offset: the repository seeks straight past the anchor, in the catalog
+		// version the first page was read at, so later writes do not shift or repeat products across pages.
+		// Other pages are pinned to the current version when they are read.
+		ProductCursor position = cursor == null ? null : ProductCursor.decode(cursor, order);
+		long version = position == null ? 0 : position.version();
+		return filters(brand, category, priceMin, priceMax)
+				.terms(terms)
+				.relevance(relevance)
+				.sort(order)
+				.after(position == null ? null : position.anchor())
+				.offset(cursor == null ? (long) page * size : 0)
+				.limit(size)
+				.asOf(relevance || version == 0 ? null : version)
+				.build();
+	}
+
+	private ProductQuery.ProductQueryBuilder filters(String brand,
+			String category,
+			Double priceMin,
+			Double priceMax) {
+
+		// Filters on interned values are matched on their dictionary codes
+		int brandCode = brand == null ? -1 : dictionary.brandCode(brand);
+		int categoryCode = category == null ? -1 : dictionary.categoryCode(category);
+
+		return ProductQuery.builder()
+				.brand(brand)
+				.category(category)
+				.brandCode(brandCode < 0 ? null : brandCode)
+				.categoryCode(categoryCode < 0 ? null : categoryCode)
+				.priceMin(priceMin == null ? null : BigDecimal.valueOf(priceMin))
+				.priceMax(priceMax == null ? null : BigDecimal.valueOf(priceMax));
+	}
+
+	private Optional<Product> writeInventory(Product current, int units) {
+		Product stocked = current.toBuilder().inventory(units).updatedAt(Instant.now()).build();
+		Optional<Product> saved = repository.compareAndSave(stocked, current.getVersion());
+		saved.ifPresent(product -> {
+			listCache.written(current, product);
+			jsonCache.evict(product.getId());
+		});
+		return saved;
+	}
+
+	private Product newProduct(CreateProductRequest request, Instant now) {
+		return dictionary.intern(Product.builder()
+				.id(UUID.randomUUID())
+				.name(request.name())
+				.description(request.description())
+				.brand(request.brand())
+				.price(request.price())
+				.inventory(request.inventory())
+				.categories(request.categories())
+				.createdAt(now)
+				.updatedAt(now)
+				.build());
+	}
+
+	private Product updatedProduct(Product existing, UpdateProductRequest request, Instant now) {
+		return dictionary.intern(Product.builder()
+				.id(existing.getId())
+				.name(request.name())
+				.description(request.description())
+				.brand(request.brand())
+				.price(request.price())
+				.inventory(request.inventory())
+				.categories(request.categories())
+				.createdAt(existing.getCreatedAt())
+				.updatedAt(now)
+				.build());
+	}
+
+	private static void requireVersion(Product product, Set<Long> expectedVersions) {
+		if (expectedVersions != null && !expectedVersions.contains(product.getVersion())) {
+			throw new ProductVersionMismatchException(product.getId().toString(), product.getVersion());
+		}
+	}
+
+	// Validation errors of each item by property path, null for a valid item. Items are independent,
+	// so they are validated in parallel.
+	private List<Map<String, String>> validate(List<?> items) {
+		return IntStream.range(0, items.size()).parallel()
+				.mapToObj(i -> errors(items.get(i)))
+				.toList();
+	}
+
+	private Map<String, String> errors(Object item) {
+		if (item == null) {
+			return NULL_ITEM;
+		}
+		Set<ConstraintViolation<Object>> violations = validator.validate(item);
+		if (violations.isEmpty()) {
+			return null;
+		}
+		return violations.stream().collect(Collectors.toMap(
+				violation -> violation.getPropertyPath().toString(),
+				ConstraintViolation::getMessage,
+				(a, b) -> a,
+				TreeMap::new));
+	}
+
+	private static BulkResponse bulkResponse(List<BulkResponse.ItemResult> results) {
+		int succeeded = (int) results.stream().filter(result -> result.status() < HttpStatus.BAD_REQUEST.value()).count();
+		return new BulkResponse(succeeded, results.size() - succeeded, results);
+	}
 
-		return switch (sort.toLowerCase()) {
-			case "price"      -> Comparator.comparing(Product::getPrice);
-			case "name"       -> Comparator.comparing(Product::getName, String.CASE_INSENSITIVE_ORDER);
-			case "brand"      -> Comparator.comparing(Product::getBrand, String.CASE_INSENSITIVE_ORDER);
-			case "date"       -> Comparator.comparing(Product::getCreatedAt).reversed();
-			default           -> Comparator.comparing(Product::getCreatedAt).reversed();
-		};
+	// Most frequent first, ties in value order
+	private static List<ProductFacetsResponse.FacetCount> byCount(Map<String, Long> counts) {
+		return counts.entrySet().stream()
+				.sorted(Map.Entry.<String, Long>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()))
+				.map(entry -> new ProductFacetsResponse.FacetCount(entry.getKey(), entry.getValue()))
+				.toList();
 	}
 
 	private ProductResponse toResponse(Product product) {
@@ -132,7 +582,8 @@ public class ProductServiceImpl implements ProductService {
 				product.getInventory(),
 				product.getCategories(),
 				product.getCreatedAt(),
-				product.getUpdatedAt()
+				product.getUpdatedAt(),
+				product.getVersion()
 		);
 	}
 }
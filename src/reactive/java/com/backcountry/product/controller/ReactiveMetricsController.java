@@ -0,0 +1,44 @@
+package com.backcountry.product.controller;
+
+import com.backcountry.product.dto.DictionaryMetricsResponse;
+import com.backcountry.product.dto.ListCacheMetricsResponse;
+import com.backcountry.product.service.ReactiveProductService;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+
+/**
+ * Operational metrics of the catalog, on WebFlux. Serves the routes of {@link MetricsController}, read
+ * off the event loop.
+ */
+@RestController
+@RequestMapping("/metrics")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveMetricsController {
+
+	private final ReactiveProductService service;
+
+	public ReactiveMetricsController(ReactiveProductService service) {
+		this.service = service;
+	}
+
+	/**
+	 * Report the size of the brand and category dictionary
+	 * @return DictionaryMetricsResponse
+	 */
+	@GetMapping("/dictionary")
+	public Mono<DictionaryMetricsResponse> dictionary() {
+		return service.dictionaryMetrics();
+	}
+
+	/**
+	 * Report the hits, misses, evictions and invalidations of the listing page cache
+	 * @return ListCacheMetricsResponse
+	 */
+	@GetMapping("/list-cache")
+	public Mono<ListCacheMetricsResponse> listCache() {
+		return service.listCacheMetrics();
+	}
+}
@@ -0,0 +1,309 @@
+package com.backcountry.product.controller;
+
+import com.backcountry.config.HttpCacheProperties;
+import com.backcountry.product.dto.CreateProductRequest;
+import com.backcountry.product.dto.InventoryRequest;
+import com.backcountry.product.dto.ProductFacetsResponse;
+import com.backcountry.product.dto.ProductResponse;
+import com.backcountry.product.dto.QueryExplainResponse;
+import com.backcountry.product.dto.SuggestionResponse;
+import com.backcountry.product.dto.UpdateProductRequest;
+import com.backcountry.product.exception.ProductNotFoundException;
+import com.backcountry.product.service.ReactiveProductService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import io.swagger.v3.oas.annotations.media.ArraySchema;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import jakarta.validation.Valid;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.UUID;
+
+import static com.backcountry.product.controller.ProductController.DEFAULT_PRICE_BUCKETS;
+import static com.backcountry.product.controller.ProductController.NEXT_CURSOR_HEADER;
+
+/**
+ * REST controller for managing products, on WebFlux. It serves the routes of {@link ProductController}
+ * with the same headers and status codes, on event loops instead of a thread per request, and streams
+ * exports with backpressure. Bulk writes and imports are served by the servlet stack only.
+ */
+@RestController
+@RequestMapping("/products")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveProductController {
+
+	// Products an export reads per page, and so holds in memory at once
+	static final int EXPORT_PAGE_SIZE = 500;
+
+	private final ReactiveProductService service;
+	private final ObjectWriter writer;
+	private final CacheControl productCacheControl;
+	private final CacheControl listCacheControl;
+
+	public ReactiveProductController(ReactiveProductService service, ObjectMapper mapper, HttpCacheProperties cache) {
+		this.service = service;
+		this.writer = mapper.writerFor(ProductResponse.class);
+		this.productCacheControl = HttpCaching.cacheControl(cache.productMaxAge());
+		this.listCacheControl = HttpCaching.cacheControl(cache.listMaxAge());
+	}
+
+	/**
+	 * Create a new Product
+	 * @param request CreateProductRequest payload
+	 * @return ResponseEntity with created ProductResponse and its version as the ETag
+	 */
+	@PostMapping
+	public Mono<ResponseEntity<ProductResponse>> create(@Valid @RequestBody CreateProductRequest request) {
+		return service.create(request)
+				.map(created -> ResponseEntity.status(HttpStatus.CREATED).eTag(Long.toString(created.version())).body(created));
+	}
+
+	/**
+	 * Export every Product as NDJSON, one ProductResponse per line, as the servlet export does. Pages are
+	 * read as the client takes the products, so a slow client holds one page, not the catalog, and the
+	 * export reads the catalog as of its first page.
+	 *
+	 * @return streaming NDJSON body
+	 */
+	@GetMapping(value = "/_export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+	public ResponseEntity<Flux<byte[]>> export() {
+		// Written as bytes rather than encoded as a stream of values, which would flush after every line
+		return ResponseEntity.ok()
+				.contentType(MediaType.APPLICATION_NDJSON)
+				.body(service.export(EXPORT_PAGE_SIZE).map(this::line));
+	}
+
+	/**
+	 * Get Product by ID
+	 * @param id UUID of the product
+	 * @param ifNoneMatch ETags of versions the client holds; 304 without a body if the product is still at one
+	 * @return ProductResponse JSON, written from the bytes cached for its version, with the version as the ETag
+	 */
+	@GetMapping("/{id}")
+	@ApiResponse(responseCode = "200", description = "The product",
+			content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE, schema = @Schema(implementation = ProductResponse.class)))
+	@ApiResponse(responseCode = "304", description = "The product is still at a version the client holds")
+	public Mono<ResponseEntity<byte[]>> getById(
+			@PathVariable UUID id,
+			@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch
+	) {
+		return service.getJsonById(id)
+				.switchIfEmpty(Mono.error(() -> new ProductNotFoundException(id.toString())))
+				.map(product -> {
+					String eTag = Long.toString(product.version());
+					if (HttpCaching.isNotModified(ifNoneMatch, eTag)) {
+						return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).cacheControl(productCacheControl).build();
+					}
+					return ResponseEntity.ok()
+							.eTag(eTag)
+							.cacheControl(productCacheControl)
+							.contentType(MediaType.APPLICATION_JSON)
+							.body(product.json());
+				});
+	}
+
+	/**
+	 * List Products with optional filters, sorting, and pagination
+	 *
+	 * @param brand brand filter
+	 * @param category category filter
+	 * @param priceMin minimum price filter
+	 * @param priceMax maximum price filter
+	 * @param q full-text search over name and description
+	 * @param sort sort order, relevance by default when searching
+	 * @param page page number, ignored when a cursor is given
+	 * @param size page size
+	 * @param cursor cursor from the X-Next-Cursor header of the previous page
+	 * @param ifNoneMatch ETags of catalog versions the client holds the page at; 304 without running the
+	 *                    query if the catalog is still at one
+	 * @return JSON array of ProductResponse with the cursor of the next page in the X-Next-Cursor header
+	 *         and the catalog version as the ETag
+	 */
+	@GetMapping
+	@ApiResponse(responseCode = "200", description = "One page of products",
+			content = @Content(mediaType = MediaType.APPLICATION_JSON_VALUE, array = @ArraySchema(schema = @Schema(implementation = ProductResponse.class))))
+	@ApiResponse(responseCode = "304", description = "The catalog is still at a version the client holds")
+	public Mono<ResponseEntity<byte[]>> list(
+			@RequestParam(required = false) String brand,
+			@RequestParam(required = false) String category,
+			@RequestParam(required = false) Double priceMin,
+			@RequestParam(required = false) Double priceMax,
+			@RequestParam(required = false) String q,
+			@RequestParam(required = false) String sort,
+			@RequestParam(defaultValue = "0") int page,
+			@RequestParam(defaultValue = "10") int size,
+			@RequestParam(required = false) String cursor,
+			@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch
+	) {
+		// Tagged with the catalog version read before the query, as the servlet controller does
+		return service.catalogVersion().flatMap(version -> {
+			String eTag = Long.toString(version);
+			if (HttpCaching.isNotModified(ifNoneMatch, eTag)) {
+				return Mono.just(ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).cacheControl(listCacheControl).<byte[]>build());
+			}
+			return service.list(brand, category, priceMin, priceMax, q, sort, page, size, cursor).map(result -> {
+				ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+						.eTag(eTag)
+						.cacheControl(listCacheControl)
+						.contentType(MediaType.APPLICATION_JSON);
+				if (result.nextCursor() != null) {
+					response.header(NEXT_CURSOR_HEADER, result.nextCursor());
+				}
+				return response.body(service.toJson(result.items()));
+			});
+		});
+	}
+
+	/**
+	 * Explain how a listing query is planned and executed (debug)
+	 *
+	 * @param brand brand filter
+	 * @param category category filter
+	 * @param priceMin minimum price filter
+	 * @param priceMax maximum price filter
+	 * @param q full-text search over name and description
+	 * @param sort sort order
+	 * @param page page number
+	 * @param size page size
+	 * @param cursor cursor from a previous page
+	 * @return QueryExplainResponse with the chosen plan and candidates scanned
+	 */
+	@GetMapping("/_explain")
+	public Mono<QueryExplainResponse> explain(
+			@RequestParam(required = false) String brand,
+			@RequestParam(required = false) String category,
+			@RequestParam(required = false) Double priceMin,
+			@RequestParam(required = false) Double priceMax,
+			@RequestParam(required = false) String q,
+			@RequestParam(required = false) String sort,
+			@RequestParam(defaultValue = "0") int page,
+			@RequestParam(defaultValue = "10") int size,
+			@RequestParam(required = false) String cursor
+	) {
+		return service.explain(brand, category, priceMin, priceMax, q, sort, page, size, cursor);
+	}
+
+	/**
+	 * Count the products matching the listing filters per brand, category and price range
+	 *
+	 * @param brand brand filter
+	 * @param category category filter
+	 * @param priceMin minimum price filter
+	 * @param priceMax maximum price filter
+	 * @param priceBuckets strictly ascending prices splitting the price ranges
+	 * @return ProductFacetsResponse with the counts
+	 */
+	@GetMapping("/facets")
+	public Mono<ProductFacetsResponse> facets(
+			@RequestParam(required = false) String brand,
+			@RequestParam(required = false) String category,
+			@RequestParam(required = false) Double priceMin,
+			@RequestParam(required = false) Double priceMax,
+			@RequestParam(defaultValue = DEFAULT_PRICE_BUCKETS) List<Double> priceBuckets
+	) {
+		return service.facets(brand, category, priceMin, priceMax, priceBuckets);
+	}
+
+	/**
+	 * Complete a typed prefix to product names and brands (type-ahead)
+	 *
+	 * @param prefix text typed so far, matched against the start of names and brands ignoring case
+	 * @param rank signal ranking the completions: inventory (default) or newest
+	 * @param size maximum number of completions, at most 50
+	 * @return List of SuggestionResponse, best first
+	 */
+	@GetMapping("/suggest")
+	public Mono<List<SuggestionResponse>> suggest(
+			@RequestParam(required = false) String prefix,
+			@RequestParam(required = false) String rank,
+			@RequestParam(defaultValue = "10") int size
+	) {
+		return service.suggest(prefix, rank, size);
+	}
+
+	/**
+	 * Update Product by ID
+	 * @param id UUID of the product
+	 * @param request UpdateProductRequest payload
+	 * @param ifMatch ETags of the versions the update applies to; 412 if the product is at none of them
+	 * @return Updated ProductResponse, with its new version as the ETag
+	 */
+	@PutMapping("/{id}")
+	public Mono<ResponseEntity<ProductResponse>> update(
+			@PathVariable UUID id,
+			@Valid @RequestBody UpdateProductRequest request,
+			@RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch
+	) {
+		return service.update(id, request, HttpCaching.matchedVersions(ifMatch))
+				.switchIfEmpty(Mono.error(() -> HttpCaching.notFound(id, ifMatch)))
+				.map(updated -> ResponseEntity.ok().eTag(Long.toString(updated.version())).body(updated));
+	}
+
+	/**
+	 * Reserve units of a Product's inventory, as checkout does: taken out atomically and never below zero
+	 * @param id UUID of the product
+	 * @param request InventoryRequest with the units to reserve
+	 * @return ProductResponse with the remaining inventory, with its new version as the ETag; 409 if
+	 *         fewer units are in stock
+	 */
+	@PostMapping("/{id}/inventory:reserve")
+	public Mono<ResponseEntity<ProductResponse>> reserveInventory(@PathVariable UUID id, @Valid @RequestBody InventoryRequest request) {
+		return service.reserveInventory(id, request.quantity())
+				.switchIfEmpty(Mono.error(() -> new ProductNotFoundException(id.toString())))
+				.map(reserved -> ResponseEntity.ok().eTag(Long.toString(reserved.version())).body(reserved));
+	}
+
+	/**
+	 * Release reserved units back into a Product's inventory
+	 * @param id UUID of the product
+	 * @param request InventoryRequest with the units to release
+	 * @return ProductResponse with the inventory after the release, with its new version as the ETag
+	 */
+	@PostMapping("/{id}/inventory:release")
+	public Mono<ResponseEntity<ProductResponse>> releaseInventory(@PathVariable UUID id, @Valid @RequestBody InventoryRequest request) {
+		return service.releaseInventory(id, request.quantity())
+				.switchIfEmpty(Mono.error(() -> new ProductNotFoundException(id.toString())))
+				.map(released -> ResponseEntity.ok().eTag(Long.toString(released.version())).body(released));
+	}
+
+	/**
+	 * Delete Product by ID
+	 * @param id UUID of the product
+	 * @param ifMatch ETags of the versions the delete applies to; 412 if the product is at none of them
+	 * @return ResponseEntity with no content
+	 */
+	@DeleteMapping("/{id}")
+	public Mono<ResponseEntity<Void>> delete(
+			@PathVariable UUID id,
+			@RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch
+	) {
+		return service.delete(id, HttpCaching.matchedVersions(ifMatch)).flatMap(removed -> removed
+				? Mono.just(ResponseEntity.noContent().<Void>build())
+				: Mono.error(HttpCaching.notFound(id, ifMatch)));
+	}
+
+	private byte[] line(ProductResponse product) {
+		try {
+			byte[] json = writer.writeValueAsBytes(product);
+			byte[] line = new byte[json.length + 1];
+			System.arraycopy(json, 0, line, 0, json.length);
+			line[json.length] = '\n';
+			return line;
+		} catch (JsonProcessingException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+}
@@ -0,0 +1,188 @@
+package com.backcountry.product.service;
+
+import com.backcountry.product.dto.CreateProductRequest;
+import com.backcountry.product.dto.DictionaryMetricsResponse;
+import com.backcountry.product.dto.ListCacheMetricsResponse;
+import com.backcountry.product.dto.ProductFacetsResponse;
+import com.backcountry.product.dto.ProductJson;
+import com.backcountry.product.dto.ProductPage;
+import com.backcountry.product.dto.ProductResponse;
+import com.backcountry.product.dto.QueryExplainResponse;
+import com.backcountry.product.dto.SuggestionResponse;
+import com.backcountry.product.dto.UpdateProductRequest;
+import com.backcountry.product.exception.InventoryConflictException;
+import com.backcountry.product.exception.ProductVersionMismatchException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Service interface for managing Products without blocking the caller, for the WebFlux controller.
+ * Nothing runs until the returned publisher is subscribed to.
+ */
+public interface ReactiveProductService {
+
+	/**
+	 * Create a new Product
+	 * @param request CreateProductRequest payload
+	 * @return Mono of the created product's ProductResponse
+	 */
+	Mono<ProductResponse> create(CreateProductRequest request);
+
+	/**
+	 * Get Product by ID as the JSON of its ProductResponse, serialized once per version
+	 * @param id UUID of the product
+	 * @return Mono of the product's JSON and version, empty if not found
+	 */
+	Mono<ProductJson> getJsonById(UUID id);
+
+	/**
+	 * Write Products as a JSON array, joining the JSON each was serialized to once per version
+	 * @param products products, as listed
+	 * @return the UTF-8 JSON array
+	 */
+	byte[] toJson(List<ProductResponse> products);
+
+	/**
+	 * Current version of the catalog, which every write moves
+	 * @return Mono of the catalog version
+	 */
+	Mono<Long> catalogVersion();
+
+	/**
+	 * List one page of Products with optional filters, sorting, and pagination
+	 * @param brand
+	 * @param category
+	 * @param priceMin
+	 * @param priceMax
+	 * @param q full-text search over name and description, may be null
+	 * @param sort relevance by default when searching, which pages by offset only
+	 * @param page ignored when a cursor is given
+	 * @param size
+	 * @param cursor opaque cursor from a previous page, may be null; not accepted with relevance
+	 * @return Mono of the ProductPage with the products and the cursor for the next page, if any
+	 */
+	Mono<ProductPage> list(
+			String brand,
+			String category,
+			Double priceMin,
+			Double priceMax,
+			String q,
+			String sort,
+			int page,
+			int size,
+			String cursor
+	);
+
+	/**
+	 * Stream every Product, as the servlet export does, reading the next page only once the subscriber
+	 * has asked for the products of the one before. Pages follow their cursors, so the stream reads the
+	 * catalog as of its first page while writes continue.
+	 * @param pageSize products read per page
+	 * @return Flux of every product, in listing order
+	 */
+	Flux<ProductResponse> export(int pageSize);
+
+	/**
+	 * Explain how a listing with the given filters, sorting, and pagination is executed
+	 * @param brand
+	 * @param category
+	 * @param priceMin
+	 * @param priceMax
+	 * @param q
+	 * @param sort
+	 * @param page
+	 * @param size
+	 * @param cursor
+	 * @return Mono of the QueryExplainResponse
+	 */
+	Mono<QueryExplainResponse> explain(
+			String brand,
+			String category,
+			Double priceMin,
+			Double priceMax,
+			String q,
+			String sort,
+			int page,
+			int size,
+			String cursor
+	);
+
+	/**
+	 * Count the products matching the listing filters per brand, category and price range
+	 * @param brand
+	 * @param category
+	 * @param priceMin
+	 * @param priceMax
+	 * @param priceBuckets strictly ascending prices splitting the price ranges
+	 * @return Mono of the ProductFacetsResponse
+	 */
+	Mono<ProductFacetsResponse> facets(
+			String brand,
+			String category,
+			Double priceMin,
+			Double priceMax,
+			List<Double> priceBuckets
+	);
+
+	/**
+	 * Complete a typed prefix to product names and brands
+	 * @param prefix text typed so far
+	 * @param rank signal ranking the completions: inventory (default) or newest
+	 * @param size maximum number of completions, at most 50
+	 * @return Mono of the completions, best first
+	 */
+	Mono<List<SuggestionResponse>> suggest(String prefix, String rank, int size);
+
+	/**
+	 * Update an existing Product at one of the expected versions
+	 * @param id UUID of the product to update
+	 * @param request UpdateProductRequest payload
+	 * @param expectedVersions versions the product must be at, any of them; null to update it at any version
+	 * @return Mono of the updated ProductResponse, empty if not found; fails with a
+	 *         {@link ProductVersionMismatchException} if the product is at none of the expected versions
+	 */
+	Mono<ProductResponse> update(UUID id, UpdateProductRequest request, Set<Long> expectedVersions);
+
+	/**
+	 * Take units out of a Product's inventory, atomically and never below zero
+	 * @param id UUID of the product
+	 * @param quantity units to reserve, positive
+	 * @return Mono of the ProductResponse as written with the reservation, empty if not found; fails with an
+	 *         {@link InventoryConflictException} if fewer units are in stock
+	 */
+	Mono<ProductResponse> reserveInventory(UUID id, int quantity);
+
+	/**
+	 * Put units back into a Product's inventory, atomically
+	 * @param id UUID of the product
+	 * @param quantity units to release, positive
+	 * @return Mono of the ProductResponse as written with the release, empty if not found; fails with an
+	 *         {@link InventoryConflictException} if the inventory cannot hold that many more units
+	 */
+	Mono<ProductResponse> releaseInventory(UUID id, int quantity);
+
+	/**
+	 * Delete a Product by ID at one of the expected versions
+	 * @param id UUID of the product to delete
+	 * @param expectedVersions versions the product must be at, any of them; null to delete it at any version
+	 * @return Mono of true if the product was deleted, false if not found; fails with a
+	 *         {@link ProductVersionMismatchException} if the product is at none of the expected versions
+	 */
+	Mono<Boolean> delete(UUID id, Set<Long> expectedVersions);
+
+	/**
+	 * Report the size of the brand and category dictionary
+	 * @return Mono of the DictionaryMetricsResponse
+	 */
+	Mono<DictionaryMetricsResponse> dictionaryMetrics();
+
+	/**
+	 * Report the hits, misses, evictions and invalidations of the listing page cache
+	 * @return Mono of the ListCacheMetricsResponse
+	 */
+	Mono<ListCacheMetricsResponse> listCacheMetrics();
+}
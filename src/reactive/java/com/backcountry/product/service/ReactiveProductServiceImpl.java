@@ -0,0 +1,151 @@
+package com.backcountry.product.service;
+
+import com.backcountry.product.dto.CreateProductRequest;
+import com.backcountry.product.dto.DictionaryMetricsResponse;
+import com.backcountry.product.dto.ListCacheMetricsResponse;
+import com.backcountry.product.dto.ProductFacetsResponse;
+import com.backcountry.product.dto.ProductJson;
+import com.backcountry.product.dto.ProductPage;
+import com.backcountry.product.dto.ProductResponse;
+import com.backcountry.product.dto.QueryExplainResponse;
+import com.backcountry.product.dto.SuggestionResponse;
+import com.backcountry.product.dto.UpdateProductRequest;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Non-blocking adapter over {@link ProductService}.
+ *
+ * Everything that reads or writes the store runs on the bounded elastic scheduler and never holds an
+ * event loop: a read of one product by id takes the off-heap store's read lock, which waits behind a bulk
+ * write holding its write lock; listings, facets, explains and suggestions scan the store, which on the
+ * off-heap backend takes tens of milliseconds for a large page; and writes may wait for the write-ahead
+ * log to reach the disk. Only the catalog version, a single volatile read, runs on the subscribing thread.
+ */
+@Service
+public class ReactiveProductServiceImpl implements ReactiveProductService {
+
+	private final ProductService service;
+	private final Scheduler blocking;
+
+	public ReactiveProductServiceImpl(ProductService service) {
+		this.service = service;
+		this.blocking = Schedulers.boundedElastic();
+	}
+
+	@Override
+	public Mono<ProductResponse> create(CreateProductRequest request) {
+		return Mono.fromCallable(() -> service.create(request)).subscribeOn(blocking);
+	}
+
+	@Override
+	public Mono<ProductJson> getJsonById(UUID id) {
+		return Mono.fromCallable(() -> service.getJsonById(id)).flatMap(Mono::justOrEmpty).subscribeOn(blocking);
+	}
+
+	@Override
+	public byte[] toJson(List<ProductResponse> products) {
+		return service.toJson(products);
+	}
+
+	@Override
+	public Mono<Long> catalogVersion() {
+		return Mono.fromCallable(service::catalogVersion);
+	}
+
+	@Override
+	public Mono<ProductPage> list(String brand,
+			String category,
+			Double priceMin,
+			Double priceMax,
+			String q,
+			String sort,
+			int page,
+			int size,
+			String cursor) {
+
+		return Mono.fromCallable(() -> service.list(brand, category, priceMin, priceMax, q, sort, page, size, cursor)).subscribeOn(blocking);
+	}
+
+	@Override
+	public Flux<ProductResponse> export(int pageSize) {
+		// Each page is read when the one before it is drained: demand pulls pages, one at a time
+		return list(null, null, null, null, null, null, 0, pageSize, null)
+				.expand(page -> page.nextCursor() == null
+						? Mono.empty()
+						: list(null, null, null, null, null, null, 0, pageSize, page.nextCursor()), 1)
+				.concatMapIterable(ProductPage::items, 1);
+	}
+
+	@Override
+	public Mono<QueryExplainResponse> explain(String brand,
+			String category,
+			Double priceMin,
+			Double priceMax,
+			String q,
+			String sort,
+			int page,
+			int size,
+			String cursor) {
+
+		return Mono.fromCallable(() -> service.explain(brand, category, priceMin, priceMax, q, sort, page, size, cursor)).subscribeOn(blocking);
+	}
+
+	@Override
+	public Mono<ProductFacetsResponse> facets(String brand,
+			String category,
+			Double priceMin,
+			Double priceMax,
+			List<Double> priceBuckets) {
+
+		return Mono.fromCallable(() -> service.facets(brand, category, priceMin, priceMax, priceBuckets)).subscribeOn(blocking);
+	}
+
+	@Override
+	public Mono<List<SuggestionResponse>> suggest(String prefix, String rank, int size) {
+		return Mono.fromCallable(() -> service.suggest(prefix, rank, size)).subscribeOn(blocking);
+	}
+
+	@Override
+	public Mono<ProductResponse> update(UUID id, UpdateProductRequest request, Set<Long> expectedVersions) {
+		return Mono.fromCallable(() -> service.update(id, request, expectedVersions))
+				.flatMap(Mono::justOrEmpty)
+				.subscribeOn(blocking);
+	}
+
+	@Override
+	public Mono<ProductResponse> reserveInventory(UUID id, int quantity) {
+		return Mono.fromCallable(() -> service.reserveInventory(id, quantity))
+				.flatMap(Mono::justOrEmpty)
+				.subscribeOn(blocking);
+	}
+
+	@Override
+	public Mono<ProductResponse> releaseInventory(UUID id, int quantity) {
+		return Mono.fromCallable(() -> service.releaseInventory(id, quantity))
+				.flatMap(Mono::justOrEmpty)
+				.subscribeOn(blocking);
+	}
+
+	@Override
+	public Mono<Boolean> delete(UUID id, Set<Long> expectedVersions) {
+		return Mono.fromCallable(() -> service.delete(id, expectedVersions)).subscribeOn(blocking);
+	}
+
+	@Override
+	public Mono<DictionaryMetricsResponse> dictionaryMetrics() {
+		return Mono.fromCallable(service::dictionaryMetrics).subscribeOn(blocking);
+	}
+
+	@Override
+	public Mono<ListCacheMetricsResponse> listCacheMetrics() {
+		return Mono.fromCallable(service::listCacheMetrics).subscribeOn(blocking);
+	}
+}
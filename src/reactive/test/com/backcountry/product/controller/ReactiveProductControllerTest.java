@@ -0,0 +1,172 @@
+package com.backcountry.product.controller;
+
+import com.backcountry.config.HttpCacheConfig;
+import com.backcountry.product.dto.CreateProductRequest;
+import com.backcountry.product.dto.ProductJson;
+import com.backcountry.product.dto.ProductPage;
+import com.backcountry.product.dto.ProductResponse;
+import com.backcountry.product.dto.UpdateProductRequest;
+import com.backcountry.product.exception.ProductVersionMismatchException;
+import com.backcountry.product.service.ReactiveProductService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@WebFluxTest(ReactiveProductController.class)
+@Import(HttpCacheConfig.class)
+class ReactiveProductControllerTest {
+
+	@Autowired
+	private WebTestClient client;
+
+	@MockBean
+	private ReactiveProductService service;
+
+	private static ProductResponse buildResponse(UUID id, String name) {
+		return new ProductResponse(id, name, "Desc", "MSR", new BigDecimal("90"), 3,
+				List.of("cooking"), Instant.now(), Instant.now(), 4);
+	}
+
+	@Test
+	void createProduct_returns201WithVersionETag() {
+		UUID id = UUID.randomUUID();
+		when(service.create(any(CreateProductRequest.class))).thenReturn(Mono.just(buildResponse(id, "Stove")));
+
+		client.post().uri("/products")
+				.contentType(MediaType.APPLICATION_JSON)
+				.bodyValue(new CreateProductRequest("Stove", "Desc", "MSR", new BigDecimal("90"), 3, List.of("cooking")))
+				.exchange()
+				.expectStatus().isCreated()
+				.expectHeader().valueEquals("ETag", "\"4\"")
+				.expectBody().jsonPath("$.id").isEqualTo(id.toString());
+	}
+
+	@Test
+	void createProduct_invalid_returns400() {
+		client.post().uri("/products")
+				.contentType(MediaType.APPLICATION_JSON)
+				.bodyValue("{\"name\":\"\"}")
+				.exchange()
+				.expectStatus().isBadRequest()
+				.expectBody().jsonPath("$.error").isEqualTo("Validation Error");
+	}
+
+	@Test
+	void getProduct_returnsCachedJson_and304WhenUnchanged() {
+		UUID id = UUID.randomUUID();
+		byte[] json = "{\"id\":\"x\"}".getBytes(StandardCharsets.UTF_8);
+		when(service.getJsonById(id)).thenReturn(Mono.just(new ProductJson(4, json)));
+
+		client.get().uri("/products/{id}", id)
+				.exchange()
+				.expectStatus().isOk()
+				.expectHeader().contentType(MediaType.APPLICATION_JSON)
+				.expectHeader().valueEquals("ETag", "\"4\"")
+				.expectBody(String.class).isEqualTo("{\"id\":\"x\"}");
+
+		client.get().uri("/products/{id}", id)
+				.header("If-None-Match", "\"4\"")
+				.exchange()
+				.expectStatus().isNotModified();
+	}
+
+	@Test
+	void getProduct_missing_returns404() {
+		UUID id = UUID.randomUUID();
+		when(service.getJsonById(id)).thenReturn(Mono.empty());
+
+		client.get().uri("/products/{id}", id)
+				.exchange()
+				.expectStatus().isNotFound()
+				.expectBody().jsonPath("$.error").isEqualTo("Product Not Found");
+	}
+
+	@Test
+	void listProducts_returnsPageWithCursor_and304WithoutQueryingWhenUnchanged() {
+		ProductResponse stove = buildResponse(UUID.randomUUID(), "Stove");
+		when(service.catalogVersion()).thenReturn(Mono.just(7L));
+		when(service.list(eq("MSR"), isNull(), isNull(), isNull(), isNull(), isNull(), eq(0), eq(1), isNull()))
+				.thenReturn(Mono.just(new ProductPage(List.of(stove), "next")));
+		when(service.toJson(List.of(stove))).thenReturn("[{}]".getBytes(StandardCharsets.UTF_8));
+
+		client.get().uri("/products?brand=MSR&size=1")
+				.exchange()
+				.expectStatus().isOk()
+				.expectHeader().valueEquals(ProductController.NEXT_CURSOR_HEADER, "next")
+				.expectHeader().valueEquals("ETag", "\"7\"")
+				.expectBody(String.class).isEqualTo("[{}]");
+
+		client.get().uri("/products?brand=Jetboil&size=1")
+				.header("If-None-Match", "\"7\"")
+				.exchange()
+				.expectStatus().isNotModified();
+		verify(service, never()).list(eq("Jetboil"), any(), any(), any(), any(), any(), anyInt(), anyInt(), any());
+	}
+
+	@Test
+	void export_streamsNdjsonLines() {
+		ProductResponse stove = buildResponse(UUID.randomUUID(), "Stove");
+		ProductResponse tent = buildResponse(UUID.randomUUID(), "Tent");
+		when(service.export(ReactiveProductController.EXPORT_PAGE_SIZE))
+				.thenReturn(Flux.just(stove, tent));
+
+		String body = client.get().uri("/products/_export")
+				.exchange()
+				.expectStatus().isOk()
+				.expectHeader().contentType(MediaType.APPLICATION_NDJSON)
+				.expectBody(String.class).returnResult().getResponseBody();
+
+		String[] lines = body.split("\n");
+		assertEquals(2, lines.length);
+		assertEquals(true, lines[0].contains(stove.id().toString()));
+		assertEquals(true, lines[1].contains(tent.id().toString()));
+	}
+
+	@Test
+	void updateProduct_staleIfMatch_returns412WithCurrentVersion() {
+		UUID id = UUID.randomUUID();
+		when(service.update(eq(id), any(UpdateProductRequest.class), eq(Set.of(3L))))
+				.thenReturn(Mono.error(new ProductVersionMismatchException(id.toString(), 4)));
+
+		client.put().uri("/products/{id}", id)
+				.header("If-Match", "\"3\"")
+				.contentType(MediaType.APPLICATION_JSON)
+				.bodyValue(new UpdateProductRequest("Stove", "Desc", "MSR", new BigDecimal("90"), 3, List.of("cooking")))
+				.exchange()
+				.expectStatus().isEqualTo(412)
+				.expectHeader().valueEquals("ETag", "\"4\"");
+	}
+
+	@Test
+	void deleteProduct_returns204_or404WhenMissing() {
+		UUID id = UUID.randomUUID();
+		UUID missing = UUID.randomUUID();
+		when(service.delete(id, null)).thenReturn(Mono.just(true));
+		when(service.delete(missing, null)).thenReturn(Mono.just(false));
+
+		client.delete().uri("/products/{id}", id).exchange().expectStatus().isNoContent();
+		client.delete().uri("/products/{id}", missing).exchange().expectStatus().isNotFound();
+	}
+}
@@ -0,0 +1,106 @@
+package com.backcountry.product.integration;
+
+import com.backcountry.product.controller.ReactiveProductController;
+import com.backcountry.product.dto.CreateProductRequest;
+import com.backcountry.product.dto.ProductResponse;
+import com.backcountry.product.repository.InMemoryProductRepository;
+import com.backcountry.product.service.ProductListCache;
+import com.backcountry.product.service.ProductService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.embedded.netty.NettyWebServer;
+import org.springframework.boot.web.reactive.context.ReactiveWebServerApplicationContext;
+import org.springframework.context.ApplicationContext;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+@SpringBootTest(
+		webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+		properties = "spring.main.web-application-type=reactive"
+)
+public class ReactiveProductIntegrationTest {
+
+	@Autowired
+	private WebTestClient client;
+
+	@Autowired
+	private ApplicationContext context;
+
+	@Autowired
+	private InMemoryProductRepository repository;
+
+	@Autowired
+	private ProductListCache listCache;
+
+	@Autowired
+	private ProductService service;
+
+	@BeforeEach
+	void setup() {
+		// Clearing the repository directly is not a write the cache hears of
+		repository.clear();
+		listCache.invalidateAll();
+	}
+
+	private ProductResponse createProduct(String name, String brand) {
+		return client.post().uri("/products")
+				.contentType(MediaType.APPLICATION_JSON)
+				.bodyValue(new CreateProductRequest(name, "Desc", brand, new BigDecimal("99.99"), 5, List.of("camping")))
+				.exchange()
+				.expectStatus().isCreated()
+				.expectBody(ProductResponse.class).returnResult().getResponseBody();
+	}
+
+	@Test
+	void reactiveStack_servesTheProductRoutes() {
+		assertNotNull(context.getBean(ReactiveProductController.class));
+		assertInstanceOf(NettyWebServer.class, ((ReactiveWebServerApplicationContext) context).getWebServer());
+		ProductResponse tent = createProduct("Tent", "REI");
+
+		client.get().uri("/products/{id}", tent.id())
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody().jsonPath("$.name").isEqualTo("Tent");
+
+		client.get().uri("/products?brand=rei")
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody().jsonPath("$[0].id").isEqualTo(tent.id().toString());
+
+		client.delete().uri("/products/{id}", tent.id()).exchange().expectStatus().isNoContent();
+		client.get().uri("/products/{id}", tent.id()).exchange().expectStatus().isNotFound();
+	}
+
+	@Test
+	void export_streamsEveryProductAcrossPages() {
+		// More than two export pages
+		int count = 1007;
+		for (int i = 0; i < count; i++) {
+			service.create(new CreateProductRequest("Stove " + i, "Desc", "MSR", new BigDecimal("49.99"), 5, List.of("cooking")));
+		}
+		createProduct("Boots", "Salomon");
+		count++;
+
+		List<ProductResponse> exported = client.get().uri("/products/_export")
+				.accept(MediaType.APPLICATION_NDJSON)
+				.exchange()
+				.expectStatus().isOk()
+				.returnResult(ProductResponse.class)
+				.getResponseBody()
+				.collectList()
+				.block();
+
+		assertNotNull(exported);
+		assertEquals(count, exported.size());
+		assertEquals(count, exported.stream().map(ProductResponse::id).distinct().count());
+	}
+}
@@ -0,0 +1,133 @@
+package com.backcountry.product.service;
+
+import com.backcountry.product.dto.DictionaryMetricsResponse;
+import com.backcountry.product.dto.ProductJson;
+import com.backcountry.product.dto.ProductPage;
+import com.backcountry.product.dto.ProductResponse;
+import com.backcountry.product.dto.UpdateProductRequest;
+import com.backcountry.product.exception.ProductVersionMismatchException;
+import org.junit.jupiter.api.Test;
+import reactor.test.StepVerifier;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ReactiveProductServiceImplTest {
+
+	private final ProductService blocking = mock(ProductService.class);
+	private final ReactiveProductService service = new ReactiveProductServiceImpl(blocking);
+
+	private static ProductResponse buildResponse(String name) {
+		return new ProductResponse(UUID.randomUUID(), name, "Desc", "MSR", new BigDecimal("90"), 3,
+				List.of("cooking"), Instant.now(), Instant.now(), 1);
+	}
+
+	@Test
+	void getJsonById_missing_isEmpty() {
+		UUID id = UUID.randomUUID();
+		when(blocking.getJsonById(id)).thenReturn(Optional.empty());
+
+		StepVerifier.create(service.getJsonById(id)).verifyComplete();
+	}
+
+	@Test
+	void getJsonById_readsOnlyWhenSubscribed() {
+		UUID id = UUID.randomUUID();
+		when(blocking.getJsonById(id)).thenReturn(Optional.of(new ProductJson(2, new byte[0])));
+
+		var read = service.getJsonById(id);
+		verify(blocking, never()).getJsonById(id);
+
+		StepVerifier.create(read).expectNextMatches(json -> json.version() == 2).verifyComplete();
+	}
+
+	@Test
+	void getJsonById_runsOffTheSubscribingThread() {
+		UUID id = UUID.randomUUID();
+		Thread caller = Thread.currentThread();
+		AtomicReference<Thread> reader = new AtomicReference<>();
+		when(blocking.getJsonById(id)).thenAnswer(inv -> {
+			reader.set(Thread.currentThread());
+			return Optional.of(new ProductJson(2, new byte[0]));
+		});
+
+		StepVerifier.create(service.getJsonById(id)).expectNextCount(1).verifyComplete();
+		assertNotSame(caller, reader.get());
+	}
+
+	@Test
+	void dictionaryMetrics_runsOffTheSubscribingThread() {
+		Thread caller = Thread.currentThread();
+		AtomicReference<Thread> reader = new AtomicReference<>();
+		when(blocking.dictionaryMetrics()).thenAnswer(inv -> {
+			reader.set(Thread.currentThread());
+			return new DictionaryMetricsResponse(1, 1, 1, 100);
+		});
+
+		StepVerifier.create(service.dictionaryMetrics()).expectNextCount(1).verifyComplete();
+		assertNotSame(caller, reader.get());
+	}
+
+	@Test
+	void update_versionMismatch_failsTheMono() {
+		UUID id = UUID.randomUUID();
+		UpdateProductRequest request = new UpdateProductRequest("Stove", "Desc", "MSR", new BigDecimal("90"), 3, List.of("cooking"));
+		when(blocking.update(id, request, Set.of(1L))).thenThrow(new ProductVersionMismatchException(id.toString(), 2));
+
+		StepVerifier.create(service.update(id, request, Set.of(1L)))
+				.expectError(ProductVersionMismatchException.class)
+				.verify();
+	}
+
+	@Test
+	void export_followsCursors_readingEachPageOnDemand() {
+		ProductResponse first = buildResponse("First");
+		ProductResponse second = buildResponse("Second");
+		ProductResponse third = buildResponse("Third");
+		ProductResponse fourth = buildResponse("Fourth");
+		when(blocking.list(isNull(), isNull(), isNull(), isNull(), isNull(), isNull(), eq(0), eq(2), isNull()))
+				.thenReturn(new ProductPage(List.of(first, second), "c1"));
+		when(blocking.list(isNull(), isNull(), isNull(), isNull(), isNull(), isNull(), eq(0), eq(2), eq("c1")))
+				.thenReturn(new ProductPage(List.of(third), "c2"));
+		when(blocking.list(isNull(), isNull(), isNull(), isNull(), isNull(), isNull(), eq(0), eq(2), eq("c2")))
+				.thenReturn(new ProductPage(List.of(fourth), null));
+
+		// Pages are read on another thread, so the next one may be read ahead, but never the one after
+		StepVerifier.create(service.export(2), 1)
+				.expectNext(first)
+				.then(() -> verify(blocking, never()).list(any(), any(), any(), any(), any(), any(), anyInt(), anyInt(), eq("c2")))
+				.thenRequest(3)
+				.expectNext(second, third, fourth)
+				.verifyComplete();
+	}
+
+	@Test
+	void list_runsOffTheSubscribingThread() {
+		Thread caller = Thread.currentThread();
+		AtomicReference<Thread> reader = new AtomicReference<>();
+		when(blocking.list(any(), any(), any(), any(), any(), any(), anyInt(), anyInt(), any())).thenAnswer(inv -> {
+			reader.set(Thread.currentThread());
+			return new ProductPage(List.of(), null);
+		});
+
+		StepVerifier.create(service.list(null, null, null, null, null, null, 0, 10, null))
+				.expectNextCount(1)
+				.verifyComplete();
+		assertNotSame(caller, reader.get());
+	}
+}
@@ -1,35 +1,72 @@
 package com.backcountry.product.controller;
 
+import com.backcountry.config.HttpCacheConfig;
+import com.backcountry.product.dto.BulkResponse;
 import com.backcountry.product.dto.CreateProductRequest;
+import com.backcountry.product.dto.ImportResponse;
+import com.backcountry.product.dto.ProductJson;
+import com.backcountry.product.dto.ProductPage;
 import com.backcountry.product.dto.ProductResponse;
+import com.backcountry.product.dto.QueryExplainResponse;
+import com.backcountry.product.dto.SuggestionResponse;
 import com.backcountry.product.dto.UpdateProductRequest;
+import com.backcountry.product.exception.ImportCapacityException;
+import com.backcountry.product.exception.InventoryConflictException;
+import com.backcountry.product.exception.ProductVersionMismatchException;
+import com.backcountry.product.service.ImportRecord;
 import com.backcountry.product.service.ProductService;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @WebMvcTest(ProductController.class)
+@Import(HttpCacheConfig.class)
 class ProductControllerTest {
 
 	@Autowired
@@ -54,7 +91,7 @@ class ProductControllerTest {
 		ProductResponse resp = new ProductResponse(
 				UUID.randomUUID(), "Jacket", "Warm", "NorthFace",
 				new BigDecimal("199.99"), 5, List.of("outerwear"),
-				Instant.now(), Instant.now()
+				Instant.now(), Instant.now(), 1L
 		);
 
 		when(service.create(any())).thenReturn(resp);
@@ -66,6 +103,211 @@ class ProductControllerTest {
 				.andExpect(jsonPath("$.name").value("Jacket"));
 	}
 
+	// --------------------------------------------------------------------
+	// /products/_bulk
+	// --------------------------------------------------------------------
+	@Test
+	void bulkCreate_acceptsJsonArrayAndNdjson() throws Exception {
+		CreateProductRequest jacket = new CreateProductRequest(
+				"Jacket", "Warm", "NorthFace", new BigDecimal("199.99"), 5, List.of("outerwear"));
+		CreateProductRequest tent = new CreateProductRequest(
+				"Tent", "Dry", "REI", new BigDecimal("299.99"), 2, List.of("camping"));
+		UUID id = UUID.randomUUID();
+
+		when(service.createAll(List.of(jacket, tent))).thenReturn(new BulkResponse(1, 1, List.of(
+				new BulkResponse.ItemResult(0, id, 201, null),
+				new BulkResponse.ItemResult(1, null, 400, Map.of("price", "must be greater than 0")))));
+
+		mockMvc.perform(post("/products/_bulk")
+						.contentType(MediaType.APPLICATION_JSON)
+						.content(mapper.writeValueAsString(List.of(jacket, tent))))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.succeeded").value(1))
+				.andExpect(jsonPath("$.items[0].id").value(id.toString()))
+				.andExpect(jsonPath("$.items[1].errors.price").exists());
+
+		mockMvc.perform(post("/products/_bulk")
+						.contentType(MediaType.APPLICATION_NDJSON)
+						.content(mapper.writeValueAsString(jacket) + "\n" + mapper.writeValueAsString(tent) + "\n"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.failed").value(1));
+	}
+
+	@Test
+	void bulkDelete_readsIds() throws Exception {
+		UUID id = UUID.randomUUID();
+
+		when(service.deleteAll(List.of(id))).thenReturn(new BulkResponse(1, 0, List.of(new BulkResponse.ItemResult(0, id, 204, null))));
+
+		mockMvc.perform(delete("/products/_bulk")
+						.contentType(MediaType.APPLICATION_JSON)
+						.content("[\"" + id + "\"]"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.items[0].status").value(204));
+		verify(service).deleteAll(List.of(id));
+	}
+
+	@Test
+	void bulk_malformedItem_returns400() throws Exception {
+		mockMvc.perform(post("/products/_bulk")
+						.contentType(MediaType.APPLICATION_NDJSON)
+						.content("{\"name\": \"Jacket\"}\n{\"price\": \"cheap\"}\n"))
+				.andExpect(status().isBadRequest())
+				.andExpect(jsonPath("$.error").value("Invalid Bulk Request"));
+	}
+
+	// --------------------------------------------------------------------
+	// POST /products/_import
+	// --------------------------------------------------------------------
+	@Test
+	void importNdjson_parsesEachLineOnItsOwn() throws Exception {
+		List<ImportRecord> records = drainImport();
+
+		mockMvc.perform(post("/products/_import")
+						.contentType(MediaType.APPLICATION_NDJSON)
+						.content("{\"name\": \"Jacket\", \"price\": 199.99, \"categories\": [\"outerwear\"]}\n"
+								+ "\n"
+								+ "{\"name\": }\n"
+								+ "{\"name\": \"Tent\", \"inventory\": 2}\n"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.records").value(3));
+
+		assertEquals(3, records.size());
+		assertEquals(new ImportRecord(1, new CreateProductRequest("Jacket", null, null, new BigDecimal("199.99"), 0, List.of("outerwear")), null),
+				records.get(0));
+		assertEquals(3, records.get(1).line());
+		assertNotNull(records.get(1).error());
+		assertEquals(new ImportRecord(4, new CreateProductRequest("Tent", null, null, null, 2, null), null), records.get(2));
+	}
+
+	@Test
+	void importNdjson_overlongLine_isRejectedOnItsOwn() throws Exception {
+		List<ImportRecord> records = drainImport();
+		String overlong = "{\"name\": \"" + "x".repeat(ImportRecords.MAX_LINE_CHARS) + "\"}";
+
+		mockMvc.perform(post("/products/_import")
+						.contentType(MediaType.APPLICATION_NDJSON)
+						.content(overlong + "\r\n{\"name\": \"Tent\", \"inventory\": 2}\r\n"))
+				.andExpect(status().isOk());
+
+		assertEquals(2, records.size());
+		assertEquals(1, records.get(0).line());
+		assertEquals("is longer than " + ImportRecords.MAX_LINE_CHARS + " characters", records.get(0).error());
+		assertEquals(new ImportRecord(2, new CreateProductRequest("Tent", null, null, null, 2, null), null), records.get(1));
+	}
+
+	@Test
+	void import_whileTheMostImportsRun_returns503() throws Exception {
+		when(service.importProducts(any())).thenThrow(new ImportCapacityException("Already running 2 imports"));
+
+		mockMvc.perform(post("/products/_import")
+						.contentType(MediaType.APPLICATION_NDJSON)
+						.content("{\"name\": \"Tent\"}\n"))
+				.andExpect(status().isServiceUnavailable())
+				.andExpect(jsonPath("$.details.message").value("Already running 2 imports"));
+	}
+
+	@Test
+	void importCsv_gzipped_bindsColumnsByHeader() throws Exception {
+		List<ImportRecord> records = drainImport();
+		String csv = "brand,name,description,price,inventory,categories,color\n"
+				+ "NorthFace,Jacket,\"Warm,\nwindproof\",199.99,5,outerwear;jackets,red\n"
+				+ "REI,Tent,Dry,cheap,2,camping,green\n";
+		ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+		try (GZIPOutputStream out = new GZIPOutputStream(gzipped)) {
+			out.write(csv.getBytes(StandardCharsets.UTF_8));
+		}
+
+		mockMvc.perform(post("/products/_import")
+						.contentType("text/csv")
+						.header("Content-Encoding", "gzip")
+						.content(gzipped.toByteArray()))
+				.andExpect(status().isOk());
+
+		assertEquals(2, records.size());
+		assertEquals(new ImportRecord(2, new CreateProductRequest(
+				"Jacket", "Warm,\nwindproof", "NorthFace", new BigDecimal("199.99"), 5, List.of("outerwear", "jackets")), null), records.get(0));
+		assertEquals(4, records.get(1).line());
+		assertNotNull(records.get(1).error());
+	}
+
+	// Answer imports by reading every record, as the service would, into the returned list
+	@SuppressWarnings("unchecked")
+	private List<ImportRecord> drainImport() {
+		List<ImportRecord> records = new ArrayList<>();
+		when(service.importProducts(any())).thenAnswer(inv -> {
+			((Iterator<ImportRecord>) inv.getArgument(0)).forEachRemaining(records::add);
+			return new ImportResponse(records.size(), 0, 0, 1, records.size() * 1000L, List.of());
+		});
+		return records;
+	}
+
+	// --------------------------------------------------------------------
+	// GET /products/_export
+	// --------------------------------------------------------------------
+	@Test
+	@SuppressWarnings("unchecked")
+	void exportProducts_streamsNdjsonOptionallyGzipped() throws Exception {
+		ProductResponse jacket = new ProductResponse(
+				UUID.randomUUID(), "Jacket", "Warm", "NorthFace",
+				new BigDecimal("199.99"), 5, List.of("outerwear"),
+				Instant.now(), Instant.now(), 1L
+		);
+		ProductResponse tent = new ProductResponse(
+				UUID.randomUUID(), "Tent", "Dry", "REI",
+				new BigDecimal("299.99"), 2, List.of("camping"),
+				Instant.now(), Instant.now(), 1L
+		);
+		doAnswer(inv -> {
+			Consumer<ProductResponse> sink = inv.getArgument(0);
+			sink.accept(jacket);
+			sink.accept(tent);
+			return null;
+		}).when(service).export(any());
+
+		MvcResult started = mockMvc.perform(get("/products/_export"))
+				.andExpect(request().asyncStarted())
+				.andReturn();
+		assertEquals(ProductController.EXPORT_TIMEOUT.toMillis(), started.getRequest().getAsyncContext().getTimeout());
+		String body = mockMvc.perform(asyncDispatch(started))
+				.andExpect(status().isOk())
+				.andExpect(header().string("Content-Type", MediaType.APPLICATION_NDJSON_VALUE))
+				.andReturn().getResponse().getContentAsString();
+		assertEquals(mapper.writeValueAsString(jacket) + "\n" + mapper.writeValueAsString(tent) + "\n", body);
+
+		MvcResult gzipped = mockMvc.perform(get("/products/_export").header("Accept-Encoding", "gzip, deflate"))
+				.andExpect(request().asyncStarted())
+				.andReturn();
+		byte[] compressed = mockMvc.perform(asyncDispatch(gzipped))
+				.andExpect(header().string("Content-Encoding", "gzip"))
+				.andReturn().getResponse().getContentAsByteArray();
+		try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+			assertEquals(body, new String(in.readAllBytes(), StandardCharsets.UTF_8));
+		}
+
+		MvcResult refused = mockMvc.perform(get("/products/_export").header("Accept-Encoding", "gzip;q=0, deflate"))
+				.andExpect(request().asyncStarted())
+				.andReturn();
+		assertEquals(body, mockMvc.perform(asyncDispatch(refused))
+				.andExpect(header().doesNotExist("Content-Encoding"))
+				.andReturn().getResponse().getContentAsString());
+	}
+
+	@Test
+	void acceptsGzip_honoursCodingNamesAndWeights() {
+		assertTrue(ProductController.acceptsGzip("gzip, deflate"));
+		assertTrue(ProductController.acceptsGzip("br;q=1.0, GZIP;q=0.5"));
+		assertTrue(ProductController.acceptsGzip("x-gzip"));
+		assertTrue(ProductController.acceptsGzip("deflate, *;q=0.1"));
+
+		assertFalse(ProductController.acceptsGzip(null));
+		assertFalse(ProductController.acceptsGzip("gzip;q=0"));
+		assertFalse(ProductController.acceptsGzip("gzip; q=0.000, *"));
+		assertFalse(ProductController.acceptsGzip("notgzip, gzipped"));
+		assertFalse(ProductController.acceptsGzip("deflate, *;q=0"));
+		assertFalse(ProductController.acceptsGzip("gzip;q=high"));
+	}
+
 	// --------------------------------------------------------------------
 	// GET /products/{id}
 	// --------------------------------------------------------------------
@@ -76,13 +318,39 @@ class ProductControllerTest {
 		ProductResponse resp = new ProductResponse(
 				id, "Boots", "Hiking boots", "Salomon",
 				new BigDecimal("149.99"), 10, List.of("footwear"),
-				Instant.now(), Instant.now()
+				Instant.now(), Instant.now(), 7L
 		);
 
-		when(service.getById(id)).thenReturn(Optional.of(resp));
+		when(service.getJsonById(id)).thenReturn(Optional.of(new ProductJson(7L, mapper.writeValueAsBytes(resp))));
 
 		mockMvc.perform(get("/products/" + id))
 				.andExpect(status().isOk())
+				.andExpect(header().string("ETag", "\"7\""))
+				.andExpect(jsonPath("$.name").value("Boots"))
+				.andExpect(jsonPath("$.version").value(7));
+	}
+
+	@Test
+	void getProductById_ifNoneMatchCurrentVersion_returns304WithoutBody() throws Exception {
+		UUID id = UUID.randomUUID();
+
+		ProductResponse resp = new ProductResponse(
+				id, "Boots", "Hiking boots", "Salomon",
+				new BigDecimal("149.99"), 10, List.of("footwear"),
+				Instant.now(), Instant.now(), 7L
+		);
+
+		when(service.getJsonById(id)).thenReturn(Optional.of(new ProductJson(7L, mapper.writeValueAsBytes(resp))));
+
+		mockMvc.perform(get("/products/" + id).header("If-None-Match", "\"6\", \"7\""))
+				.andExpect(status().isNotModified())
+				.andExpect(header().string("ETag", "\"7\""))
+				.andExpect(header().string("Cache-Control", "no-cache, public"))
+				.andExpect(content().string(""));
+
+		mockMvc.perform(get("/products/" + id).header("If-None-Match", "\"6\""))
+				.andExpect(status().isOk())
+				.andExpect(header().string("Cache-Control", "no-cache, public"))
 				.andExpect(jsonPath("$.name").value("Boots"));
 	}
 
@@ -90,7 +358,7 @@ class ProductControllerTest {
 	void getProductById_notFound_returns404() throws Exception {
 		UUID id = UUID.randomUUID();
 
-		when(service.getById(id)).thenReturn(Optional.empty());
+		when(service.getJsonById(id)).thenReturn(Optional.empty());
 
 		mockMvc.perform(get("/products/" + id))
 				.andExpect(status().isNotFound());
@@ -104,15 +372,69 @@ class ProductControllerTest {
 		ProductResponse resp = new ProductResponse(
 				UUID.randomUUID(), "Tent", "Camping tent", "REI",
 				new BigDecimal("199.99"), 2, List.of("camping"),
-				Instant.now(), Instant.now()
+				Instant.now(), Instant.now(), 1L
 		);
 
-		when(service.list(any(), any(), any(), any(), any(), anyInt(), anyInt()))
-				.thenReturn(List.of(resp));
+		when(service.list(any(), any(), any(), any(), any(), any(), anyInt(), anyInt(), any()))
+				.thenReturn(new ProductPage(List.of(resp), "next"));
+		when(service.toJson(List.of(resp))).thenReturn(mapper.writeValueAsBytes(List.of(resp)));
+
+		mockMvc.perform(get("/products?brand=REI"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$[0].brand").value("REI"))
+				.andExpect(header().string("X-Next-Cursor", "next"));
+	}
+
+	@Test
+	void listProducts_ifNoneMatchCurrentCatalog_returns304WithoutQuerying() throws Exception {
+		when(service.catalogVersion()).thenReturn(42L);
+		when(service.list(any(), any(), any(), any(), any(), any(), anyInt(), anyInt(), any()))
+				.thenReturn(new ProductPage(List.of(), null));
+		when(service.toJson(List.of())).thenReturn("[]".getBytes(StandardCharsets.UTF_8));
 
 		mockMvc.perform(get("/products?brand=REI"))
 				.andExpect(status().isOk())
-				.andExpect(jsonPath("$[0].brand").value("REI"));
+				.andExpect(header().string("ETag", "\"42\""));
+
+		// If-None-Match compares weakly
+		mockMvc.perform(get("/products?brand=REI").header("If-None-Match", "W/\"42\""))
+				.andExpect(status().isNotModified())
+				.andExpect(header().string("ETag", "\"42\""))
+				.andExpect(content().string(""));
+
+		verify(service, times(1)).list(any(), any(), any(), any(), any(), any(), anyInt(), anyInt(), any());
+	}
+
+	// --------------------------------------------------------------------
+	// GET /products/_explain
+	// --------------------------------------------------------------------
+	@Test
+	void explainProducts_returns200() throws Exception {
+		QueryExplainResponse resp = new QueryExplainResponse(
+				"BRAND_INDEX", List.of(), "SORT", 3, 3, 1, 1
+		);
+
+		when(service.explain(eq("REI"), any(), any(), any(), any(), any(), anyInt(), anyInt(), any()))
+				.thenReturn(resp);
+
+		mockMvc.perform(get("/products/_explain?brand=REI"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.driver").value("BRAND_INDEX"))
+				.andExpect(jsonPath("$.candidatesScanned").value(3));
+	}
+
+	// --------------------------------------------------------------------
+	// GET /products/suggest
+	// --------------------------------------------------------------------
+	@Test
+	void suggestProducts_returns200() throws Exception {
+		when(service.suggest("nan", "newest", 5))
+				.thenReturn(List.of(new SuggestionResponse("Nano Puff", "name")));
+
+		mockMvc.perform(get("/products/suggest?prefix=nan&rank=newest&size=5"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$[0].text").value("Nano Puff"))
+				.andExpect(jsonPath("$[0].field").value("name"));
 	}
 
 	// --------------------------------------------------------------------
@@ -130,16 +452,86 @@ class ProductControllerTest {
 		ProductResponse resp = new ProductResponse(
 				id, "Updated Tent", "3-person tent", "REI",
 				new BigDecimal("249.99"), 5, List.of("camping"),
-				Instant.now(), Instant.now()
+				Instant.now(), Instant.now(), 1L
 		);
 
-		when(service.update(eq(id), any())).thenReturn(Optional.of(resp));
+		when(service.update(eq(id), any(), any())).thenReturn(Optional.of(resp));
 
 		mockMvc.perform(put("/products/" + id)
 						.contentType(MediaType.APPLICATION_JSON)
 						.content(mapper.writeValueAsString(req)))
 				.andExpect(status().isOk())
 				.andExpect(jsonPath("$.name").value("Updated Tent"));
+
+		verify(service).update(eq(id), any(), isNull());
+	}
+
+	@Test
+	void updateProduct_ifMatch_passesStrongVersionsAndReturnsNewETag() throws Exception {
+		UUID id = UUID.randomUUID();
+
+		UpdateProductRequest req = new UpdateProductRequest(
+				"Updated Tent", "3-person tent", "REI",
+				new BigDecimal("249.99"), 5, List.of("camping")
+		);
+
+		ProductResponse resp = new ProductResponse(
+				id, "Updated Tent", "3-person tent", "REI",
+				new BigDecimal("249.99"), 5, List.of("camping"),
+				Instant.now(), Instant.now(), 9L
+		);
+
+		when(service.update(eq(id), any(), any())).thenReturn(Optional.of(resp));
+
+		// Weak tags and tags that are not versions match nothing
+		mockMvc.perform(put("/products/" + id)
+						.header("If-Match", "\"7\", W/\"8\", \"abc\"")
+						.contentType(MediaType.APPLICATION_JSON)
+						.content(mapper.writeValueAsString(req)))
+				.andExpect(status().isOk())
+				.andExpect(header().string("ETag", "\"9\""));
+
+		verify(service).update(eq(id), any(), eq(Set.of(7L)));
+	}
+
+	@Test
+	void updateProduct_versionMismatch_returns412WithCurrentETag() throws Exception {
+		UUID id = UUID.randomUUID();
+
+		UpdateProductRequest req = new UpdateProductRequest(
+				"Updated Tent", "3-person tent", "REI",
+				new BigDecimal("249.99"), 5, List.of("camping")
+		);
+
+		when(service.update(eq(id), any(), any()))
+				.thenThrow(new ProductVersionMismatchException(id.toString(), 12L));
+
+		mockMvc.perform(put("/products/" + id)
+						.header("If-Match", "\"7\"")
+						.contentType(MediaType.APPLICATION_JSON)
+						.content(mapper.writeValueAsString(req)))
+				.andExpect(status().isPreconditionFailed())
+				.andExpect(header().string("ETag", "\"12\""))
+				.andExpect(jsonPath("$.error").value("Precondition Failed"));
+	}
+
+	@Test
+	void updateProduct_ifMatchOnMissingProduct_returns412() throws Exception {
+		UUID id = UUID.randomUUID();
+
+		UpdateProductRequest req = new UpdateProductRequest(
+				"Updated Tent", "3-person tent", "REI",
+				new BigDecimal("249.99"), 5, List.of("camping")
+		);
+
+		when(service.update(eq(id), any(), any())).thenReturn(Optional.empty());
+
+		mockMvc.perform(put("/products/" + id)
+						.header("If-Match", "\"7\"")
+						.contentType(MediaType.APPLICATION_JSON)
+						.content(mapper.writeValueAsString(req)))
+				.andExpect(status().isPreconditionFailed())
+				.andExpect(jsonPath("$.details.message").value("Product with id " + id + " does not exist"));
 	}
 
 	@Test
@@ -151,7 +543,7 @@ class ProductControllerTest {
 				new BigDecimal("10"), 1, List.of("cat")
 		);
 
-		when(service.update(eq(id), any())).thenReturn(Optional.empty());
+		when(service.update(eq(id), any(), any())).thenReturn(Optional.empty());
 
 		mockMvc.perform(put("/products/" + id)
 						.contentType(MediaType.APPLICATION_JSON)
@@ -159,6 +551,79 @@ class ProductControllerTest {
 				.andExpect(status().isNotFound());
 	}
 
+	// --------------------------------------------------------------------
+	// POST /products/{id}/inventory:reserve and :release
+	// --------------------------------------------------------------------
+	@Test
+	void reserveInventory_returns200WithRemainingStockAndNewETag() throws Exception {
+		UUID id = UUID.randomUUID();
+
+		ProductResponse resp = new ProductResponse(
+				id, "Tent", "2-person tent", "REI",
+				new BigDecimal("199.99"), 3, List.of("camping"),
+				Instant.now(), Instant.now(), 6L
+		);
+
+		when(service.reserveInventory(id, 2)).thenReturn(Optional.of(resp));
+
+		mockMvc.perform(post("/products/" + id + "/inventory:reserve")
+						.contentType(MediaType.APPLICATION_JSON)
+						.content("{\"quantity\":2}"))
+				.andExpect(status().isOk())
+				.andExpect(header().string("ETag", "\"6\""))
+				.andExpect(jsonPath("$.inventory").value(3));
+	}
+
+	@Test
+	void reserveInventory_outOfStock_returns409() throws Exception {
+		UUID id = UUID.randomUUID();
+
+		when(service.reserveInventory(id, 5)).thenThrow(new InventoryConflictException("Only 3 in stock"));
+
+		mockMvc.perform(post("/products/" + id + "/inventory:reserve")
+						.contentType(MediaType.APPLICATION_JSON)
+						.content("{\"quantity\":5}"))
+				.andExpect(status().isConflict())
+				.andExpect(jsonPath("$.error").value("Inventory Conflict"));
+	}
+
+	@Test
+	void createProduct_priceWithMoreThanFourDecimals_returns400() throws Exception {
+		mockMvc.perform(post("/products")
+						.contentType(MediaType.APPLICATION_JSON)
+						.content("{\"name\":\"Stove\",\"description\":\"Canister stove\",\"brand\":\"MSR\","
+								+ "\"price\":19.99999,\"inventory\":1,\"categories\":[\"cooking\"]}"))
+				.andExpect(status().isBadRequest())
+				.andExpect(jsonPath("$.details.price").exists());
+
+		verify(service, never()).create(any());
+	}
+
+	@Test
+	void releaseInventory_nonPositiveQuantity_returns400() throws Exception {
+		UUID id = UUID.randomUUID();
+
+		mockMvc.perform(post("/products/" + id + "/inventory:release")
+						.contentType(MediaType.APPLICATION_JSON)
+						.content("{\"quantity\":0}"))
+				.andExpect(status().isBadRequest())
+				.andExpect(jsonPath("$.error").value("Validation Error"));
+
+		verify(service, never()).releaseInventory(any(), anyInt());
+	}
+
+	@Test
+	void releaseInventory_notFound_returns404() throws Exception {
+		UUID id = UUID.randomUUID();
+
+		when(service.releaseInventory(id, 1)).thenReturn(Optional.empty());
+
+		mockMvc.perform(post("/products/" + id + "/inventory:release")
+						.contentType(MediaType.APPLICATION_JSON)
+						.content("{\"quantity\":1}"))
+				.andExpect(status().isNotFound());
+	}
+
 	// --------------------------------------------------------------------
 	// DELETE /products/{id}
 	// --------------------------------------------------------------------
@@ -166,17 +631,40 @@ class ProductControllerTest {
 	void deleteProduct_success_returns204() throws Exception {
 		UUID id = UUID.randomUUID();
 
-		when(service.delete(id)).thenReturn(true);
+		when(service.delete(eq(id), any())).thenReturn(true);
 
 		mockMvc.perform(delete("/products/" + id))
 				.andExpect(status().isNoContent());
 	}
 
+	@Test
+	void deleteProduct_ifMatchAnyVersion_deletesUnconditionally() throws Exception {
+		UUID id = UUID.randomUUID();
+
+		when(service.delete(eq(id), any())).thenReturn(true);
+
+		mockMvc.perform(delete("/products/" + id).header("If-Match", "*"))
+				.andExpect(status().isNoContent());
+
+		verify(service).delete(eq(id), isNull());
+	}
+
+	@Test
+	void deleteProduct_ifMatchOnMissingProduct_returns412() throws Exception {
+		UUID id = UUID.randomUUID();
+
+		when(service.delete(eq(id), any())).thenReturn(false);
+
+		mockMvc.perform(delete("/products/" + id).header("If-Match", "*"))
+				.andExpect(status().isPreconditionFailed())
+				.andExpect(header().doesNotExist("ETag"));
+	}
+
 	@Test
 	void deleteProduct_notFound_returns404() throws Exception {
 		UUID id = UUID.randomUUID();
 
-		when(service.delete(id)).thenReturn(false);
+		when(service.delete(eq(id), any())).thenReturn(false);
 
 		mockMvc.perform(delete("/products/" + id))
 				.andExpect(status().isNotFound());
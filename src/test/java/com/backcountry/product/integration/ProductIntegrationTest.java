@@ -2,7 +2,10 @@ package com.backcountry.product.integration;
 
 import com.backcountry.product.dto.CreateProductRequest;
 import com.backcountry.product.dto.UpdateProductRequest;
+import com.backcountry.product.exception.InventoryConflictException;
 import com.backcountry.product.repository.InMemoryProductRepository;
+import com.backcountry.product.service.ProductListCache;
+import com.backcountry.product.service.ProductService;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -13,16 +16,31 @@ import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 
 @SpringBootTest
 @AutoConfigureMockMvc
@@ -37,9 +55,17 @@ public class ProductIntegrationTest {
 	@Autowired
 	private InMemoryProductRepository repository;
 
+	@Autowired
+	private ProductListCache listCache;
+
+	@Autowired
+	private ProductService service;
+
 	@BeforeEach
 	void setup() throws Exception {
+		// Clearing the repository directly is not a write the cache hears of
 		repository.clear();
+		listCache.invalidateAll();
 
 		createProduct("Nano Jacket", "Patagonia", 199.99, List.of("jackets"));
 		createProduct("Trail Boots", "Salomon", 149.99, List.of("footwear"));
@@ -86,6 +112,59 @@ public class ProductIntegrationTest {
 				.andExpect(jsonPath("$[0].name", is("Nano Jacket")));
 	}
 
+	@Test
+	void getProducts_filterByBrand_ignoresCase() throws Exception {
+		createProduct("Trail Runners", "SALOMON", 129.99, List.of("footwear"));
+
+		mockMvc.perform(get("/products?brand=salomon&category=footwear"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.length()", is(2)));
+	}
+
+	@Test
+	void apiDocs_describeProductReadsAsProductResponses() throws Exception {
+		mockMvc.perform(get("/v3/api-docs"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.paths['/products/{id}'].get.responses['200'].content['application/json'].schema['$ref']",
+						is("#/components/schemas/ProductResponse")))
+				.andExpect(jsonPath("$.paths['/products'].get.responses['200'].content['application/json'].schema.items['$ref']",
+						is("#/components/schemas/ProductResponse")));
+	}
+
+	@Test
+	void dictionaryMetrics_reportsTheDictionary() throws Exception {
+		mockMvc.perform(get("/metrics/dictionary"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.brands", greaterThanOrEqualTo(3)))
+				.andExpect(jsonPath("$.dictionaryBytes", greaterThan(0)));
+	}
+
+	@Test
+	void listCache_servesHotPagesUntilAWriteTouchesThem() throws Exception {
+		var before = objectMapper.readTree(mockMvc.perform(get("/metrics/list-cache"))
+				.andReturn().getResponse().getContentAsString());
+
+		mockMvc.perform(get("/products?brand=Salomon"))
+				.andExpect(jsonPath("$.length()", is(1)));
+		mockMvc.perform(get("/products?brand=SALOMON"))
+				.andExpect(jsonPath("$.length()", is(1)));
+
+		// Another brand leaves the page cached; the same brand drops it
+		createProduct("Stove", "MSR", 89.95, List.of("cooking"));
+		mockMvc.perform(get("/products?brand=salomon"))
+				.andExpect(jsonPath("$.length()", is(1)));
+		createProduct("Trail Runners", "Salomon", 129.99, List.of("footwear"));
+		mockMvc.perform(get("/products?brand=Salomon"))
+				.andExpect(jsonPath("$.length()", is(2)));
+
+		var after = objectMapper.readTree(mockMvc.perform(get("/metrics/list-cache"))
+				.andExpect(status().isOk())
+				.andReturn().getResponse().getContentAsString());
+		assertThat(after.path("hits").asLong() - before.path("hits").asLong(), is(2L));
+		assertThat(after.path("misses").asLong() - before.path("misses").asLong(), is(2L));
+		assertThat(after.path("invalidations").asLong() - before.path("invalidations").asLong(), is(1L));
+	}
+
 	@Test
 	void getProducts_sortedByPriceAscending() throws Exception {
 		mockMvc.perform(get("/products?sort=price"))
@@ -95,6 +174,364 @@ public class ProductIntegrationTest {
 				.andExpect(jsonPath("$[2].price", is(249.99)));
 	}
 
+	@Test
+	void getProducts_sortedByPrice_paginates() throws Exception {
+		mockMvc.perform(get("/products?sort=price&page=1&size=1"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.length()", is(1)))
+				.andExpect(jsonPath("$[0].price", is(199.99)));
+	}
+
+	@Test
+	void getProducts_cursorWalksWholeCatalogOnce() throws Exception {
+		String first = mockMvc.perform(get("/products?sort=price&size=2"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.length()", is(2)))
+				.andExpect(jsonPath("$[1].price", is(199.99)))
+				.andReturn().getResponse().getHeader("X-Next-Cursor");
+
+		// A product created concurrently ahead of the cursor does not shift the next page
+		createProduct("Socks", "Smartwool", 19.99, List.of("footwear"));
+
+		mockMvc.perform(get("/products?sort=price&size=2&cursor=" + first))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.length()", is(1)))
+				.andExpect(jsonPath("$[0].price", is(249.99)))
+				.andExpect(header().doesNotExist("X-Next-Cursor"));
+	}
+
+	@Test
+	void getProducts_cursorPagesReadTheCatalogOfTheFirstPage() throws Exception {
+		var first = mockMvc.perform(get("/products?sort=price&size=2"))
+				.andExpect(jsonPath("$[*].name", contains("Trail Boots", "Nano Jacket")))
+				.andReturn().getResponse();
+		String boots = objectMapper.readTree(first.getContentAsString()).path(0).path("id").asText();
+
+		// Moving a product past the cursor and adding one after it changes neither page
+		mockMvc.perform(put("/products/" + boots)
+						.contentType(MediaType.APPLICATION_JSON)
+						.content(objectMapper.writeValueAsString(new UpdateProductRequest(
+								"Trail Boots", "Trail Boots desc", "Salomon", BigDecimal.valueOf(299.99), 5, List.of("footwear")))))
+				.andExpect(status().isOk());
+		createProduct("Stove", "MSR", 229.99, List.of("camping"));
+
+		mockMvc.perform(get("/products?sort=price&size=2&cursor=" + first.getHeader("X-Next-Cursor")))
+				.andExpect(jsonPath("$[*].name", contains("Tent")))
+				.andExpect(header().doesNotExist("X-Next-Cursor"));
+
+		mockMvc.perform(get("/products?sort=price"))
+				.andExpect(jsonPath("$[*].name", contains("Nano Jacket", "Stove", "Tent", "Trail Boots")));
+	}
+
+	@Test
+	void getProducts_invalidCursor_returns400() throws Exception {
+		mockMvc.perform(get("/products?cursor=garbage"))
+				.andExpect(status().isBadRequest())
+				.andExpect(jsonPath("$.error", is("Invalid Cursor")));
+	}
+
+	@Test
+	void explainProducts_reportsPlan() throws Exception {
+		mockMvc.perform(get("/products/_explain?brand=REI"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.driver", is("BRAND_INDEX")))
+				.andExpect(jsonPath("$.candidatesScanned", is(1)))
+				.andExpect(jsonPath("$.returned", is(1)));
+	}
+
+	@Test
+	void getProducts_searchQuery_matchesNameAndDescriptionPrefixes() throws Exception {
+		createProduct("Trail Runners", "Salomon", 129.99, List.of("footwear"));
+
+		mockMvc.perform(get("/products?q=trail"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.length()", is(2)))
+				.andExpect(header().doesNotExist("X-Next-Cursor"));
+
+		mockMvc.perform(get("/products?q=trail+run&size=1"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.length()", is(1)))
+				.andExpect(jsonPath("$[0].name", is("Trail Runners")));
+
+		mockMvc.perform(get("/products/_explain?q=jack"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.driver", is("TEXT_INDEX")))
+				.andExpect(jsonPath("$.returned", is(1)));
+	}
+
+	@Test
+	void suggest_completesNamesAndBrandsAsProductsChange() throws Exception {
+		createProduct("Trail Runners", "Salomon", 129.99, List.of("footwear"));
+
+		mockMvc.perform(get("/products/suggest?prefix=tr"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.length()", is(2)))
+				.andExpect(jsonPath("$[0].text", is("Trail Boots")))
+				.andExpect(jsonPath("$[1].text", is("Trail Runners")));
+
+		mockMvc.perform(get("/products/suggest?prefix=sal&rank=newest"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.length()", is(1)))
+				.andExpect(jsonPath("$[0].text", is("Salomon")))
+				.andExpect(jsonPath("$[0].field", is("brand")));
+	}
+
+	@Test
+	void bulk_createsUpdatesAndDeletesWithPerItemResults() throws Exception {
+		String created = mockMvc.perform(post("/products/_bulk")
+						.contentType(MediaType.APPLICATION_NDJSON)
+						.content(objectMapper.writeValueAsString(new CreateProductRequest(
+								"Bivy", "Bivy desc", "MSR", BigDecimal.valueOf(99.99), 3, List.of("camping"))) + "\n"
+								+ objectMapper.writeValueAsString(new CreateProductRequest(
+								"", "No name", "MSR", BigDecimal.valueOf(10), 1, List.of("camping"))) + "\n"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.succeeded", is(1)))
+				.andExpect(jsonPath("$.items[0].status", is(201)))
+				.andExpect(jsonPath("$.items[1].status", is(400)))
+				.andExpect(jsonPath("$.items[1].errors.name").exists())
+				.andReturn().getResponse().getContentAsString();
+		String id = objectMapper.readTree(created).path("items").path(0).path("id").asText();
+
+		UpdateProductRequest update = new UpdateProductRequest(
+				"Bivy Sack", "Bivy desc", "MSR", BigDecimal.valueOf(89.99), 3, List.of("camping"));
+		mockMvc.perform(put("/products/_bulk")
+						.contentType(MediaType.APPLICATION_JSON)
+						.content(objectMapper.writeValueAsString(List.of(
+								Map.of("id", id, "product", update),
+								Map.of("id", UUID.randomUUID().toString(), "product", update)))))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.items[*].status", contains(200, 404)));
+
+		mockMvc.perform(get("/products?brand=MSR"))
+				.andExpect(jsonPath("$[0].name", is("Bivy Sack")));
+
+		mockMvc.perform(delete("/products/_bulk")
+						.contentType(MediaType.APPLICATION_JSON)
+						.content("[\"" + id + "\", \"" + id + "\"]"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.items[*].status", contains(204, 404)));
+
+		mockMvc.perform(get("/products"))
+				.andExpect(jsonPath("$.length()", is(3)));
+	}
+
+	@Test
+	void import_createsValidRecordsAndReportsRejectedLines() throws Exception {
+		mockMvc.perform(post("/products/_import")
+						.contentType(MediaType.APPLICATION_NDJSON)
+						.content(objectMapper.writeValueAsString(new CreateProductRequest(
+								"Bivy", "Bivy desc", "MSR", BigDecimal.valueOf(99.99), 3, List.of("camping"))) + "\n"
+								+ "{\"name\": \"Stove\",\n"
+								+ objectMapper.writeValueAsString(new CreateProductRequest(
+								"", "No name", "MSR", BigDecimal.valueOf(10), 1, List.of("camping"))) + "\n"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.records", is(3)))
+				.andExpect(jsonPath("$.imported", is(1)))
+				.andExpect(jsonPath("$.rejected", is(2)))
+				.andExpect(jsonPath("$.rejections[*].line", contains(2, 3)))
+				.andExpect(jsonPath("$.rejections[1].errors.name").exists());
+
+		mockMvc.perform(post("/products/_import")
+						.contentType("text/csv")
+						.content("name,description,brand,price,inventory,categories\n"
+								+ "Lantern,Bright,MSR,39.99,4,camping;lighting\n"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.imported", is(1)));
+
+		mockMvc.perform(get("/products?brand=MSR&sort=name"))
+				.andExpect(jsonPath("$[*].name", contains("Bivy", "Lantern")))
+				.andExpect(jsonPath("$[1].categories", contains("camping", "lighting")));
+	}
+
+	@Test
+	void export_streamsEveryProductAsNdjson() throws Exception {
+		var started = mockMvc.perform(get("/products/_export"))
+				.andExpect(request().asyncStarted())
+				.andReturn();
+		String body = mockMvc.perform(asyncDispatch(started))
+				.andExpect(status().isOk())
+				.andReturn().getResponse().getContentAsString();
+
+		List<String> names = new ArrayList<>();
+		for (String line : body.lines().toList()) {
+			names.add(objectMapper.readTree(line).path("name").asText());
+		}
+		assertThat(names, containsInAnyOrder("Nano Jacket", "Trail Boots", "Tent"));
+	}
+
+	@Test
+	void facets_countsMatchingProducts() throws Exception {
+		createProduct("Half Dome", "rei", 129.99, List.of("camping", "tents"));
+
+		mockMvc.perform(get("/products/facets?priceMin=130&priceBuckets=150,200"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.total", is(3)))
+				.andExpect(jsonPath("$.brands[*].value", contains("Patagonia", "REI", "Salomon")))
+				.andExpect(jsonPath("$.categories.length()", is(3)))
+				.andExpect(jsonPath("$.prices[*].count", contains(1, 1, 1)));
+
+		mockMvc.perform(get("/products/facets?brand=REI"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.brands[0].value", is("REI")))
+				.andExpect(jsonPath("$.brands[0].count", is(2)))
+				.andExpect(jsonPath("$.categories[0].value", is("camping")))
+				.andExpect(jsonPath("$.categories[0].count", is(2)));
+	}
+
+	@Test
+	void facets_unorderedPriceBuckets_returns400() throws Exception {
+		mockMvc.perform(get("/products/facets?priceBuckets=100,50"))
+				.andExpect(status().isBadRequest())
+				.andExpect(jsonPath("$.error", is("Invalid Price Buckets")));
+	}
+
+	@Test
+	void update_ifMatch_appliesOnlyToTheVersionItNames() throws Exception {
+		var created = mockMvc.perform(post("/products")
+						.contentType(MediaType.APPLICATION_JSON)
+						.content(objectMapper.writeValueAsString(new CreateProductRequest(
+								"Stove", "Canister stove", "MSR", BigDecimal.valueOf(89.95), 7, List.of("cooking")))))
+				.andExpect(status().isCreated())
+				.andReturn().getResponse();
+		String id = objectMapper.readTree(created.getContentAsString()).path("id").asText();
+		String read = mockMvc.perform(get("/products/" + id))
+				.andExpect(header().string("ETag", created.getHeader("ETag")))
+				.andReturn().getResponse().getHeader("ETag");
+
+		String body = objectMapper.writeValueAsString(new UpdateProductRequest(
+				"Stove", "Canister stove", "MSR", BigDecimal.valueOf(79.95), 7, List.of("cooking")));
+		String updated = mockMvc.perform(put("/products/" + id)
+						.header("If-Match", read)
+						.contentType(MediaType.APPLICATION_JSON)
+						.content(body))
+				.andExpect(status().isOk())
+				.andReturn().getResponse().getHeader("ETag");
+
+		// A second writer holding the same ETag lost the race, and is told the current one
+		mockMvc.perform(put("/products/" + id)
+						.header("If-Match", read)
+						.contentType(MediaType.APPLICATION_JSON)
+						.content(body))
+				.andExpect(status().isPreconditionFailed())
+				.andExpect(header().string("ETag", updated))
+				.andExpect(jsonPath("$.error", is("Precondition Failed")));
+		mockMvc.perform(delete("/products/" + id).header("If-Match", read))
+				.andExpect(status().isPreconditionFailed());
+
+		mockMvc.perform(delete("/products/" + id).header("If-Match", updated))
+				.andExpect(status().isNoContent());
+		mockMvc.perform(get("/products/" + id))
+				.andExpect(status().isNotFound());
+	}
+
+	@Test
+	void inventory_reserveAndRelease_neverGoBelowZeroAndFollowUpdates() throws Exception {
+		var created = mockMvc.perform(post("/products")
+						.contentType(MediaType.APPLICATION_JSON)
+						.content(objectMapper.writeValueAsString(new CreateProductRequest(
+								"Stove", "Canister stove", "MSR", BigDecimal.valueOf(89.95), 7, List.of("cooking")))))
+				.andExpect(status().isCreated())
+				.andReturn().getResponse();
+		String id = objectMapper.readTree(created.getContentAsString()).path("id").asText();
+
+		String reserved = mockMvc.perform(post("/products/" + id + "/inventory:reserve")
+						.contentType(MediaType.APPLICATION_JSON)
+						.content("{\"quantity\":3}"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.inventory", is(4)))
+				.andExpect(jsonPath("$.name", is("Stove")))
+				.andReturn().getResponse().getHeader("ETag");
+		mockMvc.perform(get("/products/" + id))
+				.andExpect(header().string("ETag", reserved))
+				.andExpect(jsonPath("$.inventory", is(4)));
+
+		// Restocked by a full update, which the next reservation starts from
+		mockMvc.perform(put("/products/" + id)
+						.contentType(MediaType.APPLICATION_JSON)
+						.content(objectMapper.writeValueAsString(new UpdateProductRequest(
+								"Stove", "Canister stove", "MSR", BigDecimal.valueOf(89.95), 10, List.of("cooking")))))
+				.andExpect(status().isOk());
+		mockMvc.perform(post("/products/" + id + "/inventory:reserve")
+						.contentType(MediaType.APPLICATION_JSON)
+						.content("{\"quantity\":8}"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.inventory", is(2)));
+		mockMvc.perform(post("/products/" + id + "/inventory:release")
+						.contentType(MediaType.APPLICATION_JSON)
+						.content("{\"quantity\":1}"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.inventory", is(3)));
+
+		mockMvc.perform(post("/products/" + id + "/inventory:reserve")
+						.contentType(MediaType.APPLICATION_JSON)
+						.content("{\"quantity\":4}"))
+				.andExpect(status().isConflict())
+				.andExpect(jsonPath("$.error", is("Inventory Conflict")));
+		mockMvc.perform(get("/products/" + id))
+				.andExpect(jsonPath("$.inventory", is(3)));
+	}
+
+	@Test
+	void inventory_concurrentReservations_sellExactlyTheStock() throws Exception {
+		var created = mockMvc.perform(post("/products")
+						.contentType(MediaType.APPLICATION_JSON)
+						.content(objectMapper.writeValueAsString(new CreateProductRequest(
+								"Stove", "Canister stove", "MSR", BigDecimal.valueOf(89.95), 100, List.of("cooking")))))
+				.andReturn().getResponse();
+		UUID id = UUID.fromString(objectMapper.readTree(created.getContentAsString()).path("id").asText());
+
+		AtomicInteger sold = new AtomicInteger();
+		ExecutorService pool = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<?>> checkouts = new ArrayList<>();
+			for (int i = 0; i < 300; i++) {
+				checkouts.add(pool.submit(() -> {
+					try {
+						service.reserveInventory(id, 1);
+						sold.incrementAndGet();
+					} catch (InventoryConflictException e) {
+						// Sold out
+					}
+				}));
+			}
+			for (Future<?> checkout : checkouts) {
+				checkout.get();
+			}
+		} finally {
+			pool.shutdown();
+		}
+
+		assertEquals(100, sold.get());
+		mockMvc.perform(get("/products/" + id))
+				.andExpect(jsonPath("$.inventory", is(0)));
+	}
+
+	@Test
+	void conditionalGet_returns304UntilTheCatalogChanges() throws Exception {
+		String listed = mockMvc.perform(get("/products?sort=price"))
+				.andExpect(status().isOk())
+				.andReturn().getResponse().getHeader("ETag");
+		mockMvc.perform(get("/products?sort=price").header("If-None-Match", listed))
+				.andExpect(status().isNotModified());
+
+		var tent = mockMvc.perform(get("/products?q=tent"))
+				.andReturn().getResponse();
+		String id = objectMapper.readTree(tent.getContentAsString()).path(0).path("id").asText();
+		String read = mockMvc.perform(get("/products/" + id))
+				.andReturn().getResponse().getHeader("ETag");
+		mockMvc.perform(get("/products/" + id).header("If-None-Match", read))
+				.andExpect(status().isNotModified())
+				.andExpect(header().string("ETag", read));
+
+		// Any write moves the catalog version; only the written product gets a new ETag
+		createProduct("Stove", "MSR", 89.95, List.of("cooking"));
+		mockMvc.perform(get("/products?sort=price").header("If-None-Match", listed))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.length()", is(4)));
+		mockMvc.perform(get("/products/" + id).header("If-None-Match", read))
+				.andExpect(status().isNotModified());
+	}
+
 	@Test
 	void getProduct_notFound_returns404AndErrorJson() throws Exception {
 		UUID missing = UUID.randomUUID();
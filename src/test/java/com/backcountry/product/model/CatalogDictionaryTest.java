@@ -0,0 +1,150 @@
+package com.backcountry.product.model;
+
+import com.backcountry.product.repository.ProductQuery;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CatalogDictionaryTest {
+
+	private final CatalogDictionary dictionary = new CatalogDictionary();
+
+	@Test
+	void intern_sharesValuesBetweenProducts() {
+		Product a = dictionary.intern(buildProduct(new String("MSR"), new ArrayList<>(List.of("cooking", "stoves"))));
+		Product b = dictionary.intern(buildProduct(new String("MSR"), new ArrayList<>(List.of("cooking", "stoves"))));
+
+		assertSame(a.getBrand(), b.getBrand());
+		assertSame(a.getCategories(), b.getCategories());
+		assertEquals(List.of("cooking", "stoves"), b.getCategories());
+		assertSame(b, dictionary.intern(b));
+	}
+
+	@Test
+	void intern_keepsSpellingButSharesCodeIgnoringCase() {
+		Product upper = dictionary.intern(buildProduct("MSR", List.of("cooking")));
+		Product lower = dictionary.intern(buildProduct("msr", List.of("cooking")));
+
+		assertEquals("msr", lower.getBrand());
+		assertEquals(upper.getBrandCode(), lower.getBrandCode());
+		assertEquals(upper.getBrandCode(), dictionary.brandCode("Msr"));
+		assertEquals(-1, dictionary.brandCode("Jetboil"));
+		assertEquals(upper, buildProduct("MSR", List.of("cooking")).toBuilder().id(upper.getId()).build());
+	}
+
+	@Test
+	void brandCode_foldsLikeEqualsIgnoreCase() {
+		Product interned = dictionary.intern(buildProduct("KIT", List.of("cooking")));
+
+		// Dotless i upper-cases to I, so the two are equal ignoring case but differ in lower case
+		assertTrue("k\u0131t".equalsIgnoreCase("KIT"));
+		assertEquals(interned.getBrandCode(), dictionary.brandCode("k\u0131t"));
+		assertEquals(CatalogDictionary.fold("KIT"), CatalogDictionary.fold("k\u0131t"));
+	}
+
+	@Test
+	void categorySet_noLongerHeld_isDropped() throws InterruptedException {
+		dictionary.intern(buildProduct("MSR", List.of("cooking")));
+		Product held = dictionary.intern(buildProduct("MSR", List.of("stoves")));
+		for (int i = 0; i < 100; i++) {
+			dictionary.intern(buildProduct("MSR", List.of("retired-" + i)));
+		}
+
+		for (int attempt = 0; attempt < 50 && dictionary.footprint().categorySets() > 1; attempt++) {
+			System.gc();
+			Thread.sleep(20);
+		}
+
+		assertEquals(1, dictionary.footprint().categorySets());
+		assertSame(held.getCategories(), dictionary.intern(buildProduct("MSR", List.of("stoves"))).getCategories());
+		// Codes stay, so sets interned again test membership like the ones dropped
+		assertEquals(102, dictionary.footprint().categories());
+	}
+
+	@Test
+	void categorySet_testsMembershipOnCodes() {
+		for (int i = 0; i < 100; i++) {
+			dictionary.intern(buildProduct("MSR", List.of("category-" + i)));
+		}
+		CategorySet categories = (CategorySet) dictionary.intern(buildProduct("MSR", List.of("category-3", "category-99"))).getCategories();
+
+		assertTrue(categories.containsCode(dictionary.categoryCode("category-3")));
+		assertTrue(categories.containsCode(dictionary.categoryCode("category-99")));
+		assertFalse(categories.containsCode(dictionary.categoryCode("category-4")));
+		assertFalse(categories.containsCode(-1));
+		assertFalse(categories.containsCode(10_000));
+	}
+
+	@Test
+	void changingBrand_forgetsCode() {
+		Product interned = dictionary.intern(buildProduct("MSR", List.of("cooking")));
+
+		assertEquals(-1, interned.toBuilder().brand("Jetboil").build().getBrandCode());
+		interned.setBrand("Jetboil");
+		assertEquals(-1, interned.getBrandCode());
+	}
+
+	@Test
+	void query_matchesInternedProductsOnCodes() {
+		Product interned = dictionary.intern(buildProduct("MSR", List.of("cooking")));
+		Product plain = buildProduct("msr", List.of("cooking"));
+
+		ProductQuery query = ProductQuery.builder()
+				.brand("Msr")
+				.category("cooking")
+				.brandCode(dictionary.brandCode("Msr"))
+				.categoryCode(dictionary.categoryCode("cooking"))
+				.build();
+		ProductQuery otherBrand = ProductQuery.builder()
+				.brand("Jetboil")
+				.brandCode(dictionary.intern(buildProduct("Jetboil", List.of("cooking"))).getBrandCode())
+				.build();
+
+		assertTrue(query.matches(interned));
+		assertTrue(query.matches(plain));
+		assertFalse(otherBrand.matches(interned));
+	}
+
+	@Test
+	void footprint_countsTheDictionaryOnce() {
+		List<Product> catalog = new ArrayList<>();
+		for (int i = 0; i < 1_000; i++) {
+			catalog.add(dictionary.intern(buildProduct(new String("Patagonia"), List.of(new String("jackets")))));
+		}
+		dictionary.intern(buildProduct("PATAGONIA", List.of("jackets")));
+
+		CatalogDictionary.Footprint footprint = dictionary.footprint();
+
+		assertEquals(1, footprint.brands());
+		assertEquals(1, footprint.categories());
+		assertEquals(1, footprint.categorySets());
+		assertNotEquals(0, footprint.dictionaryBytes());
+		// Sized by the distinct values, not by the products holding them
+		assertTrue(footprint.dictionaryBytes() < 1_000);
+		assertEquals(1_000, catalog.size());
+	}
+
+	private static Product buildProduct(String brand, List<String> categories) {
+		return Product.builder()
+				.id(UUID.randomUUID())
+				.name("Stove")
+				.description("Canister stove")
+				.brand(brand)
+				.price(new BigDecimal("89.95"))
+				.inventory(3)
+				.categories(categories)
+				.createdAt(Instant.parse("2024-01-01T00:00:00Z"))
+				.updatedAt(Instant.parse("2024-01-01T00:00:00Z"))
+				.build();
+	}
+}
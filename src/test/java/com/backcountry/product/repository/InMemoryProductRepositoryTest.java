@@ -6,11 +6,20 @@ import org.junit.jupiter.api.Test;
 
 import java.math.BigDecimal;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
 import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class InMemoryProductRepositoryTest {
@@ -91,6 +100,592 @@ class InMemoryProductRepositoryTest {
 		assertTrue(all.contains(p2));
 	}
 
+	// --------------------------------------------------------------------
+	// find()
+	// --------------------------------------------------------------------
+	@Test
+	void find_byBrand_isCaseInsensitive() {
+		Product rei = buildProduct(UUID.randomUUID());
+		Product other = buildProduct(UUID.randomUUID()).toBuilder().brand("MSR").build();
+
+		repository.save(rei);
+		repository.save(other);
+
+		List<Product> result = repository.find(ProductQuery.builder().brand("rei").build());
+
+		assertEquals(List.of(rei), result);
+	}
+
+	@Test
+	void find_combinesCategoryAndPriceRange() {
+		Product cheapTent = buildProduct(UUID.randomUUID()).toBuilder().price(new BigDecimal("99.00")).build();
+		Product tent = buildProduct(UUID.randomUUID());
+		Product stove = buildProduct(UUID.randomUUID()).toBuilder().categories(List.of("cooking")).build();
+
+		repository.save(cheapTent);
+		repository.save(tent);
+		repository.save(stove);
+
+		List<Product> result = repository.find(ProductQuery.builder()
+				.category("camping")
+				.priceMin(new BigDecimal("100"))
+				.priceMax(new BigDecimal("200"))
+				.build());
+
+		assertEquals(List.of(tent), result);
+	}
+
+	@Test
+	void find_byPriceRangeOnly_usesInclusiveBounds() {
+		Product low = buildProduct(UUID.randomUUID()).toBuilder().price(new BigDecimal("50")).build();
+		Product high = buildProduct(UUID.randomUUID()).toBuilder().price(new BigDecimal("150")).build();
+
+		repository.save(low);
+		repository.save(high);
+
+		List<Product> result = repository.find(ProductQuery.builder().priceMin(new BigDecimal("150.00")).build());
+
+		assertEquals(List.of(high), result);
+	}
+
+	@Test
+	void find_combinedFilters_matchExactlyAcrossPriceBuckets() {
+		List<Product> catalog = new ArrayList<>();
+		for (int i = 0; i < 2_000; i++) {
+			catalog.add(buildProduct(UUID.randomUUID()).toBuilder()
+					.brand(i % 3 == 0 ? "MSR" : "REI")
+					.categories(i % 2 == 0 ? List.of("camping", "cooking") : List.of("camping"))
+					.price(new BigDecimal(i).movePointLeft(1))
+					.build());
+		}
+		catalog.forEach(repository::save);
+
+		ProductQuery query = ProductQuery.builder()
+				.brand("msr")
+				.category("cooking")
+				.priceMin(new BigDecimal("10.2"))
+				.priceMax(new BigDecimal("73.8"))
+				.sort(ProductSort.PRICE)
+				.build();
+
+		List<Product> expected = catalog.stream()
+				.filter(query::matches)
+				.sorted(ProductSort.PRICE.comparator())
+				.toList();
+		assertEquals(expected, repository.find(query));
+		assertEquals(new BigDecimal("10.2"), expected.get(0).getPrice());
+		assertEquals(new BigDecimal("73.8"), expected.get(expected.size() - 1).getPrice());
+	}
+
+	@Test
+	void find_deletedOrdinalReused_doesNotMatchOldFilters() {
+		Product stove = buildProduct(UUID.randomUUID()).toBuilder().brand("MSR").categories(List.of("cooking")).build();
+		repository.save(stove);
+		repository.deleteById(stove.getId());
+		Product tent = buildProduct(UUID.randomUUID());
+		repository.save(tent);
+
+		assertEquals(List.of(), repository.find(ProductQuery.builder().brand("MSR").build()));
+		assertEquals(List.of(), repository.find(ProductQuery.builder().category("cooking").build()));
+		assertEquals(List.of(tent), repository.find(ProductQuery.builder().brand("REI").category("camping").build()));
+	}
+
+	@Test
+	void find_afterUpdate_reflectsNewIndexedValues() {
+		UUID id = UUID.randomUUID();
+		repository.save(buildProduct(id));
+		repository.save(buildProduct(id).toBuilder().brand("MSR").categories(List.of("cooking")).build());
+
+		assertTrue(repository.find(ProductQuery.builder().brand("REI").build()).isEmpty());
+		assertTrue(repository.find(ProductQuery.builder().category("camping").build()).isEmpty());
+		assertEquals(1, repository.find(ProductQuery.builder().brand("msr").category("cooking").build()).size());
+	}
+
+	@Test
+	void find_afterDelete_excludesProduct() {
+		UUID id = UUID.randomUUID();
+		repository.save(buildProduct(id));
+		repository.deleteById(id);
+
+		assertTrue(repository.find(ProductQuery.builder().brand("REI").build()).isEmpty());
+		assertTrue(repository.find(ProductQuery.builder().priceMax(new BigDecimal("500")).build()).isEmpty());
+	}
+
+	@Test
+	void find_sortedByPrice_returnsRequestedPage() {
+		for (int i = 1; i <= 5; i++) {
+			repository.save(buildProduct(UUID.randomUUID()).toBuilder().price(BigDecimal.valueOf(i * 10)).build());
+		}
+
+		List<Product> page = repository.find(ProductQuery.builder()
+				.sort(ProductSort.PRICE)
+				.offset(2)
+				.limit(2)
+				.build());
+
+		assertEquals(List.of(new BigDecimal("30"), new BigDecimal("40")),
+				page.stream().map(Product::getPrice).toList());
+	}
+
+	@Test
+	void find_sortedByName_ordersCaseInsensitively() {
+		repository.save(buildProduct(UUID.randomUUID()).toBuilder().name("stove").build());
+		repository.save(buildProduct(UUID.randomUUID()).toBuilder().name("Backpack").build());
+		repository.save(buildProduct(UUID.randomUUID()).toBuilder().name("lantern").build());
+
+		List<Product> page = repository.find(ProductQuery.builder().sort(ProductSort.NAME).limit(10).build());
+
+		assertEquals(List.of("Backpack", "lantern", "stove"), page.stream().map(Product::getName).toList());
+	}
+
+	@Test
+	void find_afterPriceAnchor_seeksPastIt() {
+		List<Product> products = new ArrayList<>();
+		for (int i = 1; i <= 4; i++) {
+			Product product = buildProduct(UUID.randomUUID()).toBuilder().price(BigDecimal.valueOf(10)).build();
+			products.add(product);
+			repository.save(product);
+		}
+		products.sort(ProductSort.PRICE.comparator());
+		Product second = products.get(1);
+
+		List<Product> page = repository.find(ProductQuery.builder()
+				.sort(ProductSort.PRICE)
+				.after(ProductSort.PRICE.anchor(ProductSort.PRICE.key(second), second.getId()))
+				.priceMin(BigDecimal.ONE)
+				.limit(10)
+				.build());
+
+		assertEquals(products.subList(2, 4), page);
+	}
+
+	@Test
+	void find_afterNewestAnchor_returnsOlderProducts() {
+		Instant now = Instant.now();
+		Product newer = buildProduct(UUID.randomUUID()).toBuilder().createdAt(now).build();
+		Product older = buildProduct(UUID.randomUUID()).toBuilder().createdAt(now.minusSeconds(60)).build();
+		repository.save(newer);
+		repository.save(older);
+
+		List<Product> page = repository.find(ProductQuery.builder()
+				.after(ProductSort.NEWEST.anchor(ProductSort.NEWEST.key(newer), newer.getId()))
+				.limit(10)
+				.build());
+
+		assertEquals(List.of(older), page);
+	}
+
+	// --------------------------------------------------------------------
+	// explain()
+	// --------------------------------------------------------------------
+	@Test
+	void explain_priceSortWithoutFilters_stopsAfterPage() {
+		for (int i = 0; i < 50; i++) {
+			repository.save(buildProduct(UUID.randomUUID()).toBuilder().price(BigDecimal.valueOf(i + 1)).build());
+		}
+
+		QueryExplanation explanation = repository.explain(ProductQuery.builder()
+				.sort(ProductSort.PRICE)
+				.limit(5)
+				.build());
+
+		assertEquals(QueryPlan.AccessPath.PRICE_INDEX, explanation.plan().driver());
+		assertEquals(QueryPlan.OrderStrategy.INDEX_ORDER, explanation.plan().order());
+		assertEquals(5, explanation.candidatesScanned());
+		assertEquals(5, explanation.returned());
+	}
+
+	@Test
+	void explain_newestFirst_readsOnlyOnePage() {
+		Instant now = Instant.now();
+		for (int i = 0; i < 50; i++) {
+			repository.save(buildProduct(UUID.randomUUID()).toBuilder().createdAt(now.minusSeconds(i)).build());
+		}
+
+		QueryExplanation explanation = repository.explain(ProductQuery.builder().limit(10).build());
+
+		assertEquals(QueryPlan.AccessPath.ORDERED_INDEX, explanation.plan().driver());
+		assertEquals(10, explanation.candidatesScanned());
+		assertEquals(10, explanation.returned());
+	}
+
+	@Test
+	void find_orderedViews_followUpdatesAndDeletes() {
+		Product a = buildProduct(UUID.randomUUID()).toBuilder().name("Alpha").build();
+		Product b = buildProduct(UUID.randomUUID()).toBuilder().name("Bravo").build();
+		Product c = buildProduct(UUID.randomUUID()).toBuilder().name("Charlie").build();
+		repository.save(a);
+		repository.save(b);
+		repository.save(c);
+
+		repository.save(a.toBuilder().name("Zulu").build());
+		repository.deleteById(b.getId());
+
+		List<String> names = repository.find(ProductQuery.builder().sort(ProductSort.NAME).limit(10).build())
+				.stream().map(Product::getName).toList();
+
+		assertEquals(List.of("Charlie", "Zulu"), names);
+	}
+
+	@Test
+	void explain_brandAndCategory_drivesScanFromBitmapIntersection() {
+		for (int i = 0; i < 20; i++) {
+			repository.save(buildProduct(UUID.randomUUID()));
+		}
+		Product msr = buildProduct(UUID.randomUUID()).toBuilder().brand("MSR").build();
+		repository.save(msr);
+
+		QueryExplanation explanation = repository.explain(ProductQuery.builder()
+				.brand("msr")
+				.category("camping")
+				.limit(10)
+				.build());
+
+		assertEquals(QueryPlan.AccessPath.BITMAP_INDEX, explanation.plan().driver());
+		assertEquals(List.of(QueryPlan.AccessPath.BRAND_INDEX, QueryPlan.AccessPath.CATEGORY_INDEX), explanation.plan().intersected());
+		assertEquals(1, explanation.plan().estimatedCandidates());
+		assertEquals(1, explanation.candidatesScanned());
+		assertEquals(1, explanation.returned());
+	}
+
+	// --------------------------------------------------------------------
+	// facets()
+	// --------------------------------------------------------------------
+	@Test
+	void facets_countExactlyAcrossPriceBuckets() {
+		List<Product> catalog = new ArrayList<>();
+		for (int i = 0; i < 2_000; i++) {
+			catalog.add(buildProduct(UUID.randomUUID()).toBuilder()
+					.brand(i % 3 == 0 ? "MSR" : "REI")
+					.categories(i % 2 == 0 ? List.of("camping", "cooking") : List.of("camping"))
+					.price(new BigDecimal(i).movePointLeft(1))
+					.build());
+		}
+		catalog.forEach(repository::save);
+		List<BigDecimal> boundaries = List.of(new BigDecimal("25"), new BigDecimal("50.1"), new BigDecimal("100"));
+		ProductQuery query = ProductQuery.builder()
+				.category("cooking")
+				.priceMin(new BigDecimal("10.2"))
+				.priceMax(new BigDecimal("150.3"))
+				.build();
+
+		FacetCounts facets = repository.facets(query, boundaries);
+
+		List<Product> matching = catalog.stream().filter(query::matches).toList();
+		assertEquals(matching.size(), facets.total());
+		assertEquals(Map.of(
+				"MSR", matching.stream().filter(p -> p.getBrand().equals("MSR")).count(),
+				"REI", matching.stream().filter(p -> p.getBrand().equals("REI")).count()), facets.brands());
+		assertEquals(Map.of("camping", (long) matching.size(), "cooking", (long) matching.size()), facets.categories());
+		List<Long> expectedRanges = new ArrayList<>(List.of(0L, 0L, 0L, 0L));
+		for (Product product : matching) {
+			int range = (int) boundaries.stream().filter(b -> product.getPrice().compareTo(b) >= 0).count();
+			expectedRanges.set(range, expectedRanges.get(range) + 1);
+		}
+		assertEquals(expectedRanges, facets.priceRanges());
+	}
+
+	@Test
+	void facets_brandsDifferingInCase_areCountedTogether() {
+		repository.save(buildProduct(UUID.randomUUID()));
+		repository.save(buildProduct(UUID.randomUUID()).toBuilder().brand("rei").build());
+
+		FacetCounts facets = repository.facets(ProductQuery.builder().brand("Rei").build(), List.of());
+
+		assertEquals(Map.of("REI", 2L), facets.brands());
+		assertEquals(List.of(2L), facets.priceRanges());
+	}
+
+	@Test
+	void facets_duringConcurrentUpdates_countOneStateOfTheCatalog() throws InterruptedException {
+		List<Product> catalog = new ArrayList<>();
+		for (int i = 0; i < 200; i++) {
+			catalog.add(buildProduct(UUID.randomUUID()));
+		}
+		catalog.forEach(repository::save);
+
+		Thread writer = new Thread(() -> {
+			for (int round = 0; round < 50; round++) {
+				for (Product product : catalog) {
+					repository.save(product.toBuilder()
+							.brand(round % 2 == 0 ? "MSR" : "REI")
+							.price(new BigDecimal(round % 2 == 0 ? "20" : "200"))
+							.build());
+				}
+			}
+		});
+		writer.start();
+		while (writer.isAlive()) {
+			FacetCounts facets = repository.facets(ProductQuery.builder().build(), List.of(new BigDecimal("100")));
+			assertEquals(200, facets.total());
+			assertEquals(200, facets.brands().values().stream().mapToLong(Long::longValue).sum());
+			assertEquals(200, facets.priceRanges().stream().mapToLong(Long::longValue).sum());
+		}
+		writer.join();
+	}
+
+	// --------------------------------------------------------------------
+	// search
+	// --------------------------------------------------------------------
+	@Test
+	void find_searchTerms_matchPrefixesOfEveryTerm() {
+		Product tents = buildProduct(UUID.randomUUID()).toBuilder().name("Backpacking Tents").description("Ultralight").build();
+		Product stove = buildProduct(UUID.randomUUID()).toBuilder().name("Stove").description("Canister stove for backpacking").build();
+		Product tarp = buildProduct(UUID.randomUUID()).toBuilder().name("Tarp").description("Tent alternative").build();
+		repository.save(tents);
+		repository.save(stove);
+		repository.save(tarp);
+
+		assertEquals(Set.of(tents, tarp), Set.copyOf(repository.find(ProductQuery.builder().terms(List.of("ten")).build())));
+		assertEquals(List.of(tents), repository.find(ProductQuery.builder().terms(List.of("backpack", "tent")).build()));
+		assertEquals(List.of(), repository.find(ProductQuery.builder().terms(List.of("stove", "tent")).build()));
+	}
+
+	@Test
+	void find_relevance_ranksLikeBm25() {
+		List<Product> catalog = searchCatalog();
+		catalog.forEach(repository::save);
+
+		for (List<String> terms : List.of(List.of("tent"), List.of("tent", "light"), List.of("ul"), List.of("2"))) {
+			Map<Product, Double> scores = bm25(catalog, terms);
+			List<Double> expected = scores.values().stream().sorted(Comparator.reverseOrder()).limit(15).toList();
+
+			List<Product> ranked = repository.find(ProductQuery.builder().terms(terms).relevance(true).limit(15).build());
+
+			assertEquals(expected.size(), ranked.size(), terms.toString());
+			for (int i = 0; i < ranked.size(); i++) {
+				assertEquals(expected.get(i), scores.get(ranked.get(i)), 1e-9, terms + " at " + i);
+			}
+		}
+	}
+
+	@Test
+	void find_relevance_prefersRepeatedTermsAndShorterText() {
+		Product once = buildProduct(UUID.randomUUID()).toBuilder().name("Tent").description("Roomy shelter with two doors").build();
+		Product twice = buildProduct(UUID.randomUUID()).toBuilder().name("Tent").description("Roomy tent with two doors").build();
+		Product shorter = buildProduct(UUID.randomUUID()).toBuilder().name("Tent").description("Roomy shelter").build();
+		Product other = buildProduct(UUID.randomUUID()).toBuilder().name("Stove").description("Roomy").build();
+		repository.save(once);
+		repository.save(twice);
+		repository.save(shorter);
+		repository.save(other);
+
+		List<Product> ranked = repository.find(ProductQuery.builder().terms(List.of("tent")).relevance(true).build());
+
+		assertEquals(List.of(twice, shorter, once), ranked);
+	}
+
+	@Test
+	void find_searchTermsWithFilters_matchExactly() {
+		List<Product> catalog = searchCatalog();
+		catalog.forEach(repository::save);
+
+		ProductQuery query = ProductQuery.builder()
+				.terms(List.of("tent"))
+				.brand("msr")
+				.priceMin(new BigDecimal("10.2"))
+				.priceMax(new BigDecimal("120"))
+				.sort(ProductSort.PRICE)
+				.build();
+
+		List<Product> expected = catalog.stream()
+				.filter(product -> query.matches(product) && query.matchesText(product))
+				.sorted(ProductSort.PRICE.comparator())
+				.toList();
+		assertTrue(expected.size() > 1);
+		assertEquals(expected, repository.find(query));
+	}
+
+	@Test
+	void find_searchTerms_followUpdatesDeletesAndReusedOrdinals() {
+		Product tent = buildProduct(UUID.randomUUID());
+		Product stove = buildProduct(UUID.randomUUID()).toBuilder().name("Stove").description("Canister stove").build();
+		repository.save(tent);
+		repository.save(stove);
+
+		repository.save(stove.toBuilder().description("Canister stove for the tent vestibule").build());
+		repository.deleteById(tent.getId());
+		Product lantern = buildProduct(UUID.randomUUID()).toBuilder().name("Lantern").description("Camp light").build();
+		repository.save(lantern);
+
+		assertEquals(List.of("Stove"), repository.find(ProductQuery.builder().terms(List.of("tent")).relevance(true).build())
+				.stream().map(Product::getName).toList());
+		assertEquals(List.of(lantern), repository.find(ProductQuery.builder().terms(List.of("light")).build()));
+		assertEquals(List.of(), repository.find(ProductQuery.builder().terms(List.of("person")).build()));
+	}
+
+	@Test
+	void explain_searchTerms_driveFromTextIndex() {
+		searchCatalog().forEach(repository::save);
+
+		QueryExplanation explanation = repository.explain(ProductQuery.builder()
+				.terms(List.of("tent", "ultra"))
+				.relevance(true)
+				.limit(5)
+				.build());
+
+		assertEquals(QueryPlan.AccessPath.TEXT_INDEX, explanation.plan().driver());
+		assertEquals(QueryPlan.OrderStrategy.TOP_K, explanation.plan().order());
+		assertEquals(5, explanation.returned());
+	}
+
+	@Test
+	void find_commonTermSortedByPrice_walksPriceOrderAndChecksText() {
+		List<Product> catalog = searchCatalog();
+		catalog.forEach(repository::save);
+		ProductQuery query = ProductQuery.builder().terms(List.of("tent")).sort(ProductSort.PRICE).limit(5).build();
+
+		QueryExplanation explanation = repository.explain(query);
+
+		assertEquals(QueryPlan.AccessPath.PRICE_INDEX, explanation.plan().driver());
+		assertEquals(List.of(QueryPlan.AccessPath.TEXT_INDEX), explanation.plan().intersected());
+		assertEquals(catalog.stream()
+				.filter(query::matchesText)
+				.sorted(ProductSort.PRICE.comparator())
+				.limit(5)
+				.toList(), repository.find(query));
+	}
+
+	// Names and descriptions of varying length, with some terms repeated
+	private List<Product> searchCatalog() {
+		String[] names = {"Tent", "UL Tent", "Tarp", "Stove", "Tent Footprint", "Sleeping Pad"};
+		String[] descriptions = {"2-person tent", "Ultralight shelter", "Ultralight 2-person tent and tent footprint",
+				"Light", "Canister stove with windscreen and pot", ""};
+		String[] brands = {"REI", "MSR", "Big Agnes"};
+		List<Product> catalog = new ArrayList<>();
+		for (int i = 0; i < 300; i++) {
+			catalog.add(buildProduct(UUID.randomUUID()).toBuilder()
+					.name(names[i % names.length])
+					.description(descriptions[(i / names.length) % descriptions.length] + " " + i)
+					.brand(brands[i % brands.length])
+					.price(BigDecimal.valueOf(i * 7 % 2_000, 1))
+					.build());
+		}
+		return catalog;
+	}
+
+	// Reference BM25 scores of the products matching every term
+	private static Map<Product, Double> bm25(List<Product> catalog, List<String> terms) {
+		double averageLength = catalog.stream().mapToInt(product -> FullText.tokens(product).size()).average().orElse(0);
+		Map<String, Long> frequencies = new HashMap<>();
+		for (String term : terms) {
+			frequencies.put(term, catalog.stream()
+					.filter(product -> FullText.tokens(product).stream().anyMatch(token -> FullText.matches(term, token)))
+					.count());
+		}
+		Map<Product, Double> scores = new HashMap<>();
+		for (Product product : catalog) {
+			List<String> tokens = FullText.tokens(product);
+			double score = 0;
+			boolean all = true;
+			for (String term : terms) {
+				int frequency = (int) tokens.stream().filter(token -> FullText.matches(term, token)).count();
+				all &= frequency > 0;
+				score += FullText.score(FullText.idf(catalog.size(), frequencies.get(term)), frequency, tokens.size(), averageLength);
+			}
+			if (all) {
+				scores.put(product, score);
+			}
+		}
+		return scores;
+	}
+
+	// --------------------------------------------------------------------
+	// suggest()
+	// --------------------------------------------------------------------
+	@Test
+	void suggest_completesNamesAndBrandsByBestProduct() {
+		Instant now = Instant.now();
+		repository.save(buildProduct(UUID.randomUUID()).toBuilder().name("Trail Runner").brand("Salomon").inventory(3).createdAt(now).build());
+		repository.save(buildProduct(UUID.randomUUID()).toBuilder().name("Trailhead Pack").brand("Osprey").inventory(9).createdAt(now.minusSeconds(60)).build());
+		repository.save(buildProduct(UUID.randomUUID()).toBuilder().name("Tent").brand("Trango").inventory(1).createdAt(now.minusSeconds(30)).build());
+		repository.save(buildProduct(UUID.randomUUID()).toBuilder().name("Rope").brand("Trango").inventory(7).createdAt(now.minusSeconds(90)).build());
+
+		assertEquals(List.of(
+				new Suggestion("Trailhead Pack", Suggestion.Field.NAME),
+				new Suggestion("Trango", Suggestion.Field.BRAND),
+				new Suggestion("Trail Runner", Suggestion.Field.NAME)), repository.suggest("tr", SuggestionRank.INVENTORY, 10));
+		assertEquals(List.of(
+				new Suggestion("Trail Runner", Suggestion.Field.NAME),
+				new Suggestion("Trango", Suggestion.Field.BRAND)), repository.suggest("TR", SuggestionRank.NEWEST, 2));
+		assertEquals(List.of(new Suggestion("Trailhead Pack", Suggestion.Field.NAME)), repository.suggest("trailh", SuggestionRank.INVENTORY, 10));
+		assertEquals(List.of(), repository.suggest("x", SuggestionRank.INVENTORY, 10));
+	}
+
+	@Test
+	void suggest_followsUpdatesAndDeletesAcrossRebuilds() {
+		Random random = new Random(5);
+		String[] brands = {"Patagonia", "Petzl", "MSR", "Marmot", "Mammut"};
+		String[] nouns = {"Jacket", "Tent", "Pack", "Stove", "Harness"};
+		Instant epoch = Instant.parse("2024-01-01T00:00:00Z");
+		Map<UUID, Product> catalog = new HashMap<>();
+		List<UUID> ids = new ArrayList<>();
+
+		for (int i = 0; i < 12_000; i++) {
+			UUID id = i < 9_000 || ids.isEmpty() ? UUID.randomUUID() : ids.get(random.nextInt(ids.size()));
+			String brand = brands[random.nextInt(brands.length)];
+			Product product = buildProduct(id).toBuilder()
+					.name(brand + " " + nouns[random.nextInt(nouns.length)] + " " + random.nextInt(6_000))
+					.brand(brand)
+					.inventory(random.nextInt(50))
+					.createdAt(epoch.plusSeconds(random.nextInt(1_000_000)))
+					.build();
+			if (random.nextInt(10) == 0 && catalog.containsKey(id)) {
+				repository.deleteById(id);
+				catalog.remove(id);
+				continue;
+			}
+			repository.save(product);
+			if (catalog.put(id, product) == null) {
+				ids.add(id);
+			}
+		}
+
+		for (String prefix : List.of("p", "Pa", "patagonia jacket 1", "m", "MSR Stove 5", "mam", "z")) {
+			for (SuggestionRank rank : SuggestionRank.values()) {
+				assertEquals(suggestions(catalog.values(), prefix, rank, 10), repository.suggest(prefix, rank, 10), prefix + " " + rank);
+			}
+		}
+	}
+
+	@Test
+	void suggest_afterRestore_completesLoadedCatalog() {
+		Product a = buildProduct(UUID.randomUUID()).toBuilder().name("Nano Puff").brand("Patagonia").inventory(2).build();
+		Product b = buildProduct(UUID.randomUUID()).toBuilder().name("Nano Air").brand("Patagonia").inventory(8).build();
+		Product c = buildProduct(UUID.randomUUID()).toBuilder().name("nano puff").brand("patagonia").inventory(5).build();
+
+		repository.restore(List.of(a, b, c), Map.of());
+		repository.save(buildProduct(UUID.randomUUID()).toBuilder().name("Nano Hoody").brand("Patagonia").inventory(4).build());
+		repository.deleteById(b.getId());
+
+		assertEquals(List.of(
+				new Suggestion("Nano Puff", Suggestion.Field.NAME),
+				new Suggestion("Nano Hoody", Suggestion.Field.NAME)), repository.suggest("nano", SuggestionRank.INVENTORY, 10));
+		assertEquals(List.of(new Suggestion("Patagonia", Suggestion.Field.BRAND)), repository.suggest("pat", SuggestionRank.INVENTORY, 10));
+	}
+
+	// Reference completions: best signal of the products holding each value, ties alphabetical, names first
+	private static List<Suggestion> suggestions(Collection<Product> catalog, String prefix, SuggestionRank rank, int limit) {
+		record Candidate(String text, Suggestion.Field field, long signal) {}
+		Map<String, Candidate> best = new HashMap<>();
+		for (Product product : catalog) {
+			for (Suggestion.Field field : Suggestion.Field.values()) {
+				String value = field == Suggestion.Field.NAME ? product.getName() : product.getBrand();
+				if (value.regionMatches(true, 0, prefix, 0, prefix.length())) {
+					best.merge(field + value.toLowerCase(), new Candidate(value, field, rank.signal(product)),
+							(a, b) -> a.signal() >= b.signal() ? a : b);
+				}
+			}
+		}
+		return best.values().stream()
+				.sorted(Comparator.comparingLong(Candidate::signal).reversed()
+						.thenComparing(Candidate::text, String.CASE_INSENSITIVE_ORDER)
+						.thenComparing(Candidate::field))
+				.limit(limit)
+				.map(candidate -> new Suggestion(candidate.text(), candidate.field()))
+				.toList();
+	}
+
 	// --------------------------------------------------------------------
 	// deleteById()
 	// --------------------------------------------------------------------
@@ -104,4 +699,254 @@ class InMemoryProductRepositoryTest {
 
 		assertTrue(repository.findById(id).isEmpty());
 	}
+
+	// --------------------------------------------------------------------
+	// saveAll() / deleteAllById()
+	// --------------------------------------------------------------------
+	@Test
+	void saveAllAndDeleteAllById_maintainIndexes() {
+		Product tent = buildProduct(UUID.randomUUID());
+		Product stove = buildProduct(UUID.randomUUID()).toBuilder().name("Stove").brand("MSR").build();
+		Product renamed = tent.toBuilder().name("Bivy").build();
+
+		repository.saveAll(List.of(tent, stove, renamed));
+
+		assertEquals(List.of(renamed), repository.find(ProductQuery.builder().brand("rei").build()));
+		assertEquals(List.of(new Suggestion("Bivy", Suggestion.Field.NAME)), repository.suggest("b", SuggestionRank.INVENTORY, 10));
+
+		UUID missing = UUID.randomUUID();
+		assertEquals(List.of(stove.getId()), repository.deleteAllById(List.of(missing, stove.getId(), stove.getId())));
+		assertEquals(List.of(renamed), repository.findAll());
+		assertTrue(repository.find(ProductQuery.builder().brand("msr").build()).isEmpty());
+	}
+
+	// --------------------------------------------------------------------
+	// compareAndSave() / compareAndDelete()
+	// --------------------------------------------------------------------
+	@Test
+	void compareAndSave_writesOnlyAtTheExpectedVersion() {
+		Product saved = repository.save(buildProduct(UUID.randomUUID()));
+		Product renamed = saved.toBuilder().name("Bivy").build();
+
+		Product updated = repository.compareAndSave(renamed, saved.getVersion()).orElseThrow();
+		assertTrue(updated.getVersion() > saved.getVersion());
+		assertEquals(updated.getVersion(), repository.findById(saved.getId()).orElseThrow().getVersion());
+		assertTrue(repository.compareAndSave(saved, saved.getVersion()).isEmpty());
+
+		assertFalse(repository.compareAndDelete(saved.getId(), saved.getVersion()));
+		assertTrue(repository.compareAndDelete(saved.getId(), updated.getVersion()));
+
+		// A deleted product is not brought back by a writer that read it before
+		assertTrue(repository.compareAndSave(renamed, updated.getVersion()).isEmpty());
+		assertTrue(repository.findById(saved.getId()).isEmpty());
+	}
+
+	@Test
+	void compareAndSaveAll_writesOnlyTheProductsAtTheirVersion() {
+		Product tent = repository.save(buildProduct(UUID.randomUUID()));
+		Product stove = repository.save(buildProduct(UUID.randomUUID()));
+		Product movedStove = repository.save(stove.toBuilder().name("Moved").build());
+
+		List<Optional<Product>> saved = repository.compareAndSaveAll(
+				List.of(tent.toBuilder().name("Bivy").build(), stove.toBuilder().name("Stale").build(), tent.toBuilder().name("Twice").build()),
+				List.of(tent.getVersion(), stove.getVersion(), tent.getVersion()));
+
+		assertTrue(saved.get(0).isPresent());
+		assertTrue(saved.get(1).isEmpty());
+		assertTrue(saved.get(2).isEmpty());
+		assertEquals("Bivy", repository.findById(tent.getId()).orElseThrow().getName());
+		assertEquals(movedStove, repository.findById(stove.getId()).orElseThrow());
+	}
+
+	@Test
+	void compareAndSave_concurrentReadModifyWrites_loseNoUpdate() throws InterruptedException {
+		Product product = repository.save(buildProduct(UUID.randomUUID()).toBuilder().inventory(0).build());
+		int threads = 4;
+		int increments = 500;
+
+		List<Thread> writers = new ArrayList<>();
+		for (int t = 0; t < threads; t++) {
+			writers.add(new Thread(() -> {
+				for (int i = 0; i < increments; i++) {
+					Product current;
+					do {
+						current = repository.findById(product.getId()).orElseThrow();
+					} while (repository.compareAndSave(current.toBuilder().inventory(current.getInventory() + 1).build(),
+							current.getVersion()).isEmpty());
+				}
+			}));
+		}
+		writers.forEach(Thread::start);
+		for (Thread writer : writers) {
+			writer.join();
+		}
+
+		assertEquals(threads * increments, repository.findById(product.getId()).orElseThrow().getInventory());
+	}
+
+	// --------------------------------------------------------------------
+	// version()
+	// --------------------------------------------------------------------
+	@Test
+	void find_pinnedVersion_readsCatalogAsOfThatVersion() {
+		List<Product> catalog = new ArrayList<>();
+		for (int i = 1; i <= 5; i++) {
+			catalog.add(repository.save(buildProduct(UUID.randomUUID()).toBuilder()
+					.name("Tent " + i)
+					.price(BigDecimal.valueOf(i * 10))
+					.build()));
+		}
+		long version = repository.version();
+
+		// Move the cheapest to the end, delete one, add one in between and rebrand another
+		Product moved = repository.save(catalog.get(0).toBuilder().price(BigDecimal.valueOf(60)).build());
+		repository.deleteById(catalog.get(1).getId());
+		repository.save(buildProduct(UUID.randomUUID()).toBuilder().price(BigDecimal.valueOf(15)).build());
+		repository.save(catalog.get(2).toBuilder().brand("MSR").build());
+		assertTrue(moved.getVersion() > version);
+		assertTrue(repository.version() > moved.getVersion());
+
+		ProductQuery.ProductQueryBuilder byPrice = ProductQuery.builder().sort(ProductSort.PRICE).asOf(version);
+		assertEquals(catalog, repository.find(byPrice.build()));
+
+		// Pages seek through the same catalog
+		List<Product> firstPage = repository.find(byPrice.limit(2).build());
+		Product last = firstPage.get(1);
+		List<Product> secondPage = repository.find(byPrice
+				.after(ProductSort.PRICE.anchor(ProductSort.PRICE.key(last), last.getId()))
+				.build());
+		assertEquals(catalog.subList(0, 2), firstPage);
+		assertEquals(catalog.subList(2, 4), secondPage);
+
+		// Filters drive from the current bitmaps, and the history adds what matched then
+		assertEquals(catalog, repository.find(ProductQuery.builder().brand("rei").sort(ProductSort.PRICE).asOf(version).build()));
+		assertEquals(4, repository.find(ProductQuery.builder().brand("rei").sort(ProductSort.PRICE).build()).size());
+	}
+
+	@Test
+	void find_pinnedVersion_isRepeatableWhileWritesContinue() throws InterruptedException {
+		List<Product> catalog = new ArrayList<>();
+		for (int i = 0; i < 200; i++) {
+			catalog.add(buildProduct(UUID.randomUUID()).toBuilder().name("Tent " + i).price(BigDecimal.valueOf(i + 1)).build());
+		}
+		repository.saveAll(catalog);
+		long version = repository.version();
+		List<Product> expected = repository.find(ProductQuery.builder().sort(ProductSort.PRICE).build());
+
+		Thread writer = new Thread(() -> {
+			Random random = new Random(7);
+			for (int i = 0; i < 2000; i++) {
+				Product product = catalog.get(random.nextInt(catalog.size()));
+				if (i % 10 == 0) {
+					repository.deleteById(product.getId());
+				}
+				repository.save(product.toBuilder().price(BigDecimal.valueOf(random.nextInt(300) + 1)).build());
+			}
+		});
+		writer.start();
+
+		while (writer.isAlive()) {
+			List<Product> walked = new ArrayList<>();
+			Product after = null;
+			List<Product> page;
+			do {
+				page = repository.find(ProductQuery.builder()
+						.sort(ProductSort.PRICE)
+						.after(after == null ? null : ProductSort.PRICE.anchor(ProductSort.PRICE.key(after), after.getId()))
+						.limit(25)
+						.asOf(version)
+						.build());
+				walked.addAll(page);
+				after = page.isEmpty() ? null : page.get(page.size() - 1);
+			} while (page.size() == 25);
+			assertEquals(expected, walked);
+		}
+		writer.join();
+	}
+
+	@Test
+	void explain_pinnedVersion_readsOneChangePerProductChangedSince() {
+		List<Product> catalog = new ArrayList<>();
+		for (int i = 1; i <= 3; i++) {
+			catalog.add(repository.save(buildProduct(UUID.randomUUID()).toBuilder().price(BigDecimal.valueOf(i)).build()));
+		}
+		long version = repository.version();
+		Product hot = catalog.get(0);
+		for (int i = 0; i < 1000; i++) {
+			hot = repository.save(hot.toBuilder().price(BigDecimal.valueOf(100 + i)).build());
+		}
+
+		ProductQuery pinned = ProductQuery.builder().sort(ProductSort.PRICE).asOf(version).build();
+		assertEquals(catalog, repository.find(pinned));
+		// Three current products, and the first change of the one updated a thousand times
+		assertEquals(4, repository.explain(pinned).candidatesScanned());
+	}
+
+	@Test
+	void find_versionBeforeClear_readsCurrentCatalog() {
+		repository.save(buildProduct(UUID.randomUUID()));
+		long version = repository.version();
+		repository.clear();
+		Product after = repository.save(buildProduct(UUID.randomUUID()));
+
+		assertEquals(List.of(after), repository.find(ProductQuery.builder().asOf(version).build()));
+	}
+
+	// --------------------------------------------------------------------
+	// export()
+	// --------------------------------------------------------------------
+	@Test
+	void export_readsCatalogAsOfItsStartWhileWritesContinue() {
+		List<Product> catalog = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			catalog.add(buildProduct(UUID.randomUUID()).toBuilder().name("Tent " + i).build());
+		}
+		repository.saveAll(catalog);
+
+		List<Product> exported = new ArrayList<>();
+		repository.export(product -> {
+			if (exported.isEmpty()) {
+				repository.deleteById(catalog.get(50).getId());
+				repository.save(catalog.get(60).toBuilder().name("Renamed").build());
+				repository.save(buildProduct(UUID.randomUUID()));
+			}
+			exported.add(product);
+		});
+
+		assertEquals(new HashSet<>(catalog), new HashSet<>(exported));
+		assertEquals(100, exported.size());
+	}
+
+	// --------------------------------------------------------------------
+	// restore()
+	// --------------------------------------------------------------------
+	@Test
+	void restore_buildsIndexesFromOrderings() {
+		Product a = buildProduct(UUID.randomUUID()).toBuilder().name("Alpha").price(new BigDecimal("30.00")).build();
+		Product b = buildProduct(UUID.randomUUID()).toBuilder().name("Bravo").price(new BigDecimal("10.00")).brand("MSR").build();
+		Product c = buildProduct(UUID.randomUUID()).toBuilder().name("Charlie").price(new BigDecimal("20.00")).build();
+		repository.save(buildProduct(UUID.randomUUID()));
+
+		repository.restore(List.of(a, b, c), Map.of(
+				ProductSort.NAME, List.of(a, b, c),
+				ProductSort.PRICE, List.of(b, c, a)));
+
+		assertEquals(3, repository.findAll().size());
+		assertEquals(List.of(b, c, a), repository.find(ProductQuery.builder().sort(ProductSort.PRICE).build()));
+		assertEquals(List.of(a, b, c), repository.find(ProductQuery.builder().sort(ProductSort.NAME).build()));
+		assertEquals(List.of(b), repository.find(ProductQuery.builder().brand("msr").build()));
+	}
+
+	@Test
+	void restore_outOfOrderOrdering_isSorted() {
+		Product a = buildProduct(UUID.randomUUID()).toBuilder().name("Alpha").build();
+		Product b = buildProduct(UUID.randomUUID()).toBuilder().name("Bravo").build();
+
+		repository.restore(List.of(a, b), Map.of(ProductSort.NAME, List.of(b, a)));
+
+		assertEquals(List.of(a, b), repository.ordered(ProductSort.NAME));
+		repository.save(a.toBuilder().name("Zulu").build());
+		assertEquals(List.of("Bravo", "Zulu"), repository.find(ProductQuery.builder().sort(ProductSort.NAME).build())
+				.stream().map(Product::getName).toList());
+	}
 }
@@ -0,0 +1,246 @@
+package com.backcountry.product.repository;
+
+import com.backcountry.product.repository.QueryPlan.AccessPath;
+import com.backcountry.product.repository.QueryPlan.OrderStrategy;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class QueryPlannerTest {
+
+	private final QueryPlanner planner = new QueryPlanner();
+
+	/**
+	 * 100k products, 50 for the brand, 20k for the category, 500 in any price range, and the given
+	 * number matching every filter of the query.
+	 */
+	private record Stats(long matchCount) implements QueryPlanner.Statistics {
+		@Override
+		public long size() {
+			return 100_000;
+		}
+
+		@Override
+		public long brandCount() {
+			return 50;
+		}
+
+		@Override
+		public long categoryCount() {
+			return 20_000;
+		}
+
+		@Override
+		public long priceRangeCount() {
+			return 500;
+		}
+	}
+
+	private QueryPlan plan(ProductQuery query) {
+		long single = query.brand() != null ? 50 : query.category() != null ? 20_000 : query.hasPriceRange() ? 500 : 100_000;
+		return planner.plan(query, new Stats(single));
+	}
+
+	@Test
+	void noFilters_defaultSort_walksOrderedViewForOnePage() {
+		QueryPlan plan = plan(ProductQuery.builder().limit(10).build());
+
+		assertEquals(AccessPath.ORDERED_INDEX, plan.driver());
+		assertEquals(OrderStrategy.INDEX_ORDER, plan.order());
+		assertEquals(10, plan.estimatedCandidates());
+	}
+
+	@Test
+	void combinedFilters_driveFromBitmapIntersection() {
+		QueryPlan plan = planner.plan(ProductQuery.builder()
+				.brand("REI")
+				.category("camping")
+				.priceMin(BigDecimal.ONE)
+				.limit(10)
+				.build(), new Stats(12));
+
+		assertEquals(AccessPath.BITMAP_INDEX, plan.driver());
+		assertEquals(List.of(AccessPath.BRAND_INDEX, AccessPath.CATEGORY_INDEX, AccessPath.PRICE_INDEX), plan.intersected());
+		assertEquals(OrderStrategy.TOP_K, plan.order());
+		assertEquals(12, plan.estimatedCandidates());
+	}
+
+	@Test
+	void combinedFilters_estimateUsesIntersectionNotMostSelectiveFilter() {
+		// The category alone would fill a name-ordered page within ~50 candidates, but with the price range only 2 match
+		QueryPlan plan = planner.plan(ProductQuery.builder()
+				.category("camping")
+				.priceMax(BigDecimal.TEN)
+				.sort(ProductSort.NAME)
+				.limit(10)
+				.build(), new Stats(2));
+
+		assertEquals(AccessPath.BITMAP_INDEX, plan.driver());
+		assertEquals(OrderStrategy.SORT, plan.order());
+		assertEquals(2, plan.estimatedCandidates());
+	}
+
+	@Test
+	void combinedFilters_unselective_walkOrderedViewCheckingIntersection() {
+		QueryPlan plan = planner.plan(ProductQuery.builder()
+				.category("camping")
+				.priceMax(BigDecimal.TEN)
+				.sort(ProductSort.NAME)
+				.limit(10)
+				.build(), new Stats(10_000));
+
+		assertEquals(AccessPath.ORDERED_INDEX, plan.driver());
+		assertEquals(List.of(AccessPath.CATEGORY_INDEX, AccessPath.PRICE_INDEX), plan.intersected());
+		assertEquals(OrderStrategy.INDEX_ORDER, plan.order());
+		assertEquals(100, plan.estimatedCandidates());
+	}
+
+	@Test
+	void priceRangeAlone_drivesFromPriceIndex() {
+		QueryPlan plan = plan(ProductQuery.builder()
+				.priceMax(BigDecimal.TEN)
+				.limit(10)
+				.build());
+
+		assertEquals(AccessPath.PRICE_INDEX, plan.driver());
+		assertEquals(List.of(), plan.intersected());
+		assertEquals(500, plan.estimatedCandidates());
+	}
+
+	@Test
+	void priceSort_withPriceRange_estimatesWalkWithinRange() {
+		// 100 of the 500 products in range match, so ~50 of the range are read to fill 10 results
+		QueryPlan plan = planner.plan(ProductQuery.builder()
+				.brand("REI")
+				.priceMax(BigDecimal.TEN)
+				.sort(ProductSort.PRICE)
+				.limit(10)
+				.build(), new Stats(100));
+
+		assertEquals(AccessPath.PRICE_INDEX, plan.driver());
+		assertEquals(List.of(AccessPath.BRAND_INDEX), plan.intersected());
+		assertEquals(OrderStrategy.INDEX_ORDER, plan.order());
+		assertEquals(50, plan.estimatedCandidates());
+	}
+
+	@Test
+	void priceSort_walksPriceIndexWhenPageFillsQuickly() {
+		QueryPlan plan = plan(ProductQuery.builder()
+				.category("camping")
+				.sort(ProductSort.PRICE)
+				.limit(10)
+				.build());
+
+		// 10 results at 20% selectivity is ~50 candidates, far fewer than the 20k category entries
+		assertEquals(AccessPath.PRICE_INDEX, plan.driver());
+		assertEquals(OrderStrategy.INDEX_ORDER, plan.order());
+		assertEquals(50, plan.estimatedCandidates());
+	}
+
+	@Test
+	void priceSort_selectsFromSelectiveIndexWhenWalkWouldBeLonger() {
+		QueryPlan plan = plan(ProductQuery.builder()
+				.brand("REI")
+				.sort(ProductSort.PRICE)
+				.limit(10)
+				.build());
+
+		assertEquals(AccessPath.BRAND_INDEX, plan.driver());
+		assertEquals(OrderStrategy.TOP_K, plan.order());
+	}
+
+	@Test
+	void windowCoveringAllMatches_fullSort() {
+		QueryPlan plan = plan(ProductQuery.builder()
+				.brand("REI")
+				.offset(40)
+				.limit(20)
+				.build());
+
+		assertEquals(OrderStrategy.SORT, plan.order());
+	}
+
+	@Test
+	void deepPage_priceSort_fallsBackToIndexOrder() {
+		QueryPlan plan = plan(ProductQuery.builder()
+				.sort(ProductSort.PRICE)
+				.category("camping")
+				.offset(15_000)
+				.limit(100)
+				.build());
+
+		assertEquals(AccessPath.PRICE_INDEX, plan.driver());
+		assertEquals(OrderStrategy.INDEX_ORDER, plan.order());
+	}
+
+	@Test
+	void deepPage_nameSort_walksOrderedView() {
+		QueryPlan plan = plan(ProductQuery.builder()
+				.sort(ProductSort.NAME)
+				.category("camping")
+				.offset(15_000)
+				.limit(10)
+				.build());
+
+		assertEquals(AccessPath.ORDERED_INDEX, plan.driver());
+		assertEquals(List.of(AccessPath.CATEGORY_INDEX), plan.intersected());
+		assertEquals(OrderStrategy.INDEX_ORDER, plan.order());
+	}
+
+	@Test
+	void nameSort_unselectiveCategory_walksOrderedView() {
+		QueryPlan plan = plan(ProductQuery.builder()
+				.sort(ProductSort.NAME)
+				.category("camping")
+				.limit(10)
+				.build());
+
+		assertEquals(AccessPath.ORDERED_INDEX, plan.driver());
+		assertEquals(OrderStrategy.INDEX_ORDER, plan.order());
+	}
+
+	@Test
+	void searchTerms_relevance_driveFromTextIndexWithTopK() {
+		QueryPlan plan = planner.plan(ProductQuery.builder()
+				.terms(List.of("tent"))
+				.relevance(true)
+				.brand("REI")
+				.limit(10)
+				.build(), new Stats(30));
+
+		assertEquals(AccessPath.TEXT_INDEX, plan.driver());
+		assertEquals(List.of(AccessPath.BRAND_INDEX), plan.intersected());
+		assertEquals(OrderStrategy.TOP_K, plan.order());
+		assertEquals(30, plan.estimatedCandidates());
+	}
+
+	@Test
+	void searchTerms_rareTermSorted_sortTextMatches() {
+		QueryPlan plan = planner.plan(ProductQuery.builder()
+				.terms(List.of("footprint"))
+				.sort(ProductSort.NAME)
+				.limit(10)
+				.build(), new Stats(40));
+
+		assertEquals(AccessPath.TEXT_INDEX, plan.driver());
+		assertEquals(OrderStrategy.TOP_K, plan.order());
+		assertEquals(40, plan.estimatedCandidates());
+	}
+
+	@Test
+	void searchTerms_commonTermSortedByPrice_walkPriceIndexCheckingText() {
+		QueryPlan plan = planner.plan(ProductQuery.builder()
+				.terms(List.of("tent"))
+				.sort(ProductSort.PRICE)
+				.limit(10)
+				.build(), new Stats(20_000));
+
+		assertEquals(AccessPath.PRICE_INDEX, plan.driver());
+		assertEquals(List.of(AccessPath.TEXT_INDEX), plan.intersected());
+		assertEquals(OrderStrategy.INDEX_ORDER, plan.order());
+		assertEquals(50, plan.estimatedCandidates());
+	}
+}
@@ -0,0 +1,45 @@
+package com.backcountry.product.repository;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TopKTest {
+
+	@Test
+	void keepsFirstKInOrder() {
+		List<Integer> values = IntStream.range(0, 1_000).boxed().collect(ArrayList::new, ArrayList::add, ArrayList::addAll);
+		Collections.shuffle(values, new Random(42));
+
+		TopK<Integer> topK = new TopK<>(10, Comparator.naturalOrder());
+		values.forEach(topK::offer);
+
+		assertEquals(List.of(0, 1, 2, 3, 4, 5, 6, 7, 8, 9), topK.sorted());
+	}
+
+	@Test
+	void fewerElementsThanK_returnsAllSorted() {
+		TopK<String> topK = new TopK<>(5, Comparator.reverseOrder());
+		topK.offer("b");
+		topK.offer("c");
+		topK.offer("a");
+
+		assertEquals(List.of("c", "b", "a"), topK.sorted());
+	}
+
+	@Test
+	void zeroK_retainsNothing() {
+		TopK<Integer> topK = new TopK<>(0, Comparator.naturalOrder());
+		topK.offer(1);
+
+		assertTrue(topK.sorted().isEmpty());
+	}
+}
@@ -0,0 +1,342 @@
+package com.backcountry.product.repository.columnar;
+
+import com.backcountry.product.model.Product;
+import com.backcountry.product.repository.FacetCounts;
+import com.backcountry.product.repository.InMemoryProductRepository;
+import com.backcountry.product.repository.ProductQuery;
+import com.backcountry.product.repository.ProductSort;
+import com.backcountry.product.repository.QueryExplanation;
+import com.backcountry.product.repository.QueryPlan;
+import com.backcountry.product.repository.SuggestionRank;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ColumnarProductRepositoryTest {
+
+	private ColumnarProductRepository repository;
+
+	@BeforeEach
+	void setup() {
+		repository = new ColumnarProductRepository();
+	}
+
+	private Product buildProduct(UUID id) {
+		return Product.builder()
+				.id(id)
+				.name("Tent")
+				.description("3-person tent")
+				.brand("REI")
+				.price(new BigDecimal("199.99"))
+				.inventory(5)
+				.categories(List.of("camping"))
+				.createdAt(Instant.now())
+				.updatedAt(Instant.now())
+				.build();
+	}
+
+	@Test
+	void save_roundTripsEveryField() {
+		Product product = buildProduct(UUID.randomUUID()).toBuilder()
+				.name("Zelt \u00fcber")
+				.price(new BigDecimal("1250"))
+				.categories(List.of("camping", "tents"))
+				.createdAt(Instant.parse("2024-05-01T10:15:30.123456789Z"))
+				.build();
+
+		repository.save(product);
+
+		assertEquals(product, repository.findById(product.getId()).orElse(null));
+		assertEquals(List.of(product), repository.findAll());
+	}
+
+	@Test
+	void save_existingId_replacesProduct() {
+		Product product = buildProduct(UUID.randomUUID());
+		repository.save(product);
+		Product updated = product.toBuilder().name("Bivy").brand("MSR").categories(List.of("shelter")).build();
+
+		repository.save(updated);
+
+		assertEquals(List.of(updated), repository.findAll());
+		assertTrue(repository.find(ProductQuery.builder().brand("rei").build()).isEmpty());
+		assertEquals(List.of(updated), repository.find(ProductQuery.builder().category("shelter").build()));
+	}
+
+	@Test
+	void compareAndSave_writesOnlyAtTheExpectedVersion() {
+		Product saved = repository.save(buildProduct(UUID.randomUUID()));
+		Product renamed = saved.toBuilder().name("Bivy").build();
+		assertEquals(saved.getVersion(), repository.findById(saved.getId()).orElseThrow().getVersion());
+
+		Product updated = repository.compareAndSave(renamed, saved.getVersion()).orElseThrow();
+		assertTrue(updated.getVersion() > saved.getVersion());
+		assertEquals(updated.getVersion(), repository.version());
+		assertTrue(repository.compareAndSave(saved, saved.getVersion()).isEmpty());
+		assertEquals(List.of(renamed), repository.findAll());
+
+		assertFalse(repository.compareAndDelete(saved.getId(), saved.getVersion()));
+		assertTrue(repository.compareAndDelete(saved.getId(), updated.getVersion()));
+		assertTrue(repository.version() > updated.getVersion());
+		assertTrue(repository.compareAndSave(renamed, updated.getVersion()).isEmpty());
+		assertTrue(repository.findAll().isEmpty());
+	}
+
+	@Test
+	void deleteById_freesRowForReuse() {
+		Product deleted = buildProduct(UUID.randomUUID());
+		repository.save(deleted);
+		repository.deleteById(deleted.getId());
+		Product next = buildProduct(UUID.randomUUID());
+
+		repository.save(next);
+
+		assertTrue(repository.findById(deleted.getId()).isEmpty());
+		assertEquals(List.of(next), repository.findAll());
+	}
+
+	@Test
+	void save_priceWithTooManyDecimals_isRejected() {
+		Product product = buildProduct(UUID.randomUUID()).toBuilder().price(new BigDecimal("1.00001")).build();
+
+		assertThrows(IllegalArgumentException.class, () -> repository.save(product));
+		assertTrue(repository.findAll().isEmpty());
+	}
+
+	@Test
+	void saveAll_invalidProduct_rejectsWholeBatch() {
+		Product valid = buildProduct(UUID.randomUUID());
+		Product invalid = buildProduct(UUID.randomUUID()).toBuilder().price(new BigDecimal("1.00001")).build();
+
+		assertThrows(IllegalArgumentException.class, () -> repository.saveAll(List.of(valid, invalid)));
+		assertTrue(repository.findAll().isEmpty());
+
+		repository.saveAll(List.of(valid, invalid.toBuilder().price(BigDecimal.ONE).build()));
+		assertEquals(List.of(valid.getId()), repository.deleteAllById(List.of(valid.getId(), UUID.randomUUID())));
+		assertEquals(1, repository.findAll().size());
+	}
+
+	@Test
+	void export_readsRowsAsOfItsStartWhileWritesContinue() {
+		List<Product> catalog = new ArrayList<>();
+		for (int i = 0; i < 3000; i++) {
+			catalog.add(buildProduct(UUID.randomUUID()).toBuilder().name("Tent " + i).build());
+		}
+		repository.saveAll(catalog);
+
+		// Changes rows the export has read, rows it has yet to read, and freed rows it must not pick up
+		List<Product> exported = new ArrayList<>();
+		repository.export(product -> {
+			if (exported.isEmpty()) {
+				repository.deleteById(catalog.get(0).getId());
+				repository.deleteById(catalog.get(2000).getId());
+				repository.save(catalog.get(2500).toBuilder().name("Renamed").build());
+				repository.save(buildProduct(UUID.randomUUID()));
+				repository.save(buildProduct(UUID.randomUUID()));
+			}
+			exported.add(product);
+		});
+
+		assertEquals(3000, exported.size());
+		assertEquals(new HashSet<>(catalog), new HashSet<>(exported));
+	}
+
+	@Test
+	void export_clearedDuringExport_stillReadsStartingCatalog() {
+		List<Product> catalog = new ArrayList<>();
+		for (int i = 0; i < 2500; i++) {
+			catalog.add(buildProduct(UUID.randomUUID()).toBuilder().name("Tent " + i).build());
+		}
+		repository.saveAll(catalog);
+
+		List<Product> exported = new ArrayList<>();
+		repository.export(product -> {
+			if (exported.isEmpty()) {
+				repository.clear();
+				repository.save(buildProduct(UUID.randomUUID()));
+			}
+			exported.add(product);
+		});
+
+		assertEquals(new HashSet<>(catalog), new HashSet<>(exported));
+		assertEquals(1, repository.findAll().size());
+	}
+
+	@Test
+	void find_priceBoundsWithMoreDecimalsThanStored_areExact() {
+		Product product = buildProduct(UUID.randomUUID()).toBuilder().price(new BigDecimal("10.00")).build();
+		repository.save(product);
+
+		assertEquals(1, repository.find(ProductQuery.builder().priceMin(new BigDecimal("9.999999")).build()).size());
+		assertEquals(0, repository.find(ProductQuery.builder().priceMin(new BigDecimal("10.000001")).build()).size());
+		assertEquals(1, repository.find(ProductQuery.builder().priceMax(new BigDecimal("10")).build()).size());
+	}
+
+	@Test
+	void explain_reportsColumnScan() {
+		for (int i = 0; i < 5; i++) {
+			repository.save(buildProduct(UUID.randomUUID()));
+		}
+
+		QueryExplanation explanation = repository.explain(ProductQuery.builder().limit(2).build());
+
+		assertEquals(QueryPlan.AccessPath.COLUMN_SCAN, explanation.plan().driver());
+		assertEquals(5, explanation.candidatesScanned());
+		assertEquals(2, explanation.returned());
+	}
+
+	@Test
+	void find_matchesHeapRepositoryForEveryQueryShape() {
+		InMemoryProductRepository reference = new InMemoryProductRepository();
+		Random random = new Random(42);
+		String[] brands = {"REI", "rei", "MSR", "Patagonia", "Black Diamond"};
+		String[] categories = {"camping", "climbing", "cooking", "apparel"};
+		String[] names = {"tent", "Tent", "stove", "Harness", "jacket", "Rope"};
+		Instant base = Instant.parse("2024-01-01T00:00:00Z");
+
+		List<Product> products = new ArrayList<>();
+		for (int i = 0; i < 400; i++) {
+			Product product = Product.builder()
+					.id(new UUID(random.nextLong(), random.nextLong()))
+					.name(names[random.nextInt(names.length)])
+					.description("Item " + i)
+					.brand(brands[random.nextInt(brands.length)])
+					.price(BigDecimal.valueOf(random.nextInt(5_000), random.nextInt(3)))
+					.inventory(random.nextInt(50))
+					.categories(List.of(categories[random.nextInt(categories.length)], categories[random.nextInt(categories.length)]))
+					.createdAt(base.plusSeconds(random.nextInt(100)))
+					.updatedAt(base)
+					.build();
+			products.add(product);
+			repository.save(product);
+			reference.save(product);
+		}
+		for (int i = 0; i < 40; i++) {
+			Product removed = products.get(random.nextInt(products.size()));
+			repository.deleteById(removed.getId());
+			reference.deleteById(removed.getId());
+		}
+
+		for (ProductSort sort : ProductSort.values()) {
+			List<ProductQuery> queries = List.of(
+					ProductQuery.builder().sort(sort).build(),
+					ProductQuery.builder().sort(sort).offset(30).limit(25).build(),
+					ProductQuery.builder().sort(sort).brand("rei").limit(10).build(),
+					ProductQuery.builder().sort(sort).category("cooking").priceMin(new BigDecimal("5")).priceMax(new BigDecimal("30.5")).build(),
+					ProductQuery.builder().sort(sort).after(products.get(7)).limit(20).build(),
+					ProductQuery.builder().sort(sort).brand("MSR").category("camping").after(products.get(11)).offset(2).limit(5).build());
+			for (ProductQuery query : queries) {
+				assertEquals(reference.find(query), repository.find(query), query.toString());
+			}
+		}
+	}
+
+	@Test
+	void find_searchTerms_matchHeapRepository() {
+		InMemoryProductRepository reference = new InMemoryProductRepository();
+		Random random = new Random(11);
+		String[] brands = {"REI", "MSR", "Patagonia"};
+		String[] words = {"tent", "tents", "ultralight", "light", "stove", "shelter", "2-person", "pad"};
+		for (int i = 0; i < 300; i++) {
+			StringBuilder description = new StringBuilder();
+			for (int w = random.nextInt(6); w >= 0; w--) {
+				description.append(words[random.nextInt(words.length)]).append(' ');
+			}
+			Product product = buildProduct(UUID.randomUUID()).toBuilder()
+					.name(words[random.nextInt(words.length)])
+					.description(description.toString())
+					.brand(brands[random.nextInt(brands.length)])
+					.price(BigDecimal.valueOf(random.nextInt(30_000), 2))
+					.build();
+			repository.save(product);
+			reference.save(product);
+		}
+
+		for (List<String> terms : List.of(List.of("tent"), List.of("light", "ten"), List.of("2", "shelter"))) {
+			List<ProductQuery> queries = List.of(
+					ProductQuery.builder().terms(terms).relevance(true).build(),
+					ProductQuery.builder().terms(terms).relevance(true).offset(5).limit(10).build(),
+					ProductQuery.builder().terms(terms).relevance(true).brand("msr").priceMax(new BigDecimal("150")).build(),
+					ProductQuery.builder().terms(terms).sort(ProductSort.PRICE).limit(10).build(),
+					ProductQuery.builder().terms(terms).sort(ProductSort.NAME).brand("rei").build());
+			for (ProductQuery query : queries) {
+				assertEquals(reference.find(query), repository.find(query), query.toString());
+			}
+		}
+	}
+
+	@Test
+	void suggest_matchesHeapRepository() {
+		InMemoryProductRepository reference = new InMemoryProductRepository();
+		Random random = new Random(3);
+		String[] brands = {"Patagonia", "Petzl", "MSR", "Mammut"};
+		String[] nouns = {"Jacket", "Tent", "Pack", "Stove"};
+		Instant base = Instant.parse("2024-01-01T00:00:00Z");
+		List<Product> products = new ArrayList<>();
+		for (int i = 0; i < 500; i++) {
+			String brand = brands[random.nextInt(brands.length)];
+			Product product = buildProduct(UUID.randomUUID()).toBuilder()
+					.name(brand + " " + nouns[random.nextInt(nouns.length)] + " " + random.nextInt(100))
+					.brand(brand)
+					.inventory(random.nextInt(20))
+					.createdAt(base.plusSeconds(random.nextInt(10_000)))
+					.build();
+			products.add(product);
+			repository.save(product);
+			reference.save(product);
+		}
+		for (int i = 0; i < 50; i++) {
+			Product removed = products.get(random.nextInt(products.size()));
+			repository.deleteById(removed.getId());
+			reference.deleteById(removed.getId());
+		}
+
+		for (String prefix : List.of("p", "PAT", "patagonia tent 1", "m", "Mammut Stove 42", "x", "")) {
+			for (SuggestionRank rank : SuggestionRank.values()) {
+				assertEquals(reference.suggest(prefix, rank, 8), repository.suggest(prefix, rank, 8), prefix + " " + rank);
+			}
+		}
+	}
+
+	@Test
+	void facets_matchHeapRepository() {
+		InMemoryProductRepository reference = new InMemoryProductRepository();
+		Random random = new Random(7);
+		String[] brands = {"REI", "rei", "MSR", "Patagonia"};
+		String[] categories = {"camping", "climbing", "cooking"};
+		for (int i = 0; i < 300; i++) {
+			Product product = buildProduct(UUID.randomUUID()).toBuilder()
+					.brand(brands[random.nextInt(brands.length)])
+					.price(BigDecimal.valueOf(random.nextInt(30_000), 2))
+					.categories(List.of(categories[random.nextInt(categories.length)], categories[random.nextInt(categories.length)]))
+					.build();
+			repository.save(product);
+			reference.save(product);
+		}
+		List<BigDecimal> boundaries = List.of(new BigDecimal("50"), new BigDecimal("99.99"), new BigDecimal("200"));
+
+		for (ProductQuery query : List.of(
+				ProductQuery.builder().build(),
+				ProductQuery.builder().brand("rei").build(),
+				ProductQuery.builder().category("cooking").priceMin(new BigDecimal("40.5")).priceMax(new BigDecimal("210")).build())) {
+			FacetCounts expected = reference.facets(query, boundaries);
+			FacetCounts actual = repository.facets(query, boundaries);
+			assertEquals(expected.total(), actual.total(), query.toString());
+			assertEquals(expected.brands(), actual.brands(), query.toString());
+			assertEquals(expected.categories(), actual.categories(), query.toString());
+			assertEquals(expected.priceRanges(), actual.priceRanges(), query.toString());
+		}
+	}
+}
@@ -0,0 +1,319 @@
+package com.backcountry.product.repository.persistence;
+
+import com.backcountry.product.model.CatalogDictionary;
+import com.backcountry.product.model.Product;
+import com.backcountry.product.repository.InMemoryProductRepository;
+import com.backcountry.product.repository.ProductQuery;
+import com.backcountry.product.repository.ProductSort;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DurableProductRepositoryTest {
+
+	@TempDir
+	Path directory;
+
+	private DurableProductRepository repository;
+
+	@AfterEach
+	void close() throws IOException {
+		if (repository != null) {
+			repository.close();
+		}
+	}
+
+	private DurableProductRepository reopen() throws IOException {
+		if (repository != null) {
+			repository.close();
+		}
+		repository = new DurableProductRepository(new InMemoryProductRepository(), directory, true, Duration.ZERO, 0);
+		return repository;
+	}
+
+	private List<Path> files(String prefix) throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.filter(file -> file.getFileName().toString().startsWith(prefix)).sorted().toList();
+		}
+	}
+
+	private Product buildProduct(String name) {
+		return Product.builder()
+				.id(UUID.randomUUID())
+				.name(name)
+				.description("Durable " + name)
+				.brand("REI")
+				.price(new BigDecimal("199.99"))
+				.inventory(5)
+				.categories(List.of("camping", "tents"))
+				.createdAt(Instant.parse("2024-05-01T10:15:30.123456789Z"))
+				.updatedAt(Instant.parse("2024-05-02T10:15:30Z"))
+				.build();
+	}
+
+	@Test
+	void save_survivesRestart() throws IOException {
+		Product product = buildProduct("Tent");
+		reopen().save(product);
+
+		assertEquals(product, reopen().findById(product.getId()).orElse(null));
+	}
+
+	@Test
+	void update_lastWriteWinsAfterRestart() throws IOException {
+		Product product = buildProduct("Tent");
+		reopen().save(product);
+		Product updated = product.toBuilder().name("Bivy").price(new BigDecimal("89.50")).build();
+		repository.save(updated);
+
+		DurableProductRepository recovered = reopen();
+
+		assertEquals(updated, recovered.findById(product.getId()).orElse(null));
+		assertEquals(1, recovered.findAll().size());
+	}
+
+	@Test
+	void compareAndSave_survivesRestartUnderNewVersions() throws IOException {
+		Product saved = reopen().save(buildProduct("Tent"));
+		Product updated = repository.compareAndSave(saved.toBuilder().name("Bivy").build(), saved.getVersion()).orElseThrow();
+		assertTrue(repository.compareAndSave(saved.toBuilder().name("Tarp").build(), saved.getVersion()).isEmpty());
+		repository.snapshot();
+
+		// Versions are not persisted, so one issued before the restart never matches after it
+		Product recovered = reopen().findById(saved.getId()).orElseThrow();
+		assertEquals(updated, recovered);
+		assertTrue(recovered.getVersion() > updated.getVersion());
+		assertTrue(repository.compareAndSave(saved, updated.getVersion()).isEmpty());
+		assertFalse(repository.compareAndDelete(saved.getId(), updated.getVersion()));
+		assertTrue(repository.compareAndDelete(saved.getId(), recovered.getVersion()));
+
+		assertTrue(reopen().findById(saved.getId()).isEmpty());
+	}
+
+	@Test
+	void compareAndSaveAll_persistsOnlyTheProductsAtTheirVersion() throws IOException {
+		Product tent = reopen().save(buildProduct("Tent"));
+		Product stove = repository.save(buildProduct("Stove"));
+		repository.save(stove.toBuilder().name("Moved").build());
+
+		List<Optional<Product>> saved = repository.compareAndSaveAll(
+				List.of(tent.toBuilder().name("Bivy").build(), stove.toBuilder().name("Stale").build()),
+				List.of(tent.getVersion(), stove.getVersion()));
+
+		assertTrue(saved.get(0).isPresent());
+		assertTrue(saved.get(1).isEmpty());
+		reopen();
+		assertEquals("Bivy", repository.findById(tent.getId()).orElseThrow().getName());
+		assertEquals("Moved", repository.findById(stove.getId()).orElseThrow().getName());
+	}
+
+	@Test
+	void recovery_internsSnapshotAndLogProducts() throws IOException {
+		Product snapshotted = buildProduct("Tent");
+		Product logged = buildProduct("Stove");
+		reopen().save(snapshotted);
+		repository.snapshot();
+		repository.save(logged);
+		repository.close();
+
+		CatalogDictionary dictionary = new CatalogDictionary();
+		repository = new DurableProductRepository(new InMemoryProductRepository(), directory, true, Duration.ZERO, 0, dictionary::intern);
+
+		Product first = repository.findById(snapshotted.getId()).orElseThrow();
+		Product second = repository.findById(logged.getId()).orElseThrow();
+		assertEquals(snapshotted, first);
+		assertSame(first.getBrand(), second.getBrand());
+		assertSame(first.getCategories(), second.getCategories());
+		assertEquals(dictionary.brandCode("REI"), second.getBrandCode());
+	}
+
+	@Test
+	void deleteAndClear_surviveRestart() throws IOException {
+		Product kept = buildProduct("Tent");
+		Product deleted = buildProduct("Stove");
+		reopen().save(kept);
+		repository.save(deleted);
+		repository.deleteById(deleted.getId());
+
+		assertEquals(List.of(kept), reopen().findAll());
+
+		repository.clear();
+		repository.save(deleted);
+
+		assertEquals(List.of(deleted), reopen().findAll());
+	}
+
+	@Test
+	void saveAllAndDeleteAllById_surviveRestart() throws IOException {
+		Product tent = buildProduct("Tent");
+		Product stove = buildProduct("Stove");
+		Product lantern = buildProduct("Lantern");
+		reopen().saveAll(List.of(tent, stove, lantern));
+
+		assertEquals(3, reopen().findAll().size());
+
+		assertEquals(List.of(stove.getId()), repository.deleteAllById(List.of(stove.getId(), UUID.randomUUID())));
+		assertTrue(repository.deleteAllById(List.of(stove.getId())).isEmpty());
+
+		reopen();
+		assertTrue(repository.findById(stove.getId()).isEmpty());
+		assertEquals(tent, repository.findById(tent.getId()).orElse(null));
+		assertEquals(List.of(lantern), repository.find(ProductQuery.builder().sort(ProductSort.NAME).limit(1).build()));
+	}
+
+	@Test
+	void tornTail_isTruncatedOnRecovery() throws IOException {
+		Product product = buildProduct("Tent");
+		reopen().save(product);
+		repository.close();
+		repository = null;
+
+		// Simulate a crash in the middle of writing the next record
+		Path log = files("products-").get(0);
+		long intact = Files.size(log);
+		try (FileChannel channel = FileChannel.open(log, StandardOpenOption.APPEND)) {
+			channel.write(ByteBuffer.wrap(new byte[] {0, 0, 0, 42, 1, 2, 3}));
+		}
+
+		DurableProductRepository recovered = reopen();
+
+		assertEquals(List.of(product), recovered.findAll());
+		assertEquals(intact, Files.size(log));
+
+		Product next = buildProduct("Stove");
+		recovered.save(next);
+		assertEquals(2, reopen().findAll().size());
+	}
+
+	@Test
+	void concurrentSaves_areAllPersisted() throws Exception {
+		reopen();
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		List<Future<Product>> futures = new ArrayList<>();
+		try {
+			for (int i = 0; i < 200; i++) {
+				Product product = buildProduct("Tent " + i);
+				futures.add(executor.submit(() -> repository.save(product)));
+			}
+			for (Future<Product> future : futures) {
+				future.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+
+		DurableProductRepository recovered = reopen();
+
+		assertEquals(200, recovered.findAll().size());
+		for (Future<Product> future : futures) {
+			assertTrue(recovered.findById(future.get().getId()).isPresent());
+		}
+	}
+
+	@Test
+	void snapshot_recoversSnapshotPlusLogTail() throws IOException {
+		Product kept = buildProduct("Tent");
+		Product deleted = buildProduct("Stove");
+		Product updated = buildProduct("Bivy");
+		reopen().save(kept);
+		repository.save(deleted);
+		repository.save(updated);
+		repository.snapshot();
+
+		// Changes after the snapshot only exist in the log
+		repository.deleteById(deleted.getId());
+		Product renamed = updated.toBuilder().name("Hammock").build();
+		repository.save(renamed);
+		Product added = buildProduct("Lantern");
+		repository.save(added);
+
+		DurableProductRepository recovered = reopen();
+
+		assertEquals(3, recovered.findAll().size());
+		assertEquals(kept, recovered.findById(kept.getId()).orElse(null));
+		assertEquals(renamed, recovered.findById(updated.getId()).orElse(null));
+		assertEquals(added, recovered.findById(added.getId()).orElse(null));
+		assertTrue(recovered.findById(deleted.getId()).isEmpty());
+	}
+
+	@Test
+	void snapshot_deletesCoveredSegmentsAndOlderSnapshots() throws IOException {
+		reopen().save(buildProduct("Tent"));
+		repository.snapshot();
+		repository.save(buildProduct("Stove"));
+		repository.snapshot();
+		repository.save(buildProduct("Bivy"));
+
+		assertEquals(1, files("snapshot-").size());
+		assertEquals(1, files("products-").size());
+		assertEquals(3, reopen().findAll().size());
+	}
+
+	@Test
+	void snapshot_afterClear_recoversEmptyCatalog() throws IOException {
+		reopen().save(buildProduct("Tent"));
+		repository.snapshot();
+		repository.clear();
+
+		assertTrue(reopen().findAll().isEmpty());
+	}
+
+	@Test
+	void snapshot_duringConcurrentWrites_recoversEveryWrite() throws Exception {
+		reopen();
+		for (int i = 0; i < 200; i++) {
+			repository.save(buildProduct("Tent " + i));
+		}
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		List<Product> written = new ArrayList<>();
+		Future<?> writes;
+		try {
+			writes = executor.submit(() -> {
+				for (int i = 0; i < 200; i++) {
+					Product product = buildProduct("Stove " + i);
+					repository.save(product);
+					synchronized (written) {
+						written.add(product);
+					}
+				}
+			});
+			repository.snapshot();
+			writes.get();
+		} finally {
+			executor.shutdown();
+		}
+
+		DurableProductRepository recovered = reopen();
+
+		assertEquals(400, recovered.findAll().size());
+		for (Product product : written) {
+			assertEquals(product, recovered.findById(product.getId()).orElse(null));
+		}
+		assertEquals(recovered.findAll().stream().sorted(ProductSort.NAME.comparator()).toList(),
+				recovered.find(ProductQuery.builder().sort(ProductSort.NAME).build()));
+	}
+}
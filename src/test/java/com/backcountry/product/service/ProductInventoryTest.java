@@ -0,0 +1,175 @@
+package com.backcountry.product.service;
+
+import com.backcountry.product.exception.InventoryConflictException;
+import com.backcountry.product.model.Product;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProductInventoryTest {
+
+	private static final UUID ID = UUID.randomUUID();
+
+	private final ProductInventory inventory = new ProductInventory();
+
+	// A one-product "repository" whose saves are conditional on the version, counting them
+	private final AtomicReference<Product> stored = new AtomicReference<>();
+	private final AtomicInteger writes = new AtomicInteger();
+
+	private Optional<Product> read(UUID id) {
+		return Optional.ofNullable(stored.get()).filter(product -> product.getId().equals(id));
+	}
+
+	private Optional<Product> write(Product current, int units) {
+		Product next = current.toBuilder().inventory(units).version(current.getVersion() + 1).build();
+		if (!stored.compareAndSet(current, next)) {
+			return Optional.empty();
+		}
+		writes.incrementAndGet();
+		return Optional.of(next);
+	}
+
+	private Product adjust(int delta) {
+		return inventory.adjust(ID, delta, this::read, this::write).orElseThrow();
+	}
+
+	private void stock(int units, long version) {
+		stored.set(Product.builder()
+				.id(ID)
+				.name("Stove")
+				.description("Canister stove")
+				.brand("MSR")
+				.price(new BigDecimal("90"))
+				.inventory(units)
+				.categories(List.of("cooking"))
+				.createdAt(Instant.now())
+				.updatedAt(Instant.now())
+				.version(version)
+				.build());
+	}
+
+	@Test
+	void adjust_reserveAndRelease_writeTheStock() {
+		stock(5, 1);
+
+		assertEquals(3, adjust(-2).getInventory());
+		assertEquals(4, adjust(1).getInventory());
+		assertEquals(4, stored.get().getInventory());
+		assertEquals(2, writes.get());
+	}
+
+	@Test
+	void adjust_moreThanInStock_isRefusedAndWritesNothing() {
+		stock(2, 1);
+
+		InventoryConflictException ex = assertThrows(InventoryConflictException.class, () -> adjust(-3));
+
+		assertTrue(ex.getMessage().contains("has 2 in stock"));
+		assertEquals(2, stored.get().getInventory());
+		assertEquals(0, writes.get());
+	}
+
+	@Test
+	void adjust_pastTheLargestInt_isRefused() {
+		stock(Integer.MAX_VALUE - 1, 1);
+
+		assertThrows(InventoryConflictException.class, () -> adjust(2));
+		assertEquals(Integer.MAX_VALUE, adjust(1).getInventory());
+	}
+
+	@Test
+	void adjust_missingProduct_isEmpty() {
+		assertTrue(inventory.adjust(ID, -1, this::read, this::write).isEmpty());
+	}
+
+	@Test
+	void adjust_productWrittenAroundTheCounter_startsFromTheStoredProduct() {
+		stock(1, 1);
+		adjust(-1);
+
+		// Restocked by another write, which the counter does not hear of
+		stock(10, 5);
+
+		assertEquals(9, adjust(-1).getInventory());
+		assertEquals(9, stored.get().getInventory());
+	}
+
+	@Test
+	void adjust_nothingLeftToWrite_dropsTheCounter() {
+		stock(3, 1);
+
+		adjust(-1);
+		assertEquals(0, inventory.size());
+		assertThrows(InventoryConflictException.class, () -> adjust(-5));
+		assertEquals(0, inventory.size());
+
+		// The next change starts from the stored product
+		assertEquals(1, adjust(-1).getInventory());
+		assertEquals(2, writes.get());
+	}
+
+	@Test
+	void evict_dropsTheCounter() {
+		stock(3, 1);
+		adjust(-1);
+
+		inventory.evict(ID);
+
+		assertEquals(0, inventory.size());
+	}
+
+	@Test
+	void adjust_concurrentReservations_neverOversell() throws InterruptedException {
+		int units = 1000;
+		int threads = 8;
+		int attemptsPerThread = 250;
+		stock(units, 1);
+
+		AtomicInteger reserved = new AtomicInteger();
+		AtomicInteger refused = new AtomicInteger();
+		CountDownLatch start = new CountDownLatch(1);
+		List<Thread> workers = new ArrayList<>();
+		for (int t = 0; t < threads; t++) {
+			Thread worker = new Thread(() -> {
+				try {
+					start.await();
+				} catch (InterruptedException e) {
+					return;
+				}
+				for (int i = 0; i < attemptsPerThread; i++) {
+					try {
+						adjust(-1);
+						reserved.incrementAndGet();
+					} catch (InventoryConflictException e) {
+						refused.incrementAndGet();
+					}
+				}
+			});
+			worker.start();
+			workers.add(worker);
+		}
+		start.countDown();
+		for (Thread worker : workers) {
+			worker.join();
+		}
+
+		// Twice as many attempts as units: exactly the units are sold, and no write undoes another
+		assertEquals(units, reserved.get());
+		assertEquals(threads * attemptsPerThread - units, refused.get());
+		assertEquals(0, stored.get().getInventory());
+		assertTrue(writes.get() <= units);
+		assertEquals(0, inventory.size());
+	}
+}
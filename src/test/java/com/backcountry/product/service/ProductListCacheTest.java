@@ -0,0 +1,183 @@
+package com.backcountry.product.service;
+
+import com.backcountry.config.ListCacheProperties;
+import com.backcountry.product.dto.ProductPage;
+import com.backcountry.product.dto.ProductResponse;
+import com.backcountry.product.model.Product;
+import com.backcountry.product.repository.ProductQuery;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProductListCacheTest {
+
+	private final ProductListCache cache = new ProductListCache(new ListCacheProperties(100));
+
+	// Counts the pages read from the "repository"
+	private final AtomicInteger reads = new AtomicInteger();
+	private final Function<ProductQuery, ProductPage> loader = query -> {
+		reads.incrementAndGet();
+		return new ProductPage(List.of(), null);
+	};
+
+	private static final ProductQuery MSR = ProductQuery.builder().brand("MSR").brandCode(0).limit(20).build();
+	private static final ProductQuery COOKING = ProductQuery.builder().category("cooking").limit(20).build();
+	private static final ProductQuery CHEAP = ProductQuery.builder().priceMax(new BigDecimal("50")).limit(20).build();
+
+	private static Product buildProduct(String brand, String price, String... categories) {
+		return Product.builder()
+				.id(UUID.randomUUID())
+				.name("Stove")
+				.description("Canister stove")
+				.brand(brand)
+				.price(new BigDecimal(price))
+				.inventory(3)
+				.categories(List.of(categories))
+				.createdAt(Instant.now())
+				.updatedAt(Instant.now())
+				.build();
+	}
+
+	@Test
+	void get_sameQuery_readsRepositoryOnceIgnoringBrandCase() {
+		ProductPage first = cache.get(MSR, loader);
+		ProductPage second = cache.get(MSR.toBuilder().brand("msr").build(), loader);
+
+		assertSame(first, second);
+		assertEquals(1, reads.get());
+		assertEquals(1, cache.stats().hitCount());
+		assertEquals(1, cache.stats().missCount());
+	}
+
+	@Test
+	void written_dropsOnlyThePagesTheProductMatches() {
+		cache.get(MSR, loader);
+		cache.get(COOKING, loader);
+		cache.get(CHEAP, loader);
+
+		// An expensive Jetboil cooking product: only the cooking page can hold it
+		cache.written(null, buildProduct("Jetboil", "120", "cooking"));
+
+		cache.get(MSR, loader);
+		cache.get(COOKING, loader);
+		cache.get(CHEAP, loader);
+		assertEquals(4, reads.get());
+		assertEquals(1, cache.invalidations());
+	}
+
+	@Test
+	void written_productLeavingTheFilter_dropsThePageThatHeldIt() {
+		cache.get(MSR, loader);
+		Product stove = buildProduct("MSR", "90", "cooking");
+
+		cache.written(stove, stove.toBuilder().brand("Jetboil").build());
+
+		cache.get(MSR, loader);
+		assertEquals(2, reads.get());
+	}
+
+	@Test
+	void written_anyProduct_dropsRelevancePages() {
+		ProductQuery search = ProductQuery.builder().terms(List.of("tent")).relevance(true).limit(20).build();
+		cache.get(search, loader);
+
+		// Not a match, but it still changes the statistics relevance is scored with
+		cache.written(null, buildProduct("MSR", "90", "cooking"));
+
+		cache.get(search, loader);
+		assertEquals(2, reads.get());
+	}
+
+	@Test
+	void written_largeBatch_dropsEveryPage() {
+		cache.get(MSR, loader);
+		List<Product> created = new ArrayList<>();
+		for (int i = 0; i <= ProductListCache.MAX_PRECISE_BATCH; i++) {
+			created.add(buildProduct("Jetboil", "120", "stoves"));
+		}
+
+		cache.written(created);
+
+		cache.get(MSR, loader);
+		assertEquals(2, reads.get());
+	}
+
+	@Test
+	void get_writeWhileReading_doesNotKeepThePage() {
+		cache.get(COOKING, query -> {
+			cache.written(null, buildProduct("MSR", "90", "cooking"));
+			return loader.apply(query);
+		});
+
+		cache.get(COOKING, loader);
+		assertEquals(2, reads.get());
+	}
+
+	@Test
+	void get_beyondMaximumSize_evicts() {
+		ProductListCache small = new ProductListCache(new ListCacheProperties(10));
+		for (int page = 0; page < 100; page++) {
+			small.get(CHEAP.toBuilder().offset(page * 20L).build(), loader);
+		}
+
+		assertTrue(small.size() <= 10);
+		assertTrue(small.stats().evictionCount() >= 90);
+	}
+
+	@Test
+	void get_cursorPage_isNotCached() {
+		ProductQuery pinned = CHEAP.toBuilder().asOf(42L).build();
+
+		cache.get(pinned, loader);
+		cache.get(pinned, loader);
+
+		assertEquals(2, reads.get());
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	void get_largePages_areBoundedByTheirProducts() {
+		ProductListCache small = new ProductListCache(new ListCacheProperties(1000));
+		List<ProductResponse> items = Collections.nCopies(499, new ProductResponse(
+				UUID.randomUUID(), "Stove", "Canister stove", "MSR", new BigDecimal("90"), 3, List.of("cooking"), Instant.now(), Instant.now(), 1));
+		for (int page = 0; page < 20; page++) {
+			small.get(CHEAP.toBuilder().offset(page * 499L).limit(499).build(), query -> new ProductPage(items, null));
+		}
+
+		assertTrue(small.weight() <= 1000);
+		assertTrue(small.size() <= 2);
+	}
+
+	@Test
+	void written_lastPageOfAFilter_removesTheFilter() {
+		cache.get(COOKING, loader);
+		cache.get(COOKING.toBuilder().category("unheard-of").build(), loader);
+		assertEquals(2, cache.filters());
+
+		cache.written(null, buildProduct("MSR", "90", "unheard-of"));
+
+		assertEquals(1, cache.filters());
+	}
+
+	@Test
+	void get_disabled_alwaysReadsRepository() {
+		ProductListCache disabled = new ProductListCache(new ListCacheProperties(0));
+
+		disabled.get(MSR, loader);
+		disabled.get(MSR, loader);
+
+		assertEquals(2, reads.get());
+		assertEquals(0, disabled.size());
+	}
+}
@@ -1,26 +1,77 @@
 package com.backcountry.product.service;
 
+import com.backcountry.config.ImportProperties;
+import com.backcountry.config.JsonCacheProperties;
+import com.backcountry.config.ListCacheProperties;
+import com.backcountry.product.dto.BulkResponse;
+import com.backcountry.product.dto.BulkUpdateRequest;
 import com.backcountry.product.dto.CreateProductRequest;
+import com.backcountry.product.dto.ImportResponse;
+import com.backcountry.product.dto.ProductFacetsResponse;
+import com.backcountry.product.dto.ProductResponse;
+import com.backcountry.product.dto.QueryExplainResponse;
+import com.backcountry.product.dto.SuggestionResponse;
 import com.backcountry.product.dto.UpdateProductRequest;
+import com.backcountry.product.exception.ImportCapacityException;
+import com.backcountry.product.exception.InvalidCursorException;
+import com.backcountry.product.exception.InventoryConflictException;
+import com.backcountry.product.exception.InvalidPriceBucketsException;
+import com.backcountry.product.exception.ProductVersionMismatchException;
+import com.backcountry.product.model.CatalogDictionary;
 import com.backcountry.product.model.Product;
+import com.backcountry.product.repository.FacetCounts;
+import com.backcountry.product.repository.ProductQuery;
 import com.backcountry.product.repository.ProductRepository;
+import com.backcountry.product.repository.ProductSort;
+import com.backcountry.product.repository.QueryExplanation;
+import com.backcountry.product.repository.QueryPlan;
+import com.backcountry.product.repository.Suggestion;
+import com.backcountry.product.repository.SuggestionRank;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.util.unit.DataSize;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atMost;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -28,9 +79,30 @@ import static org.mockito.Mockito.when;
 
 class ProductServiceImplTest {
 
+	private static final ObjectMapper MAPPER = new ObjectMapper().findAndRegisterModules();
+
 	@Mock
 	private ProductRepository repository;
 
+	@Spy
+	private CatalogDictionary dictionary = new CatalogDictionary();
+
+	@Spy
+	private Validator validator = Validation.buildDefaultValidatorFactory().getValidator();
+
+	// Disabled, so every listing reaches the repository
+	@Spy
+	private ProductListCache listCache = new ProductListCache(new ListCacheProperties(0));
+
+	@Spy
+	private ProductJsonCache jsonCache = new ProductJsonCache(MAPPER, new JsonCacheProperties(DataSize.ofMegabytes(1)));
+
+	@Spy
+	private ProductInventory inventory = new ProductInventory();
+
+	@Spy
+	private ImportExecutor importExecutor = new ImportExecutor(new ImportProperties(1));
+
 	@InjectMocks
 	private ProductServiceImpl service;
 
@@ -62,6 +134,138 @@ class ProductServiceImplTest {
 		verify(repository, times(1)).save(any());
 	}
 
+	@Test
+	@SuppressWarnings("unchecked")
+	void createAll_savesValidItemsInOneBatchAndReportsEachItem() {
+		CreateProductRequest valid = new CreateProductRequest(
+				"Jacket", "Warm", "NorthFace", new BigDecimal("199.99"), 5, List.of("outerwear"));
+		CreateProductRequest invalid = new CreateProductRequest(
+				"", "Warm", "NorthFace", new BigDecimal("-1"), 5, List.of("outerwear"));
+
+		when(repository.saveAll(anyList())).thenAnswer(inv -> inv.getArgument(0));
+
+		BulkResponse response = service.createAll(Arrays.asList(valid, invalid, null));
+
+		ArgumentCaptor<List<Product>> saved = ArgumentCaptor.forClass(List.class);
+		verify(repository).saveAll(saved.capture());
+		verify(repository, never()).save(any());
+		assertEquals(1, saved.getValue().size());
+
+		assertEquals(1, response.succeeded());
+		assertEquals(2, response.failed());
+		assertEquals(201, response.items().get(0).status());
+		assertEquals(saved.getValue().get(0).getId(), response.items().get(0).id());
+		assertEquals(400, response.items().get(1).status());
+		assertEquals(List.of("name", "price"), List.copyOf(response.items().get(1).errors().keySet()));
+		assertEquals(400, response.items().get(2).status());
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	void importProducts_writesValidRecordsInBatchesAndReportsRejections() {
+		CreateProductRequest valid = new CreateProductRequest(
+				"Jacket", "Warm", "NorthFace", new BigDecimal("199.99"), 5, List.of("outerwear"));
+		CreateProductRequest invalid = new CreateProductRequest(
+				"", "Warm", "NorthFace", new BigDecimal("199.99"), 5, List.of("outerwear"));
+
+		// Every third record is unparsable, more than the report lists
+		List<ImportRecord> records = new ArrayList<>();
+		for (int line = 1; line <= 3300; line++) {
+			records.add(line % 3 == 0 ? ImportRecord.unparsable(line, "is not valid JSON")
+					: ImportRecord.parsed(line, line == 1 ? invalid : valid));
+		}
+		when(repository.saveAll(anyList())).thenAnswer(inv -> inv.getArgument(0));
+
+		ImportResponse response = service.importProducts(records.iterator());
+
+		ArgumentCaptor<List<Product>> saved = ArgumentCaptor.forClass(List.class);
+		verify(repository, times(4)).saveAll(saved.capture());
+		assertEquals(2199, saved.getAllValues().stream().mapToInt(List::size).sum());
+		assertTrue(saved.getAllValues().stream().allMatch(batch -> batch.size() <= ProductImport.BATCH_RECORDS));
+
+		assertEquals(3300, response.records());
+		assertEquals(2199, response.imported());
+		assertEquals(1101, response.rejected());
+		assertEquals(ProductImport.MAX_REPORTED_REJECTIONS, response.rejections().size());
+		assertEquals(new ImportResponse.Rejection(1, Map.of("name", "must not be blank")), response.rejections().get(0));
+		assertEquals(new ImportResponse.Rejection(3, Map.of("line", "is not valid JSON")), response.rejections().get(1));
+	}
+
+	@Test
+	void importProducts_failedRead_stopsTheImport() {
+		CreateProductRequest valid = new CreateProductRequest(
+				"Jacket", "Warm", "NorthFace", new BigDecimal("199.99"), 5, List.of("outerwear"));
+		Iterator<ImportRecord> records = new Iterator<>() {
+			private int line;
+
+			@Override
+			public boolean hasNext() {
+				if (line == 1500) {
+					throw new UncheckedIOException(new IOException("Connection reset"));
+				}
+				return true;
+			}
+
+			@Override
+			public ImportRecord next() {
+				return ImportRecord.parsed(++line, valid);
+			}
+		};
+
+		assertThrows(UncheckedIOException.class, () -> service.importProducts(records));
+		verify(repository, atMost(1)).saveAll(anyList());
+	}
+
+	@Test
+	void importProducts_beyondTheConcurrentLimit_isTurnedAwayUntilOneFinishes() throws Exception {
+		CreateProductRequest valid = new CreateProductRequest(
+				"Jacket", "Warm", "NorthFace", new BigDecimal("199.99"), 5, List.of("outerwear"));
+		CountDownLatch reading = new CountDownLatch(1);
+		CountDownLatch uploaded = new CountDownLatch(1);
+		Iterator<ImportRecord> slow = new Iterator<>() {
+			private int line;
+
+			@Override
+			public boolean hasNext() {
+				reading.countDown();
+				try {
+					return !uploaded.await(10, TimeUnit.MILLISECONDS) || line == 0;
+				} catch (InterruptedException e) {
+					throw new IllegalStateException(e);
+				}
+			}
+
+			@Override
+			public ImportRecord next() {
+				return ImportRecord.parsed(++line, valid);
+			}
+		};
+		when(repository.saveAll(anyList())).thenAnswer(inv -> inv.getArgument(0));
+
+		ExecutorService caller = Executors.newSingleThreadExecutor();
+		try {
+			Future<ImportResponse> first = caller.submit(() -> service.importProducts(slow));
+			reading.await();
+
+			assertThrows(ImportCapacityException.class, () -> service.importProducts(List.of(ImportRecord.parsed(1, valid)).iterator()));
+
+			uploaded.countDown();
+			assertTrue(first.get(10, TimeUnit.SECONDS).imported() > 0);
+		} finally {
+			caller.shutdownNow();
+		}
+		// Stages hand their threads back before the import's place; wait for the last to do so
+		for (int attempt = 0; attempt < 100; attempt++) {
+			try {
+				assertEquals(1, service.importProducts(List.of(ImportRecord.parsed(1, valid)).iterator()).imported());
+				return;
+			} catch (ImportCapacityException e) {
+				Thread.sleep(10);
+			}
+		}
+		fail("The finished import kept its place");
+	}
+
 	// --------------------------------------------------
 	// GET BY ID
 	// --------------------------------------------------
@@ -90,6 +294,51 @@ class ProductServiceImplTest {
 		verify(repository).findById(id);
 	}
 
+	@Test
+	void getJson_servesCachedBytesUntilTheVersionChanges() throws Exception {
+		UUID id = UUID.randomUUID();
+
+		Product product = Product.builder()
+				.id(id)
+				.name("Boots")
+				.description("Hiking boots")
+				.brand("Salomon")
+				.price(new BigDecimal("149.99"))
+				.inventory(10)
+				.categories(List.of("footwear"))
+				.createdAt(Instant.now())
+				.updatedAt(Instant.now())
+				.version(3)
+				.build();
+
+		when(repository.findById(id)).thenReturn(Optional.of(product));
+
+		var first = service.getJsonById(id).orElseThrow();
+		var second = service.getJsonById(id).orElseThrow();
+
+		assertEquals(3, first.version());
+		assertSame(first.json(), second.json());
+		assertEquals("Boots", MAPPER.readTree(first.json()).path("name").asText());
+
+		when(repository.findById(id)).thenReturn(Optional.of(product.toBuilder().name("Trail Boots").version(4).build()));
+
+		var updated = service.getJsonById(id).orElseThrow();
+		assertEquals(4, updated.version());
+		assertEquals("Trail Boots", MAPPER.readTree(updated.json()).path("name").asText());
+	}
+
+	@Test
+	void toJson_joinsTheJsonOfEachProductIntoAnArray() throws Exception {
+		ProductResponse boots = new ProductResponse(UUID.randomUUID(), "Boots", "Hiking boots", "Salomon",
+				new BigDecimal("149.99"), 10, List.of("footwear"), Instant.now(), Instant.now(), 3);
+		ProductResponse tent = new ProductResponse(UUID.randomUUID(), "Tent", "2-person tent", "REI",
+				new BigDecimal("199.99"), 3, List.of("tents"), Instant.now(), Instant.now(), 5);
+
+		assertEquals(MAPPER.writeValueAsString(List.of(boots, tent)),
+				new String(service.toJson(List.of(boots, tent)), StandardCharsets.UTF_8));
+		assertEquals("[]", new String(service.toJson(List.of()), StandardCharsets.UTF_8));
+	}
+
 	@Test
 	void getProduct_notFound() {
 		UUID id = UUID.randomUUID();
@@ -118,10 +367,12 @@ class ProductServiceImplTest {
 				.categories(List.of("tents"))
 				.createdAt(Instant.now())
 				.updatedAt(Instant.now())
+				.version(3)
 				.build();
 
 		when(repository.findById(id)).thenReturn(Optional.of(existing));
-		when(repository.save(any())).thenAnswer(inv -> inv.getArgument(0));
+		when(repository.compareAndSave(any(), eq(3L)))
+				.thenAnswer(inv -> Optional.of(inv.<Product>getArgument(0).toBuilder().version(4).build()));
 
 		UpdateProductRequest req = new UpdateProductRequest(
 				"Updated Tent",
@@ -132,11 +383,117 @@ class ProductServiceImplTest {
 				List.of("tents", "camping")
 		);
 
-		var result = service.update(id, req);
+		var result = service.update(id, req, null);
 
 		assertTrue(result.isPresent());
 		assertEquals("Updated Tent", result.get().name());
-		verify(repository).save(any());
+		assertEquals(4, result.get().version());
+		verify(repository, never()).save(any());
+		verify(jsonCache).evict(id);
+	}
+
+	@Test
+	void updateProduct_lostRace_retriesAgainstTheVersionThatWon() {
+		Product first = Product.builder()
+				.id(UUID.randomUUID())
+				.name("Tent")
+				.description("2-person tent")
+				.brand("REI")
+				.price(new BigDecimal("199.99"))
+				.inventory(3)
+				.categories(List.of("tents"))
+				.createdAt(Instant.now())
+				.updatedAt(Instant.now())
+				.version(3)
+				.build();
+		Product second = first.toBuilder().price(new BigDecimal("179.99")).version(5).build();
+
+		when(repository.findById(first.getId())).thenReturn(Optional.of(first)).thenReturn(Optional.of(second));
+		when(repository.compareAndSave(any(), eq(3L))).thenReturn(Optional.empty());
+		when(repository.compareAndSave(any(), eq(5L)))
+				.thenAnswer(inv -> Optional.of(inv.<Product>getArgument(0).toBuilder().version(6).build()));
+
+		UpdateProductRequest req = new UpdateProductRequest(
+				"Tent", "2-person tent", "REI", new BigDecimal("249.99"), 5, List.of("tents"));
+
+		assertEquals(6, service.update(first.getId(), req, null).orElseThrow().version());
+		verify(repository, times(2)).compareAndSave(any(), anyLong());
+	}
+
+	@Test
+	void reserveInventory_writesTheStockOverTheVersionRead() {
+		Product existing = Product.builder()
+				.id(UUID.randomUUID())
+				.name("Stove")
+				.description("Canister stove")
+				.brand("MSR")
+				.price(new BigDecimal("89.95"))
+				.inventory(3)
+				.categories(List.of("cooking"))
+				.createdAt(Instant.now())
+				.updatedAt(Instant.now())
+				.version(3)
+				.build();
+
+		when(repository.findById(existing.getId())).thenReturn(Optional.of(existing));
+		when(repository.compareAndSave(any(), eq(3L)))
+				.thenAnswer(inv -> Optional.of(inv.<Product>getArgument(0).toBuilder().version(4).build()));
+
+		ProductResponse reserved = service.reserveInventory(existing.getId(), 2).orElseThrow();
+
+		assertEquals(1, reserved.inventory());
+		assertEquals(4, reserved.version());
+		assertEquals("Stove", reserved.name());
+		verify(jsonCache).evict(existing.getId());
+	}
+
+	@Test
+	void reserveInventory_moreThanInStock_throwsWithoutWriting() {
+		Product existing = Product.builder()
+				.id(UUID.randomUUID())
+				.name("Stove")
+				.description("Canister stove")
+				.brand("MSR")
+				.price(new BigDecimal("89.95"))
+				.inventory(1)
+				.categories(List.of("cooking"))
+				.createdAt(Instant.now())
+				.updatedAt(Instant.now())
+				.version(3)
+				.build();
+
+		when(repository.findById(existing.getId())).thenReturn(Optional.of(existing));
+
+		assertThrows(InventoryConflictException.class, () -> service.reserveInventory(existing.getId(), 2));
+		verify(repository, never()).compareAndSave(any(), anyLong());
+	}
+
+	@Test
+	void updateProduct_expectedVersionLostRace_throwsWithTheVersionThatWon() {
+		Product first = Product.builder()
+				.id(UUID.randomUUID())
+				.name("Tent")
+				.description("2-person tent")
+				.brand("REI")
+				.price(new BigDecimal("199.99"))
+				.inventory(3)
+				.categories(List.of("tents"))
+				.createdAt(Instant.now())
+				.updatedAt(Instant.now())
+				.version(3)
+				.build();
+		Product second = first.toBuilder().price(new BigDecimal("179.99")).version(5).build();
+
+		when(repository.findById(first.getId())).thenReturn(Optional.of(first)).thenReturn(Optional.of(second));
+		when(repository.compareAndSave(any(), eq(3L))).thenReturn(Optional.empty());
+
+		UpdateProductRequest req = new UpdateProductRequest(
+				"Tent", "2-person tent", "REI", new BigDecimal("249.99"), 5, List.of("tents"));
+
+		ProductVersionMismatchException mismatch = assertThrows(ProductVersionMismatchException.class,
+				() -> service.update(first.getId(), req, Set.of(3L)));
+		assertEquals(5, mismatch.getCurrentVersion());
+		verify(repository).compareAndSave(any(), eq(3L));
 	}
 
 	@Test
@@ -149,10 +506,80 @@ class ProductServiceImplTest {
 				"X", "Y", "Brand", new BigDecimal("10"), 1, List.of("cat")
 		);
 
-		var result = service.update(id, req);
+		var result = service.update(id, req, Set.of(1L));
 
 		assertTrue(result.isEmpty());
-		verify(repository, never()).save(any());
+		verify(repository, never()).compareAndSave(any(), anyLong());
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	void updateAll_reportsInvalidAndMissingItems() {
+		Product existing = Product.builder()
+				.id(UUID.randomUUID())
+				.name("Old")
+				.description("Old desc")
+				.brand("REI")
+				.price(new BigDecimal("10"))
+				.inventory(1)
+				.categories(List.of("camping"))
+				.createdAt(Instant.parse("2024-01-01T00:00:00Z"))
+				.updatedAt(Instant.parse("2024-01-01T00:00:00Z"))
+				.build();
+		UUID missing = UUID.randomUUID();
+		UpdateProductRequest update = new UpdateProductRequest("New", "New desc", "MSR", new BigDecimal("20"), 2, List.of("stoves"));
+
+		when(repository.findById(existing.getId())).thenReturn(Optional.of(existing));
+		when(repository.findById(missing)).thenReturn(Optional.empty());
+		when(repository.compareAndSaveAll(any(), any()))
+				.thenAnswer(inv -> inv.<List<Product>>getArgument(0).stream().map(Optional::of).toList());
+
+		BulkResponse response = service.updateAll(List.of(
+				new BulkUpdateRequest(existing.getId(), update),
+				new BulkUpdateRequest(missing, update),
+				new BulkUpdateRequest(existing.getId(), null)));
+
+		assertEquals(List.of(200, 404, 400), response.items().stream().map(BulkResponse.ItemResult::status).toList());
+		assertEquals(Map.of("product", "must not be null"), response.items().get(2).errors());
+
+		ArgumentCaptor<List<Product>> saved = ArgumentCaptor.forClass(List.class);
+		verify(repository).compareAndSaveAll(saved.capture(), eq(List.of(existing.getVersion())));
+		assertEquals(1, saved.getValue().size());
+		Product updated = saved.getValue().get(0);
+		assertEquals(existing.getId(), updated.getId());
+		assertEquals("New", updated.getName());
+		assertEquals(existing.getCreatedAt(), updated.getCreatedAt());
+		verify(repository, never()).saveAll(any());
+	}
+
+	@Test
+	void updateAll_productMovedMeanwhile_isReadAgainAndSavedOverTheNewVersion() {
+		Product read = Product.builder()
+				.id(UUID.randomUUID())
+				.name("Stove")
+				.description("Canister stove")
+				.brand("MSR")
+				.price(new BigDecimal("90"))
+				.inventory(5)
+				.categories(List.of("cooking"))
+				.createdAt(Instant.now())
+				.updatedAt(Instant.now())
+				.version(3)
+				.build();
+		// Reserved by a checkout between the read and the write
+		Product reserved = read.toBuilder().inventory(4).version(4).build();
+		UpdateProductRequest update = new UpdateProductRequest("Stove", "Canister stove", "MSR", new BigDecimal("80"), 4, List.of("cooking"));
+
+		when(repository.findById(read.getId())).thenReturn(Optional.of(read)).thenReturn(Optional.of(reserved));
+		when(repository.compareAndSaveAll(any(), eq(List.of(3L)))).thenReturn(List.of(Optional.empty()));
+		when(repository.compareAndSaveAll(any(), eq(List.of(4L))))
+				.thenAnswer(inv -> List.of(Optional.of(inv.<List<Product>>getArgument(0).get(0).toBuilder().version(5).build())));
+
+		BulkResponse response = service.updateAll(List.of(new BulkUpdateRequest(read.getId(), update)));
+
+		assertEquals(List.of(200), response.items().stream().map(BulkResponse.ItemResult::status).toList());
+		verify(repository, times(2)).compareAndSaveAll(any(), any());
+		verify(inventory).evict(read.getId());
 	}
 
 	// --------------------------------------------------
@@ -172,14 +599,52 @@ class ProductServiceImplTest {
 				.categories(List.of("gloves"))
 				.createdAt(Instant.now())
 				.updatedAt(Instant.now())
+				.version(3)
 				.build();
 
 		when(repository.findById(id)).thenReturn(Optional.of(existing));
+		when(repository.compareAndDelete(id, 3)).thenReturn(true);
 
-		boolean result = service.delete(id);
+		boolean result = service.delete(id, null);
 
 		assertTrue(result);
-		verify(repository).deleteById(id);
+		verify(repository, never()).deleteById(any());
+	}
+
+	@Test
+	void deleteProduct_otherVersion_throwsWithoutDeleting() {
+		Product existing = Product.builder()
+				.id(UUID.randomUUID())
+				.name("Gloves")
+				.description("Winter gloves")
+				.brand("Patagonia")
+				.price(new BigDecimal("49.99"))
+				.inventory(3)
+				.categories(List.of("gloves"))
+				.createdAt(Instant.now())
+				.updatedAt(Instant.now())
+				.version(3)
+				.build();
+
+		when(repository.findById(existing.getId())).thenReturn(Optional.of(existing));
+
+		assertThrows(ProductVersionMismatchException.class, () -> service.delete(existing.getId(), Set.of(2L)));
+		verify(repository, never()).compareAndDelete(any(), anyLong());
+	}
+
+	@Test
+	void deleteAll_deletesInOneBatchAndReportsEachIdOnce() {
+		UUID stored = UUID.randomUUID();
+		UUID missing = UUID.randomUUID();
+
+		when(repository.deleteAllById(List.of(stored, missing, stored))).thenReturn(List.of(stored));
+
+		BulkResponse response = service.deleteAll(Arrays.asList(stored, missing, stored, null));
+
+		assertEquals(List.of(204, 404, 404, 400), response.items().stream().map(BulkResponse.ItemResult::status).toList());
+		assertEquals(1, response.succeeded());
+		assertEquals(3, response.failed());
+		verify(repository, never()).deleteById(any());
 	}
 
 	@Test
@@ -188,10 +653,10 @@ class ProductServiceImplTest {
 
 		when(repository.findById(id)).thenReturn(Optional.empty());
 
-		boolean result = service.delete(id);
+		boolean result = service.delete(id, null);
 
 		assertFalse(result);
-		verify(repository, never()).deleteById(any());
+		verify(repository, never()).compareAndDelete(any(), anyLong());
 	}
 
 	// --------------------------------------------------
@@ -223,11 +688,299 @@ class ProductServiceImplTest {
 				.updatedAt(Instant.now())
 				.build();
 
-		when(repository.findAll()).thenReturn(List.of(a, b));
+		when(repository.find(any())).thenReturn(List.of(b));
+
+		var result = service.list("Columbia", null, null, 150.0, null, null, 0, 10, null);
+
+		assertEquals(1, result.items().size());
+		assertEquals("Boots", result.items().get(0).name());
+		assertNull(result.nextCursor());
+		verify(repository).find(ProductQuery.builder()
+				.brand("Columbia")
+				.priceMax(BigDecimal.valueOf(150.0))
+				.sort(ProductSort.NEWEST)
+				.offset(0)
+				.limit(10)
+				.build());
+	}
+
+	@Test
+	void list_products_pushesSortAndPageToRepository() {
+		when(repository.find(any())).thenReturn(List.of());
+
+		service.list(null, "footwear", null, null, null, "price", 2, 5, null);
+
+		verify(repository).find(ProductQuery.builder()
+				.category("footwear")
+				.sort(ProductSort.PRICE)
+				.offset(10)
+				.limit(5)
+				.build());
+	}
+
+	@Test
+	void list_internedFilters_arePushedDownAsCodes() {
+		when(repository.save(any())).thenAnswer(inv -> inv.getArgument(0));
+		when(repository.find(any())).thenReturn(List.of());
+
+		service.create(new CreateProductRequest("Stove", "Canister stove", "MSR",
+				new BigDecimal("89.95"), 3, List.of("cooking")));
+		service.list("msr", "cooking", null, null, null, null, 0, 10, null);
+
+		verify(repository).find(ProductQuery.builder()
+				.brand("msr")
+				.category("cooking")
+				.brandCode(dictionary.brandCode("MSR"))
+				.categoryCode(dictionary.categoryCode("cooking"))
+				.sort(ProductSort.NEWEST)
+				.offset(0)
+				.limit(10)
+				.build());
+	}
+
+	@Test
+	void list_fullPage_returnsCursorThatSeeksPastLastProduct() {
+		Product last = Product.builder()
+				.id(UUID.randomUUID())
+				.name("Stove")
+				.description("Camp stove")
+				.brand("MSR")
+				.price(new BigDecimal("89.95"))
+				.inventory(7)
+				.categories(List.of("cooking"))
+				.createdAt(Instant.now())
+				.updatedAt(Instant.now())
+				.build();
+
+		when(repository.find(any())).thenReturn(List.of(last));
+
+		var first = service.list(null, null, null, null, null, "price", 0, 1, null);
+		assertNotNull(first.nextCursor());
 
-		var result = service.list("Columbia", null, null, null, null, 0, 10);
+		service.list(null, null, null, null, null, "price", 3, 1, first.nextCursor());
+
+		verify(repository).find(ProductQuery.builder()
+				.sort(ProductSort.PRICE)
+				.after(ProductSort.PRICE.anchor("89.95", last.getId()))
+				.offset(0)
+				.limit(1)
+				.build());
+	}
 
-		assertEquals(1, result.size());
-		assertEquals("Boots", result.get(0).name());
+	@Test
+	void list_cursorReadsTheVersionOfTheFirstPage() {
+		Product last = Product.builder()
+				.id(UUID.randomUUID())
+				.name("Stove")
+				.description("Camp stove")
+				.brand("MSR")
+				.price(new BigDecimal("89.95"))
+				.inventory(7)
+				.categories(List.of("cooking"))
+				.createdAt(Instant.now())
+				.updatedAt(Instant.now())
+				.build();
+
+		when(repository.version()).thenReturn(42L, 50L);
+		when(repository.find(any())).thenReturn(List.of(last));
+
+		var first = service.list(null, null, null, null, null, "price", 0, 1, null);
+		service.list(null, null, null, null, null, "price", 0, 1, first.nextCursor());
+		service.list(null, null, null, null, null, "price", 0, 1, null);
+
+		ArgumentCaptor<ProductQuery> queries = ArgumentCaptor.forClass(ProductQuery.class);
+		verify(repository, times(3)).find(queries.capture());
+		assertEquals(List.of(42L, 42L, 50L), queries.getAllValues().stream().map(ProductQuery::asOf).toList());
+	}
+
+	@Test
+	void list_cachedPage_isServedUntilAWriteTouchesIt() {
+		ProductServiceImpl cached = new ProductServiceImpl(repository, dictionary, validator,
+				new ProductListCache(new ListCacheProperties(100)), jsonCache, inventory, importExecutor);
+		Product stove = Product.builder()
+				.id(UUID.randomUUID())
+				.name("Stove")
+				.description("Camp stove")
+				.brand("MSR")
+				.price(new BigDecimal("89.95"))
+				.inventory(7)
+				.categories(List.of("cooking"))
+				.createdAt(Instant.now())
+				.updatedAt(Instant.now())
+				.version(3)
+				.build();
+
+		when(repository.find(any())).thenReturn(List.of(stove));
+		when(repository.findById(stove.getId())).thenReturn(Optional.of(stove));
+		when(repository.compareAndSave(any(), eq(3L)))
+				.thenAnswer(inv -> Optional.of(inv.<Product>getArgument(0).toBuilder().version(4).build()));
+		when(repository.save(any())).thenAnswer(inv -> inv.getArgument(0));
+
+		cached.list("MSR", null, null, null, null, null, 0, 10, null);
+		cached.list("msr", null, null, null, null, null, 0, 10, null);
+		verify(repository, times(1)).find(any());
+
+		// A product of another brand leaves the page cached
+		cached.create(new CreateProductRequest("Boots", "Hiking boots", "Salomon", new BigDecimal("149.99"), 2, List.of("footwear")));
+		cached.list("MSR", null, null, null, null, null, 0, 10, null);
+		verify(repository, times(1)).find(any());
+
+		cached.update(stove.getId(), new UpdateProductRequest(
+				"Stove", "Camp stove", "MSR", new BigDecimal("79.95"), 7, List.of("cooking")), null);
+		cached.list("MSR", null, null, null, null, null, 0, 10, null);
+		verify(repository, times(2)).find(any());
+		assertEquals(1, cached.listCacheMetrics().invalidations());
+		assertEquals(2, cached.listCacheMetrics().hits());
+	}
+
+	@Test
+	void list_cursorFromAnotherSort_isRejected() {
+		Product last = Product.builder()
+				.id(UUID.randomUUID())
+				.name("Stove")
+				.brand("MSR")
+				.price(new BigDecimal("89.95"))
+				.categories(List.of("cooking"))
+				.createdAt(Instant.now())
+				.build();
+
+		when(repository.find(any())).thenReturn(List.of(last));
+		String cursor = service.list(null, null, null, null, null, "price", 0, 1, null).nextCursor();
+
+		assertThrows(InvalidCursorException.class,
+				() -> service.list(null, null, null, null, null, "name", 0, 1, cursor));
+		assertThrows(InvalidCursorException.class,
+				() -> service.list(null, null, null, null, null, "price", 0, 1, "not-a-cursor"));
+	}
+
+	@Test
+	void list_searchQuery_ranksByRelevanceWithoutCursor() {
+		Product tent = Product.builder()
+				.id(UUID.randomUUID())
+				.name("Tent")
+				.brand("REI")
+				.price(new BigDecimal("199.99"))
+				.categories(List.of("camping"))
+				.createdAt(Instant.now())
+				.build();
+
+		when(repository.find(any())).thenReturn(List.of(tent));
+
+		var result = service.list(null, null, null, null, "Tent, ultralight tent", null, 0, 1, null);
+
+		assertNull(result.nextCursor());
+		verify(repository).find(ProductQuery.builder()
+				.terms(List.of("tent", "ultralight"))
+				.relevance(true)
+				.sort(ProductSort.NEWEST)
+				.offset(0)
+				.limit(1)
+				.build());
+	}
+
+	@Test
+	void list_searchQueryWithSort_ordersMatchesBySort() {
+		when(repository.find(any())).thenReturn(List.of());
+
+		service.list(null, null, null, null, "tent", "price", 0, 10, null);
+		service.list(null, null, null, null, " - ", "price", 0, 10, null);
+
+		verify(repository).find(ProductQuery.builder()
+				.terms(List.of("tent"))
+				.sort(ProductSort.PRICE)
+				.offset(0)
+				.limit(10)
+				.build());
+		verify(repository).find(ProductQuery.builder()
+				.sort(ProductSort.PRICE)
+				.offset(0)
+				.limit(10)
+				.build());
+	}
+
+	@Test
+	void list_cursorWithRelevance_isRejected() {
+		Product last = Product.builder()
+				.id(UUID.randomUUID())
+				.name("Stove")
+				.brand("MSR")
+				.price(new BigDecimal("89.95"))
+				.categories(List.of("cooking"))
+				.createdAt(Instant.now())
+				.build();
+
+		when(repository.find(any())).thenReturn(List.of(last));
+		String cursor = service.list(null, null, null, null, null, null, 0, 1, null).nextCursor();
+
+		assertThrows(InvalidCursorException.class,
+				() -> service.list(null, null, null, null, "stove", null, 0, 1, cursor));
+	}
+
+	@Test
+	void suggest_mapsCompletionsAndCapsSize() {
+		when(repository.suggest(any(), any(), anyInt())).thenReturn(List.of(
+				new Suggestion("Nano Puff", Suggestion.Field.NAME),
+				new Suggestion("Nemo", Suggestion.Field.BRAND)));
+
+		var result = service.suggest("  n", "newest", 1_000);
+
+		assertEquals(List.of(new SuggestionResponse("Nano Puff", "name"), new SuggestionResponse("Nemo", "brand")), result);
+		verify(repository).suggest("n", SuggestionRank.NEWEST, ProductServiceImpl.MAX_SUGGESTIONS);
+	}
+
+	@Test
+	void suggest_blankPrefix_returnsNothing() {
+		assertTrue(service.suggest(" ", null, 10).isEmpty());
+		assertTrue(service.suggest(null, null, 10).isEmpty());
+		verify(repository, never()).suggest(any(), any(), anyInt());
+	}
+
+	@Test
+	void explain_mapsRepositoryExplanation() {
+		QueryPlan plan = new QueryPlan(
+				QueryPlan.AccessPath.BRAND_INDEX,
+				List.of(QueryPlan.AccessPath.CATEGORY_INDEX),
+				QueryPlan.OrderStrategy.SORT,
+				12
+		);
+		when(repository.explain(any())).thenReturn(new QueryExplanation(plan, 12, 3, 3));
+
+		QueryExplainResponse result = service.explain("REI", "camping", null, null, null, null, 0, 10, null);
+
+		assertEquals("BRAND_INDEX", result.driver());
+		assertEquals(List.of("CATEGORY_INDEX"), result.intersected());
+		assertEquals("SORT", result.order());
+		assertEquals(12, result.candidatesScanned());
+		assertEquals(3, result.returned());
+	}
+
+	@Test
+	void facets_mapsCountsMostFrequentFirstWithPriceRanges() {
+		when(repository.facets(any(), any())).thenReturn(new FacetCounts(
+				5,
+				Map.of("MSR", 1L, "REI", 4L),
+				Map.of("cooking", 2L, "camping", 2L),
+				List.of(1L, 3L, 1L)));
+
+		ProductFacetsResponse result = service.facets("REI", null, null, 500.0, List.of(50.0, 100.0));
+
+		assertEquals(5, result.total());
+		assertEquals(List.of(new ProductFacetsResponse.FacetCount("REI", 4), new ProductFacetsResponse.FacetCount("MSR", 1)), result.brands());
+		assertEquals(List.of(new ProductFacetsResponse.FacetCount("camping", 2), new ProductFacetsResponse.FacetCount("cooking", 2)), result.categories());
+		assertEquals(List.of(
+				new ProductFacetsResponse.PriceRangeCount(null, BigDecimal.valueOf(50.0), 1),
+				new ProductFacetsResponse.PriceRangeCount(BigDecimal.valueOf(50.0), BigDecimal.valueOf(100.0), 3),
+				new ProductFacetsResponse.PriceRangeCount(BigDecimal.valueOf(100.0), null, 1)), result.prices());
+		verify(repository).facets(ProductQuery.builder()
+				.brand("REI")
+				.priceMax(BigDecimal.valueOf(500.0))
+				.build(), List.of(BigDecimal.valueOf(50.0), BigDecimal.valueOf(100.0)));
+	}
+
+	@Test
+	void facets_unorderedPriceBuckets_areRejected() {
+		assertThrows(InvalidPriceBucketsException.class,
+				() -> service.facets(null, null, null, null, List.of(100.0, 50.0)));
+		verify(repository, never()).facets(any(), any());
 	}
 }